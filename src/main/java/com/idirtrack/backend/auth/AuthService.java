@@ -11,7 +11,7 @@ import com.idirtrack.backend.basics.BasicException;
 import com.idirtrack.backend.basics.BasicResponse;
 import com.idirtrack.backend.basics.MessageType;
 import com.idirtrack.backend.jwt.JwtUtils;
-import com.idirtrack.backend.traccar.TracCarSessionService;
+import com.idirtrack.backend.traccar.TraccarSessionManager;
 import com.idirtrack.backend.user.User;
 import com.idirtrack.backend.user.UserDTO;
 import com.idirtrack.backend.user.UserService;
@@ -24,7 +24,7 @@ import lombok.RequiredArgsConstructor;
 public class AuthService {
 
     private final UserService userService;
-    private final TracCarSessionService tracCarSessionService;
+    private final TraccarSessionManager traccarSessionManager;
     private final JwtUtils jwtUtils;
     private final AuthenticationManager authenticationManager;
     private final PasswordEncoder passwordEncoder;
@@ -36,8 +36,8 @@ public class AuthService {
     public BasicResponse login(AuthRequest request) throws BasicException {
         // Check if the user exists
         User user = userService.findByUsername(request.getUsername());
-        // Get the session
-        String session = tracCarSessionService.createSession(user.getEmail(), request.getPassword());
+        // Get the live Traccar session of the user, or open one
+        String session = traccarSessionManager.acquire(user.getUsername(), user.getEmail(), request.getPassword());
         if (session != null) {
             try {
                 // Try to authenticate the user
@@ -15,4 +15,6 @@ public class MetaData {
   private int totalPages;
   private int size;
   private long totalElements;
+  // Token of the next page in cursor mode, null on the last page
+  private String nextCursor;
 }
@@ -1,5 +1,6 @@
 package com.idirtrack.backend.boitier;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 
@@ -56,8 +57,32 @@ public class Boitier {
     @EqualsAndHashCode.Exclude
     private List<Subscription> subscriptions;
 
+    // The subscription ending last, kept up to date so readers do not load the
+    // whole subscriptions collection
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "current_subscription_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Subscription currentSubscription;
+
     private Long traccarId;
 
+    // The subscription ending last, the highest id on a tie, like
+    // BoitierRepository.refreshCurrentSubscriptions; a subscription not saved yet is the newest
+    private static final Comparator<Subscription> ENDING_LAST = Comparator
+            .comparing(Subscription::getEndDate)
+            .thenComparing(Subscription::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    // Make the subscription the current one if it ends last, after it was added or its dates changed
+    public void refreshCurrentSubscription(Subscription subscription) {
+        if (currentSubscription == subscription && subscriptions != null) {
+            // The current one may now end before another one
+            currentSubscription = subscriptions.stream().max(ENDING_LAST).orElse(subscription);
+        } else if (currentSubscription == null || ENDING_LAST.compare(subscription, currentSubscription) > 0) {
+            currentSubscription = subscription;
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
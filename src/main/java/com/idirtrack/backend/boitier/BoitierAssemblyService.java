@@ -0,0 +1,189 @@
+package com.idirtrack.backend.boitier;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.idirtrack.backend.boitier.https.BoitierBatchRequest;
+import com.idirtrack.backend.boitier.https.BoitierRequest;
+import com.idirtrack.backend.device.Device;
+import com.idirtrack.backend.device.DeviceRepository;
+import com.idirtrack.backend.device.DeviceService;
+import com.idirtrack.backend.device.DeviceStatus;
+import com.idirtrack.backend.errors.MyException;
+import com.idirtrack.backend.sim.Sim;
+import com.idirtrack.backend.sim.SimRepository;
+import com.idirtrack.backend.sim.SimService;
+import com.idirtrack.backend.sim.SimStatus;
+import com.idirtrack.backend.utils.ErrorResponse;
+import com.idirtrack.backend.utils.FieldErrorDTO;
+import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.StatusTransitionReport;
+
+import lombok.RequiredArgsConstructor;
+
+@Service
+@RequiredArgsConstructor
+public class BoitierAssemblyService {
+
+        private static final String INSERT_BOITIER_SQL = "INSERT INTO boitiers (device_id, sim_id) VALUES (?, ?)";
+
+        private static final String INSERT_SUBSCRIPTION_SQL = "INSERT INTO subscriptions "
+                        + "(start_date, end_date, boitier_id) VALUES (?, ?, ?)";
+
+        private final BoitierRepository boitierRepository;
+        private final DeviceRepository deviceRepository;
+        private final SimRepository simRepository;
+        private final DeviceService deviceService;
+        private final SimService simService;
+        private final JdbcTemplate jdbcTemplate;
+
+        private static final Logger logger = LoggerFactory.getLogger(BoitierAssemblyService.class);
+
+        /**
+         * Service: Assemble a batch of boitiers (device + SIM + subscription)
+         *
+         * The devices and SIMs of the whole batch are loaded with one IN query
+         * each and validated together: every device and SIM must exist, be
+         * non-installed and appear once in the batch, and every subscription
+         * must start in the future and before its end. The devices and SIMs
+         * are then moved to pending with one conditional UPDATE each, and the
+         * boitiers and subscriptions are written with JDBC batches, all in one
+         * transaction: a device or SIM taken concurrently rolls back the batch.
+         *
+         * @param request the boitiers to assemble
+         * @return MyResponse with the ids of the created boitiers, in request
+         *         order
+         * @throws MyException 400 with the errors of each boitier, or 409 if a
+         *                     device or SIM was taken concurrently
+         */
+        @Transactional
+        public MyResponse assembleBoitiers(BoitierBatchRequest request) {
+                List<BoitierRequest> items = request.getBoitiers();
+
+                // Load the devices and sims of the batch with one query each
+                Map<Long, Device> devices = deviceRepository.findAllById(items.stream()
+                                .map(BoitierRequest::getDeviceId)
+                                .collect(Collectors.toSet())).stream()
+                                .collect(Collectors.toMap(Device::getId, Function.identity()));
+                Map<Long, Sim> sims = simRepository.findAllById(items.stream()
+                                .map(BoitierRequest::getSimId)
+                                .collect(Collectors.toSet())).stream()
+                                .collect(Collectors.toMap(Sim::getId, Function.identity()));
+
+                // Validate the whole batch
+                List<FieldErrorDTO> errors = this.validate(items, devices, sims);
+                if (!errors.isEmpty()) {
+                        throw new MyException(ErrorResponse.builder()
+                                        .message("The batch contains invalid boitiers, nothing was assembled")
+                                        .fieldErrors(errors)
+                                        .status(HttpStatus.BAD_REQUEST)
+                                        .build());
+                }
+
+                // Take the devices and sims from the stock with one conditional UPDATE each
+                List<Long> deviceIds = items.stream().map(BoitierRequest::getDeviceId).collect(Collectors.toList());
+                List<Long> simIds = items.stream().map(BoitierRequest::getSimId).collect(Collectors.toList());
+                this.requireMoved(deviceService.changeDevicesStatus(deviceIds, DeviceStatus.PENDING), "devices");
+                this.requireMoved(simService.changeSimsStatus(simIds, SimStatus.PENDING), "SIMs");
+
+                // Insert the boitiers with one JDBC batch, then read their generated ids
+                jdbcTemplate.batchUpdate(INSERT_BOITIER_SQL, items, items.size(), (ps, item) -> {
+                        ps.setLong(1, item.getDeviceId());
+                        ps.setLong(2, item.getSimId());
+                });
+                Map<Long, Long> boitierIdsByDevice = new HashMap<>();
+                for (Object[] row : boitierRepository.findLatestIdsByDeviceIds(deviceIds)) {
+                        boitierIdsByDevice.put((Long) row[0], (Long) row[1]);
+                }
+
+                // Insert the subscriptions with one JDBC batch
+                jdbcTemplate.batchUpdate(INSERT_SUBSCRIPTION_SQL, items, items.size(), (ps, item) -> {
+                        ps.setDate(1, item.getStartDate());
+                        ps.setDate(2, item.getEndDate());
+                        ps.setLong(3, boitierIdsByDevice.get(item.getDeviceId()));
+                });
+
+                List<Long> boitierIds = deviceIds.stream()
+                                .map(boitierIdsByDevice::get)
+                                .collect(Collectors.toList());
+                boitierRepository.refreshCurrentSubscriptions(boitierIds);
+                logger.info("{} boitiers assembled", boitierIds.size());
+
+                return MyResponse.builder()
+                                .data(boitierIds)
+                                .message(boitierIds.size() + " boitiers assembled successfully")
+                                .status(HttpStatus.CREATED)
+                                .build();
+        }
+
+        // Check every boitier of the batch, keyed by its position in the request
+        private List<FieldErrorDTO> validate(List<BoitierRequest> items, Map<Long, Device> devices,
+                        Map<Long, Sim> sims) {
+                List<FieldErrorDTO> errors = new ArrayList<>();
+                Set<Long> seenDevices = new HashSet<>();
+                Set<Long> seenSims = new HashSet<>();
+                java.util.Date now = new java.util.Date();
+                for (int i = 0; i < items.size(); i++) {
+                        BoitierRequest item = items.get(i);
+                        String prefix = "boitiers[" + i + "].";
+
+                        // Check the device
+                        Device device = devices.get(item.getDeviceId());
+                        if (device == null) {
+                                errors.add(this.error(prefix + "deviceId", "Device not found"));
+                        } else if (!seenDevices.add(device.getId())) {
+                                errors.add(this.error(prefix + "deviceId", "Device is duplicated in the batch"));
+                        } else if (device.getStatus() != DeviceStatus.NON_INSTALLED) {
+                                errors.add(this.error(prefix + "deviceId", "Device is not available in the stock"));
+                        }
+
+                        // Check the sim
+                        Sim sim = sims.get(item.getSimId());
+                        if (sim == null) {
+                                errors.add(this.error(prefix + "simId", "Sim not found"));
+                        } else if (!seenSims.add(sim.getId())) {
+                                errors.add(this.error(prefix + "simId", "Sim is duplicated in the batch"));
+                        } else if (sim.getStatus() != SimStatus.NON_INSTALLED) {
+                                errors.add(this.error(prefix + "simId", "Sim is not available in the stock"));
+                        }
+
+                        // Check the subscription dates
+                        if (item.getStartDate().after(item.getEndDate())) {
+                                errors.add(this.error(prefix + "startDate", "Start date must be before the end date"));
+                        } else if (item.getStartDate().before(now)) {
+                                errors.add(this.error(prefix + "startDate", "Start date must be after the current date"));
+                        }
+                }
+                return errors;
+        }
+
+        private FieldErrorDTO error(String field, String message) {
+                return FieldErrorDTO.builder()
+                                .field(field)
+                                .message(message)
+                                .build();
+        }
+
+        // Fail with a conflict when a device or sim was taken since it was validated
+        private void requireMoved(StatusTransitionReport report, String items) {
+                if (report.idsWith(StatusTransitionReport.Outcome.UPDATED).size() != report.getResults().size()) {
+                        throw new MyException(ErrorResponse.builder()
+                                        .message("Some " + items + " were taken concurrently: " + report.getResults())
+                                        .status(HttpStatus.CONFLICT)
+                                        .build());
+                }
+        }
+}
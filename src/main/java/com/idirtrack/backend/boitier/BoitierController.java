@@ -1,5 +1,6 @@
 package com.idirtrack.backend.boitier;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.BindingResult;
@@ -14,6 +15,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.idirtrack.backend.boitier.https.BoitierBatchRequest;
 import com.idirtrack.backend.boitier.https.BoitierRequest;
 import com.idirtrack.backend.errors.DateException;
 import com.idirtrack.backend.errors.NotFoundException;
@@ -30,6 +32,7 @@ import com.idirtrack.backend.utils.RequestValidation;
 public class BoitierController {
 
     private final BoitierService boitierService;
+    private final BoitierAssemblyService boitierAssemblyService;
 
     // Endpoint to create a new boitier
     @PostMapping("/")
@@ -49,6 +52,19 @@ public class BoitierController {
         }
     }
 
+    // Endpoint to assemble a batch of boitiers in one transaction
+    @PostMapping("/batch/")
+    @PreAuthorize("hasAuthority('ADMIN') or hasAuthority('MANAGER')")
+    public ResponseEntity<?> assembleBoitiers(@Valid @RequestBody BoitierBatchRequest request,
+            BindingResult bindingResult) {
+        if (bindingResult.hasErrors()) {
+            return RequestValidation.handleValidationErrors(bindingResult);
+        } else {
+            MyResponse response = boitierAssemblyService.assembleBoitiers(request);
+            return ResponseEntity.status(response.getStatus()).body(response);
+        }
+    }
+
     // Endpoint to update a boitier by ID
     @PutMapping("/{id}/")
     @PreAuthorize("hasAuthority('ADMIN') or hasAuthority('MANAGER')")
@@ -80,11 +96,58 @@ public class BoitierController {
         }
     }
 
-    // Endpoint to get list of unassigned boitiers
+    // Endpoint to get list of boitiers with pagination
+    // Cursor mode when the after parameter is present (empty for the first page)
+    @GetMapping("/")
+    @PreAuthorize("hasAuthority('ADMIN') or hasAuthority('MANAGER')")
+    public ResponseEntity<?> getAllBoitiers(
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "5") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean withCount) {
+        MyResponse response = after != null
+                ? boitierService.getAllBoitiers(after, size, withCount)
+                : boitierService.getAllBoitiers(page, size);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    // Endpoint to filter the boitier table, optionally sorted by subscription end date
+    @GetMapping("/table/")
+    @PreAuthorize("hasAuthority('ADMIN') or hasAuthority('MANAGER')")
+    public ResponseEntity<?> filterBoitiers(
+            @RequestParam(required = false) String imei,
+            @RequestParam(required = false) String phone,
+            @RequestParam(required = false) Long operatorId,
+            @RequestParam(required = false) Long deviceTypeId,
+            @RequestParam(required = false) String subscription,
+            @RequestParam(required = false) Boolean assigned,
+            @RequestParam(required = false) String sort,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        BoitierFilter filter;
+        try {
+            filter = BoitierFilter.of(imei, phone, operatorId, deviceTypeId, subscription, assigned);
+        } catch (IllegalArgumentException e) {
+            MyResponse response = MyResponse.builder()
+                    .status(HttpStatus.BAD_REQUEST)
+                    .message("Invalid subscription state: " + subscription)
+                    .build();
+            return ResponseEntity.status(response.getStatus()).body(response);
+        }
+        MyResponse response = boitierService.filterBoitiers(filter, sort, page, size);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    // Endpoint to get list of unassigned boitiers, paged and searchable when a page is given
     @GetMapping("/unassigned/")
     @PreAuthorize("hasAuthority('ADMIN') or hasAuthority('MANAGER')")
-    public ResponseEntity<?> getUnassignedBoitiers() {
-        MyResponse response = boitierService.getUnassignedBoitiers();
+    public ResponseEntity<?> getUnassignedBoitiers(
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(defaultValue = "10") int size) {
+        MyResponse response = page == null && search == null
+                ? boitierService.getUnassignedBoitiers()
+                : boitierService.getUnassignedBoitiers(search, page != null ? page : 1, size);
         return ResponseEntity.status(response.getStatus()).body(response);
 
     }
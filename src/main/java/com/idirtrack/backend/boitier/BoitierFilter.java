@@ -0,0 +1,117 @@
+package com.idirtrack.backend.boitier;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.idirtrack.backend.device.Device;
+import com.idirtrack.backend.sim.Sim;
+import com.idirtrack.backend.subscription.Subscription;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Criteria of the boitier table screen
+ *
+ * Only the criteria that are set become predicates. The IMEI and phone
+ * number are matched by prefix, so MySQL can range scan their unique
+ * indexes, and the subscription state is read from the current
+ * subscription of the boitier.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BoitierFilter {
+
+    public enum SubscriptionState {
+        // The current subscription ends today or later
+        ACTIVE,
+        // The current subscription ended before today
+        EXPIRED,
+        // The boitier has no subscription
+        NONE
+    }
+
+    private String imei;
+    private String phone;
+    private Long operatorId;
+    private Long deviceTypeId;
+    private SubscriptionState subscription;
+    // true for the boitiers installed on a vehicle, false for the unassigned ones
+    private Boolean assigned;
+
+    /**
+     * Build a filter from the request parameters
+     *
+     * @param imei         start of the IMEI
+     * @param phone        start of the phone number
+     * @param operatorId
+     * @param deviceTypeId
+     * @param subscription subscription state name, any case
+     * @param assigned
+     * @return BoitierFilter
+     * @throws IllegalArgumentException if the subscription state is invalid
+     */
+    public static BoitierFilter of(String imei, String phone, Long operatorId, Long deviceTypeId,
+            String subscription, Boolean assigned) {
+        return BoitierFilter.builder()
+                .imei(imei != null && !imei.isBlank() ? imei.trim() : null)
+                .phone(phone != null && !phone.isBlank() ? phone.trim() : null)
+                .operatorId(operatorId)
+                .deviceTypeId(deviceTypeId)
+                .subscription(subscription != null && !subscription.isEmpty()
+                        ? SubscriptionState.valueOf(subscription.toUpperCase())
+                        : null)
+                .assigned(assigned)
+                .build();
+    }
+
+    /**
+     * Predicates of the criteria that are set
+     *
+     * @param boitier      the boitier root
+     * @param device       the device join
+     * @param sim          the sim join
+     * @param subscription the current subscription join (left)
+     * @return Predicate
+     */
+    public Predicate toPredicate(Root<Boitier> boitier, Join<Boitier, Device> device, Join<Boitier, Sim> sim,
+            Join<Boitier, Subscription> subscription, CriteriaBuilder criteriaBuilder) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (imei != null) {
+            predicates.add(criteriaBuilder.like(device.get("imei"), imei + "%"));
+        }
+        if (phone != null) {
+            predicates.add(criteriaBuilder.like(sim.get("phone"), phone + "%"));
+        }
+        if (operatorId != null) {
+            predicates.add(criteriaBuilder.equal(sim.get("operator").get("id"), operatorId));
+        }
+        if (deviceTypeId != null) {
+            predicates.add(criteriaBuilder.equal(device.get("deviceType").get("id"), deviceTypeId));
+        }
+        if (this.subscription != null) {
+            Date today = Date.valueOf(LocalDate.now());
+            switch (this.subscription) {
+                case ACTIVE -> predicates.add(criteriaBuilder.greaterThanOrEqualTo(subscription.get("endDate"), today));
+                case EXPIRED -> predicates.add(criteriaBuilder.lessThan(subscription.get("endDate"), today));
+                case NONE -> predicates.add(criteriaBuilder.isNull(boitier.get("currentSubscription")));
+            }
+        }
+        if (assigned != null) {
+            predicates.add(assigned
+                    ? criteriaBuilder.isNotNull(boitier.get("vehicle"))
+                    : criteriaBuilder.isNull(boitier.get("vehicle")));
+        }
+        return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
+    }
+}
@@ -0,0 +1,17 @@
+package com.idirtrack.backend.boitier;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Filtered boitier table, selected as listing rows (see
+ * BoitierRepository.LISTING_ROW)
+ */
+public interface BoitierFilterRepository {
+
+    // page of the filtered boitiers, by subscription end date when the pageable
+    // sorts on "endDate", then by id descending
+    Page<Object[]> findFiltered(BoitierFilter filter, Pageable pageable);
+
+    long countFiltered(BoitierFilter filter);
+}
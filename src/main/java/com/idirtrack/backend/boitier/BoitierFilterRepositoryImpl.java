@@ -0,0 +1,91 @@
+package com.idirtrack.backend.boitier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import com.idirtrack.backend.device.Device;
+import com.idirtrack.backend.deviceType.DeviceType;
+import com.idirtrack.backend.operator.Operator;
+import com.idirtrack.backend.sim.Sim;
+import com.idirtrack.backend.subscription.Subscription;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Root;
+
+public class BoitierFilterRepositoryImpl implements BoitierFilterRepository {
+
+    // The only sortable property, besides the default id descending
+    private static final String END_DATE = "endDate";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<Object[]> findFiltered(BoitierFilter filter, Pageable pageable) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+        Root<Boitier> boitier = query.from(Boitier.class);
+        Join<Boitier, Device> device = boitier.join("device");
+        Join<Device, DeviceType> type = device.join("deviceType", JoinType.LEFT);
+        Join<Boitier, Sim> sim = boitier.join("sim");
+        Join<Sim, Operator> operator = sim.join("operator", JoinType.LEFT);
+        Join<Boitier, Subscription> subscription = boitier.join("currentSubscription", JoinType.LEFT);
+
+        // Same columns as BoitierRepository.LISTING_ROW
+        query.multiselect(
+                boitier.get("id"),
+                device.get("id"),
+                device.get("imei"),
+                type.get("id"),
+                type.get("name"),
+                sim.get("id"),
+                sim.get("phone"),
+                sim.get("ccid"),
+                operator.get("name"),
+                subscription.get("id"),
+                subscription.get("startDate"),
+                subscription.get("endDate"));
+        query.where(filter.toPredicate(boitier, device, sim, subscription, criteriaBuilder));
+
+        List<Order> orders = new ArrayList<>();
+        Sort.Order endDate = pageable.getSort().getOrderFor(END_DATE);
+        if (endDate != null) {
+            orders.add(endDate.isAscending()
+                    ? criteriaBuilder.asc(subscription.get("endDate"))
+                    : criteriaBuilder.desc(subscription.get("endDate")));
+        }
+        orders.add(criteriaBuilder.desc(boitier.get("id")));
+        query.orderBy(orders);
+
+        List<Object[]> content = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+        // The count is skipped when the page shows it is not needed
+        return PageableExecutionUtils.getPage(content, pageable, () -> this.countFiltered(filter));
+    }
+
+    @Override
+    public long countFiltered(BoitierFilter filter) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = criteriaBuilder.createQuery(Long.class);
+        Root<Boitier> boitier = query.from(Boitier.class);
+        Join<Boitier, Device> device = boitier.join("device");
+        Join<Boitier, Sim> sim = boitier.join("sim");
+        Join<Boitier, Subscription> subscription = boitier.join("currentSubscription", JoinType.LEFT);
+        query.select(criteriaBuilder.count(boitier));
+        query.where(filter.toPredicate(boitier, device, sim, subscription, criteriaBuilder));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+}
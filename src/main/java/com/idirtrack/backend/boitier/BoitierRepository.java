@@ -1,17 +1,84 @@
 package com.idirtrack.backend.boitier;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface BoitierRepository extends JpaRepository<Boitier, Long> {
+public interface BoitierRepository extends JpaRepository<Boitier, Long>, BoitierFilterRepository {
     
     Page<Boitier> findAll(Pageable pageable);
 
+    // get the first boitiers, without count query
+    @Query("SELECT b FROM Boitier b ORDER BY b.id DESC")
+    Slice<Boitier> findFirstSlice(Pageable pageable);
+
+    // get boitiers after a cursor id, without count query
+    @Query("SELECT b FROM Boitier b WHERE b.id < :afterId ORDER BY b.id DESC")
+    Slice<Boitier> findSliceAfter(@Param("afterId") Long afterId, Pageable pageable);
+
     Page<Boitier> findAllByVehicleIsNull(Pageable pageRequest);
 
     List<Boitier> findAllByVehicleIsNull();
+
+    // the listed columns of a boitier: id, device (id, imei, type id, type name),
+    // sim (id, phone, ccid, operator name) and current subscription (id, start, end)
+    String LISTING_ROW = "SELECT b.id, d.id, d.imei, dt.id, dt.name, s.id, s.phone, s.ccid, o.name, "
+            + "sub.id, sub.startDate, sub.endDate ";
+
+    String LISTING_FROM = "FROM Boitier b JOIN b.device d LEFT JOIN d.deviceType dt JOIN b.sim s "
+            + "LEFT JOIN s.operator o LEFT JOIN b.currentSubscription sub ";
+
+    String UNASSIGNED_WHERE = "WHERE b.vehicle IS NULL "
+            + "AND (:search IS NULL OR d.imei LIKE :search OR s.phone LIKE :search OR s.ccid LIKE :search) ";
+
+    // unassigned boitiers with their device, sim and current subscription, in one query
+    @Query(value = LISTING_ROW + LISTING_FROM + UNASSIGNED_WHERE + "ORDER BY b.id DESC",
+            countQuery = "SELECT COUNT(b) FROM Boitier b JOIN b.device d JOIN b.sim s " + UNASSIGNED_WHERE)
+    Page<Object[]> findUnassignedRows(@Param("search") String search, Pageable pageable);
+
+    // all unassigned boitiers with their device, sim and current subscription, in one query
+    @Query(LISTING_ROW + LISTING_FROM + UNASSIGNED_WHERE + "ORDER BY b.id DESC")
+    List<Object[]> findUnassignedRows(@Param("search") String search);
+
+    // point the given boitiers to the subscription ending last (highest id on a tie)
+    @Modifying
+    @Query(value = "UPDATE boitiers b SET b.current_subscription_id = (SELECT s.id FROM subscriptions s "
+            + "WHERE s.boitier_id = b.id ORDER BY s.end_date DESC, s.id DESC LIMIT 1) "
+            + "WHERE b.id IN :ids", nativeQuery = true)
+    int refreshCurrentSubscriptions(@Param("ids") Collection<Long> ids);
+
+    // point the boitiers without a current subscription to the one ending last
+    @Modifying
+    @Query(value = "UPDATE boitiers b SET b.current_subscription_id = (SELECT s.id FROM subscriptions s "
+            + "WHERE s.boitier_id = b.id ORDER BY s.end_date DESC, s.id DESC LIMIT 1) "
+            + "WHERE b.current_subscription_id IS NULL", nativeQuery = true)
+    int backfillCurrentSubscriptions();
+
+    // store the Traccar id of the device created for the boitier
+    @Modifying
+    @Query("UPDATE Boitier b SET b.traccarId = :traccarId WHERE b.id = :id")
+    int updateTraccarId(@Param("id") Long id, @Param("traccarId") Long traccarId);
+
+    // Traccar id of the device created for the boitier, empty if none
+    @Query("SELECT b.traccarId FROM Boitier b WHERE b.id = :id")
+    Optional<Long> findTraccarIdById(@Param("id") Long id);
+
+    // boitiers installed on a vehicle, after a cursor id: id, Traccar id, imei, sim phone,
+    // vehicle matricule and end of the current subscription
+    @Query("SELECT b.id, b.traccarId, d.imei, s.phone, v.matricule, sub.endDate FROM Boitier b "
+            + "JOIN b.device d JOIN b.sim s JOIN b.vehicle v LEFT JOIN b.currentSubscription sub "
+            + "WHERE b.id > :afterId ORDER BY b.id")
+    List<Object[]> findInstalledRowsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // device id and id of the latest boitier of each given device
+    @Query("SELECT b.device.id, MAX(b.id) FROM Boitier b WHERE b.device.id IN :deviceIds GROUP BY b.device.id")
+    List<Object[]> findLatestIdsByDeviceIds(@Param("deviceIds") Collection<Long> deviceIds);
 }
@@ -1,12 +1,21 @@
 package com.idirtrack.backend.boitier;
 
+import java.sql.Date;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,23 +25,28 @@ import com.idirtrack.backend.boitier.https.BoitierRequest;
 import com.idirtrack.backend.device.Device;
 import com.idirtrack.backend.device.DeviceDTO;
 import com.idirtrack.backend.device.DeviceService;
+import com.idirtrack.backend.device.DeviceStatus;
 import com.idirtrack.backend.errors.DateException;
+import com.idirtrack.backend.errors.MyException;
 import com.idirtrack.backend.errors.NotFoundException;
+import com.idirtrack.backend.outbox.OutboxOperation;
+import com.idirtrack.backend.outbox.OutboxService;
 import com.idirtrack.backend.sim.Sim;
 import com.idirtrack.backend.sim.SimDTO;
 import com.idirtrack.backend.sim.SimService;
+import com.idirtrack.backend.sim.SimStatus;
 import com.idirtrack.backend.subscription.Subscription;
 import com.idirtrack.backend.subscription.SubscriptionDTO;
 import com.idirtrack.backend.subscription.SubscriptionRepository;
-import com.idirtrack.backend.traccar.TracCarService;
 import com.idirtrack.backend.utils.ErrorResponse;
 import com.idirtrack.backend.utils.FieldErrorDTO;
+import com.idirtrack.backend.utils.KeysetCursor;
 import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.StatusTransitionReport;
 
 import lombok.RequiredArgsConstructor;
 
 import java.util.Collections;
-import java.util.Comparator;
 
 @Service
 @RequiredArgsConstructor
@@ -42,7 +56,7 @@ public class BoitierService {
         private final SubscriptionRepository subscriptionRepository;
         private final DeviceService deviceService;
         private final SimService simService;
-        private final TracCarService tracCarService;
+        private final OutboxService outboxService;
 
         // Loger
         private static final Logger logger = LoggerFactory.getLogger(BoitierService.class);
@@ -111,10 +125,15 @@ public class BoitierService {
                 boitier = boitierRepository.save(boitier);
                 logger.info("Boitier Infos {}", boitier);
                 if (boitier != null) {
-                        // Change the status of the device to pending in stock
-                        deviceService.changeDeviceStatus(device.getId(), "PENDING");
+                        // Point the boitier to its subscription
+                        boitier.refreshCurrentSubscription(subscription);
+                        // Change the status of the device to pending in stock, a device already
+                        // taken by a concurrent boitier is not moved and the boitier is rolled back
+                        this.requireMoved(deviceService.changeDevicesStatus(List.of(device.getId()),
+                                        DeviceStatus.PENDING), "device");
                         // Change the status of the sim to pending in stock
-                        simService.changeSimStatus(sim.getId(), "PENDING");
+                        this.requireMoved(simService.changeSimsStatus(List.of(sim.getId()), SimStatus.PENDING),
+                                        "SIM");
                 }
 
                 // Return the response
@@ -125,6 +144,17 @@ public class BoitierService {
 
         }
 
+        // Fail with a conflict when the stock item did not move to the boitier
+        private void requireMoved(StatusTransitionReport report, String item) {
+                // Already pending means taken by another boitier
+                if (report.idsWith(StatusTransitionReport.Outcome.UPDATED).size() != report.getResults().size()) {
+                        throw new MyException(ErrorResponse.builder()
+                                        .message("The " + item + " is not available in the stock")
+                                        .status(HttpStatus.CONFLICT)
+                                        .build());
+                }
+        }
+
         /**
          * Service: Update a boitier by id
          * 
@@ -133,6 +163,7 @@ public class BoitierService {
          * @return MyResponse
          * @throws NotFoundException
          */
+        @Transactional
         public MyResponse updateBoitier(Long id, BoitierRequest request)
                         throws NotFoundException, DateException {
                 // Create a list of errors
@@ -176,23 +207,35 @@ public class BoitierService {
                 Device newDevice = deviceService.findDeviceById(request.getDeviceId());
                 // Find the new sim
                 Sim newSim = simService.findSimById(request.getSimId());
-                // Update device if different from current device
-                if (!oldDevice.equals(newDevice)) {
+                // Update device and sim if different from the current ones
+                boolean deviceChanged = !oldDevice.equals(newDevice);
+                boolean simChanged = !oldSim.equals(newSim);
+                if (deviceChanged) {
                         boitier.setDevice(newDevice);
-                        deviceService.changeDeviceStatus(oldDevice.getId(), "NON_INSTALLED");
-                        deviceService.changeDeviceStatus(newDevice.getId(), "PENDING");
                 }
-                // Update sim if different from current sim
-                if (!oldSim.equals(newSim)) {
+                if (simChanged) {
                         boitier.setSim(newSim);
-                        simService.changeSimStatus(oldSim.getId(), "NON_INSTALLED");
-                        simService.changeSimStatus(newSim.getId(), "PENDING");
                 }
-                // Update the subscription
-                boitier.getSubscriptions().get(0).setStartDate(request.getStartDate());
-                boitier.getSubscriptions().get(0).setEndDate(request.getEndDate());
-                // Save the updated boitier
+                // Update the current subscription
+                Subscription subscription = boitier.getCurrentSubscription() != null
+                                ? boitier.getCurrentSubscription()
+                                : boitier.getSubscriptions().get(0);
+                subscription.setStartDate(request.getStartDate());
+                subscription.setEndDate(request.getEndDate());
+                boitier.refreshCurrentSubscription(subscription);
+                // Save the updated boitier, before the status changes detach it
                 boitierRepository.save(boitier);
+                // Move the old device and sim back to the stock, and take the new ones
+                if (deviceChanged) {
+                        deviceService.changeDevicesStatus(List.of(oldDevice.getId()), DeviceStatus.NON_INSTALLED);
+                        this.requireMoved(deviceService.changeDevicesStatus(List.of(newDevice.getId()),
+                                        DeviceStatus.PENDING), "device");
+                }
+                if (simChanged) {
+                        simService.changeSimsStatus(List.of(oldSim.getId()), SimStatus.NON_INSTALLED);
+                        this.requireMoved(simService.changeSimsStatus(List.of(newSim.getId()), SimStatus.PENDING),
+                                        "SIM");
+                }
 
                 // Return the response
                 return MyResponse.builder()
@@ -220,22 +263,21 @@ public class BoitierService {
                                                 .status(HttpStatus.NOT_FOUND)
                                                 .message("Boitier not found")
                                                 .build()));
-                Long traccarId = boitier.getTraccarId();
                 if (boitier.getVehicle() != null) {
-                        tracCarService.deleteDevice(traccarId, authHeader);
+                        // Delete the device from Traccar once the transaction commits
+                        outboxService.enqueue(OutboxOperation.DELETE_DEVICE, boitier.getId(), boitier.getTraccarId(),
+                                        null, authHeader);
                 }
-                // Delete the subscriptions
+                // Delete the subscriptions, once the boitier no longer points to them
+                boitier.setCurrentSubscription(null);
                 subscriptionRepository.deleteAll(boitier.getSubscriptions());
                 // Delete Boitier
                 boitierRepository.deleteById(id);
                 // Update the status of the device and sim
-                if (isLost) {
-                        deviceService.changeDeviceStatus(boitier.getDevice().getId(), "LOST");
-                        simService.changeSimStatus(boitier.getSim().getId(), "LOST");
-                } else {
-                        deviceService.changeDeviceStatus(boitier.getDevice().getId(), "NON_INSTALLED");
-                        simService.changeSimStatus(boitier.getSim().getId(), "NON_INSTALLED");
-                }
+                deviceService.changeDevicesStatus(List.of(boitier.getDevice().getId()),
+                                isLost ? DeviceStatus.LOST : DeviceStatus.NON_INSTALLED);
+                simService.changeSimsStatus(List.of(boitier.getSim().getId()),
+                                isLost ? SimStatus.LOST : SimStatus.NON_INSTALLED);
                 // Return the response
                 return MyResponse.builder()
                                 .status(HttpStatus.OK)
@@ -244,6 +286,19 @@ public class BoitierService {
 
         }
 
+        /**
+         * Point the boitiers created before the current subscription column
+         * existed to the subscription ending last
+         */
+        @EventListener(ApplicationReadyEvent.class)
+        @Transactional
+        public void backfillCurrentSubscriptions() {
+                int updated = boitierRepository.backfillCurrentSubscriptions();
+                if (updated > 0) {
+                        logger.info("Current subscription set on {} boitiers", updated);
+                }
+        }
+
         /**
          * Service: Get a boitier by id
          * 
@@ -259,10 +314,8 @@ public class BoitierService {
                                                 .message("Boitier not found")
                                                 .build()));
 
-                // Get the latest subscription by sorting
-                Optional<Subscription> latestSubscriptionOpt = boitier.getSubscriptions().stream()
-                                .max(Comparator.comparing(Subscription::getEndDate)); // Use startDate if more
-                                                                                      // appropriate
+                // Get the current subscription
+                Optional<Subscription> latestSubscriptionOpt = Optional.ofNullable(boitier.getCurrentSubscription());
 
                 if (!latestSubscriptionOpt.isPresent()) {
                         // Handle case where there are no subscriptions if needed
@@ -308,23 +361,18 @@ public class BoitierService {
         /**
          * GET LIST OF BOITIERS NOT ASSOCIATED WITH A VEHICLE
          * 
-         * This method returns a list of boitiers that are not associated with a
-         * vehicle. It creates a pagination object to get a page of boitiers from the
-         * database. Then, it creates a list of DTOs for the boitiers, including the
-         * latest
-         * subscription if available. Finally, it creates metadata for the response and
-         * returns it.
+         * This method returns the boitiers that are not associated with a
+         * vehicle, with their device, sim and latest subscription read by a
+         * single projection query.
          * 
-         * @param page The page number to retrieve (1-based index).
-         * @param size The number of items per page.
-         * @return A response containing the list of boitiers and pagination metadata.
+         * @return A response containing the list of boitiers.
          */
         public MyResponse getUnassignedBoitiers() {
 
                 // Find the boitiers not associated with a vehicle
-                List<Boitier> boitiers = boitierRepository.findAllByVehicleIsNull();
+                List<Object[]> rows = boitierRepository.findUnassignedRows(null);
 
-                if (boitiers.isEmpty()) {
+                if (rows.isEmpty()) {
                         return MyResponse.builder()
                                         .status(HttpStatus.NOT_FOUND)
                                         .message("No unassigned Boitiers found")
@@ -332,50 +380,8 @@ public class BoitierService {
 
                 } else {
                         // Create a list of DTOs for the boitiers
-                        List<BoitierDTO> boitierDTOs = boitiers.stream()
-                                        .map(boitier -> {
-                                                // Get the latest subscription by sorting
-                                                Optional<Subscription> latestSubscriptionOpt = boitier
-                                                                .getSubscriptions()
-                                                                .stream()
-                                                                .max(Comparator.comparing(Subscription::getEndDate)); // Use
-                                                // startDate
-                                                // if more
-                                                // appropriate
-
-                                                // Build BoitierDTO with or without subscription details
-                                                BoitierDTO.BoitierDTOBuilder boitierDTOBuilder = BoitierDTO.builder()
-                                                                .id(boitier.getId())
-                                                                .device(DeviceDTO.builder()
-                                                                                .id(boitier.getDevice().getId())
-                                                                                .IMEI(boitier.getDevice().getImei())
-                                                                                .deviceTypeId(boitier.getDevice()
-                                                                                                .getDeviceType()
-                                                                                                .getId())
-                                                                                .deviceType(boitier.getDevice()
-                                                                                                .getDeviceType()
-                                                                                                .getName())
-                                                                                .build())
-                                                                .sim(SimDTO.builder()
-                                                                                .id(boitier.getSim().getId())
-                                                                                .operatorName(boitier.getSim()
-                                                                                                .getOperator()
-                                                                                                .getName())
-                                                                                .phone(boitier.getSim().getPhone())
-                                                                                .ccid(boitier.getSim().getCcid())
-                                                                                .build());
-
-                                                if (latestSubscriptionOpt.isPresent()) {
-                                                        Subscription latestSubscription = latestSubscriptionOpt.get();
-                                                        boitierDTOBuilder.subscription(SubscriptionDTO.builder()
-                                                                        .id(latestSubscription.getId())
-                                                                        .startDate(latestSubscription.getStartDate())
-                                                                        .endDate(latestSubscription.getEndDate())
-                                                                        .build());
-                                                }
-
-                                                return boitierDTOBuilder.build();
-                                        })
+                        List<BoitierDTO> boitierDTOs = rows.stream()
+                                        .map(row -> this.transformRowToDTO(row))
                                         .collect(Collectors.toList());
 
                         // Return the response
@@ -388,4 +394,269 @@ public class BoitierService {
 
         }
 
+        /**
+         * GET PAGE OF BOITIERS NOT ASSOCIATED WITH A VEHICLE
+         * 
+         * Reads the page with a single projection query joining the device,
+         * device type, sim, operator and latest subscription of each boitier,
+         * optionally filtered by IMEI, phone number or CCID.
+         * 
+         * @param search part of the IMEI, phone number or CCID, or null
+         * @param page   The page number to retrieve (1-based index).
+         * @param size   The number of items per page.
+         * @return A response containing the list of boitiers and pagination metadata.
+         */
+        public MyResponse getUnassignedBoitiers(String search, int page, int size) {
+                // Find the boitiers of the page
+                String pattern = search == null || search.isBlank() ? null : "%" + search.trim() + "%";
+                Page<Object[]> rowPage = boitierRepository.findUnassignedRows(pattern,
+                                PageRequest.of(page - 1, size));
+
+                if (rowPage.isEmpty()) {
+                        return MyResponse.builder()
+                                        .status(HttpStatus.NOT_FOUND)
+                                        .message("No unassigned Boitiers found")
+                                        .build();
+                }
+
+                // Create a list of DTOs for the boitiers
+                List<BoitierDTO> boitierDTOs = rowPage.getContent().stream()
+                                .map(row -> this.transformRowToDTO(row))
+                                .collect(Collectors.toList());
+
+                // Build the metadata
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("currentPage", rowPage.getNumber() + 1);
+                metadata.put("totalPages", rowPage.getTotalPages());
+                metadata.put("size", rowPage.getSize());
+                metadata.put("totalElements", rowPage.getTotalElements());
+
+                // Return the response
+                return MyResponse.builder()
+                                .status(HttpStatus.OK)
+                                .message("Boitiers retrieved successfully")
+                                .data(boitierDTOs)
+                                .metadata(metadata)
+                                .build();
+        }
+
+        /**
+         * FILTER THE BOITIER TABLE
+         * 
+         * Reads the page with a single projection query over the boitiers,
+         * devices, sims and current subscriptions, with only the given filters
+         * as predicates.
+         * 
+         * @param filter the filters of the table
+         * @param sort   "endDate" or "-endDate" to sort by subscription end date,
+         *               null for the newest boitiers first
+         * @param page   The page number to retrieve (1-based index).
+         * @param size   The number of items per page.
+         * @return A response containing the list of boitiers and pagination metadata.
+         */
+        public MyResponse filterBoitiers(BoitierFilter filter, String sort, int page, int size) {
+                // Build the sort on the subscription end date
+                Sort endDateSort = Sort.unsorted();
+                if (sort != null && !sort.isEmpty()) {
+                        if (!sort.equals("endDate") && !sort.equals("-endDate")) {
+                                return MyResponse.builder()
+                                                .status(HttpStatus.BAD_REQUEST)
+                                                .message("Invalid sort: " + sort)
+                                                .build();
+                        }
+                        endDateSort = sort.startsWith("-") ? Sort.by("endDate").descending() : Sort.by("endDate");
+                }
+
+                // Find the boitiers of the page
+                Page<Object[]> rowPage = boitierRepository.findFiltered(filter,
+                                PageRequest.of(page - 1, size, endDateSort));
+
+                // Create a list of DTOs for the boitiers
+                List<BoitierDTO> boitierDTOs = rowPage.getContent().stream()
+                                .map(row -> this.transformRowToDTO(row))
+                                .collect(Collectors.toList());
+
+                // Build the metadata
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("currentPage", rowPage.getNumber() + 1);
+                metadata.put("totalPages", rowPage.getTotalPages());
+                metadata.put("size", rowPage.getSize());
+                metadata.put("totalElements", rowPage.getTotalElements());
+
+                // Return the response
+                return MyResponse.builder()
+                                .status(HttpStatus.OK)
+                                .message(rowPage.isEmpty() ? "No Boitiers found" : "Boitiers retrieved successfully")
+                                .data(boitierDTOs)
+                                .metadata(metadata)
+                                .build();
+        }
+
+        /**
+         * GET LIST OF BOITIERS WITH PAGINATION
+         * 
+         * @param page The page number to retrieve (1-based index).
+         * @param size The number of items per page.
+         * @return A response containing the list of boitiers and pagination metadata.
+         */
+        public MyResponse getAllBoitiers(int page, int size) {
+                // Find the boitiers of the page
+                Page<Boitier> boitierPage = boitierRepository
+                                .findAll(PageRequest.of(page - 1, size, Sort.by("id").descending()));
+
+                if (boitierPage.isEmpty()) {
+                        return MyResponse.builder()
+                                        .status(HttpStatus.NOT_FOUND)
+                                        .message("No Boitiers found")
+                                        .build();
+                }
+
+                // Create a list of DTOs for the boitiers
+                List<BoitierDTO> boitierDTOs = boitierPage.getContent().stream()
+                                .map(boitier -> this.transformEntityToDTO(boitier))
+                                .collect(Collectors.toList());
+
+                // Build the metadata
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("currentPage", boitierPage.getNumber() + 1);
+                metadata.put("totalPages", boitierPage.getTotalPages());
+                metadata.put("size", boitierPage.getSize());
+                metadata.put("totalElements", boitierPage.getTotalElements());
+
+                // Return the response
+                return MyResponse.builder()
+                                .status(HttpStatus.OK)
+                                .message("Boitiers retrieved successfully")
+                                .data(boitierDTOs)
+                                .metadata(metadata)
+                                .build();
+        }
+
+        /**
+         * GET LIST OF BOITIERS WITH KEYSET PAGINATION
+         * 
+         * Reads the page after the cursor with "id < :afterId" instead of an
+         * offset, and only counts the boitiers when the caller asks for it.
+         * 
+         * @param after     cursor of the previous page, empty for the first page
+         * @param size      The number of items per page.
+         * @param withCount also return the total number of boitiers
+         * @return A response containing the list of boitiers and the next cursor.
+         */
+        public MyResponse getAllBoitiers(String after, int size, boolean withCount) {
+                // Read the cursor
+                Long afterId;
+                try {
+                        afterId = KeysetCursor.decode(after, "id");
+                } catch (IllegalArgumentException e) {
+                        return MyResponse.builder()
+                                        .status(HttpStatus.BAD_REQUEST)
+                                        .message("Invalid cursor")
+                                        .build();
+                }
+
+                // Find the next slice of boitiers, without count query
+                Slice<Boitier> boitierSlice = afterId == null
+                                ? boitierRepository.findFirstSlice(PageRequest.of(0, size))
+                                : boitierRepository.findSliceAfter(afterId, PageRequest.of(0, size));
+
+                if (boitierSlice.isEmpty()) {
+                        return MyResponse.builder()
+                                        .status(HttpStatus.NOT_FOUND)
+                                        .message("No Boitiers found")
+                                        .build();
+                }
+
+                // Create a list of DTOs for the boitiers
+                List<Boitier> boitiers = boitierSlice.getContent();
+                List<BoitierDTO> boitierDTOs = boitiers.stream()
+                                .map(boitier -> this.transformEntityToDTO(boitier))
+                                .collect(Collectors.toList());
+
+                // Build the metadata
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("size", boitierSlice.getSize());
+                metadata.put("nextCursor", boitierSlice.hasNext()
+                                ? KeysetCursor.encode("id", boitiers.get(boitiers.size() - 1).getId())
+                                : null);
+                if (withCount) {
+                        metadata.put("totalElements", boitierRepository.count());
+                }
+
+                // Return the response
+                return MyResponse.builder()
+                                .status(HttpStatus.OK)
+                                .message("Boitiers retrieved successfully")
+                                .data(boitierDTOs)
+                                .metadata(metadata)
+                                .build();
+        }
+
+        // Transform a boitier to its DTO, with the latest subscription if any
+        private BoitierDTO transformEntityToDTO(Boitier boitier) {
+                // Get the current subscription
+                Optional<Subscription> latestSubscriptionOpt = Optional.ofNullable(boitier.getCurrentSubscription());
+
+                // Build BoitierDTO with or without subscription details
+                BoitierDTO.BoitierDTOBuilder boitierDTOBuilder = BoitierDTO.builder()
+                                .id(boitier.getId())
+                                .device(DeviceDTO.builder()
+                                                .id(boitier.getDevice().getId())
+                                                .IMEI(boitier.getDevice().getImei())
+                                                .deviceTypeId(boitier.getDevice()
+                                                                .getDeviceType()
+                                                                .getId())
+                                                .deviceType(boitier.getDevice()
+                                                                .getDeviceType()
+                                                                .getName())
+                                                .build())
+                                .sim(SimDTO.builder()
+                                                .id(boitier.getSim().getId())
+                                                .operatorName(boitier.getSim()
+                                                                .getOperator()
+                                                                .getName())
+                                                .phone(boitier.getSim().getPhone())
+                                                .ccid(boitier.getSim().getCcid())
+                                                .build());
+
+                if (latestSubscriptionOpt.isPresent()) {
+                        Subscription latestSubscription = latestSubscriptionOpt.get();
+                        boitierDTOBuilder.subscription(SubscriptionDTO.builder()
+                                        .id(latestSubscription.getId())
+                                        .startDate(latestSubscription.getStartDate())
+                                        .endDate(latestSubscription.getEndDate())
+                                        .build());
+                }
+
+                return boitierDTOBuilder.build();
+        }
+
+        // Build the DTO of a listing row (see BoitierRepository.LISTING_ROW)
+        private BoitierDTO transformRowToDTO(Object[] row) {
+                BoitierDTO.BoitierDTOBuilder boitierDTOBuilder = BoitierDTO.builder()
+                                .id((Long) row[0])
+                                .device(DeviceDTO.builder()
+                                                .id((Long) row[1])
+                                                .IMEI((String) row[2])
+                                                .deviceTypeId((Long) row[3])
+                                                .deviceType((String) row[4])
+                                                .build())
+                                .sim(SimDTO.builder()
+                                                .id((Long) row[5])
+                                                .phone((String) row[6])
+                                                .ccid((String) row[7])
+                                                .operatorName((String) row[8])
+                                                .build());
+
+                if (row[9] != null) {
+                        boitierDTOBuilder.subscription(SubscriptionDTO.builder()
+                                        .id((Long) row[9])
+                                        .startDate((Date) row[10])
+                                        .endDate((Date) row[11])
+                                        .build());
+                }
+
+                return boitierDTOBuilder.build();
+        }
+
 }
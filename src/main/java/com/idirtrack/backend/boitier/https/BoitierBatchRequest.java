@@ -0,0 +1,23 @@
+package com.idirtrack.backend.boitier.https;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BoitierBatchRequest {
+    // Device, SIM and subscription of each boitier to assemble
+    @NotEmpty(message = "At least one boitier is required")
+    @Size(max = 500, message = "At most 500 boitiers can be assembled at once")
+    @Valid
+    private List<BoitierRequest> boitiers;
+}
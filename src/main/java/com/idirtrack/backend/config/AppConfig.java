@@ -1,20 +1,16 @@
 package com.idirtrack.backend.config;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import com.idirtrack.backend.traccar.TracCarUser;
 
 
 
 @Configuration
+@EnableScheduling
 public class AppConfig {
 
-    @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
-    }
-
     @Bean
     public TracCarUser tracCarUser() {
         return new TracCarUser();
@@ -0,0 +1,123 @@
+package com.idirtrack.backend.config;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import com.idirtrack.backend.traccar.TraccarResilience;
+import com.idirtrack.backend.traccar.TraccarSessionInterceptor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * HTTP client of the Traccar server
+ *
+ * All the Traccar calls go through one bounded pool of keep-alive
+ * connections, so a call reuses an open connection instead of paying a TCP
+ * handshake. The connect, pool lease and response timeouts are set
+ * separately, so a slow Traccar fails the call instead of holding a request
+ * thread forever. The pool usage is exposed as the traccar.http.pool.*
+ * gauges. Every request also goes through TraccarResilience (bulkhead,
+ * circuit breaker and retry), then TraccarSessionInterceptor (renewal of
+ * an expired session).
+ */
+@Configuration
+public class TraccarHttpConfig {
+
+    @Value("${traccar.http.max-connections:20}")
+    private int maxConnections;
+
+    @Value("${traccar.http.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${traccar.http.connection-request-timeout-ms:2000}")
+    private long connectionRequestTimeoutMs;
+
+    @Value("${traccar.http.read-timeout-ms:10000}")
+    private long readTimeoutMs;
+
+    @Value("${traccar.http.keep-alive-ms:30000}")
+    private long keepAliveMs;
+
+    @Bean
+    public PoolingHttpClientConnectionManager traccarConnectionManager() {
+        // One route (the Traccar server), so the whole pool is available to it
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                // Reuse the most recent connection, so the idle ones expire
+                .setConnPoolPolicy(PoolReusePolicy.LIFO)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        // Check a connection idle for more than 2s before reusing it
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+    }
+
+    @Bean
+    public CloseableHttpClient traccarHttpClient(PoolingHttpClientConnectionManager traccarConnectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(traccarConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        // Used when Traccar does not send a Keep-Alive header
+                        .setConnectionKeepAlive(TimeValue.ofMilliseconds(keepAliveMs))
+                        .build())
+                // Retried by TraccarResilience, for the idempotent requests only
+                .disableAutomaticRetries()
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(keepAliveMs))
+                .build();
+    }
+
+    @Bean
+    public RestTemplate traccarRestTemplate(RestTemplateBuilder builder, CloseableHttpClient traccarHttpClient,
+            TraccarResilience traccarResilience, TraccarSessionInterceptor traccarSessionInterceptor) {
+        // Built from the RestTemplateBuilder, so the calls are timed in http.client.requests
+        return builder
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(traccarHttpClient))
+                // Resilience last: its retries and the session replay only reach the request factory
+                .additionalInterceptors(traccarSessionInterceptor, traccarResilience)
+                .build();
+    }
+
+    @Bean
+    public MeterBinder traccarPoolMetrics(PoolingHttpClientConnectionManager traccarConnectionManager) {
+        return registry -> {
+            Gauge.builder("traccar.http.pool.leased", traccarConnectionManager,
+                    pool -> pool.getTotalStats().getLeased())
+                    .description("Connections to Traccar in use")
+                    .register(registry);
+            Gauge.builder("traccar.http.pool.available", traccarConnectionManager,
+                    pool -> pool.getTotalStats().getAvailable())
+                    .description("Idle connections to Traccar kept alive")
+                    .register(registry);
+            Gauge.builder("traccar.http.pool.pending", traccarConnectionManager,
+                    pool -> pool.getTotalStats().getPending())
+                    .description("Calls waiting for a connection to Traccar")
+                    .register(registry);
+            Gauge.builder("traccar.http.pool.max", traccarConnectionManager,
+                    pool -> pool.getTotalStats().getMax())
+                    .description("Maximum connections to Traccar")
+                    .register(registry);
+        };
+    }
+}
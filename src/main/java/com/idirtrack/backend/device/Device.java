@@ -18,15 +18,22 @@ import com.idirtrack.backend.deviceType.DeviceType;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "device")
+@Table(name = "device", uniqueConstraints = {
+        @UniqueConstraint(name = Device.UK_IMEI, columnNames = "imei")
+}, indexes = {
+        // Serves the device filter: status, then type, then a created_at range
+        @Index(name = "idx_device_status_type_created", columnList = "status, type_device_id, created_at")
+})
 public class Device {
 
+    public static final String UK_IMEI = "uk_device_imei";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    // must be unique
-    @Column(name = "imei", unique = true)
+    // must be unique, see UK_IMEI
+    @Column(name = "imei")
     private String imei;
 
     @Column(name = "created_at")
@@ -41,6 +48,11 @@ public class Device {
     @Column(name = "remarque")
     private String remarque;
 
+    // Optimistic lock: existing rows start at 0
+    @Version
+    @Column(name = "version", columnDefinition = "bigint not null default 0")
+    private Long version;
+
     @ManyToOne
     @JoinColumn(name = "type_device_id")
     @JsonBackReference // to avoid infinite loop
@@ -1,15 +1,19 @@
 package com.idirtrack.backend.device;
 
+import java.io.InputStream;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.sql.Date;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.idirtrack.backend.basics.BasicException;
 import com.idirtrack.backend.basics.BasicResponse;
@@ -17,6 +21,7 @@ import com.idirtrack.backend.basics.MessageType;
 import com.idirtrack.backend.device.https.DeviceRequest;
 import com.idirtrack.backend.device.https.DeviceUpdateRequest;
 import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.StatusTransitionRequest;
 import com.idirtrack.backend.utils.ValidationUtils;
 
 import jakarta.validation.Valid;
@@ -24,6 +29,7 @@ import jakarta.validation.Valid;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -37,6 +43,12 @@ public class DeviceController {
     @Autowired
     private DeviceService deviceService;
 
+    @Autowired
+    private DeviceImportService deviceImportService;
+
+    @Autowired
+    private DeviceExportService deviceExportService;
+
     // Filter Devices API
     @PreAuthorize("hasAuthority('ADMIN') or hasAuthority('MANAGER')")
     @GetMapping("/filter/")
@@ -46,12 +58,17 @@ public class DeviceController {
             @RequestParam(value = "createdFrom", required = false) String createdFrom,
             @RequestParam(value = "createdTo", required = false) String createdTo,
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "5") int size) throws BasicException {
+            @RequestParam(defaultValue = "5") int size,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "withCount", defaultValue = "false") boolean withCount) throws BasicException {
 
         // Try to filter the devices
         try {
-            BasicResponse response = deviceService.filterDevices(status, deviceTypeId, createdFrom, createdTo, page,
-                    size);
+            // Cursor mode when the after parameter is present (empty for the first page)
+            BasicResponse response = after != null
+                    ? deviceService.filterDevices(status, deviceTypeId, createdFrom, createdTo, after, size,
+                            withCount)
+                    : deviceService.filterDevices(status, deviceTypeId, createdFrom, createdTo, page, size);
             return ResponseEntity.status(response.getStatus()).body(response);
         }
         // Catch any BasicException and return the response
@@ -123,6 +140,64 @@ public class DeviceController {
 
     }
 
+    // Bulk import Devices API (CSV or NDJSON body)
+    @PreAuthorize("hasAuthority('ADMIN') or hasAuthority('MANAGER')")
+    @PostMapping(value = "/import/", consumes = { "text/csv", "text/plain", "application/x-ndjson" })
+    public ResponseEntity<BasicResponse> importDevicesApi(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream body) {
+
+        // Try to import the devices
+        try {
+            BasicResponse response = deviceImportService.importDevices(body, contentType);
+            return ResponseEntity.status(response.getStatus()).body(response);
+        }
+        // Catch any BasicException and return the response
+        catch (BasicException e) {
+            return ResponseEntity.status(e.getResponse().getStatus()).body(e.getResponse());
+        }
+        // Catch any exception and return a 500 error
+        catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(BasicResponse.builder()
+                    .content(null)
+                    .message(e.getMessage())
+                    .messageType(MessageType.ERROR)
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .metadata(null)
+                    .build());
+        }
+    }
+
+    // Export Devices API (CSV or NDJSON), with the same filters as the filter API
+    @PreAuthorize("hasAuthority('ADMIN') or hasAuthority('MANAGER')")
+    @GetMapping("/export/")
+    public ResponseEntity<?> exportDevicesApi(
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "status", required = false) String status,
+            @RequestParam(value = "type", required = false) Long deviceTypeId,
+            @RequestParam(value = "createdFrom", required = false) String createdFrom,
+            @RequestParam(value = "createdTo", required = false) String createdTo) {
+
+        // Check the parameters before starting the response
+        DeviceExportService.Format exportFormat;
+        DeviceFilter filter;
+        try {
+            exportFormat = deviceExportService.parseFormat(format);
+            filter = deviceExportService.parseFilter(status, deviceTypeId, createdFrom, createdTo);
+        } catch (BasicException e) {
+            return ResponseEntity.status(e.getResponse().getStatus()).body(e.getResponse());
+        }
+
+        // The rows are written by the async executor, not the request thread
+        StreamingResponseBody body = output -> deviceExportService.exportDevices(filter, exportFormat, output);
+        boolean csv = exportFormat == DeviceExportService.Format.CSV;
+        return ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv") : new MediaType("application", "x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"devices." + (csv ? "csv" : "ndjson") + "\"")
+                .body(body);
+    }
+
     // Update Device API
     @PreAuthorize("hasAuthority('ADMIN') or hasAuthority('MANAGER')")
     @PutMapping("/{id}/")
@@ -161,6 +236,29 @@ public class DeviceController {
 
     }
 
+    // Change the status of a list of Devices API
+    @PreAuthorize("hasAuthority('ADMIN') or hasAuthority('MANAGER')")
+    @PutMapping("/status/")
+    public ResponseEntity<BasicResponse> changeDevicesStatusApi(
+            @RequestBody @Valid StatusTransitionRequest request,
+            BindingResult bindingResult) {
+
+        // Handle validation errors
+        ResponseEntity<BasicResponse> errorResponse = ValidationUtils.handleValidationErrors(bindingResult);
+        if (errorResponse != null) {
+            return errorResponse;
+        }
+        // Try to change the status of the devices
+        try {
+            BasicResponse response = deviceService.changeDevicesStatus(request);
+            return ResponseEntity.status(response.getStatus()).body(response);
+        }
+        // Catch any BasicException and return the response
+        catch (BasicException e) {
+            return ResponseEntity.status(e.getResponse().getStatus()).body(e.getResponse());
+        }
+    }
+
     // Delete Device API
     @PreAuthorize("hasAuthority('ADMIN') or hasAuthority('MANAGER')")
     @DeleteMapping("/{id}/")
@@ -186,10 +284,15 @@ public class DeviceController {
     @GetMapping("/")
     public ResponseEntity<BasicResponse> getAllBoitiers(
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "5") int size) throws BasicException {
+            @RequestParam(defaultValue = "5") int size,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "withCount", defaultValue = "false") boolean withCount) throws BasicException {
 
         // Call the service to get all devices, and return the response
-        BasicResponse response = deviceService.getAllDevices(page, size);
+        // Cursor mode when the after parameter is present (empty for the first page)
+        BasicResponse response = after != null
+                ? deviceService.getAllDevices(after, size, withCount)
+                : deviceService.getAllDevices(page, size);
         return ResponseEntity.status(response.getStatus()).body(response);
 
     }
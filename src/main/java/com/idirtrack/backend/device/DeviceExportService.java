@@ -0,0 +1,139 @@
+package com.idirtrack.backend.device;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idirtrack.backend.basics.BasicException;
+import com.idirtrack.backend.basics.BasicResponse;
+import com.idirtrack.backend.basics.MessageType;
+
+import lombok.RequiredArgsConstructor;
+
+@Service
+@RequiredArgsConstructor
+public class DeviceExportService {
+
+        private static final String CSV_HEADER = "id,imei,status,deviceTypeId,deviceType,remarque,createdAt,updatedAt";
+
+        private final DeviceRepository deviceRepository;
+        private final ObjectMapper objectMapper;
+
+        // Export formats
+        public enum Format {
+                CSV, NDJSON
+        }
+
+        /**
+         * Utils: Read the export parameters, before the response is started
+         *
+         * @param status
+         * @param deviceTypeId
+         * @param createdFrom
+         * @param createdTo
+         * @return DeviceFilter, the same criteria as the device list filter
+         * @throws BasicException if a parameter is invalid
+         */
+        public DeviceFilter parseFilter(String status, Long deviceTypeId, String createdFrom, String createdTo)
+                        throws BasicException {
+                try {
+                        return DeviceFilter.of(status, deviceTypeId, createdFrom, createdTo);
+                } catch (IllegalArgumentException e) {
+                        throw this.badRequest("Invalid export filter: " + e.getMessage());
+                }
+        }
+
+        /**
+         * Utils: Read the export format, CSV by default
+         *
+         * @param format
+         * @return Format
+         * @throws BasicException if the format is unknown
+         */
+        public Format parseFormat(String format) throws BasicException {
+                if (format == null || format.isEmpty()) {
+                        return Format.CSV;
+                }
+                try {
+                        return Format.valueOf(format.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                        throw this.badRequest("Unknown export format: " + format);
+                }
+        }
+
+        /**
+         * Service: Write the filtered devices to the output
+         *
+         * Rows are streamed from the database with a JDBC fetch size and
+         * written as they are read, so the memory used does not depend on the
+         * number of devices. Called from the StreamingResponseBody, outside of
+         * the request thread.
+         *
+         * @param filter
+         * @param format
+         * @param output
+         * @throws IOException
+         */
+        @Transactional(readOnly = true)
+        public void exportDevices(DeviceFilter filter, Format format, OutputStream output) throws IOException {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                if (format == Format.CSV) {
+                        writer.write(CSV_HEADER);
+                        writer.write('\n');
+                }
+
+                try (Stream<DeviceDTO> devices = deviceRepository.streamFiltered(filter)) {
+                        Iterator<DeviceDTO> iterator = devices.iterator();
+                        while (iterator.hasNext()) {
+                                DeviceDTO device = iterator.next();
+                                writer.write(format == Format.CSV ? this.toCsv(device)
+                                                : objectMapper.writeValueAsString(device));
+                                writer.write('\n');
+                        }
+                }
+                writer.flush();
+        }
+
+        // Write a device as a CSV line
+        private String toCsv(DeviceDTO device) {
+                return String.join(",",
+                                this.csvValue(device.getId()),
+                                this.csvValue(device.getIMEI()),
+                                this.csvValue(device.getStatus()),
+                                this.csvValue(device.getDeviceTypeId()),
+                                this.csvValue(device.getDeviceType()),
+                                this.csvValue(device.getRemarque()),
+                                this.csvValue(device.getCreateAt()),
+                                this.csvValue(device.getUpdateAt()));
+        }
+
+        // Quote a CSV value when it contains a separator, a quote or a line break
+        private String csvValue(Object value) {
+                if (value == null) {
+                        return "";
+                }
+                String text = value.toString();
+                if (text.contains(",") || text.contains("\"") || text.contains("\n") || text.contains("\r")) {
+                        return "\"" + text.replace("\"", "\"\"") + "\"";
+                }
+                return text;
+        }
+
+        private BasicException badRequest(String message) {
+                return new BasicException(BasicResponse.builder()
+                                .message(message)
+                                .messageType(MessageType.ERROR)
+                                .status(HttpStatus.BAD_REQUEST)
+                                .build());
+        }
+}
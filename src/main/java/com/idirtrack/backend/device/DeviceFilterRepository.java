@@ -0,0 +1,24 @@
+package com.idirtrack.backend.device;
+
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+/**
+ * Filtered device lists, selected as DeviceDTO rows by id descending
+ */
+public interface DeviceFilterRepository {
+
+    // page of the filtered devices, the sort of the pageable is ignored
+    Page<DeviceDTO> findFiltered(DeviceFilter filter, Pageable pageable);
+
+    // the filtered devices after filter.afterId, without count query
+    Slice<DeviceDTO> findFilteredSlice(DeviceFilter filter, int size);
+
+    long countFiltered(DeviceFilter filter);
+
+    // stream of the filtered devices, to be consumed inside a transaction
+    Stream<DeviceDTO> streamFiltered(DeviceFilter filter);
+}
@@ -0,0 +1,99 @@
+package com.idirtrack.backend.device;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import com.idirtrack.backend.deviceType.DeviceType;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+public class DeviceFilterRepositoryImpl implements DeviceFilterRepository {
+
+    // MySQL Connector/J only streams a result set row by row with this fetch size
+    private static final int STREAM_FETCH_SIZE = Integer.MIN_VALUE;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<DeviceDTO> findFiltered(DeviceFilter filter, Pageable pageable) {
+        List<DeviceDTO> content = this.listQuery(filter)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+        // The count is skipped when the page shows it is not needed
+        return PageableExecutionUtils.getPage(content, pageable, () -> this.countFiltered(filter));
+    }
+
+    @Override
+    public Slice<DeviceDTO> findFilteredSlice(DeviceFilter filter, int size) {
+        // Read one more row to know if there is a next slice
+        List<DeviceDTO> content = this.listQuery(filter)
+                .setMaxResults(size + 1)
+                .getResultList();
+        boolean hasNext = content.size() > size;
+        return new SliceImpl<>(hasNext ? content.subList(0, size) : content,
+                PageRequest.of(0, size), hasNext);
+    }
+
+    @Override
+    public long countFiltered(DeviceFilter filter) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = criteriaBuilder.createQuery(Long.class);
+        Root<Device> device = query.from(Device.class);
+        query.select(criteriaBuilder.count(device));
+        this.where(filter, device, query, criteriaBuilder);
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    @Override
+    public Stream<DeviceDTO> streamFiltered(DeviceFilter filter) {
+        return this.listQuery(filter)
+                .setHint("org.hibernate.fetchSize", STREAM_FETCH_SIZE)
+                .setHint("org.hibernate.readOnly", true)
+                .getResultStream();
+    }
+
+    // Select the DeviceDTO columns of the filtered devices, by id descending
+    private TypedQuery<DeviceDTO> listQuery(DeviceFilter filter) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<DeviceDTO> query = criteriaBuilder.createQuery(DeviceDTO.class);
+        Root<Device> device = query.from(Device.class);
+        Join<Device, DeviceType> type = device.join("deviceType", JoinType.LEFT);
+        query.select(criteriaBuilder.construct(DeviceDTO.class,
+                device.get("id"),
+                device.get("imei"),
+                device.get("status"),
+                type.get("id"),
+                type.get("name"),
+                device.get("remarque"),
+                device.get("createdAt"),
+                device.get("updatedAt")));
+        this.where(filter, device, query, criteriaBuilder);
+        query.orderBy(criteriaBuilder.desc(device.get("id")));
+        return entityManager.createQuery(query);
+    }
+
+    private void where(DeviceFilter filter, Root<Device> device, CriteriaQuery<?> query,
+            CriteriaBuilder criteriaBuilder) {
+        Predicate predicate = filter.toSpecification().toPredicate(device, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.idirtrack.backend.device;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idirtrack.backend.basics.BasicException;
+import com.idirtrack.backend.basics.BasicResponse;
+import com.idirtrack.backend.basics.MessageType;
+import com.idirtrack.backend.device.https.DeviceImportError;
+import com.idirtrack.backend.device.https.DeviceImportReport;
+import com.idirtrack.backend.device.https.DeviceRequest;
+import com.idirtrack.backend.deviceType.DeviceType;
+import com.idirtrack.backend.deviceType.DeviceTypeRepository;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+
+@Service
+@RequiredArgsConstructor
+public class DeviceImportService {
+
+        // Number of rows checked and inserted together
+        static final int BATCH_SIZE = 1000;
+
+        private static final String INSERT_DEVICE_SQL = "INSERT INTO device "
+                        + "(imei, created_at, status, remarque, type_device_id) VALUES (?, ?, ?, ?, ?)";
+
+        private final DeviceRepository deviceRepository;
+        private final DeviceTypeRepository deviceTypeRepository;
+        private final DeviceService deviceService;
+        private final DeviceStatusCounter deviceStatusCounter;
+        private final DeviceSearchIndex deviceSearchIndex;
+        private final JdbcTemplate jdbcTemplate;
+        private final PlatformTransactionManager transactionManager;
+        private final ObjectMapper objectMapper;
+        private final Validator validator;
+
+        private static final Logger logger = LoggerFactory.getLogger(DeviceImportService.class);
+
+        /**
+         * Service: Import a lot of devices from a CSV or NDJSON body
+         *
+         * The body is read line by line and processed in batches of
+         * {@value #BATCH_SIZE}: the IMEIs of a batch are checked against the
+         * database in one query, the rows are inserted with a JDBC batch, and the
+         * stock is updated once per device type at the end of the import.
+         *
+         * CSV lines are "imei,deviceTypeId,remarque" (an optional header line is
+         * skipped), NDJSON lines are DeviceRequest objects.
+         *
+         * @param body        the request body
+         * @param contentType the request content type
+         * @return BasicResponse with a DeviceImportReport
+         * @throws BasicException
+         */
+        @Transactional
+        public BasicResponse importDevices(InputStream body, String contentType) throws BasicException {
+                boolean ndjson = contentType != null && contentType.toLowerCase().contains("json");
+                Date createdAt = new Date(System.currentTimeMillis());
+
+                DeviceImportReport report = DeviceImportReport.builder().build();
+                ImportContext context = new ImportContext(createdAt, report);
+                List<ImportRow> batch = new ArrayList<>(BATCH_SIZE);
+
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+                        String line;
+                        long lineNumber = 0;
+                        while ((line = reader.readLine()) != null) {
+                                lineNumber++;
+                                if (line.isBlank()) {
+                                        continue;
+                                }
+                                // Skip the CSV header
+                                if (!ndjson && lineNumber == 1 && line.toLowerCase().startsWith("imei")) {
+                                        continue;
+                                }
+                                report.setTotalLines(report.getTotalLines() + 1);
+
+                                ImportRow row = ndjson ? this.parseJsonLine(lineNumber, line, report)
+                                                : this.parseCsvLine(lineNumber, line, report);
+                                if (row == null) {
+                                        continue;
+                                }
+                                batch.add(row);
+                                if (batch.size() == BATCH_SIZE) {
+                                        this.flushBatch(batch, context);
+                                        batch.clear();
+                                }
+                        }
+                } catch (IOException e) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("Unable to read the import body: " + e.getMessage())
+                                        .messageType(MessageType.ERROR)
+                                        .status(HttpStatus.BAD_REQUEST)
+                                        .build());
+                }
+                this.flushBatch(batch, context);
+
+                // Apply the stock change once per device type
+                for (Map.Entry<Long, Integer> entry : context.stockDeltas.entrySet()) {
+                        deviceService.updateDeviceStock(createdAt, context.deviceTypes.get(entry.getKey()),
+                                        entry.getValue());
+                }
+
+                // Report the errors in file order
+                report.getErrors().sort(Comparator.comparingLong(DeviceImportError::getLine));
+
+                logger.info("Device import finished: {} imported, {} rejected", report.getImported(),
+                                report.getRejected());
+
+                return BasicResponse.builder()
+                                .content(report)
+                                .message(report.getImported() + " devices imported, " + report.getRejected()
+                                                + " rejected")
+                                .messageType(report.getRejected() == 0 ? MessageType.SUCCESS : MessageType.WARNING)
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
+        // Check a batch against the database and insert the valid rows
+        private void flushBatch(List<ImportRow> batch, ImportContext context) {
+                if (batch.isEmpty()) {
+                        return;
+                }
+                DeviceImportReport report = context.report;
+
+                // Resolve the device types not seen yet in one query
+                Set<Long> unknownTypeIds = batch.stream()
+                                .map(row -> row.request().getDeviceTypeId())
+                                .filter(id -> !context.deviceTypes.containsKey(id) && !context.missingTypes.contains(id))
+                                .collect(Collectors.toSet());
+                if (!unknownTypeIds.isEmpty()) {
+                        for (DeviceType deviceType : deviceTypeRepository.findAllById(unknownTypeIds)) {
+                                context.deviceTypes.put(deviceType.getId(), deviceType);
+                        }
+                        unknownTypeIds.removeAll(context.deviceTypes.keySet());
+                        context.missingTypes.addAll(unknownTypeIds);
+                }
+
+                // Check the IMEIs of the batch in one query
+                Set<String> batchImeis = batch.stream()
+                                .map(row -> row.request().getImei())
+                                .collect(Collectors.toSet());
+                Set<String> existingImeis = new HashSet<>(deviceRepository.findExistingImeis(batchImeis));
+
+                List<ImportRow> toInsert = new ArrayList<>(batch.size());
+                for (ImportRow row : batch) {
+                        String imei = row.request().getImei();
+                        if (context.missingTypes.contains(row.request().getDeviceTypeId())) {
+                                report.reject(row.line(), imei, "Device type not found");
+                        } else if (existingImeis.contains(imei)) {
+                                report.reject(row.line(), imei, "IMEI already exists");
+                        } else if (!context.seenImeis.add(imei)) {
+                                report.reject(row.line(), imei, "IMEI is duplicated in the import");
+                        } else {
+                                toInsert.add(row);
+                        }
+                }
+                if (toInsert.isEmpty()) {
+                        return;
+                }
+
+                // Insert the rows with a JDBC batch, rewritten by the driver as multi-row inserts,
+                // behind a savepoint: the driver may send several statements for one batch
+                List<ImportRow> rows = toInsert;
+                TransactionTemplate savepoint = new TransactionTemplate(transactionManager);
+                savepoint.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+                try {
+                        savepoint.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_DEVICE_SQL, rows,
+                                        rows.size(), (ps, row) -> this.setInsertParameters(ps, row, context)));
+                } catch (DuplicateKeyException e) {
+                        // A concurrent writer inserted one of the IMEIs since the check: every
+                        // statement of the batch was rolled back, insert the rows one by one
+                        toInsert = this.insertOneByOne(toInsert, context);
+                }
+                if (toInsert.isEmpty()) {
+                        return;
+                }
+
+                for (ImportRow row : toInsert) {
+                        context.stockDeltas.merge(row.request().getDeviceTypeId(), 1, Integer::sum);
+                }
+                report.setImported(report.getImported() + toInsert.size());
+                deviceStatusCounter.added(DeviceStatus.NON_INSTALLED, toInsert.size());
+                deviceSearchIndex.indexImeis(toInsert.stream()
+                                .map(row -> row.request().getImei())
+                                .collect(Collectors.toList()));
+        }
+
+        // Check the IMEIs again, then insert the rows one at a time, rejecting the IMEIs taken
+        private List<ImportRow> insertOneByOne(List<ImportRow> rows, ImportContext context) {
+                Set<String> existingImeis = new HashSet<>(deviceRepository.findExistingImeis(rows.stream()
+                                .map(row -> row.request().getImei())
+                                .collect(Collectors.toSet())));
+                List<ImportRow> inserted = new ArrayList<>(rows.size());
+                for (ImportRow row : rows) {
+                        if (existingImeis.contains(row.request().getImei())) {
+                                context.report.reject(row.line(), row.request().getImei(), "IMEI already exists");
+                                continue;
+                        }
+                        try {
+                                jdbcTemplate.update(INSERT_DEVICE_SQL,
+                                                ps -> this.setInsertParameters(ps, row, context));
+                                inserted.add(row);
+                        } catch (DuplicateKeyException e) {
+                                context.report.reject(row.line(), row.request().getImei(), "IMEI already exists");
+                        }
+                }
+                return inserted;
+        }
+
+        private void setInsertParameters(PreparedStatement ps, ImportRow row, ImportContext context)
+                        throws SQLException {
+                ps.setString(1, row.request().getImei());
+                ps.setDate(2, context.createdAt);
+                ps.setString(3, DeviceStatus.NON_INSTALLED.name());
+                ps.setString(4, row.request().getRemarque());
+                ps.setLong(5, row.request().getDeviceTypeId());
+        }
+
+        // Parse a CSV line "imei,deviceTypeId,remarque"
+        private ImportRow parseCsvLine(long lineNumber, String line, DeviceImportReport report) {
+                String[] columns = line.split(",", -1);
+                String imei = columns[0].trim();
+                if (columns.length < 2) {
+                        report.reject(lineNumber, imei, "Expected columns: imei,deviceTypeId,remarque");
+                        return null;
+                }
+                Long deviceTypeId;
+                try {
+                        deviceTypeId = Long.valueOf(columns[1].trim());
+                } catch (NumberFormatException e) {
+                        report.reject(lineNumber, imei, "The Type must be a number");
+                        return null;
+                }
+                String remarque = columns.length > 2 && !columns[2].isBlank() ? columns[2].trim() : null;
+
+                return this.validateRow(lineNumber, DeviceRequest.builder()
+                                .imei(imei)
+                                .deviceTypeId(deviceTypeId)
+                                .remarque(remarque)
+                                .build(), report);
+        }
+
+        // Parse a NDJSON line into a DeviceRequest
+        private ImportRow parseJsonLine(long lineNumber, String line, DeviceImportReport report) {
+                try {
+                        DeviceRequest request = objectMapper.readValue(line, DeviceRequest.class);
+                        return this.validateRow(lineNumber, request, report);
+                } catch (IOException e) {
+                        report.reject(lineNumber, null, "Invalid JSON line");
+                        return null;
+                }
+        }
+
+        // Apply the DeviceRequest validation rules to an imported row
+        private ImportRow validateRow(long lineNumber, DeviceRequest request, DeviceImportReport report) {
+                Set<ConstraintViolation<DeviceRequest>> violations = validator.validate(request);
+                if (!violations.isEmpty()) {
+                        report.reject(lineNumber, request.getImei(), violations.iterator().next().getMessage());
+                        return null;
+                }
+                return new ImportRow(lineNumber, request);
+        }
+
+        // A parsed and validated line of the import
+        private record ImportRow(long line, DeviceRequest request) {
+        }
+
+        // State shared by the batches of one import
+        private static class ImportContext {
+                private final Date createdAt;
+                private final DeviceImportReport report;
+                private final Map<Long, DeviceType> deviceTypes = new HashMap<>();
+                private final Set<Long> missingTypes = new HashSet<>();
+                private final Set<String> seenImeis = new HashSet<>();
+                private final Map<Long, Integer> stockDeltas = new HashMap<>();
+
+                private ImportContext(Date createdAt, DeviceImportReport report) {
+                        this.createdAt = createdAt;
+                        this.report = report;
+                }
+        }
+}
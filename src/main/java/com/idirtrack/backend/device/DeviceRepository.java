@@ -1,9 +1,12 @@
 package com.idirtrack.backend.device;
 
-import java.sql.Date;
+import java.util.Collection;
+import java.util.List;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -14,16 +17,37 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification; // Add this import
 
 @Repository
-public interface DeviceRepository extends JpaRepository<Device, Long> {
+public interface DeviceRepository extends JpaRepository<Device, Long>, DeviceFilterRepository {
+
+    // the DeviceDTO columns of a device and its type, selected without loading
+    // the entities (and their boitier, one query per device)
+    String LIST_ROW = "SELECT new com.idirtrack.backend.device.DeviceDTO(d.id, d.imei, d.status, t.id, t.name, "
+            + "d.remarque, d.createdAt, d.updatedAt) FROM Device d LEFT JOIN d.deviceType t ";
 
     // IMEI already exists
     boolean existsByImei(String imei);
 
+    // IMEIs of a batch that already exist, checked in a single query
+    @Query("SELECT d.imei FROM Device d WHERE d.imei IN :imeis")
+    List<String> findExistingImeis(@Param("imeis") Collection<String> imeis);
+
     // get all device by pagination
 
     @Query("SELECT d FROM Device d ORDER BY d.id DESC")
     Page<Device> findAllByOrderByIdDesc(Pageable pageable);
 
+    // get the list rows of all the devices by pagination
+    @Query(value = LIST_ROW, countQuery = "SELECT COUNT(d) FROM Device d")
+    Page<DeviceDTO> findAllListRows(Pageable pageable);
+
+    // get the first devices, without count query
+    @Query(LIST_ROW + "ORDER BY d.id DESC")
+    Slice<DeviceDTO> findFirstSlice(Pageable pageable);
+
+    // get devices after a cursor id, without count query
+    @Query(LIST_ROW + "WHERE d.id < :afterId ORDER BY d.id DESC")
+    Slice<DeviceDTO> findSliceAfter(@Param("afterId") Long afterId, Pageable pageable);
+
     // search device
 
     Page<Device> findAll(Specification<Device> specification, Pageable pageable);
@@ -31,12 +55,43 @@ public interface DeviceRepository extends JpaRepository<Device, Long> {
     // count device have status non install
     Long countByStatus(DeviceStatus status);
 
+    // count devices of every status in a single pass
+    @Query("SELECT d.status, COUNT(d) FROM Device d GROUP BY d.status")
+    List<Object[]> countGroupByStatus();
+
+    // id and status of the given devices
+    @Query("SELECT d.id, d.status FROM Device d WHERE d.id IN :ids")
+    List<Object[]> findStatusesByIds(@Param("ids") Collection<Long> ids);
+
+    // change the status of the given devices still in the expected status, in one statement,
+    // then detach the loaded entities, their status is stale
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Device d SET d.status = :status, d.version = d.version + 1 "
+            + "WHERE d.id IN :ids AND d.status = :expected")
+    int updateStatusByIds(@Param("ids") Collection<Long> ids, @Param("expected") DeviceStatus expected,
+            @Param("status") DeviceStatus status);
+
     // get all device by status non-installed and pagination
-    Page<Device> findAllByStatus(DeviceStatus status, Pageable pageable);
+    @Query(value = LIST_ROW + "WHERE d.status = :status",
+            countQuery = "SELECT COUNT(d) FROM Device d WHERE d.status = :status")
+    Page<DeviceDTO> findAllByStatus(@Param("status") DeviceStatus status, Pageable pageable);
+
+    // list rows of the given devices
+    @Query(LIST_ROW + "WHERE d.id IN :ids")
+    List<DeviceDTO> findListRowsByIds(@Param("ids") Collection<Long> ids);
+
+    // id, imei and status of every device, to load the search index
+    @Query("SELECT d.id, d.imei, d.status FROM Device d")
+    List<Object[]> findIndexRows();
+
+    // id, imei and status of the given devices
+    @Query("SELECT d.id, d.imei, d.status FROM Device d WHERE d.imei IN :imeis")
+    List<Object[]> findIndexRowsByImeis(@Param("imeis") Collection<String> imeis);
 
     // search device non installed by imei
-    @Query("SELECT d FROM Device d WHERE d.status = :status AND d.imei LIKE %:imei%")
-    Page<Device> findAllByStatusAndImeiContaining(@Param("status") DeviceStatus status, @Param("imei") String imei,
+    @Query(value = LIST_ROW + "WHERE d.status = :status AND d.imei LIKE %:imei%",
+            countQuery = "SELECT COUNT(d) FROM Device d WHERE d.status = :status AND d.imei LIKE %:imei%")
+    Page<DeviceDTO> findAllByStatusAndImeiContaining(@Param("status") DeviceStatus status, @Param("imei") String imei,
             Pageable pageable);
 
     // Check if the device type already exists by id
@@ -48,18 +103,10 @@ public interface DeviceRepository extends JpaRepository<Device, Long> {
     long countByDeviceType(DeviceType deviceType);
 
     // Search device by any field
-    @Query("SELECT d FROM Device d WHERE d.imei LIKE %:search% OR d.deviceType.name LIKE %:search% OR d.remarque LIKE %:search%")
-    Page<Device> search(@Param("search") String search, Pageable pageable);
-
-    @Query("SELECT d FROM Device d WHERE " +
-            "(:status IS NULL OR d.status = :status) AND " +
-            "(:deviceType IS NULL OR d.deviceType = :deviceType) AND " +
-            "(:createdFrom IS NULL OR d.createdAt >= :createdFrom) AND " +
-            "(:createdTo IS NULL OR d.createdAt <= :createdTo)")
-    Page<Device> filterDevices(@Param("status") DeviceStatus status,
-            @Param("deviceType") DeviceType deviceType,
-            @Param("createdFrom") Date createdFrom,
-            @Param("createdTo") Date createdTo,
-            Pageable pageable);
+    @Query(value = LIST_ROW
+            + "WHERE d.imei LIKE %:search% OR t.name LIKE %:search% OR d.remarque LIKE %:search%",
+            countQuery = "SELECT COUNT(d) FROM Device d LEFT JOIN d.deviceType t "
+                    + "WHERE d.imei LIKE %:search% OR t.name LIKE %:search% OR d.remarque LIKE %:search%")
+    Page<DeviceDTO> search(@Param("search") String search, Pageable pageable);
 
 }
@@ -0,0 +1,150 @@
+package com.idirtrack.backend.device;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.idirtrack.backend.utils.AfterCommit;
+import com.idirtrack.backend.utils.SubstringIndex;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * In-memory substring index of the device IMEIs
+ *
+ * Loaded at startup and kept up to date by the DeviceService, so the IMEI
+ * typeahead does not run a "LIKE %term%" scan of the device table. It is
+ * rebuilt periodically to pick up changes made outside the service.
+ *
+ * A change is applied once committed, to the index current at that time.
+ * The changes committed while a rebuild reads the table are also recorded,
+ * then replayed onto the new index before it is swapped in.
+ */
+@Component
+@RequiredArgsConstructor
+public class DeviceSearchIndex {
+
+        private final DeviceRepository deviceRepository;
+
+        private volatile SubstringIndex index;
+
+        // Guards the swap of the index and the changes recorded during a rebuild
+        private final Object changes = new Object();
+
+        // Changes committed since the current rebuild started, null when none is running
+        private List<Consumer<SubstringIndex>> pending;
+
+        private static final Logger logger = LoggerFactory.getLogger(DeviceSearchIndex.class);
+
+        /**
+         * Utils: Check if the index can answer searches
+         *
+         * @return boolean
+         */
+        public boolean isLoaded() {
+                return index != null;
+        }
+
+        /**
+         * Utils: Find the ids of the devices with the given status whose IMEI
+         * contains the query
+         *
+         * @param query
+         * @param status
+         * @param pageable
+         * @return the ids of the page, by id descending, and the total
+         */
+        public SubstringIndex.Hits search(String query, DeviceStatus status, Pageable pageable) {
+                return index.search(query, status.name(), pageable.getOffset(), pageable.getPageSize());
+        }
+
+        // A device was created or updated
+        public void put(Device device) {
+                Long id = device.getId();
+                String status = device.getStatus() != null ? device.getStatus().name() : null;
+                String imei = device.getImei();
+                this.afterCommit(index -> index.put(id, status, imei));
+        }
+
+        // A device changed status
+        public void statusChanged(Long id, DeviceStatus status) {
+                this.afterCommit(index -> index.retag(id, status.name()));
+        }
+
+        // A device was deleted
+        public void remove(Long id) {
+                this.afterCommit(index -> index.remove(id));
+        }
+
+        // Devices were inserted without their ids (bulk import)
+        public void indexImeis(Collection<String> imeis) {
+                if (!this.isTracking() || imeis.isEmpty()) {
+                        return;
+                }
+                List<Object[]> rows = deviceRepository.findIndexRowsByImeis(imeis);
+                this.afterCommit(index -> rows.forEach(row -> this.put(index, row)));
+        }
+
+        /**
+         * Load all the devices in a new index and swap it in
+         */
+        @EventListener(ApplicationReadyEvent.class)
+        @Scheduled(fixedDelayString = "${search.index.rebuild-interval-ms:900000}", initialDelayString = "${search.index.rebuild-interval-ms:900000}")
+        public synchronized void rebuild() {
+                synchronized (changes) {
+                        pending = new ArrayList<>();
+                }
+                SubstringIndex fresh = new SubstringIndex();
+                try {
+                        deviceRepository.findIndexRows().forEach(row -> this.put(fresh, row));
+                        synchronized (changes) {
+                                // Replay the changes the read may have missed, in commit order
+                                pending.forEach(change -> change.accept(fresh));
+                                index = fresh;
+                        }
+                } finally {
+                        synchronized (changes) {
+                                pending = null;
+                        }
+                }
+                logger.info("Device search index loaded with {} devices", fresh.size());
+        }
+
+        // Index a row (id, imei, status)
+        private void put(SubstringIndex target, Object[] row) {
+                target.put((Long) row[0], row[2] != null ? ((DeviceStatus) row[2]).name() : null, (String) row[1]);
+        }
+
+        // Apply the change once committed: the index current then may be newer than the one of now
+        private void afterCommit(Consumer<SubstringIndex> change) {
+                AfterCommit.run(() -> this.apply(change));
+        }
+
+        // Apply a committed change to the current index, and record it for the running rebuild
+        private void apply(Consumer<SubstringIndex> change) {
+                synchronized (changes) {
+                        if (index != null) {
+                                change.accept(index);
+                        }
+                        if (pending != null) {
+                                pending.add(change);
+                        }
+                        // Before the first load, the load reads the change from the database
+                }
+        }
+
+        private boolean isTracking() {
+                synchronized (changes) {
+                        return index != null || pending != null;
+                }
+        }
+}
@@ -1,6 +1,5 @@
 package com.idirtrack.backend.device;
 
-import jakarta.persistence.criteria.Predicate;
 import org.springframework.stereotype.Service;
 
 import com.idirtrack.backend.basics.BasicError;
@@ -13,26 +12,39 @@ import com.idirtrack.backend.device.https.DeviceUpdateRequest;
 import com.idirtrack.backend.deviceType.DeviceType;
 import com.idirtrack.backend.deviceType.DeviceTypeRepository;
 import com.idirtrack.backend.errors.NotFoundException;
-import com.idirtrack.backend.stock.Stock;
-import com.idirtrack.backend.stock.StockRepository;
+import com.idirtrack.backend.stock.StockLedgerService;
 import com.idirtrack.backend.utils.ErrorResponse;
+import com.idirtrack.backend.utils.KeysetCursor;
 import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.StatusTransitionReport;
+import com.idirtrack.backend.utils.StatusTransitionRequest;
+import com.idirtrack.backend.utils.StripedLocks;
+import com.idirtrack.backend.utils.SubstringIndex;
+import com.idirtrack.backend.utils.UniqueConstraints;
 
 import lombok.RequiredArgsConstructor;
 
 import org.springframework.data.domain.PageRequest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.sql.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.stream.Collectors;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Slice;
 import java.util.List;
-import org.springframework.data.jpa.domain.Specification;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
@@ -40,27 +52,31 @@ public class DeviceService {
 
         private final DeviceRepository deviceRepository;
         private final DeviceTypeRepository deviceTypeRepository;
-        private final DeviceStockRepository deviceStockRepository;
-        private final StockRepository stockRepository;
+        private final StockLedgerService stockLedgerService;
+        private final DeviceStatusCounter deviceStatusCounter;
+        private final DeviceSearchIndex deviceSearchIndex;
+
+        // Writers of the same IMEI wait for each other
+        private static final StripedLocks IMEI_LOCKS = new StripedLocks(256);
 
         /**
          * Count devices and group by status
          * 
+         * The counts come from the DeviceStatusCounter, loaded with a single
+         * GROUP BY query and kept up to date on every device change.
+         * 
          * @return BasicResponse
          * @throws BasicException
          */
 
         public BasicResponse countDevicesGroupByStatus() {
-                long nonInstalled = deviceRepository.countByStatus(DeviceStatus.NON_INSTALLED);
-                long installed = deviceRepository.countByStatus(DeviceStatus.INSTALLED);
-                long inLost = deviceRepository.countByStatus(DeviceStatus.LOST);
-                long inPending = deviceRepository.countByStatus(DeviceStatus.PENDING);
+                Map<DeviceStatus, Long> counts = deviceStatusCounter.snapshot();
 
                 Map<String, Long> countMap = new HashMap<>();
-                countMap.put("nonInstalled", nonInstalled);
-                countMap.put("installed", installed);
-                countMap.put("lost", inLost);
-                countMap.put("pending", inPending);
+                countMap.put("nonInstalled", counts.get(DeviceStatus.NON_INSTALLED));
+                countMap.put("installed", counts.get(DeviceStatus.INSTALLED));
+                countMap.put("lost", counts.get(DeviceStatus.LOST));
+                countMap.put("pending", counts.get(DeviceStatus.PENDING));
 
                 return BasicResponse.builder()
                                 .content(countMap)
@@ -76,7 +92,7 @@ public class DeviceService {
          * @throws BasicException
          */
         public BasicResponse countDevices() {
-                long count = deviceRepository.count();
+                long count = deviceStatusCounter.total();
                 return BasicResponse.builder()
                                 .content(count)
                                 .status(HttpStatus.OK)
@@ -94,34 +110,40 @@ public class DeviceService {
 
                 // Create a list of errors
                 List<BasicError> errors = new ArrayList<>();
-                // Check if the device already exists
-                this.ifAlreadyExists(request.getImei());
-
-                // Check if device type exists
-                DeviceType deviceType = deviceTypeRepository.findById(request.getDeviceTypeId())
-                                .orElseThrow(() -> {
-                                        errors.add(BasicError.builder()
-                                                        .key("deviceTypeId")
-                                                        .message("Device type not found")
-                                                        .build());
-                                        return new BasicException(BasicResponse.builder()
-                                                        .errors(errors)
-                                                        .status(HttpStatus.BAD_REQUEST)
-                                                        .messageType(MessageType.ERROR)
-                                                        .build());
-                                });
-
-                // Transform the request to entity
-                Device device = Device.builder()
-                                .imei(request.getImei())
-                                .createdAt(new Date(System.currentTimeMillis()))
-                                .status(DeviceStatus.NON_INSTALLED)
-                                .deviceType(deviceType)
-                                .remarque(request.getRemarque())
-                                .build();
+                // Lock the IMEI, so a concurrent create of the same IMEI sees this one
+                Device device;
+                try (StripedLocks.Lock lock = IMEI_LOCKS.lockUntilCompletion(request.getImei())) {
+                        // Check if the device already exists
+                        this.ifAlreadyExists(request.getImei());
+
+                        // Check if device type exists
+                        DeviceType deviceType = deviceTypeRepository.findById(request.getDeviceTypeId())
+                                        .orElseThrow(() -> {
+                                                errors.add(BasicError.builder()
+                                                                .key("deviceTypeId")
+                                                                .message("Device type not found")
+                                                                .build());
+                                                return new BasicException(BasicResponse.builder()
+                                                                .errors(errors)
+                                                                .status(HttpStatus.BAD_REQUEST)
+                                                                .messageType(MessageType.ERROR)
+                                                                .build());
+                                        });
+
+                        // Transform the request to entity
+                        device = Device.builder()
+                                        .imei(request.getImei())
+                                        .createdAt(new Date(System.currentTimeMillis()))
+                                        .status(DeviceStatus.NON_INSTALLED)
+                                        .deviceType(deviceType)
+                                        .remarque(request.getRemarque())
+                                        .build();
 
-                // Save the device entity
-                device = deviceRepository.save(device);
+                        // Save the device entity, the IMEI constraint has the last word
+                        device = this.saveUniqueImei(device);
+                }
+                deviceStatusCounter.added(DeviceStatus.NON_INSTALLED, 1);
+                deviceSearchIndex.put(device);
 
                 // Check if device stock exists and update it (add quantity)
                 // Check with device type and date
@@ -150,44 +172,49 @@ public class DeviceService {
                                                 .status(HttpStatus.NOT_FOUND)
                                                 .build()));
 
-                // Check if the imei is different from the current one
-                if (!existingDevice.getImei().equals(request.getImei())) {
-                        // Check if the new imei already exists in another device
-                        if (deviceRepository.existsByImei(request.getImei())) {
-                                errors.add(BasicError.builder()
-                                                .key("imei")
-                                                .message("IMEI already exists")
-                                                .build());
-                                throw new BasicException(BasicResponse.builder()
-                                                .errors(errors)
-                                                .status(HttpStatus.BAD_REQUEST)
-                                                .messageType(MessageType.ERROR)
-                                                .build());
-                        }
-                }
-
-                // Find the device type
-                DeviceType deviceType = deviceTypeRepository.findById(request.getDeviceTypeId())
-                                .orElseThrow(() -> {
+                // Lock the new IMEI, so a concurrent write of the same IMEI sees this one
+                boolean imeiChanged = !existingDevice.getImei().equals(request.getImei());
+                try (StripedLocks.Lock lock = IMEI_LOCKS.lockUntilCompletion(imeiChanged ? request.getImei() : null)) {
+                        // Check if the imei is different from the current one
+                        if (imeiChanged) {
+                                // Check if the new imei already exists in another device
+                                if (deviceRepository.existsByImei(request.getImei())) {
                                         errors.add(BasicError.builder()
-                                                        .key("deviceTypeId")
-                                                        .message("Device type not found")
+                                                        .key("imei")
+                                                        .message("IMEI already exists")
                                                         .build());
-                                        return new BasicException(BasicResponse.builder()
+                                        throw new BasicException(BasicResponse.builder()
                                                         .errors(errors)
                                                         .status(HttpStatus.BAD_REQUEST)
                                                         .messageType(MessageType.ERROR)
                                                         .build());
-                                });
-
-                // Set new values
-                existingDevice.setImei(request.getImei());
-                existingDevice.setDeviceType(deviceType);
-                existingDevice.setRemarque(request.getRemarque());
-                existingDevice.setUpdatedAt(new Date(System.currentTimeMillis()));
+                                }
+                        }
 
-                // Save the device
-                deviceRepository.save(existingDevice);
+                        // Find the device type
+                        DeviceType deviceType = deviceTypeRepository.findById(request.getDeviceTypeId())
+                                        .orElseThrow(() -> {
+                                                errors.add(BasicError.builder()
+                                                                .key("deviceTypeId")
+                                                                .message("Device type not found")
+                                                                .build());
+                                                return new BasicException(BasicResponse.builder()
+                                                                .errors(errors)
+                                                                .status(HttpStatus.BAD_REQUEST)
+                                                                .messageType(MessageType.ERROR)
+                                                                .build());
+                                        });
+
+                        // Set new values
+                        existingDevice.setImei(request.getImei());
+                        existingDevice.setDeviceType(deviceType);
+                        existingDevice.setRemarque(request.getRemarque());
+                        existingDevice.setUpdatedAt(new Date(System.currentTimeMillis()));
+
+                        // Save the device, the IMEI constraint has the last word
+                        this.saveUniqueImei(existingDevice);
+                }
+                deviceSearchIndex.put(existingDevice);
 
                 // Build the DTO
                 DeviceDTO deviceDTO = DeviceDTO.builder()
@@ -239,6 +266,8 @@ public class DeviceService {
 
                 // Delete the device
                 deviceRepository.delete(device);
+                deviceStatusCounter.removed(device.getStatus());
+                deviceSearchIndex.remove(device.getId());
 
                 return BasicResponse.builder()
                                 .message("Device deleted successfully with IME: " + imei)
@@ -299,8 +328,8 @@ public class DeviceService {
                 // Create pagination
                 Pageable pageRequest = PageRequest.of(page - 1, size, Sort.by("id").descending());
 
-                // Retrieve all devices from the database
-                Page<Device> devicePage = deviceRepository.findAll(pageRequest);
+                // Retrieve the page of devices, as DTOs in a single query
+                Page<DeviceDTO> devicePage = deviceRepository.findAllListRows(pageRequest);
 
                 // if device not found
                 if (devicePage.isEmpty()) {
@@ -311,17 +340,6 @@ public class DeviceService {
                                         .build());
 
                 }
-                // Create a list of DTOs for devices
-                List<DeviceDTO> deviceDTOs = devicePage.getContent().stream()
-                                .map(device -> DeviceDTO.builder()
-                                                .id(device.getId())
-                                                .IMEI(device.getImei())
-                                                .deviceType(device.getDeviceType().getName())
-                                                .createAt(device.getCreatedAt())
-                                                .status(device.getStatus())
-                                                .remarque(device.getRemarque())
-                                                .build())
-                                .collect(Collectors.toList());
 
                 // Create metadata
                 MetaData metaData = MetaData.builder()
@@ -332,12 +350,52 @@ public class DeviceService {
 
                 // Return the response
                 return BasicResponse.builder()
-                                .content(deviceDTOs)
+                                .content(devicePage.getContent())
                                 .metadata(metaData)
                                 .status(HttpStatus.OK)
                                 .build();
         }
 
+        /**
+         * Get all devices with keyset pagination
+         * 
+         * Reads the page after the cursor with "id < :afterId" instead of an
+         * offset, and only counts the devices when the caller asks for it.
+         * 
+         * @param after     cursor returned by the previous page, empty for the
+         *                  first page
+         * @param size
+         * @param withCount
+         * @return BasicResponse
+         * @throws BasicException
+         */
+        public BasicResponse getAllDevices(String after, int size, boolean withCount) throws BasicException {
+                // Read the cursor
+                Long afterId = this.decodeCursor(after);
+
+                // Retrieve the next slice of devices, without count query
+                Slice<DeviceDTO> deviceSlice = afterId == null
+                                ? deviceRepository.findFirstSlice(PageRequest.of(0, size))
+                                : deviceRepository.findSliceAfter(afterId, PageRequest.of(0, size));
+
+                // if device not found
+                if (deviceSlice.isEmpty()) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("No devices found")
+                                        .messageType(MessageType.WARNING)
+                                        .status(HttpStatus.NOT_FOUND)
+                                        .build());
+                }
+
+                // Return the response
+                return BasicResponse.builder()
+                                .content(deviceSlice.getContent())
+                                .metadata(this.buildCursorMetaData(deviceSlice,
+                                                withCount ? deviceRepository.count() : null))
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
         // Transform DTO to entity
         public Device transformResponseDTO(DeviceDTO deviceDTO) {
                 DeviceType deviceType = deviceTypeRepository.findByName(deviceDTO.getDeviceType());
@@ -362,59 +420,27 @@ public class DeviceService {
 
         // Update device stock
         public void updateDeviceStock(Device device) {
-                List<Stock> stocks = stockRepository.findByDateEntree(device.getCreatedAt());
-                Stock stock = null;
-                DeviceStock deviceStock = null;
-
-                for (Stock s : stocks) {
-                        deviceStock = deviceStockRepository.findByStockAndDeviceType(s, device.getDeviceType());
-                        if (deviceStock != null) {
-                                stock = s;
-                                break;
-                        }
-                }
-
-                if (stock == null) {
-                        stock = Stock.builder()
-                                        .dateEntree(device.getCreatedAt())
-                                        .quantity(1)
-                                        .build();
-                        stock = stockRepository.save(stock);
+                this.updateDeviceStock(device.getCreatedAt(), device.getDeviceType(), 1);
+        }
 
-                        deviceStock = DeviceStock.builder()
-                                        .deviceType(device.getDeviceType())
-                                        .stock(stock)
-                                        .build();
-                        deviceStockRepository.save(deviceStock);
-                } else {
-                        stock.setQuantity(stock.getQuantity() + 1);
-                        stockRepository.save(stock);
-                }
+        /**
+         * Add a quantity of devices of one type to the stock of a given date
+         *
+         * Used by the bulk import to apply the stock change once per
+         * (date, device type) instead of once per device. The change is
+         * appended to the stock ledger.
+         *
+         * @param dateEntree
+         * @param deviceType
+         * @param quantity
+         */
+        public void updateDeviceStock(Date dateEntree, DeviceType deviceType, int quantity) {
+                stockLedgerService.recordDeviceMovement(dateEntree, deviceType, quantity);
         }
 
         // Update device stock on delete
         private void updateDeviceStockOnDelete(Device device) {
-                List<Stock> stocks = stockRepository.findByDateEntree(device.getCreatedAt());
-                Stock stock = null;
-                DeviceStock deviceStock = null;
-
-                for (Stock s : stocks) {
-                        deviceStock = deviceStockRepository.findByStockAndDeviceType(s, device.getDeviceType());
-                        if (deviceStock != null) {
-                                stock = s;
-                                break;
-                        }
-                }
-
-                if (stock != null) {
-                        stock.setQuantity(stock.getQuantity() - 1);
-                        stockRepository.save(stock);
-
-                        if (stock.getQuantity() <= 0) {
-                                deviceStockRepository.delete(deviceStock);
-                                stockRepository.delete(stock);
-                        }
-                }
+                stockLedgerService.recordDeviceMovement(device.getCreatedAt(), device.getDeviceType(), -1);
         }
 
         // Transform request to DTO
@@ -430,52 +456,65 @@ public class DeviceService {
         // Check if device with the given IMEI already exists
         private void ifAlreadyExists(String imei) throws BasicException {
                 if (deviceRepository.existsByImei(imei)) {
-                        List<BasicError> errors = new ArrayList<>();
-                        errors.add(BasicError.builder()
-                                        .key("imei")
-                                        .message("IMEI already exists")
-                                        .build());
-                        throw new BasicException(BasicResponse.builder()
-                                        .errors(errors)
-                                        .status(HttpStatus.BAD_REQUEST)
-                                        .build());
+                        throw this.imeiAlreadyExists();
+                }
+        }
+
+        // Save a device, and report a violation of the IMEI unique constraint as the
+        // same field error as the check
+        private Device saveUniqueImei(Device device) throws BasicException {
+                try {
+                        Device saved = deviceRepository.save(device);
+                        // Flush now, so a duplicate fails here and not at the commit
+                        deviceRepository.flush();
+                        return saved;
+                } catch (DataIntegrityViolationException e) {
+                        if (UniqueConstraints.isViolated(e, Device.UK_IMEI)
+                                        || deviceRepository.existsByImei(device.getImei())) {
+                                throw this.imeiAlreadyExists();
+                        }
+                        throw e;
                 }
         }
 
+        private BasicException imeiAlreadyExists() {
+                List<BasicError> errors = new ArrayList<>();
+                errors.add(BasicError.builder()
+                                .key("imei")
+                                .message("IMEI already exists")
+                                .build());
+                return new BasicException(BasicResponse.builder()
+                                .errors(errors)
+                                .status(HttpStatus.BAD_REQUEST)
+                                .build());
+        }
+
         // filtr devices with pagination
         public BasicResponse filterDevices(String imei, String deviceType, String status, Date createdTo,
                         Date createdFrom,
                         int page, int size) {
                 Pageable pageable = PageRequest.of(page - 1, size);
 
-                Specification<Device> specification = (root, query, criteriaBuilder) -> {
-                        List<Predicate> predicates = new ArrayList<>();
-
-                        if (imei != null && !imei.isEmpty()) {
-                                predicates.add(criteriaBuilder.equal(root.get("imei"), imei));
-                        }
-
-                        if (deviceType != null && !deviceType.isEmpty()) {
-                                predicates.add(criteriaBuilder.equal(root.get("deviceType").get("name"), deviceType));
-                        }
-
-                        if (status != null && !status.isEmpty()) {
-                                predicates.add(criteriaBuilder.equal(root.get("status"), DeviceStatus.valueOf(status)));
-                        }
-                        // Filter by created date between createdFrom and createdTo
-                        if (createdFrom != null && createdTo != null) {
-                                predicates.add(criteriaBuilder.between(root.get("createdAt"), createdTo, createdFrom));
-                        }
-                        // filter by created date createdFrom null take current date
-                        if (createdFrom == null && createdTo != null) {
-                                predicates.add(criteriaBuilder.between(root.get("createdAt"), createdTo,
-                                                new Date(System.currentTimeMillis())));
-                        }
+                // Resolve the device type name to its id once, the filter stays on the device index
+                Long deviceTypeId = null;
+                if (deviceType != null && !deviceType.isEmpty()) {
+                        DeviceType type = deviceTypeRepository.findByName(deviceType);
+                        deviceTypeId = type != null ? type.getId() : null;
+                }
 
-                        return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
-                };
+                // Only the given criteria become predicates
+                DeviceFilter filter = DeviceFilter.builder()
+                                .imei(imei)
+                                .deviceTypeId(deviceTypeId)
+                                .status(status != null && !status.isEmpty() ? DeviceStatus.valueOf(status) : null)
+                                .createdFrom(createdFrom)
+                                .createdTo(createdTo)
+                                .build();
 
-                Page<Device> devicePage = deviceRepository.findAll(specification, pageable);
+                // An unknown device type matches no device
+                Page<DeviceDTO> devicePage = deviceType != null && !deviceType.isEmpty() && deviceTypeId == null
+                                ? Page.empty(pageable)
+                                : deviceRepository.findFiltered(filter, pageable);
                 if (devicePage.isEmpty()) {
                         return BasicResponse.builder()
                                         .content(null)
@@ -486,18 +525,7 @@ public class DeviceService {
                                         .build();
                 }
 
-                List<DeviceDTO> deviceDTOs = devicePage.getContent().stream()
-                                .map(device -> DeviceDTO.builder()
-                                                .id(device.getId())
-                                                .IMEI(device.getImei())
-                                                .deviceType(device.getDeviceType().getName())
-                                                .createAt(device.getCreatedAt())
-                                                .updateAt(device.getUpdatedAt())
-                                                .deviceTypeId(device.getDeviceType().getId())
-                                                .remarque(device.getRemarque())
-                                                .status(device.getStatus())
-                                                .build())
-                                .collect(Collectors.toList());
+                List<DeviceDTO> deviceDTOs = devicePage.getContent();
 
                 MetaData metaData = MetaData.builder()
                                 .currentPage(devicePage.getNumber() + 1)
@@ -518,7 +546,7 @@ public class DeviceService {
 
         // Count all devices have status non installed
         public BasicResponse countDevicesNonInstalled() {
-                long count = deviceRepository.countByStatus(DeviceStatus.NON_INSTALLED);
+                long count = deviceStatusCounter.count(DeviceStatus.NON_INSTALLED);
                 return BasicResponse.builder()
                                 .content(count)
                                 .status(HttpStatus.OK)
@@ -532,7 +560,7 @@ public class DeviceService {
                 // Create pagination
                 Pageable pageRequest = PageRequest.of(page - 1, size);
                 // Retrieve all devices from the database
-                Page<Device> devicePage = deviceRepository.findAllByStatus(DeviceStatus.NON_INSTALLED, pageRequest);
+                Page<DeviceDTO> devicePage = deviceRepository.findAllByStatus(DeviceStatus.NON_INSTALLED, pageRequest);
                 // If page is empty
                 if (devicePage.isEmpty()) {
                         return MyResponse.builder()
@@ -542,15 +570,8 @@ public class DeviceService {
                 }
                 // Else create a list of DTOs for devices
                 else {
-                        // Create a list of DTOs for devices
-                        List<DeviceDTO> deviceDTOs = devicePage.getContent().stream()
-                                        .map(device -> DeviceDTO.builder()
-                                                        .id(device.getId())
-                                                        .IMEI(device.getImei())
-                                                        .deviceType(device.getDeviceType().getName())
-                                                        .deviceTypeId(device.getDeviceType().getId())
-                                                        .build())
-                                        .collect(Collectors.toList());
+                        // The page is already made of DTOs
+                        List<DeviceDTO> deviceDTOs = devicePage.getContent();
                         // Build metadata Map
                         Map<String, Object> metadata = new HashMap<>();
                         metadata.put("currentPage", devicePage.getNumber() + 1);
@@ -572,10 +593,12 @@ public class DeviceService {
         public MyResponse searchNonInstalledDevices(String query, int page, int size) {
                 // Create pagination
                 Pageable pageable = PageRequest.of(page - 1, size,Sort.by("id").descending());
-                // Search devices by IMEI
-                Page<Device> devicePage = deviceRepository.findAllByStatusAndImeiContaining(DeviceStatus.NON_INSTALLED,
-                                query,
-                                pageable);
+                // Search devices by IMEI, from the in-memory index once it is loaded
+                Page<DeviceDTO> devicePage = deviceSearchIndex.isLoaded()
+                                ? this.searchNonInstalledDevicesFromIndex(query, pageable)
+                                : deviceRepository.findAllByStatusAndImeiContaining(DeviceStatus.NON_INSTALLED,
+                                                query,
+                                                pageable);
                 // If page is empty
                 if (devicePage.isEmpty()) {
                         return MyResponse.builder()
@@ -584,15 +607,8 @@ public class DeviceService {
                                         .build();
                 }
                 else {
-                        // Create a list of DTOs for devices
-                        List<DeviceDTO> deviceDTOs = devicePage.getContent().stream()
-                                        .map(device -> DeviceDTO.builder()
-                                                        .id(device.getId())
-                                                        .IMEI(device.getImei())
-                                                        .deviceType(device.getDeviceType().getName())
-                                                        .deviceTypeId(device.getDeviceType().getId())
-                                                        .build())
-                                        .collect(Collectors.toList());
+                        // The page is already made of DTOs
+                        List<DeviceDTO> deviceDTOs = devicePage.getContent();
                         // Build metadata Map
                         Map<String, Object> metadata = new HashMap<>();
                         metadata.put("currentPage", devicePage.getNumber() + 1);
@@ -608,6 +624,19 @@ public class DeviceService {
                 }
         }
 
+        // Find the page of ids in the search index, then load only those devices
+        private Page<DeviceDTO> searchNonInstalledDevicesFromIndex(String query, Pageable pageable) {
+                SubstringIndex.Hits hits = deviceSearchIndex.search(query, DeviceStatus.NON_INSTALLED, pageable);
+                Map<Long, DeviceDTO> devicesById = deviceRepository.findListRowsByIds(hits.ids()).stream()
+                                .collect(Collectors.toMap(DeviceDTO::getId, device -> device));
+                // Keep the index order, and skip devices changed since they were indexed
+                List<DeviceDTO> devices = hits.ids().stream()
+                                .map(devicesById::get)
+                                .filter(device -> device != null && device.getStatus() == DeviceStatus.NON_INSTALLED)
+                                .collect(Collectors.toList());
+                return new PageImpl<>(devices, pageable, hits.total());
+        }
+
         /**
          * SEARCH DEVICES BY ANY FIELD
          * 
@@ -624,7 +653,7 @@ public class DeviceService {
                 Pageable pageable = PageRequest.of(page - 1, size, Sort.by("id").descending());
 
                 // Search devices by any field
-                Page<Device> devicePage = deviceRepository.search(search, pageable);
+                Page<DeviceDTO> devicePage = deviceRepository.search(search, pageable);
 
                 // If no devices found throw an exception
                 if (devicePage.isEmpty()) {
@@ -635,19 +664,6 @@ public class DeviceService {
                                         .build());
                 }
 
-                // Create a list of DTOs for devices
-                List<DeviceDTO> deviceDTOs = devicePage.getContent().stream()
-                                .map(device -> DeviceDTO.builder()
-                                                .id(device.getId())
-                                                .IMEI(device.getImei())
-                                                .deviceType(device.getDeviceType().getName())
-                                                .createAt(device.getCreatedAt())
-                                                .deviceTypeId(device.getDeviceType().getId())
-                                                .remarque(device.getRemarque())
-                                                .status(device.getStatus())
-                                                .build())
-                                .collect(Collectors.toList());
-
                 // Create metadata
                 MetaData metaData = MetaData.builder()
                                 .currentPage(devicePage.getNumber() + 1)
@@ -656,7 +672,7 @@ public class DeviceService {
                                 .build();
                 // Return the response
                 return BasicResponse.builder()
-                                .content(deviceDTOs)
+                                .content(devicePage.getContent())
                                 .status(HttpStatus.OK)
                                 .metadata(metaData)
                                 .build();
@@ -674,8 +690,30 @@ public class DeviceService {
                                         .build());
                 }
 
+                // Check the lifecycle allows the move
+                DeviceStatus previousStatus = device.getStatus();
+                if (previousStatus != DeviceStatus.INSTALLED
+                                && (previousStatus == null || !previousStatus.canMoveTo(DeviceStatus.INSTALLED))) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("Device cannot move from " + previousStatus + " to "
+                                                        + DeviceStatus.INSTALLED)
+                                        .messageType(MessageType.ERROR)
+                                        .status(HttpStatus.CONFLICT)
+                                        .build());
+                }
+
                 device.setStatus(DeviceStatus.INSTALLED);
-                device = deviceRepository.save(device);
+                try {
+                        device = deviceRepository.save(device);
+                } catch (ObjectOptimisticLockingFailureException e) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("Device was modified concurrently, please retry")
+                                        .messageType(MessageType.ERROR)
+                                        .status(HttpStatus.CONFLICT)
+                                        .build());
+                }
+                deviceStatusCounter.moved(previousStatus, DeviceStatus.INSTALLED);
+                deviceSearchIndex.statusChanged(device.getId(), DeviceStatus.INSTALLED);
 
                 return BasicResponse.builder()
                                 .content(device)
@@ -685,21 +723,34 @@ public class DeviceService {
                                 .build();
         }
 
-        // Change device status
+        // Change device status, only if no other writer changed it since it was read
+        @Transactional
         public boolean changeDeviceStatus(Long id, String status) {
                 try {
                         // Validate the status
                         DeviceStatus deviceStatus = DeviceStatus.valueOf(status);
 
-                        // Find the device
-                        Device device = deviceRepository.findById(id).orElse(null);
-                        if (device == null) {
+                        // Find the device status
+                        List<Object[]> rows = deviceRepository.findStatusesByIds(List.of(id));
+                        if (rows.isEmpty()) {
                                 return false;
                         }
 
-                        // Update the device status and save
-                        device.setStatus(deviceStatus);
-                        deviceRepository.save(device);
+                        // Check the lifecycle allows the move
+                        DeviceStatus previousStatus = (DeviceStatus) rows.get(0)[1];
+                        if (previousStatus == deviceStatus) {
+                                return true;
+                        }
+                        if (previousStatus == null || !previousStatus.canMoveTo(deviceStatus)) {
+                                return false;
+                        }
+
+                        // Update the status only where it is still the one read
+                        if (deviceRepository.updateStatusByIds(List.of(id), previousStatus, deviceStatus) == 0) {
+                                return false;
+                        }
+                        deviceStatusCounter.moved(previousStatus, deviceStatus);
+                        deviceSearchIndex.statusChanged(id, deviceStatus);
                         return true;
 
                 } catch (IllegalArgumentException e) {
@@ -708,6 +759,110 @@ public class DeviceService {
                 }
         }
 
+        /**
+         * Change the status of a list of devices
+         * 
+         * Reads the current statuses with one query, rejects the moves the
+         * lifecycle does not allow (see DeviceStatus#canMoveTo), and changes the
+         * other devices with one conditional UPDATE per current status. A device
+         * whose status was changed by another writer since it was read is not
+         * matched by the UPDATE and is reported as a conflict, without locking
+         * the rows.
+         * 
+         * @param ids
+         * @param status
+         * @return StatusTransitionReport with the outcome of each id
+         */
+        @Transactional
+        public StatusTransitionReport changeDevicesStatus(Collection<Long> ids, DeviceStatus status) {
+                // Find the current status of the devices
+                Map<Long, DeviceStatus> currentStatuses = new HashMap<>();
+                for (Object[] row : deviceRepository.findStatusesByIds(ids)) {
+                        currentStatuses.put((Long) row[0], (DeviceStatus) row[1]);
+                }
+
+                // Build the outcome of each id, and group the moves by current status
+                StatusTransitionReport report = StatusTransitionReport.builder()
+                                .status(status.name())
+                                .build();
+                Map<DeviceStatus, List<Long>> moves = new EnumMap<>(DeviceStatus.class);
+                for (Long id : ids) {
+                        DeviceStatus current = currentStatuses.get(id);
+                        if (!currentStatuses.containsKey(id)) {
+                                report.getResults().put(id, StatusTransitionReport.Outcome.NOT_FOUND);
+                        } else if (current == status) {
+                                report.getResults().put(id, StatusTransitionReport.Outcome.UNCHANGED);
+                        } else if (current == null || !current.canMoveTo(status)) {
+                                report.getResults().put(id, StatusTransitionReport.Outcome.REJECTED);
+                        } else {
+                                report.getResults().put(id, StatusTransitionReport.Outcome.UPDATED);
+                                moves.computeIfAbsent(current, key -> new ArrayList<>()).add(id);
+                        }
+                }
+
+                // Update each group only where the status is still the one read
+                moves.forEach((expected, groupIds) -> {
+                        int updated = deviceRepository.updateStatusByIds(groupIds, expected, status);
+                        if (updated < groupIds.size()) {
+                                this.reportConflicts(groupIds, status, report);
+                        }
+                        deviceStatusCounter.moved(expected, status, updated);
+                        groupIds.stream()
+                                        .filter(id -> report.getResults().get(id) == StatusTransitionReport.Outcome.UPDATED)
+                                        .forEach(id -> deviceSearchIndex.statusChanged(id, status));
+                });
+                return report;
+        }
+
+        // Re-read the devices of a group: those deleted or not in the target status were changed concurrently
+        private void reportConflicts(List<Long> ids, DeviceStatus status, StatusTransitionReport report) {
+                Set<Long> moved = new HashSet<>();
+                for (Object[] row : deviceRepository.findStatusesByIds(ids)) {
+                        if (row[1] == status) {
+                                moved.add((Long) row[0]);
+                        }
+                }
+                ids.stream()
+                                .filter(id -> !moved.contains(id))
+                                .forEach(id -> report.getResults().put(id, StatusTransitionReport.Outcome.CONFLICT));
+        }
+
+        /**
+         * Change the status of a list of devices (API)
+         * 
+         * @param request
+         * @return BasicResponse with the StatusTransitionReport
+         * @throws BasicException if the status is not valid
+         */
+        public BasicResponse changeDevicesStatus(StatusTransitionRequest request) throws BasicException {
+                // Validate the status
+                DeviceStatus deviceStatus;
+                try {
+                        deviceStatus = DeviceStatus.valueOf(request.getStatus().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                        List<BasicError> errors = new ArrayList<>();
+                        errors.add(BasicError.builder()
+                                        .key("status")
+                                        .message("Invalid status: " + request.getStatus())
+                                        .build());
+                        throw new BasicException(BasicResponse.builder()
+                                        .errors(errors)
+                                        .messageType(MessageType.ERROR)
+                                        .status(HttpStatus.BAD_REQUEST)
+                                        .build());
+                }
+
+                StatusTransitionReport report = this.changeDevicesStatus(request.getIds(), deviceStatus);
+
+                return BasicResponse.builder()
+                                .content(report)
+                                .message(report.idsWith(StatusTransitionReport.Outcome.UPDATED).size()
+                                                + " devices changed to " + deviceStatus)
+                                .messageType(report.allFound() ? MessageType.SUCCESS : MessageType.WARNING)
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
         /**
          * FILTER DEVICES
          */
@@ -717,17 +872,10 @@ public class DeviceService {
                 Pageable pageable = PageRequest.of(page - 1, size, Sort.by("id").descending());
 
                 // Convert status and dates
-
-                DeviceStatus deviceStatus = status != null ? DeviceStatus.valueOf(status.toUpperCase()) : null;
-                DeviceType deviceType = deviceTypeId != null ? deviceTypeRepository.findById(deviceTypeId).orElse(null)
-                                : null;
-                Date createdFromDate = createdFrom != null && !createdFrom.isEmpty() ? Date.valueOf(createdFrom) : null;
-                Date createdToDate = createdTo != null && !createdTo.isEmpty() ? Date.valueOf(createdTo) : null;
+                DeviceFilter filter = DeviceFilter.of(status, deviceTypeId, createdFrom, createdTo);
 
                 // Filter devices by status, device type, created date
-                Page<Device> devicePage = deviceRepository.filterDevices(deviceStatus, deviceType, createdFromDate,
-                                createdToDate,
-                                pageable);
+                Page<DeviceDTO> devicePage = deviceRepository.findFiltered(filter, pageable);
 
                 // If no devices found throw an exception
                 if (devicePage.isEmpty()) {
@@ -738,19 +886,6 @@ public class DeviceService {
                                         .build());
                 }
 
-                // Create a list of DTOs for devices
-                List<DeviceDTO> deviceDTOs = devicePage.getContent().stream()
-                                .map(device -> DeviceDTO.builder()
-                                                .id(device.getId())
-                                                .IMEI(device.getImei())
-                                                .deviceType(device.getDeviceType().getName())
-                                                .createAt(device.getCreatedAt())
-                                                .deviceTypeId(device.getDeviceType().getId())
-                                                .remarque(device.getRemarque())
-                                                .status(device.getStatus())
-                                                .build())
-                                .collect(Collectors.toList());
-
                 // Create metadata
                 MetaData metaData = MetaData.builder()
                                 .currentPage(devicePage.getNumber() + 1)
@@ -760,12 +895,79 @@ public class DeviceService {
 
                 // Return the response
                 return BasicResponse.builder()
-                                .content(deviceDTOs)
+                                .content(devicePage.getContent())
                                 .status(HttpStatus.OK)
                                 .metadata(metaData)
                                 .build();
         }
 
+        /**
+         * FILTER DEVICES WITH KEYSET PAGINATION
+         * 
+         * Same filters as filterDevices, but reads the page after the cursor and
+         * only runs the count query when withCount is true.
+         */
+        public BasicResponse filterDevices(String status, Long deviceTypeId, String createdFrom, String createdTo,
+                        String after, int size, boolean withCount) throws BasicException {
+                // Read the cursor
+                Long afterId = this.decodeCursor(after);
+
+                // Convert status and dates
+                DeviceFilter filter = DeviceFilter.of(status, deviceTypeId, createdFrom, createdTo);
+
+                // Filter the next slice of devices
+                filter.setAfterId(afterId);
+                Slice<DeviceDTO> deviceSlice = deviceRepository.findFilteredSlice(filter, size);
+
+                // If no devices found throw an exception
+                if (deviceSlice.isEmpty()) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("No devices found")
+                                        .messageType(MessageType.ERROR)
+                                        .status(HttpStatus.NOT_FOUND)
+                                        .build());
+                }
+
+                // Count only on demand
+                filter.setAfterId(null);
+                Long total = withCount ? deviceRepository.countFiltered(filter) : null;
+
+                // Return the response
+                return BasicResponse.builder()
+                                .content(deviceSlice.getContent())
+                                .status(HttpStatus.OK)
+                                .metadata(this.buildCursorMetaData(deviceSlice, total))
+                                .build();
+        }
+
+        // Read a keyset cursor, or throw a bad request
+        private Long decodeCursor(String after) throws BasicException {
+                try {
+                        return KeysetCursor.decode(after, "id");
+                } catch (IllegalArgumentException e) {
+                        throw new BasicException(BasicResponse.builder()
+                                        .message("Invalid cursor")
+                                        .messageType(MessageType.ERROR)
+                                        .status(HttpStatus.BAD_REQUEST)
+                                        .build());
+                }
+        }
+
+        // Build the metadata of a keyset page, with the total only if counted
+        private MetaData buildCursorMetaData(Slice<DeviceDTO> deviceSlice, Long total) {
+                List<DeviceDTO> devices = deviceSlice.getContent();
+                MetaData.MetaDataBuilder metaData = MetaData.builder()
+                                .size(deviceSlice.getSize())
+                                .nextCursor(deviceSlice.hasNext()
+                                                ? KeysetCursor.encode("id", devices.get(devices.size() - 1).getId())
+                                                : null);
+                if (total != null) {
+                        metaData.totalElements(total)
+                                        .totalPages((int) ((total + deviceSlice.getSize() - 1) / deviceSlice.getSize()));
+                }
+                return metaData.build();
+        }
+
         /**
          * Utils: Find device vy ID
          * 
@@ -1,9 +1,25 @@
 package com.idirtrack.backend.device;
 
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
 public enum DeviceStatus {
   INSTALLED,
   NON_INSTALLED,
   LOST,
-  PENDING
-}
+  PENDING;
 
+  // Lifecycle: NON_INSTALLED -> PENDING (in a boitier) -> INSTALLED (on a
+  // vehicle), and back to NON_INSTALLED or LOST when the boitier is removed
+  private static final Map<DeviceStatus, Set<DeviceStatus>> TRANSITIONS = Map.of(
+      NON_INSTALLED, EnumSet.of(PENDING, LOST),
+      PENDING, EnumSet.of(INSTALLED, NON_INSTALLED, LOST),
+      INSTALLED, EnumSet.of(PENDING, NON_INSTALLED, LOST),
+      LOST, EnumSet.of(NON_INSTALLED));
+
+  // Check if a device with this status can move to the target status
+  public boolean canMoveTo(DeviceStatus target) {
+    return TRANSITIONS.get(this).contains(target);
+  }
+}
@@ -0,0 +1,175 @@
+package com.idirtrack.backend.device;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.idirtrack.backend.utils.AfterCommit;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * In-memory device counts per status
+ *
+ * The counts are loaded with one GROUP BY query, then kept up to date by
+ * the DeviceService on create, delete and status change. A scheduled
+ * reconciliation reloads them from the database to correct any drift
+ * (changes made outside the service, rolled back transactions, other
+ * instances).
+ */
+@Component
+@RequiredArgsConstructor
+public class DeviceStatusCounter {
+
+        private final DeviceRepository deviceRepository;
+
+        private final Map<DeviceStatus, AtomicLong> counts = initCounts();
+        private volatile boolean loaded = false;
+
+        // Guards the counts set by a reconciliation and the changes recorded meanwhile
+        private final Object changes = new Object();
+        // Changes committed while a reconciliation runs, null otherwise
+        private Map<DeviceStatus, Long> pending;
+
+        private static final Logger logger = LoggerFactory.getLogger(DeviceStatusCounter.class);
+
+        /**
+         * Utils: Get the number of devices of each status
+         *
+         * @return a map with an entry for every status
+         */
+        public Map<DeviceStatus, Long> snapshot() {
+                this.ensureLoaded();
+                Map<DeviceStatus, Long> snapshot = new EnumMap<>(DeviceStatus.class);
+                counts.forEach((status, count) -> snapshot.put(status, count.get()));
+                return snapshot;
+        }
+
+        /**
+         * Utils: Get the number of devices with the given status
+         *
+         * @param status
+         * @return long
+         */
+        public long count(DeviceStatus status) {
+                this.ensureLoaded();
+                return counts.get(status).get();
+        }
+
+        /**
+         * Utils: Get the total number of devices
+         *
+         * @return long
+         */
+        public long total() {
+                this.ensureLoaded();
+                return counts.values().stream().mapToLong(AtomicLong::get).sum();
+        }
+
+        // Devices were added with the given status
+        public void added(DeviceStatus status, long quantity) {
+                AfterCommit.run(() -> this.apply(status, quantity));
+        }
+
+        // A device was removed
+        public void removed(DeviceStatus status) {
+                if (status == null) {
+                        return;
+                }
+                AfterCommit.run(() -> this.apply(status, -1));
+        }
+
+        // A device moved from one status to another
+        public void moved(DeviceStatus from, DeviceStatus to) {
+                this.moved(from, to, 1);
+        }
+
+        // Devices moved from one status to another
+        public void moved(DeviceStatus from, DeviceStatus to, long quantity) {
+                if (from == to || quantity == 0) {
+                        return;
+                }
+                AfterCommit.run(() -> {
+                        if (from != null) {
+                                this.apply(from, -quantity);
+                        }
+                        this.apply(to, quantity);
+                });
+        }
+
+        /**
+         * Reload the counts from the database with a single GROUP BY query
+         *
+         * The changes committed while the query runs are recorded, then
+         * applied on top of its result, so the counts set do not drop them.
+         */
+        @Scheduled(fixedDelayString = "${device.counters.reconcile-interval-ms:300000}", initialDelayString = "${device.counters.reconcile-interval-ms:300000}")
+        public synchronized void reconcile() {
+                synchronized (changes) {
+                        pending = new EnumMap<>(DeviceStatus.class);
+                }
+                try {
+                        Map<DeviceStatus, Long> fresh = new EnumMap<>(DeviceStatus.class);
+                        for (DeviceStatus status : DeviceStatus.values()) {
+                                fresh.put(status, 0L);
+                        }
+                        List<Object[]> rows = deviceRepository.countGroupByStatus();
+                        for (Object[] row : rows) {
+                                if (row[0] != null) {
+                                        fresh.put((DeviceStatus) row[0], ((Number) row[1]).longValue());
+                                }
+                        }
+
+                        synchronized (changes) {
+                                // Add the changes the query may have missed
+                                pending.forEach((status, delta) -> fresh.merge(status, delta, Long::sum));
+                                fresh.forEach((status, count) -> {
+                                        long previous = counts.get(status).getAndSet(count);
+                                        if (loaded && previous != count) {
+                                                logger.debug("Device counter {} corrected from {} to {}", status,
+                                                                previous, count);
+                                        }
+                                });
+                                loaded = true;
+                        }
+                } finally {
+                        synchronized (changes) {
+                                pending = null;
+                        }
+                }
+        }
+
+        // Load the counts on first use
+        private void ensureLoaded() {
+                if (!loaded) {
+                        this.reconcile();
+                }
+        }
+
+        // Apply a committed change, and record it for the reconciliation running
+        private void apply(DeviceStatus status, long delta) {
+                synchronized (changes) {
+                        if (loaded) {
+                                counts.get(status).addAndGet(delta);
+                        }
+                        // Recorded before the first load too, its query may miss the change
+                        if (pending != null) {
+                                pending.merge(status, delta, Long::sum);
+                        }
+                }
+        }
+
+        private static Map<DeviceStatus, AtomicLong> initCounts() {
+                Map<DeviceStatus, AtomicLong> counts = new EnumMap<>(DeviceStatus.class);
+                for (DeviceStatus status : DeviceStatus.values()) {
+                        counts.put(status, new AtomicLong());
+                }
+                return counts;
+        }
+}
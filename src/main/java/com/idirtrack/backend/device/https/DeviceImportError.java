@@ -0,0 +1,18 @@
+package com.idirtrack.backend.device.https;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DeviceImportError {
+
+    // Line number in the uploaded file (1-based)
+    private long line;
+    private String imei;
+    private String message;
+}
@@ -0,0 +1,32 @@
+package com.idirtrack.backend.device.https;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DeviceImportReport {
+
+    private long totalLines;
+    private long imported;
+    private long rejected;
+
+    @Builder.Default
+    private List<DeviceImportError> errors = new ArrayList<>();
+
+    public void reject(long line, String imei, String message) {
+        this.rejected++;
+        this.errors.add(DeviceImportError.builder()
+                .line(line)
+                .imei(imei)
+                .message(message)
+                .build());
+    }
+}
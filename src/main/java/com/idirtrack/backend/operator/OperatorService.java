@@ -14,6 +14,7 @@ import org.springframework.stereotype.Service;
 
 import com.idirtrack.backend.errors.AlreadyExistException;
 import com.idirtrack.backend.errors.NotFoundException;
+import com.idirtrack.backend.sim.SimStatisticsService;
 import com.idirtrack.backend.utils.ErrorResponse;
 import com.idirtrack.backend.utils.FieldErrorDTO;
 import com.idirtrack.backend.utils.MyResponse;
@@ -25,6 +26,7 @@ import lombok.RequiredArgsConstructor;
 public class OperatorService {
 
         private final OperatorRepository operatorRepository;
+        private final SimStatisticsService simStatisticsService;
 
         // Service to get list of operators with pagination
         public MyResponse getOperatorsWithPagination(int page, int size) {
@@ -41,13 +43,13 @@ public class OperatorService {
                                         .status(HttpStatus.OK)
                                         .build();
                 } else {
-                        // Map operators to DTOs
+                        // Map operators to DTOs, with the SIM counts of the cached matrix
+                        SimStatisticsService.Matrix simCounts = simStatisticsService.matrix();
                         List<OperatorDTO> operatorDTOs = operatorPage.getContent().stream()
                                         .map(operator -> OperatorDTO.builder()
                                                         .id(operator.getId())
                                                         .name(operator.getName())
-                                                        .totalSims((int) operatorRepository
-                                                                        .countSimsByOperatorId(operator.getId()))
+                                                        .totalSims((int) simCounts.countByOperator(operator.getId()))
                                                         .build())
                                         .collect(Collectors.toList());
 
@@ -0,0 +1,94 @@
+package com.idirtrack.backend.outbox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Encrypts the payload and the session of the outbox entries
+ *
+ * A user payload holds the password in clear, which Traccar checks at
+ * login, and the session is a live Traccar credential: both are stored
+ * encrypted with AES-GCM, under traccar.outbox.encryption-key (a base64
+ * 256-bit key). The key must survive the restarts, or the entries left
+ * unsent could no longer be read: the application does not start without
+ * a valid one.
+ */
+@Component
+public class OutboxCipher {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final int KEY_LENGTH = 32;
+
+    private final SecretKey key;
+    private final SecureRandom random = new SecureRandom();
+
+    public OutboxCipher(@Value("${traccar.outbox.encryption-key:}") String encodedKey) {
+        if (encodedKey == null || encodedKey.isBlank()) {
+            throw new IllegalStateException("traccar.outbox.encryption-key is not set (TRACCAR_OUTBOX_KEY)");
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(encodedKey.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("traccar.outbox.encryption-key is not valid base64", e);
+        }
+        if (bytes.length != KEY_LENGTH) {
+            throw new IllegalStateException("traccar.outbox.encryption-key must be a 256-bit key, not "
+                    + bytes.length * 8 + " bits");
+        }
+        this.key = new SecretKeySpec(bytes, "AES");
+    }
+
+    // Encrypt a value, null stays null
+    public String encrypt(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            byte[] encrypted = cipher.doFinal(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(ByteBuffer.allocate(iv.length + encrypted.length)
+                    .put(iv)
+                    .put(encrypted)
+                    .array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot encrypt the outbox entry", e);
+        }
+    }
+
+    /**
+     * Decrypt a value, null stays null
+     *
+     * @throws IllegalStateException if the value was encrypted with another key
+     */
+    public String decrypt(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            byte[] bytes = Base64.getDecoder().decode(value);
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, bytes, 0, IV_LENGTH));
+            return new String(cipher.doFinal(bytes, IV_LENGTH, bytes.length - IV_LENGTH), StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalStateException("Cannot decrypt the outbox entry: encrypted with another key", e);
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.idirtrack.backend.outbox;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.idirtrack.backend.utils.MyResponse;
+
+import lombok.RequiredArgsConstructor;
+
+@RestController
+@RequestMapping("/api/traccar/outbox")
+@RequiredArgsConstructor
+public class OutboxController {
+
+    private final OutboxService outboxService;
+
+    // Endpoint to list the Traccar calls that failed too many times
+    @GetMapping("/dead/")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<?> getDeadEntries(
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        MyResponse response = outboxService.getDeadEntries(page, size);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    // Endpoint to send a dead Traccar call again
+    @PostMapping("/{id}/retry/")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<?> retryDeadEntry(@PathVariable Long id,
+            @RequestHeader("Authorization") String authHeader) {
+        MyResponse response = outboxService.retryDeadEntry(id, authHeader);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+}
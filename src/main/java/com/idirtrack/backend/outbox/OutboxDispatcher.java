@@ -0,0 +1,261 @@
+package com.idirtrack.backend.outbox;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idirtrack.backend.boitier.BoitierRepository;
+import com.idirtrack.backend.traccar.TracCarFanOut;
+import com.idirtrack.backend.traccar.TracCarService;
+import com.idirtrack.backend.traccar.TracCarUser;
+import com.idirtrack.backend.traccar.TraccarSessionManager;
+import com.idirtrack.backend.traccar.TraccarUserService;
+import com.idirtrack.backend.traccar.request.TracCarDeviceRequest;
+import com.idirtrack.backend.user.UserRepository;
+import com.idirtrack.backend.utils.TraccarUtils;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Replays the outbox to Traccar
+ *
+ * Each poll takes the first unsent entry of each entity, when it is due,
+ * and sends them concurrently: the entries of one entity stay in order,
+ * and a dead entry holds back the later entries of its entity. A failed
+ * call is retried with an exponential backoff, up to max-attempts, then
+ * the entry is dead. The HTTP calls are made outside of any transaction.
+ *
+ * Only one instance of the application must run the dispatcher.
+ */
+@Service
+@RequiredArgsConstructor
+public class OutboxDispatcher {
+
+        private final OutboxRepository outboxRepository;
+        private final UserRepository userRepository;
+        private final BoitierRepository boitierRepository;
+        private final TraccarUserService traccarUserService;
+        private final TracCarService tracCarService;
+        private final TracCarFanOut tracCarFanOut;
+        private final TraccarUtils traccarUtils;
+        private final ObjectMapper objectMapper;
+        private final TransactionTemplate transactionTemplate;
+        private final OutboxCipher outboxCipher;
+        private final TraccarSessionManager traccarSessionManager;
+
+        @Value("${traccar.outbox.batch-size:50}")
+        private int batchSize;
+
+        @Value("${traccar.outbox.max-attempts:8}")
+        private int maxAttempts;
+
+        @Value("${traccar.outbox.initial-backoff-ms:2000}")
+        private long initialBackoffMs;
+
+        @Value("${traccar.outbox.max-backoff-ms:300000}")
+        private long maxBackoffMs;
+
+        @Value("${traccar.outbox.retention-days:7}")
+        private int retentionDays;
+
+        private static final Logger logger = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+        // Result of one call: the Traccar id, or the error
+        record Result(Long traccarId, String error, boolean retryable) {
+
+                static Result sent(Long traccarId) {
+                        return new Result(traccarId, null, false);
+                }
+
+                static Result failed(String error, boolean retryable) {
+                        return new Result(null, error, retryable);
+                }
+        }
+
+        /**
+         * Send the due entries, then record their results
+         */
+        @Scheduled(fixedDelayString = "${traccar.outbox.poll-interval-ms:1000}")
+        public void dispatch() {
+                List<OutboxEntry> heads = outboxRepository.findDueHeads(OutboxStatus.PENDING, OutboxStatus.SENT,
+                                LocalDateTime.now(), PageRequest.of(0, batchSize));
+                if (heads.isEmpty()) {
+                        return;
+                }
+                List<Result> results = tracCarFanOut.runAll(heads, this::send);
+                transactionTemplate.executeWithoutResult(status -> {
+                        for (int i = 0; i < heads.size(); i++) {
+                                Result result = results.get(i) != null ? results.get(i)
+                                                : Result.failed("Interrupted", true);
+                                this.record(heads.get(i), result);
+                        }
+                });
+        }
+
+        /**
+         * Delete the entries sent more than retention-days ago
+         */
+        @Scheduled(fixedDelayString = "${traccar.outbox.purge-interval-ms:3600000}")
+        @Transactional
+        public void purgeSent() {
+                int deleted = outboxRepository.deleteSentBefore(OutboxStatus.SENT,
+                                LocalDateTime.now().minusDays(retentionDays));
+                if (deleted > 0) {
+                        logger.debug("{} sent outbox entries purged", deleted);
+                }
+        }
+
+        // Make the Traccar call of an entry
+        Result send(OutboxEntry entry) {
+                OutboxOperation operation = entry.getOperation();
+                Long traccarId = operation.isCreation() ? null : this.resolveTraccarId(entry);
+                if (!operation.isCreation() && traccarId == null) {
+                        return Result.failed("No Traccar id: the entity was never created in Traccar", false);
+                }
+                // An entry that cannot be read now never will be: dead without a call
+                HttpHeaders headers;
+                Object payload;
+                try {
+                        headers = traccarUtils.createHeadersFromSession(this.sessionOf(entry));
+                        payload = this.read(entry);
+                } catch (IllegalStateException | JsonProcessingException e) {
+                        return Result.failed(e.getMessage(), false);
+                }
+                try {
+                        switch (operation) {
+                                case CREATE_USER -> {
+                                        return Result.sent(traccarUserService.createUser((TracCarUser) payload,
+                                                        headers));
+                                }
+                                case UPDATE_USER -> {
+                                        TracCarUser user = (TracCarUser) payload;
+                                        user.setId(traccarId);
+                                        traccarUserService.updateUser(traccarId, user, headers);
+                                        return Result.sent(traccarId);
+                                }
+                                case DELETE_USER -> {
+                                        traccarUserService.deleteUser(traccarId, headers);
+                                        return Result.sent(traccarId);
+                                }
+                                case CREATE_DEVICE -> {
+                                        Long created = tracCarService.createDevice((TracCarDeviceRequest) payload,
+                                                        headers);
+                                        return created != null ? Result.sent(created)
+                                                        : Result.failed("Traccar did not create the device", true);
+                                }
+                                case UPDATE_DEVICE -> {
+                                        Long updated = tracCarService.updateDevice((TracCarDeviceRequest) payload,
+                                                        headers, traccarId);
+                                        return updated != null ? Result.sent(traccarId)
+                                                        : Result.failed("Traccar did not update the device", true);
+                                }
+                                case DELETE_DEVICE -> {
+                                        return tracCarService.deleteDevice(traccarId, headers) ? Result.sent(traccarId)
+                                                        : Result.failed("Traccar did not delete the device", true);
+                                }
+                                default -> {
+                                        return Result.failed("Unknown operation " + operation, false);
+                                }
+                        }
+                } catch (Exception e) {
+                        return Result.failed(e.getMessage(), true);
+                }
+        }
+
+        // Target of an update or delete: known when it was recorded, returned by the creation sent
+        // before, or stored on the entity once that creation was purged
+        private Long resolveTraccarId(OutboxEntry entry) {
+                if (entry.getTraccarId() != null) {
+                        return entry.getTraccarId();
+                }
+                Optional<Long> created = outboxRepository.findCreatedTraccarIds(entry.getEntityType(),
+                                entry.getEntityId(), OutboxOperation.CREATIONS, OutboxStatus.SENT, PageRequest.of(0, 1))
+                                .stream()
+                                .findFirst();
+                if (created.isPresent()) {
+                        return created.get();
+                }
+                Optional<Long> stored = entry.getEntityType().equals(OutboxOperation.CREATE_USER.getEntityType())
+                                ? userRepository.findTraccarIdById(entry.getEntityId())
+                                : boitierRepository.findTraccarIdById(entry.getEntityId());
+                return stored.orElse(null);
+        }
+
+        // The live session of the user who recorded the entry, which follows the renewals and the next
+        // login after a restart, else the session recorded
+        private String sessionOf(OutboxEntry entry) {
+                String sessionId = entry.getUsername() != null ? traccarSessionManager.current(entry.getUsername())
+                                : null;
+                return sessionId != null ? sessionId : outboxCipher.decrypt(entry.getSessionId());
+        }
+
+        // Mark the entry sent, or schedule its next attempt
+        private void record(OutboxEntry entry, Result result) {
+                LocalDateTime now = LocalDateTime.now();
+                if (result.error() == null) {
+                        entry.setStatus(OutboxStatus.SENT);
+                        entry.setTraccarId(result.traccarId());
+                        entry.setSentAt(now);
+                        entry.setLastError(null);
+                        // The payload may hold a password, the session is no longer needed
+                        entry.setPayload(null);
+                        entry.setSessionId(null);
+                        if (entry.getOperation() == OutboxOperation.CREATE_USER) {
+                                userRepository.updateTraccarId(entry.getEntityId(), result.traccarId());
+                        } else if (entry.getOperation() == OutboxOperation.CREATE_DEVICE) {
+                                boitierRepository.updateTraccarId(entry.getEntityId(), result.traccarId());
+                        }
+                } else {
+                        entry.setAttempts(entry.getAttempts() + 1);
+                        entry.setLastError(this.truncate(result.error()));
+                        if (!result.retryable() || entry.getAttempts() >= maxAttempts) {
+                                entry.setStatus(OutboxStatus.DEAD);
+                                // A retry sends it with the session of the admin
+                                entry.setSessionId(null);
+                                logger.error("Outbox entry {} ({} of {} {}) is dead after {} attempts: {}",
+                                                entry.getId(), entry.getOperation(), entry.getEntityType(),
+                                                entry.getEntityId(), entry.getAttempts(), result.error());
+                        } else {
+                                entry.setNextAttemptAt(now.plusNanos(this.backoffMs(entry.getAttempts()) * 1_000_000));
+                                logger.warn("Outbox entry {} failed (attempt {}): {}", entry.getId(),
+                                                entry.getAttempts(), result.error());
+                        }
+                }
+                outboxRepository.save(entry);
+        }
+
+        // Delay before the next attempt: doubled after each failure, up to max-backoff-ms
+        long backoffMs(int attempts) {
+                return Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempts - 1, 20));
+        }
+
+        // Body of the call, null for a delete
+        private Object read(OutboxEntry entry) throws JsonProcessingException {
+                if (entry.getPayload() == null) {
+                        return null;
+                }
+                Class<?> type = entry.getEntityType().equals(OutboxOperation.CREATE_USER.getEntityType())
+                                ? TracCarUser.class
+                                : TracCarDeviceRequest.class;
+                return objectMapper.readValue(outboxCipher.decrypt(entry.getPayload()), type);
+        }
+
+        private String truncate(String error) {
+                if (error == null) {
+                        return "Unknown error";
+                }
+                return error.length() > 1000 ? error.substring(0, 1000) : error;
+        }
+}
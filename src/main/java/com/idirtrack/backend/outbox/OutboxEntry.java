@@ -0,0 +1,89 @@
+package com.idirtrack.backend.outbox;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * One Traccar call to make, recorded in the transaction of the local change
+ *
+ * The entries of an entity are sent in id order, one at a time. The payload
+ * is the JSON body of the call and the session is the Traccar session of
+ * the user who made the change; both are encrypted by OutboxCipher. Both
+ * are cleared once the call is sent, and the session once the entry is
+ * dead.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "traccar_outbox", indexes = {
+        @Index(name = "idx_traccar_outbox_status_next", columnList = "status, next_attempt_at"),
+        @Index(name = "idx_traccar_outbox_entity", columnList = "entity_type, entity_id, status")
+})
+public class OutboxEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private OutboxOperation operation;
+
+    @Column(name = "entity_type", nullable = false, length = 20)
+    private String entityType;
+
+    // Local id of the user or boitier
+    @Column(name = "entity_id", nullable = false)
+    private Long entityId;
+
+    // Target of an update or delete; result of a creation
+    @Column(name = "traccar_id")
+    private Long traccarId;
+
+    @ToString.Exclude
+    @Column(columnDefinition = "TEXT")
+    private String payload;
+
+    @ToString.Exclude
+    @Column(name = "session_id")
+    private String sessionId;
+
+    // Owner of the session: the entry is sent with their live session, if any
+    @Column(length = 100)
+    private String username;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private OutboxStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+}
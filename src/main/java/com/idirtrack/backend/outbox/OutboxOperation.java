@@ -0,0 +1,34 @@
+package com.idirtrack.backend.outbox;
+
+import java.util.List;
+
+/**
+ * Traccar calls recorded in the outbox
+ *
+ * The entity type groups the operations replayed in order: the users, and
+ * the boitiers (a Traccar device each).
+ */
+public enum OutboxOperation {
+    CREATE_USER("USER"),
+    UPDATE_USER("USER"),
+    DELETE_USER("USER"),
+    CREATE_DEVICE("BOITIER"),
+    UPDATE_DEVICE("BOITIER"),
+    DELETE_DEVICE("BOITIER");
+
+    public static final List<OutboxOperation> CREATIONS = List.of(CREATE_USER, CREATE_DEVICE);
+
+    private final String entityType;
+
+    OutboxOperation(String entityType) {
+        this.entityType = entityType;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public boolean isCreation() {
+        return CREATIONS.contains(this);
+    }
+}
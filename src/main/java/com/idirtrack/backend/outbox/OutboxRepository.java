@@ -0,0 +1,51 @@
+package com.idirtrack.backend.outbox;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface OutboxRepository extends JpaRepository<OutboxEntry, Long> {
+
+    // the due pending entries that are the first entry not sent of their entity
+    @Query("SELECT o FROM OutboxEntry o WHERE o.status = :pending AND o.nextAttemptAt <= :now "
+            + "AND o.id = (SELECT MIN(p.id) FROM OutboxEntry p WHERE p.entityType = o.entityType "
+            + "AND p.entityId = o.entityId AND p.status <> :sent) "
+            + "ORDER BY o.id")
+    List<OutboxEntry> findDueHeads(@Param("pending") OutboxStatus pending, @Param("sent") OutboxStatus sent,
+            @Param("now") LocalDateTime now, Pageable pageable);
+
+    // Traccar ids returned by the sent creations of an entity, latest first
+    @Query("SELECT o.traccarId FROM OutboxEntry o WHERE o.entityType = :entityType AND o.entityId = :entityId "
+            + "AND o.operation IN :creations AND o.status = :sent ORDER BY o.id DESC")
+    List<Long> findCreatedTraccarIds(@Param("entityType") String entityType, @Param("entityId") Long entityId,
+            @Param("creations") Collection<OutboxOperation> creations, @Param("sent") OutboxStatus sent,
+            Pageable pageable);
+
+    // entities of a type with an entry not sent yet
+    @Query("SELECT DISTINCT o.entityId FROM OutboxEntry o WHERE o.entityType = :entityType AND o.status <> :sent")
+    List<Long> findUnsentEntityIds(@Param("entityType") String entityType, @Param("sent") OutboxStatus sent);
+
+    // Traccar ids targeted by the entries of a type not sent yet
+    @Query("SELECT DISTINCT o.traccarId FROM OutboxEntry o WHERE o.entityType = :entityType "
+            + "AND o.status <> :sent AND o.traccarId IS NOT NULL")
+    List<Long> findUnsentTraccarIds(@Param("entityType") String entityType, @Param("sent") OutboxStatus sent);
+
+    boolean existsByEntityTypeAndEntityIdAndStatusNot(String entityType, Long entityId, OutboxStatus status);
+
+    Page<OutboxEntry> findByStatus(OutboxStatus status, Pageable pageable);
+
+    long countByStatus(OutboxStatus status);
+
+    @Modifying
+    @Query("DELETE FROM OutboxEntry o WHERE o.status = :sent AND o.sentAt < :before")
+    int deleteSentBefore(@Param("sent") OutboxStatus sent, @Param("before") LocalDateTime before);
+}
@@ -0,0 +1,162 @@
+package com.idirtrack.backend.outbox;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idirtrack.backend.errors.MyException;
+import com.idirtrack.backend.errors.NotFoundException;
+import com.idirtrack.backend.utils.ErrorResponse;
+import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.TraccarUtils;
+
+import lombok.RequiredArgsConstructor;
+
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+        private final OutboxRepository outboxRepository;
+        private final TraccarUtils traccarUtils;
+        private final ObjectMapper objectMapper;
+        private final OutboxCipher outboxCipher;
+
+        /**
+         * Service: Record a Traccar call, in the transaction of the local change
+         *
+         * The call is made by the OutboxDispatcher once the transaction has
+         * committed, with the live Traccar session of the current user, so the
+         * request no longer waits for Traccar and a rollback never reaches it.
+         * The payload and the session are stored encrypted by OutboxCipher.
+         *
+         * @param operation
+         * @param entityId    local id of the user or boitier
+         * @param traccarId   Traccar id of the updated or deleted entity, null
+         *                    if its creation is still in the outbox
+         * @param payload     body of the call, null for a delete
+         * @param bearerToken
+         */
+        @Transactional(propagation = Propagation.MANDATORY)
+        public void enqueue(OutboxOperation operation, Long entityId, Long traccarId, Object payload,
+                        String bearerToken) {
+                this.enqueueForSession(operation, entityId, traccarId, payload,
+                                traccarUtils.extractSession(bearerToken), traccarUtils.extractUsername(bearerToken));
+        }
+
+        /**
+         * Service: Record a Traccar call made with the given Traccar session,
+         * for the changes made without a user request
+         *
+         * @param operation
+         * @param entityId
+         * @param traccarId
+         * @param payload
+         * @param sessionId
+         * @param username  owner of the session in TraccarSessionManager
+         */
+        @Transactional(propagation = Propagation.MANDATORY)
+        public void enqueueForSession(OutboxOperation operation, Long entityId, Long traccarId, Object payload,
+                        String sessionId, String username) {
+                LocalDateTime now = LocalDateTime.now();
+                outboxRepository.save(OutboxEntry.builder()
+                                .operation(operation)
+                                .entityType(operation.getEntityType())
+                                .entityId(entityId)
+                                .traccarId(traccarId)
+                                .payload(payload != null ? outboxCipher.encrypt(this.toJson(payload)) : null)
+                                .sessionId(outboxCipher.encrypt(sessionId))
+                                .username(username)
+                                .status(OutboxStatus.PENDING)
+                                .attempts(0)
+                                .nextAttemptAt(now)
+                                .createdAt(now)
+                                .build());
+        }
+
+        /**
+         * Service: Get the dead entries, latest first
+         *
+         * @param page
+         * @param size
+         * @return MyResponse
+         */
+        public MyResponse getDeadEntries(int page, int size) {
+                Page<OutboxEntry> entries = outboxRepository.findByStatus(OutboxStatus.DEAD,
+                                PageRequest.of(page - 1, size, Sort.by("id").descending()));
+                List<Map<String, Object>> data = entries.getContent().stream()
+                                .map(entry -> Map.<String, Object>of(
+                                                "id", entry.getId(),
+                                                "operation", entry.getOperation(),
+                                                "entityId", entry.getEntityId(),
+                                                "attempts", entry.getAttempts(),
+                                                "lastError", String.valueOf(entry.getLastError()),
+                                                "createdAt", entry.getCreatedAt()))
+                                .collect(Collectors.toList());
+                Map<String, Object> metadata = Map.of(
+                                "currentPage", entries.getNumber() + 1,
+                                "totalPages", entries.getTotalPages(),
+                                "size", entries.getSize(),
+                                "pending", outboxRepository.countByStatus(OutboxStatus.PENDING));
+                return MyResponse.builder()
+                                .data(data)
+                                .metadata(metadata)
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
+        /**
+         * Service: Send a dead entry again, with the session of the current user
+         *
+         * The later entries of the same entity, held back meanwhile, follow it.
+         *
+         * @param id
+         * @param bearerToken
+         * @return MyResponse
+         * @throws NotFoundException if the entry does not exist
+         * @throws MyException       409 if the entry is not dead
+         */
+        @Transactional
+        public MyResponse retryDeadEntry(Long id, String bearerToken) throws NotFoundException, MyException {
+                OutboxEntry entry = outboxRepository.findById(id)
+                                .orElseThrow(() -> new NotFoundException(ErrorResponse.builder()
+                                                .message("Outbox entry not found with id: " + id)
+                                                .status(HttpStatus.NOT_FOUND)
+                                                .build()));
+                if (entry.getStatus() != OutboxStatus.DEAD) {
+                        throw new MyException(ErrorResponse.builder()
+                                        .message("Only a dead entry can be retried, this one is " + entry.getStatus())
+                                        .status(HttpStatus.CONFLICT)
+                                        .build());
+                }
+                entry.setStatus(OutboxStatus.PENDING);
+                entry.setAttempts(0);
+                entry.setNextAttemptAt(LocalDateTime.now());
+                // The session of the original user has likely expired
+                entry.setSessionId(outboxCipher.encrypt(traccarUtils.extractSession(bearerToken)));
+                entry.setUsername(traccarUtils.extractUsername(bearerToken));
+                outboxRepository.save(entry);
+                return MyResponse.builder()
+                                .message("Outbox entry scheduled again")
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
+        private String toJson(Object payload) {
+                try {
+                        return objectMapper.writeValueAsString(payload);
+                } catch (JsonProcessingException e) {
+                        throw new IllegalArgumentException("Cannot serialize the Traccar payload", e);
+                }
+        }
+}
@@ -0,0 +1,10 @@
+package com.idirtrack.backend.outbox;
+
+public enum OutboxStatus {
+    // Waiting to be sent, or to be retried
+    PENDING,
+    // Applied in Traccar
+    SENT,
+    // Failed too many times, left for an admin to retry
+    DEAD
+}
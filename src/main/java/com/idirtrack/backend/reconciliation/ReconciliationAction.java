@@ -0,0 +1,30 @@
+package com.idirtrack.backend.reconciliation;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReconciliationAction {
+    private ReconciliationActionType type;
+    // IMEI of the boitier, or email of the user
+    private String key;
+    // Id of the boitier or the user, null for an orphan
+    private Long localId;
+    private Long traccarId;
+    private String detail;
+    // null in a dry run or for a reported action, then whether the fix was stored or
+    // recorded in the outbox, or the orphan deleted
+    private Boolean applied;
+    private String error;
+
+    // Body of the Traccar call
+    @JsonIgnore
+    private Object body;
+}
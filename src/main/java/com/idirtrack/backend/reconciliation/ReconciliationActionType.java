@@ -0,0 +1,34 @@
+package com.idirtrack.backend.reconciliation;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+public enum ReconciliationActionType {
+    // The boitier is installed but Traccar has no device for it
+    CREATE_DEVICE,
+    // The device of Traccar differs from the boitier
+    UPDATE_DEVICE,
+    // Traccar has a device for no boitier, deleted as delete-orphans is on
+    DELETE_DEVICE,
+    // The boitier does not store the id of its Traccar device
+    LINK_DEVICE,
+    // Traccar has a device for no boitier, only reported
+    ORPHAN_DEVICE,
+    // The user of Traccar differs from the local user
+    UPDATE_USER,
+    // Traccar has a user with no local user, deleted as delete-orphans is on
+    DELETE_USER,
+    // The local user does not store the id of its Traccar user
+    LINK_USER,
+    // Traccar has a user with no local user, only reported
+    ORPHAN_USER,
+    // Traccar has no user for the local user: it cannot be created without its password
+    MISSING_USER;
+
+    // The actions fixed by a Traccar call
+    public static final Set<ReconciliationActionType> TRACCAR_CALLS = EnumSet.of(CREATE_DEVICE, UPDATE_DEVICE,
+            DELETE_DEVICE, UPDATE_USER, DELETE_USER);
+
+    // The actions fixed in our tables
+    public static final Set<ReconciliationActionType> LOCAL_FIXES = EnumSet.of(LINK_DEVICE, LINK_USER);
+}
@@ -0,0 +1,28 @@
+package com.idirtrack.backend.reconciliation;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.idirtrack.backend.utils.MyResponse;
+
+import lombok.RequiredArgsConstructor;
+
+@RestController
+@RequestMapping("/api/traccar/reconciliation")
+@RequiredArgsConstructor
+public class ReconciliationController {
+
+    private final TraccarReconciler traccarReconciler;
+
+    // Endpoint to report the differences between Traccar and our tables, without fixing them
+    @GetMapping("/dry-run/")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<?> dryRun(@RequestHeader("Authorization") String authHeader) {
+        MyResponse response = traccarReconciler.dryRun(authHeader);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+}
@@ -0,0 +1,28 @@
+package com.idirtrack.backend.reconciliation;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReconciliationReport {
+    private boolean dryRun;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private int traccarDevices;
+    private int installedBoitiers;
+    private int traccarUsers;
+    private int localUsers;
+    // Boitiers and users left out as the outbox has calls for them not sent yet
+    private int skipped;
+    private List<ReconciliationAction> actions;
+    private int applied;
+    private int failed;
+}
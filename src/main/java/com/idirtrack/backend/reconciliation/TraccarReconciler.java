@@ -0,0 +1,566 @@
+package com.idirtrack.backend.reconciliation;
+
+import java.sql.Date;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.idirtrack.backend.boitier.BoitierRepository;
+import com.idirtrack.backend.errors.MyException;
+import com.idirtrack.backend.outbox.OutboxOperation;
+import com.idirtrack.backend.outbox.OutboxRepository;
+import com.idirtrack.backend.outbox.OutboxService;
+import com.idirtrack.backend.outbox.OutboxStatus;
+import com.idirtrack.backend.traccar.TracCarFanOut;
+import com.idirtrack.backend.traccar.TracCarService;
+import com.idirtrack.backend.traccar.TracCarUser;
+import com.idirtrack.backend.traccar.TraccarSessionManager;
+import com.idirtrack.backend.traccar.TraccarUserService;
+import com.idirtrack.backend.traccar.dto.TracCarDeviceInfo;
+import com.idirtrack.backend.traccar.dto.TracCarUserInfo;
+import com.idirtrack.backend.traccar.request.TracCarDeviceRequest;
+import com.idirtrack.backend.user.UserDTO;
+import com.idirtrack.backend.user.UserRepository;
+import com.idirtrack.backend.user.UserRole;
+import com.idirtrack.backend.utils.ErrorResponse;
+import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.TraccarUtils;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reconciles the devices and users of Traccar with our boitiers and users
+ *
+ * A Traccar call that failed leaves a Traccar entity, or the traccarId of
+ * a boitier or a user, out of date. The reconciler lists the devices and
+ * users of Traccar, pages through the installed boitiers and the users,
+ * and joins them in hash maps on the IMEI (uniqueId) and the email, then
+ * on the stored Traccar id for the ones whose key changed.
+ *
+ * The fixes of our boitiers and users go through the outbox, so they are
+ * sent in order with the other changes of the same entity; the Traccar
+ * ids are stored in our tables. The boitiers and users with outbox entries
+ * not sent yet are left out: their changes are on their way to Traccar.
+ * This is checked again in the transaction recording each fix, as a change
+ * made since the diff is newer than the fix. The orphans of Traccar are
+ * deleted directly, in batches, only when traccar.reconcile.delete-orphans
+ * is on, and Traccar administrators never.
+ */
+@Service
+@RequiredArgsConstructor
+public class TraccarReconciler {
+
+        private final BoitierRepository boitierRepository;
+        private final UserRepository userRepository;
+        private final OutboxRepository outboxRepository;
+        private final OutboxService outboxService;
+        private final TracCarService tracCarService;
+        private final TraccarUserService traccarUserService;
+        private final TraccarSessionManager traccarSessionManager;
+        private final TracCarFanOut tracCarFanOut;
+        private final TraccarUtils traccarUtils;
+        private final TransactionTemplate transactionTemplate;
+
+        @Value("${traccar.reconcile.page-size:500}")
+        private int pageSize;
+
+        @Value("${traccar.reconcile.batch-size:50}")
+        private int batchSize;
+
+        @Value("${traccar.reconcile.delete-orphans:false}")
+        private boolean deleteOrphans;
+
+        @Value("${traccar.reconcile.email:}")
+        private String email;
+
+        @Value("${traccar.reconcile.password:}")
+        private String password;
+
+        private static final Logger logger = LoggerFactory.getLogger(TraccarReconciler.class);
+
+        // An installed boitier, with the fields of its Traccar device
+        record DeviceRow(Long boitierId, Long traccarId, String imei, String phone, String matricule, Date endDate) {
+        }
+
+        // A user, with the fields of its Traccar user
+        record UserRow(Long userId, Long traccarId, String email, String name, String phone, UserRole role) {
+        }
+
+        /**
+         * Reconcile with the Traccar account of traccar.reconcile.email, if set
+         */
+        @Scheduled(fixedDelayString = "${traccar.reconcile.interval-ms:86400000}", initialDelayString = "${traccar.reconcile.interval-ms:86400000}")
+        public void scheduledReconcile() {
+                if (email == null || email.isBlank()) {
+                        logger.debug("Traccar reconciliation skipped: traccar.reconcile.email is not set");
+                        return;
+                }
+                try {
+                        String session = traccarSessionManager.acquire(email, email, password);
+                        if (session == null) {
+                                logger.error("Traccar reconciliation skipped: no Traccar session for {}", email);
+                                return;
+                        }
+                        ReconciliationReport report = this.reconcile(session, false);
+                        logger.info("Traccar reconciliation: {} differences, {} fixed, {} failed, {} skipped",
+                                        report.getActions().size(), report.getApplied(), report.getFailed(),
+                                        report.getSkipped());
+                } catch (Exception e) {
+                        logger.error("Traccar reconciliation failed: {}", this.errorOf(e));
+                }
+        }
+
+        /**
+         * Service: Report the differences between Traccar and our tables,
+         * without fixing them
+         *
+         * @param bearerToken
+         * @return MyResponse
+         * @throws MyException if Traccar cannot list its devices or users
+         */
+        public MyResponse dryRun(String bearerToken) throws MyException {
+                ReconciliationReport report = this.reconcile(traccarUtils.extractSession(bearerToken), true);
+                return MyResponse.builder()
+                                .data(report)
+                                .message(report.getActions().size() + " differences with Traccar")
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
+        /**
+         * Service: Reconcile Traccar with our tables
+         *
+         * @param sessionId Traccar session making the calls, of traccar.reconcile.email
+         *                  when the fixes are recorded
+         * @param dryRun    only report the differences
+         * @return the differences, and whether their fixes were recorded
+         * @throws MyException if Traccar cannot list its devices or users
+         */
+        public ReconciliationReport reconcile(String sessionId, boolean dryRun) throws MyException {
+                HttpHeaders headers = traccarUtils.createHeadersFromSession(sessionId);
+                ReconciliationReport report = ReconciliationReport.builder()
+                                .dryRun(dryRun)
+                                .startedAt(LocalDateTime.now())
+                                .build();
+                // List Traccar first: an entity created meanwhile is then in our tables, or in the outbox
+                List<TracCarDeviceInfo> devices = tracCarService.getDevices(headers);
+                if (devices == null) {
+                        throw new MyException(ErrorResponse.builder()
+                                        .message("Failed to get devices from Traccar")
+                                        .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                        .build());
+                }
+                List<TracCarUserInfo> users = traccarUserService.getUsers(headers);
+
+                List<ReconciliationAction> actions = new ArrayList<>();
+                actions.addAll(this.diffDevices(devices, report));
+                actions.addAll(this.diffUsers(users, report));
+                report.setActions(actions);
+
+                if (!dryRun) {
+                        this.apply(actions, sessionId, headers);
+                        report.setApplied((int) actions.stream()
+                                        .filter(action -> Boolean.TRUE.equals(action.getApplied())).count());
+                        report.setFailed((int) actions.stream()
+                                        .filter(action -> Boolean.FALSE.equals(action.getApplied())).count());
+                }
+                report.setFinishedAt(LocalDateTime.now());
+                return report;
+        }
+
+        // Differences between the devices of Traccar and the installed boitiers
+        List<ReconciliationAction> diffDevices(List<TracCarDeviceInfo> devices, ReconciliationReport report) {
+                Set<Long> pendingBoitiers = new HashSet<>(
+                                outboxRepository.findUnsentEntityIds("BOITIER", OutboxStatus.SENT));
+                // The devices targeted by the outbox are not orphans
+                Set<Long> matched = new HashSet<>(outboxRepository.findUnsentTraccarIds("BOITIER", OutboxStatus.SENT));
+
+                // Hash the devices of Traccar on their uniqueId and their id
+                Map<String, TracCarDeviceInfo> byUniqueId = new HashMap<>(devices.size() * 2);
+                Map<Long, TracCarDeviceInfo> byId = new HashMap<>(devices.size() * 2);
+                for (TracCarDeviceInfo device : devices) {
+                        if (device.getUniqueId() != null) {
+                                byUniqueId.put(device.getUniqueId(), device);
+                        }
+                        byId.put(device.getId(), device);
+                }
+
+                List<DeviceRow> rows = this.loadRows(this::findInstalledRows, DeviceRow::boitierId);
+                report.setTraccarDevices(devices.size());
+                report.setInstalledBoitiers(rows.size());
+
+                List<ReconciliationAction> actions = new ArrayList<>();
+                List<DeviceRow> unmatched = new ArrayList<>();
+                // Join on the IMEI
+                for (DeviceRow row : rows) {
+                        TracCarDeviceInfo device = byUniqueId.get(row.imei());
+                        if (pendingBoitiers.contains(row.boitierId())) {
+                                report.setSkipped(report.getSkipped() + 1);
+                                if (device != null) {
+                                        matched.add(device.getId());
+                                }
+                                if (row.traccarId() != null) {
+                                        matched.add(row.traccarId());
+                                }
+                        } else if (device != null) {
+                                matched.add(device.getId());
+                                this.compareDevice(row, device, actions);
+                        } else {
+                                unmatched.add(row);
+                        }
+                }
+                // Join the others on their stored Traccar id: their IMEI changed
+                for (DeviceRow row : unmatched) {
+                        TracCarDeviceInfo device = row.traccarId() != null ? byId.get(row.traccarId()) : null;
+                        if (device != null && matched.add(device.getId())) {
+                                this.compareDevice(row, device, actions);
+                        } else {
+                                actions.add(ReconciliationAction.builder()
+                                                .type(ReconciliationActionType.CREATE_DEVICE)
+                                                .key(row.imei())
+                                                .localId(row.boitierId())
+                                                .detail("No Traccar device with this IMEI")
+                                                .body(this.buildDevice(row))
+                                                .build());
+                        }
+                }
+                // The devices of no boitier
+                for (TracCarDeviceInfo device : devices) {
+                        if (!matched.contains(device.getId())) {
+                                actions.add(ReconciliationAction.builder()
+                                                .type(deleteOrphans ? ReconciliationActionType.DELETE_DEVICE
+                                                                : ReconciliationActionType.ORPHAN_DEVICE)
+                                                .key(device.getUniqueId())
+                                                .traccarId(device.getId())
+                                                .detail("No installed boitier with this IMEI")
+                                                .build());
+                        }
+                }
+                return actions;
+        }
+
+        // Differences between the users of Traccar and ours
+        List<ReconciliationAction> diffUsers(List<TracCarUserInfo> users, ReconciliationReport report) {
+                Set<Long> pendingUsers = new HashSet<>(outboxRepository.findUnsentEntityIds("USER", OutboxStatus.SENT));
+                // The users targeted by the outbox are not orphans
+                Set<Long> matched = new HashSet<>(outboxRepository.findUnsentTraccarIds("USER", OutboxStatus.SENT));
+
+                // Hash the users of Traccar on their email and their id
+                Map<String, TracCarUserInfo> byEmail = new HashMap<>(users.size() * 2);
+                Map<Long, TracCarUserInfo> byId = new HashMap<>(users.size() * 2);
+                for (TracCarUserInfo user : users) {
+                        if (user.getEmail() != null) {
+                                byEmail.put(this.emailKey(user.getEmail()), user);
+                        }
+                        byId.put(user.getId(), user);
+                }
+
+                List<UserRow> rows = this.loadRows(this::findUserRows, UserRow::userId);
+                report.setTraccarUsers(users.size());
+                report.setLocalUsers(rows.size());
+
+                List<ReconciliationAction> actions = new ArrayList<>();
+                List<UserRow> unmatched = new ArrayList<>();
+                // Join on the email
+                for (UserRow row : rows) {
+                        TracCarUserInfo user = row.email() != null ? byEmail.get(this.emailKey(row.email())) : null;
+                        if (pendingUsers.contains(row.userId())) {
+                                report.setSkipped(report.getSkipped() + 1);
+                                if (user != null) {
+                                        matched.add(user.getId());
+                                }
+                                if (row.traccarId() != null) {
+                                        matched.add(row.traccarId());
+                                }
+                        } else if (user != null) {
+                                matched.add(user.getId());
+                                this.compareUser(row, user, actions);
+                        } else {
+                                unmatched.add(row);
+                        }
+                }
+                // Join the others on their stored Traccar id: their email changed
+                for (UserRow row : unmatched) {
+                        TracCarUserInfo user = row.traccarId() != null ? byId.get(row.traccarId()) : null;
+                        if (user != null && matched.add(user.getId())) {
+                                this.compareUser(row, user, actions);
+                        } else {
+                                actions.add(ReconciliationAction.builder()
+                                                .type(ReconciliationActionType.MISSING_USER)
+                                                .key(row.email())
+                                                .localId(row.userId())
+                                                .detail("No Traccar user with this email: set the password of the user again")
+                                                .build());
+                        }
+                }
+                // The users of no local user, but the administrators of Traccar
+                for (TracCarUserInfo user : users) {
+                        if (!matched.contains(user.getId()) && !user.isAdministrator()
+                                        && !this.emailKey(email).equals(this.emailKey(user.getEmail()))) {
+                                actions.add(ReconciliationAction.builder()
+                                                .type(deleteOrphans ? ReconciliationActionType.DELETE_USER
+                                                                : ReconciliationActionType.ORPHAN_USER)
+                                                .key(user.getEmail())
+                                                .traccarId(user.getId())
+                                                .detail("No local user with this email")
+                                                .build());
+                        }
+                }
+                return actions;
+        }
+
+        // Link the boitier to its device, and update the device if it differs
+        private void compareDevice(DeviceRow row, TracCarDeviceInfo device, List<ReconciliationAction> actions) {
+                if (!Objects.equals(row.traccarId(), device.getId())) {
+                        actions.add(ReconciliationAction.builder()
+                                        .type(ReconciliationActionType.LINK_DEVICE)
+                                        .key(row.imei())
+                                        .localId(row.boitierId())
+                                        .traccarId(device.getId())
+                                        .detail("Stored Traccar id: " + row.traccarId())
+                                        .build());
+                }
+                List<String> changes = new ArrayList<>();
+                if (!Objects.equals(row.matricule(), device.getName())) {
+                        changes.add("name");
+                }
+                if (!Objects.equals(row.imei(), device.getUniqueId())) {
+                        changes.add("uniqueId");
+                }
+                if (!Objects.equals(row.phone(), device.getPhone())) {
+                        changes.add("phone");
+                }
+                // Traccar returns a date-time, we send a date
+                String endDate = row.endDate() != null ? row.endDate().toString() : null;
+                String expiration = device.getExpirationTime() != null && device.getExpirationTime().length() >= 10
+                                ? device.getExpirationTime().substring(0, 10)
+                                : null;
+                if (!Objects.equals(endDate, expiration)) {
+                        changes.add("expirationTime");
+                }
+                if (!changes.isEmpty()) {
+                        actions.add(ReconciliationAction.builder()
+                                        .type(ReconciliationActionType.UPDATE_DEVICE)
+                                        .key(row.imei())
+                                        .localId(row.boitierId())
+                                        .traccarId(device.getId())
+                                        .detail("Differs on " + String.join(", ", changes))
+                                        .body(this.buildDevice(row))
+                                        .build());
+                }
+        }
+
+        // Link the user to its Traccar user, and update the Traccar user if it differs
+        private void compareUser(UserRow row, TracCarUserInfo user, List<ReconciliationAction> actions) {
+                if (!Objects.equals(row.traccarId(), user.getId())) {
+                        actions.add(ReconciliationAction.builder()
+                                        .type(ReconciliationActionType.LINK_USER)
+                                        .key(row.email())
+                                        .localId(row.userId())
+                                        .traccarId(user.getId())
+                                        .detail("Stored Traccar id: " + row.traccarId())
+                                        .build());
+                }
+                List<String> changes = new ArrayList<>();
+                if (!Objects.equals(row.name(), user.getName())) {
+                        changes.add("name");
+                }
+                if (!this.emailKey(row.email()).equals(this.emailKey(user.getEmail()))) {
+                        changes.add("email");
+                }
+                if (!Objects.equals(row.phone(), user.getPhone())) {
+                        changes.add("phone");
+                }
+                if (!changes.isEmpty()) {
+                        actions.add(ReconciliationAction.builder()
+                                        .type(ReconciliationActionType.UPDATE_USER)
+                                        .key(row.email())
+                                        .localId(row.userId())
+                                        .traccarId(user.getId())
+                                        .detail("Differs on " + String.join(", ", changes))
+                                        .body(this.buildUser(row, user.getId()))
+                                        .build());
+                }
+        }
+
+        // Fix the differences: ours through the outbox, then the orphans of Traccar directly, in batches
+        private void apply(List<ReconciliationAction> actions, String sessionId, HttpHeaders headers) {
+                List<ReconciliationAction> fixes = actions.stream()
+                                .filter(action -> ReconciliationActionType.LOCAL_FIXES.contains(action.getType())
+                                                || ReconciliationActionType.TRACCAR_CALLS.contains(action.getType())
+                                                                && action.getLocalId() != null)
+                                .toList();
+                for (int from = 0; from < fixes.size(); from += batchSize) {
+                        List<ReconciliationAction> batch = fixes.subList(from, Math.min(from + batchSize, fixes.size()));
+                        try {
+                                transactionTemplate.executeWithoutResult(
+                                                status -> batch.forEach(action -> this.fix(action, sessionId)));
+                        } catch (Exception e) {
+                                batch.forEach(action -> this.failed(action, "Not recorded: " + this.errorOf(e)));
+                        }
+                }
+
+                List<ReconciliationAction> orphans = actions.stream()
+                                .filter(action -> ReconciliationActionType.TRACCAR_CALLS.contains(action.getType())
+                                                && action.getLocalId() == null)
+                                .toList();
+                for (int from = 0; from < orphans.size(); from += batchSize) {
+                        List<ReconciliationAction> batch = orphans.subList(from,
+                                        Math.min(from + batchSize, orphans.size()));
+                        // An entity created since the diff may own the orphan now
+                        Set<Long> devices = new HashSet<>(
+                                        outboxRepository.findUnsentTraccarIds("BOITIER", OutboxStatus.SENT));
+                        Set<Long> users = new HashSet<>(outboxRepository.findUnsentTraccarIds("USER", OutboxStatus.SENT));
+                        List<Boolean> results = tracCarFanOut.runAll(batch, action -> {
+                                Set<Long> targeted = action.getType() == ReconciliationActionType.DELETE_DEVICE
+                                                ? devices
+                                                : users;
+                                if (targeted.contains(action.getTraccarId())) {
+                                        return this.failed(action, "Targeted by the outbox since the diff");
+                                }
+                                return this.send(action, headers);
+                        });
+                        for (int i = 0; i < batch.size(); i++) {
+                                ReconciliationAction action = batch.get(i);
+                                action.setApplied(Boolean.TRUE.equals(results.get(i)));
+                                if (!action.getApplied() && action.getError() == null) {
+                                        action.setError("Interrupted");
+                                }
+                        }
+                }
+        }
+
+        // Record the fix of a boitier or a user, in the transaction of its batch
+        private void fix(ReconciliationAction action, String sessionId) {
+                boolean device = action.getType() == ReconciliationActionType.LINK_DEVICE
+                                || action.getType() == ReconciliationActionType.CREATE_DEVICE
+                                || action.getType() == ReconciliationActionType.UPDATE_DEVICE;
+                if (outboxRepository.existsByEntityTypeAndEntityIdAndStatusNot(device ? "BOITIER" : "USER",
+                                action.getLocalId(), OutboxStatus.SENT)) {
+                        // Changed since the diff: the outbox sends the newer values
+                        this.failed(action, "Changed since the diff, left to the outbox");
+                        return;
+                }
+                switch (action.getType()) {
+                        case LINK_DEVICE -> boitierRepository.updateTraccarId(action.getLocalId(), action.getTraccarId());
+                        case LINK_USER -> userRepository.updateTraccarId(action.getLocalId(), action.getTraccarId());
+                        case CREATE_DEVICE -> outboxService.enqueueForSession(OutboxOperation.CREATE_DEVICE,
+                                        action.getLocalId(), null, action.getBody(), sessionId, email);
+                        case UPDATE_DEVICE -> outboxService.enqueueForSession(OutboxOperation.UPDATE_DEVICE,
+                                        action.getLocalId(), action.getTraccarId(), action.getBody(), sessionId, email);
+                        case UPDATE_USER -> outboxService.enqueueForSession(OutboxOperation.UPDATE_USER,
+                                        action.getLocalId(), action.getTraccarId(), action.getBody(), sessionId, email);
+                        default -> {
+                                this.failed(action, "Not a fix of a boitier or a user");
+                                return;
+                        }
+                }
+                action.setApplied(true);
+        }
+
+        // Delete an orphan of Traccar
+        Boolean send(ReconciliationAction action, HttpHeaders headers) {
+                try {
+                        switch (action.getType()) {
+                                case DELETE_DEVICE -> {
+                                        if (!tracCarService.deleteDevice(action.getTraccarId(), headers)) {
+                                                return this.failed(action, "Traccar did not delete the device");
+                                        }
+                                }
+                                case DELETE_USER -> traccarUserService.deleteUser(action.getTraccarId(), headers);
+                                default -> {
+                                        return this.failed(action, "Not an orphan of Traccar");
+                                }
+                        }
+                        return true;
+                } catch (Exception e) {
+                        return this.failed(action, this.errorOf(e));
+                }
+        }
+
+        // Page through a table with a cursor on the id
+        private <T> List<T> loadRows(Function<Long, List<T>> page, Function<T, Long> idOf) {
+                List<T> rows = new ArrayList<>();
+                Long afterId = 0L;
+                List<T> current;
+                do {
+                        current = page.apply(afterId);
+                        rows.addAll(current);
+                        if (!current.isEmpty()) {
+                                afterId = idOf.apply(current.get(current.size() - 1));
+                        }
+                } while (current.size() == pageSize);
+                return rows;
+        }
+
+        private List<DeviceRow> findInstalledRows(Long afterId) {
+                return boitierRepository.findInstalledRowsAfter(afterId, PageRequest.of(0, pageSize)).stream()
+                                .map(row -> new DeviceRow((Long) row[0], (Long) row[1], (String) row[2],
+                                                (String) row[3], (String) row[4], (Date) row[5]))
+                                .toList();
+        }
+
+        private List<UserRow> findUserRows(Long afterId) {
+                return userRepository.findSyncRowsAfter(afterId, PageRequest.of(0, pageSize)).stream()
+                                .map(row -> new UserRow((Long) row[0], (Long) row[1], (String) row[2],
+                                                (String) row[3], (String) row[4], (UserRole) row[5]))
+                                .toList();
+        }
+
+        // The Traccar device of an installed boitier, as VehicleService builds it
+        private TracCarDeviceRequest buildDevice(DeviceRow row) {
+                return TracCarDeviceRequest.builder()
+                                .name(row.matricule())
+                                .uniqueId(row.imei())
+                                .phone(row.phone())
+                                .expirationTime(row.endDate())
+                                .build();
+        }
+
+        // The Traccar user of a user, as UserService builds it for an update, keeping the password
+        private TracCarUser buildUser(UserRow row, Long traccarId) {
+                TracCarUser user = TracCarUser.buildForUpdate(UserDTO.builder()
+                                .name(row.name())
+                                .email(row.email())
+                                .phone(row.phone())
+                                .role(row.role())
+                                .traccarId(traccarId)
+                                .build());
+                user.setId(traccarId);
+                return user;
+        }
+
+        private String emailKey(String email) {
+                return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+        }
+
+        private Boolean failed(ReconciliationAction action, String error) {
+                action.setApplied(false);
+                action.setError(error);
+                return false;
+        }
+
+        private String errorOf(Exception e) {
+                if (e instanceof MyException myException && myException.getResponse() != null) {
+                        return myException.getResponse().getMessage();
+                }
+                return e.getMessage();
+        }
+}
@@ -72,6 +72,8 @@ public class SecurityConfig {
                     .requestMatchers("/api/vehicles/**").hasAnyAuthority("ADMIN", "MANAGER")
                     // Endpoint to manage subscriptions
                     .requestMatchers("/api/v1/subscriptions/**").hasAnyAuthority("ADMIN", "MANAGER")
+                    // Endpoints to follow the synchronization with Traccar
+                    .requestMatchers("/api/traccar/**").hasAuthority("ADMIN")
                   
 
                     .anyRequest().authenticated();
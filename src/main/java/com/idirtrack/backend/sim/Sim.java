@@ -7,6 +7,7 @@ import com.idirtrack.backend.utils.BasicEntity;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 
@@ -14,6 +15,8 @@ import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import jakarta.persistence.Version;
 
 
 import lombok.AllArgsConstructor;
@@ -28,16 +31,23 @@ import lombok.experimental.SuperBuilder;
 @SuperBuilder
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "sim")
+@EntityListeners(SimIndexListener.class)
+@Table(name = "sim", uniqueConstraints = {
+        @UniqueConstraint(name = Sim.UK_CCID, columnNames = "ccid"),
+        @UniqueConstraint(name = Sim.UK_PHONE, columnNames = "phone")
+})
 public class Sim extends BasicEntity {
 
+    public static final String UK_CCID = "uk_sim_ccid";
+    public static final String UK_PHONE = "uk_sim_phone";
+
     @Column(name = "pin", nullable = false)
     private String pin;
 
     @Column(name = "puk", nullable = false)
     private String puk;
 
-    @Column(name = "ccid", nullable = false, unique = true)
+    @Column(name = "ccid", nullable = false)
     private String ccid;
 
     @ManyToOne
@@ -51,6 +61,11 @@ public class Sim extends BasicEntity {
     @Column(name = "status", nullable = false)
     private SimStatus status;
 
+    // Optimistic lock: existing rows start at 0
+    @Version
+    @Column(name = "version", columnDefinition = "bigint not null default 0")
+    private Long version;
+
     @OneToOne(mappedBy = "sim")
     private Boitier boitier;
 
@@ -1,7 +1,10 @@
 package com.idirtrack.backend.sim;
 
+import java.io.InputStream;
+
 import org.springframework.beans.factory.annotation.Autowired;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -10,6 +13,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -21,6 +25,7 @@ import com.idirtrack.backend.errors.NotFoundException;
 import com.idirtrack.backend.sim.https.SimRequest;
 import com.idirtrack.backend.utils.MyResponse;
 import com.idirtrack.backend.utils.RequestValidation;
+import com.idirtrack.backend.utils.StatusTransitionRequest;
 
 import jakarta.validation.Valid;
 
@@ -31,6 +36,9 @@ public class SimController {
     @Autowired
     private SimService simService;
 
+    @Autowired
+    private SimImportService simImportService;
+
 
     /**
      * Endpoint API to get total number of SIMs by status
@@ -79,12 +87,19 @@ public class SimController {
      * 
      * @param page
      * @param size
+     * @param after     cursor of the previous page, switches to keyset pagination
+     * @param withCount also count the SIMs in keyset mode
      * @return ResponseEntity<MyResponse>
      */
     @GetMapping("/")
     public ResponseEntity<MyResponse> getAllSims(@RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "5") int size) {
-        MyResponse response = simService.getAllSimsWithPagination(page, size);
+            @RequestParam(defaultValue = "5") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean withCount) {
+        // Cursor mode when the after parameter is present (empty for the first page)
+        MyResponse response = after != null
+                ? simService.getAllSimsWithPagination(after, size, withCount)
+                : simService.getAllSimsWithPagination(page, size);
         return ResponseEntity.status(response.getStatus()).body(response);
     }
 
@@ -131,6 +146,27 @@ public class SimController {
 
     }
 
+    /**
+     * Endpoint API to import an operator SIM manifest (CSV or NDJSON body)
+     * 
+     * @param operatorId  the operator of the manifest
+     * @param contentType
+     * @param body        "ccid,phone,pin,puk" lines, or SimRequest JSON lines
+     * @return ResponseEntity<?> with the per-line import report
+     */
+    @PostMapping(value = "/import/", consumes = { "text/csv", "text/plain", "application/x-ndjson" })
+    public ResponseEntity<?> importSims(
+            @RequestParam Long operatorId,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream body) {
+        try {
+            MyResponse response = simImportService.importSims(operatorId, body, contentType);
+            return ResponseEntity.status(response.getStatus()).body(response);
+        } catch (NotFoundException ex) {
+            return ResponseEntity.status(ex.getResponse().getStatus()).body(ex.getResponse());
+        }
+    }
+
     /**
      * Endpoint API to update SIM
      * 
@@ -159,6 +195,24 @@ public class SimController {
 
     }
 
+    /**
+     * Endpoint API to change the status of a list of SIMs
+     * 
+     * @param request ids and target status
+     * @return ResponseEntity<?> with the per-id report
+     */
+    @PutMapping("/status/")
+    public ResponseEntity<?> changeSimsStatus(
+            @Valid @RequestBody StatusTransitionRequest request,
+            BindingResult bindingResult) {
+        if (bindingResult.hasErrors()) {
+            return RequestValidation.handleValidationErrors(bindingResult);
+        } else {
+            MyResponse response = simService.changeSimsStatus(request);
+            return ResponseEntity.status(response.getStatus()).body(response);
+        }
+    }
+
     /**
      * Endpoint API to delete SIM
      * 
@@ -0,0 +1,290 @@
+package com.idirtrack.backend.sim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idirtrack.backend.errors.MyException;
+import com.idirtrack.backend.errors.NotFoundException;
+import com.idirtrack.backend.operator.Operator;
+import com.idirtrack.backend.sim.https.SimImportError;
+import com.idirtrack.backend.sim.https.SimImportReport;
+import com.idirtrack.backend.sim.https.SimRequest;
+import com.idirtrack.backend.stock.StockLedgerService;
+import com.idirtrack.backend.utils.ErrorResponse;
+import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.UniqueConstraints;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+
+@Service
+@RequiredArgsConstructor
+public class SimImportService {
+
+        // Number of rows checked and inserted together
+        static final int BATCH_SIZE = 1000;
+
+        private static final String INSERT_SIM_SQL = "INSERT INTO sim "
+                        + "(pin, puk, ccid, phone, status, operator_id, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+        private final SimRepository simRepository;
+        private final SimService simService;
+        private final SimSearchIndex simSearchIndex;
+        private final SimStatisticsService simStatisticsService;
+        private final StockLedgerService stockLedgerService;
+        private final JdbcTemplate jdbcTemplate;
+        private final ObjectMapper objectMapper;
+        private final Validator validator;
+
+        private static final Logger logger = LoggerFactory.getLogger(SimImportService.class);
+
+        /**
+         * Service: Import an operator SIM manifest from a CSV or NDJSON body
+         *
+         * The operator is resolved once for the whole manifest. The body is read
+         * line by line and processed in batches of {@value #BATCH_SIZE}: the
+         * CCIDs and phone numbers of a batch are checked against the database
+         * with one query each, the rows are inserted with a JDBC batch, and the
+         * stock is updated once at the end of the import.
+         *
+         * CSV lines are "ccid,phone,pin,puk" (an optional header line is
+         * skipped), NDJSON lines are SimRequest objects whose operator is
+         * ignored.
+         *
+         * @param operatorId  the operator of the manifest
+         * @param body        the request body
+         * @param contentType the request content type
+         * @return MyResponse with a SimImportReport
+         * @throws NotFoundException if the operator does not exist
+         */
+        @Transactional
+        public MyResponse importSims(Long operatorId, InputStream body, String contentType)
+                        throws NotFoundException {
+                Operator operator = simService.findOperatorById(operatorId);
+                boolean ndjson = contentType != null && contentType.toLowerCase().contains("json");
+
+                SimImportReport report = SimImportReport.builder().build();
+                ImportContext context = new ImportContext(operator, LocalDateTime.now(), report);
+                List<ImportRow> batch = new ArrayList<>(BATCH_SIZE);
+
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+                        String line;
+                        long lineNumber = 0;
+                        while ((line = reader.readLine()) != null) {
+                                lineNumber++;
+                                if (line.isBlank()) {
+                                        continue;
+                                }
+                                // Skip the CSV header
+                                if (!ndjson && lineNumber == 1 && line.toLowerCase().startsWith("ccid")) {
+                                        continue;
+                                }
+                                report.setTotalLines(report.getTotalLines() + 1);
+
+                                ImportRow row = ndjson ? this.parseJsonLine(lineNumber, line, context)
+                                                : this.parseCsvLine(lineNumber, line, context);
+                                if (row == null) {
+                                        continue;
+                                }
+                                batch.add(row);
+                                if (batch.size() == BATCH_SIZE) {
+                                        this.flushBatch(batch, context);
+                                        batch.clear();
+                                }
+                        }
+                } catch (IOException e) {
+                        throw new MyException(ErrorResponse.builder()
+                                        .message("Unable to read the manifest: " + e.getMessage())
+                                        .status(HttpStatus.BAD_REQUEST)
+                                        .build());
+                }
+                this.flushBatch(batch, context);
+
+                // Apply the stock and statistics changes once for the manifest
+                if (report.getImported() > 0) {
+                        simStatisticsService.invalidate();
+                        stockLedgerService.recordSimMovement(Date.valueOf(context.createdAt.toLocalDate()), operator,
+                                        Math.toIntExact(report.getImported()));
+                }
+
+                // Report the errors in file order
+                report.getErrors().sort(Comparator.comparingLong(SimImportError::getLine));
+
+                logger.info("SIM manifest of operator {} imported: {} imported, {} rejected", operator.getId(),
+                                report.getImported(), report.getRejected());
+
+                return MyResponse.builder()
+                                .data(report)
+                                .message(report.getImported() + " SIMs imported, " + report.getRejected()
+                                                + " rejected")
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
+        // Check a batch against the database and insert the valid rows
+        private void flushBatch(List<ImportRow> batch, ImportContext context) {
+                if (batch.isEmpty()) {
+                        return;
+                }
+                SimImportReport report = context.report;
+
+                // Check the CCIDs and phone numbers of the batch with one query each
+                Set<String> existingCcids = new HashSet<>(simRepository.findExistingCcids(batch.stream()
+                                .map(row -> row.request().getCcid())
+                                .collect(Collectors.toSet())));
+                Set<String> existingPhones = new HashSet<>(simRepository.findExistingPhones(batch.stream()
+                                .map(row -> row.request().getPhone())
+                                .collect(Collectors.toSet())));
+
+                List<ImportRow> toInsert = new ArrayList<>(batch.size());
+                for (ImportRow row : batch) {
+                        String ccid = row.request().getCcid();
+                        String phone = row.request().getPhone();
+                        if (existingCcids.contains(ccid)) {
+                                report.reject(row.line(), ccid, phone, "CCID already exists");
+                        } else if (existingPhones.contains(phone)) {
+                                report.reject(row.line(), ccid, phone, "Phone number already exists");
+                        } else if (context.seenCcids.contains(ccid)) {
+                                report.reject(row.line(), ccid, phone, "CCID is duplicated in the manifest");
+                        } else if (context.seenPhones.contains(phone)) {
+                                report.reject(row.line(), ccid, phone, "Phone number is duplicated in the manifest");
+                        } else {
+                                context.seenCcids.add(ccid);
+                                context.seenPhones.add(phone);
+                                toInsert.add(row);
+                        }
+                }
+                if (toInsert.isEmpty()) {
+                        return;
+                }
+
+                // Insert the rows with a JDBC batch, sent as a single multi-row insert
+                try {
+                        jdbcTemplate.batchUpdate(INSERT_SIM_SQL, toInsert, toInsert.size(),
+                                        (ps, row) -> this.setInsertParameters(ps, row, context));
+                } catch (DuplicateKeyException e) {
+                        // A concurrent writer inserted one of the SIMs since the check: the
+                        // multi-row insert was rolled back, insert the rows one by one
+                        toInsert = this.insertOneByOne(toInsert, context);
+                }
+                if (toInsert.isEmpty()) {
+                        return;
+                }
+
+                report.setImported(report.getImported() + toInsert.size());
+                simSearchIndex.indexCcids(toInsert.stream()
+                                .map(row -> row.request().getCcid())
+                                .collect(Collectors.toList()));
+        }
+
+        // Insert the rows one at a time, rejecting the SIMs refused by a unique constraint
+        private List<ImportRow> insertOneByOne(List<ImportRow> rows, ImportContext context) {
+                List<ImportRow> inserted = new ArrayList<>(rows.size());
+                for (ImportRow row : rows) {
+                        try {
+                                jdbcTemplate.update(INSERT_SIM_SQL, ps -> this.setInsertParameters(ps, row, context));
+                                inserted.add(row);
+                        } catch (DuplicateKeyException e) {
+                                context.report.reject(row.line(), row.request().getCcid(), row.request().getPhone(),
+                                                UniqueConstraints.isViolated(e, Sim.UK_PHONE)
+                                                                ? "Phone number already exists"
+                                                                : "CCID already exists");
+                        }
+                }
+                return inserted;
+        }
+
+        private void setInsertParameters(PreparedStatement ps, ImportRow row, ImportContext context)
+                        throws SQLException {
+                ps.setString(1, row.request().getPin());
+                ps.setString(2, row.request().getPuk());
+                ps.setString(3, row.request().getCcid());
+                ps.setString(4, row.request().getPhone());
+                ps.setString(5, SimStatus.NON_INSTALLED.name());
+                ps.setLong(6, context.operator.getId());
+                ps.setTimestamp(7, Timestamp.valueOf(context.createdAt));
+        }
+
+        // Parse a CSV line "ccid,phone,pin,puk"
+        private ImportRow parseCsvLine(long lineNumber, String line, ImportContext context) {
+                String[] columns = line.split(",", -1);
+                String ccid = columns[0].trim();
+                if (columns.length < 4) {
+                        context.report.reject(lineNumber, ccid, null, "Expected columns: ccid,phone,pin,puk");
+                        return null;
+                }
+                return this.validateRow(lineNumber, SimRequest.builder()
+                                .ccid(ccid)
+                                .phone(columns[1].trim())
+                                .pin(columns[2].trim())
+                                .puk(columns[3].trim())
+                                .operatorId(context.operator.getId())
+                                .build(), context);
+        }
+
+        // Parse a NDJSON line into a SimRequest of the manifest operator
+        private ImportRow parseJsonLine(long lineNumber, String line, ImportContext context) {
+                try {
+                        SimRequest request = objectMapper.readValue(line, SimRequest.class);
+                        request.setOperatorId(context.operator.getId());
+                        return this.validateRow(lineNumber, request, context);
+                } catch (IOException e) {
+                        context.report.reject(lineNumber, null, null, "Invalid JSON line");
+                        return null;
+                }
+        }
+
+        // Apply the SimRequest validation rules to an imported row
+        private ImportRow validateRow(long lineNumber, SimRequest request, ImportContext context) {
+                Set<ConstraintViolation<SimRequest>> violations = validator.validate(request);
+                if (!violations.isEmpty()) {
+                        context.report.reject(lineNumber, request.getCcid(), request.getPhone(),
+                                        violations.iterator().next().getMessage());
+                        return null;
+                }
+                return new ImportRow(lineNumber, request);
+        }
+
+        // A parsed and validated line of the manifest
+        private record ImportRow(long line, SimRequest request) {
+        }
+
+        // State shared by the batches of one import
+        private static class ImportContext {
+                private final Operator operator;
+                private final LocalDateTime createdAt;
+                private final SimImportReport report;
+                private final Set<String> seenCcids = new HashSet<>();
+                private final Set<String> seenPhones = new HashSet<>();
+
+                private ImportContext(Operator operator, LocalDateTime createdAt, SimImportReport report) {
+                        this.operator = operator;
+                        this.createdAt = createdAt;
+                        this.report = report;
+                }
+        }
+}
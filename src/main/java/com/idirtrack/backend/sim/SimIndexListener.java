@@ -0,0 +1,35 @@
+package com.idirtrack.backend.sim;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Keeps the SIM search index in sync with the writes of Sim entities
+ *
+ * Created by Hibernate through the Spring bean container. The index is
+ * looked up on each event, as it needs the repositories that are built
+ * after the entity manager. Bulk JPQL and JDBC writes do not raise these
+ * events and update the index themselves.
+ */
+public class SimIndexListener {
+
+    private final ObjectProvider<SimSearchIndex> simSearchIndex;
+
+    public SimIndexListener(ObjectProvider<SimSearchIndex> simSearchIndex) {
+        this.simSearchIndex = simSearchIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void saved(Sim sim) {
+        simSearchIndex.ifAvailable(index -> index.put(sim));
+    }
+
+    @PostRemove
+    public void removed(Sim sim) {
+        simSearchIndex.ifAvailable(index -> index.remove(sim.getId()));
+    }
+}
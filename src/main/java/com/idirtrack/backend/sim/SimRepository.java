@@ -1,11 +1,15 @@
 package com.idirtrack.backend.sim;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -22,6 +26,14 @@ public interface SimRepository extends JpaRepository<Sim, Long>, JpaSpecificatio
 
         Page<Sim> findAllByStatus(SimStatus pending, Pageable pageRequest);
 
+        // get the first sims, without count query
+        @Query("SELECT s FROM Sim s ORDER BY s.id DESC")
+        Slice<Sim> findFirstSlice(Pageable pageable);
+
+        // get sims after a cursor id, without count query
+        @Query("SELECT s FROM Sim s WHERE s.id < :afterId ORDER BY s.id DESC")
+        Slice<Sim> findSliceAfter(@Param("afterId") Long afterId, Pageable pageable);
+
         @Query("SELECT s FROM Sim s WHERE s.status = :status AND (s.phone LIKE CONCAT('%',:query,'%') OR s.ccid LIKE CONCAT('%',:query,'%'))")
         Page<Sim> findAllByStatusAndPhoneContainingOrCcidContaining(
                         @Param("status") SimStatus status,
@@ -30,6 +42,42 @@ public interface SimRepository extends JpaRepository<Sim, Long>, JpaSpecificatio
 
         long countByStatus(SimStatus pending);
 
+        // number of sims per status and operator, in one aggregate
+        @Query("SELECT s.status, o.id, COUNT(s) FROM Sim s LEFT JOIN s.operator o GROUP BY s.status, o.id")
+        List<Object[]> countGroupByStatusAndOperator();
+
+        // id and status of the given sims
+        @Query("SELECT s.id, s.status FROM Sim s WHERE s.id IN :ids")
+        List<Object[]> findStatusesByIds(@Param("ids") Collection<Long> ids);
+
+        // change the status of the given sims still in the expected status, in one statement,
+        // then detach the loaded entities, their status is stale
+        @Modifying(flushAutomatically = true, clearAutomatically = true)
+        @Query("UPDATE Sim s SET s.status = :status, s.updatedAt = :updatedAt, s.version = s.version + 1 "
+                        + "WHERE s.id IN :ids AND s.status = :expected")
+        int updateStatusByIds(@Param("ids") Collection<Long> ids, @Param("expected") SimStatus expected,
+                        @Param("status") SimStatus status, @Param("updatedAt") LocalDateTime updatedAt);
+
+        // the searched columns of a sim: id, phone, ccid, status, pin, puk and operator name
+        String INDEX_ROW = "SELECT s.id, s.phone, s.ccid, s.status, s.pin, s.puk, o.name "
+                        + "FROM Sim s LEFT JOIN s.operator o ";
+
+        // the searched columns of every sim, to load the search index
+        @Query(INDEX_ROW)
+        List<Object[]> findIndexRows();
+
+        // the searched columns of the sims with the given CCIDs
+        @Query(INDEX_ROW + "WHERE s.ccid IN :ccids")
+        List<Object[]> findIndexRowsByCcids(@Param("ccids") Collection<String> ccids);
+
+        // CCIDs of a batch that already exist, checked in a single query
+        @Query("SELECT s.ccid FROM Sim s WHERE s.ccid IN :ccids")
+        List<String> findExistingCcids(@Param("ccids") Collection<String> ccids);
+
+        // phone numbers of a batch that already exist, checked in a single query
+        @Query("SELECT s.phone FROM Sim s WHERE s.phone IN :phones")
+        List<String> findExistingPhones(@Param("phones") Collection<String> phones);
+
         boolean existsByPhoneAndIdNot(String phone, Long id);
 
         boolean existsByCcidAndIdNot(String ccid, Long id);
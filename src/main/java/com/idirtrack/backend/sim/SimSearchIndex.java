@@ -0,0 +1,194 @@
+package com.idirtrack.backend.sim;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.idirtrack.backend.utils.AfterCommit;
+import com.idirtrack.backend.utils.SubstringIndex;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * In-memory search indexes of the SIMs
+ *
+ * The status index holds the phone numbers and CCIDs tagged by status, for
+ * the typeahead of the non-installed SIMs. The text index holds every
+ * searched column (phone, CCID, PIN, PUK, operator name and status) in
+ * lower case, for the SIM search. Both are loaded at startup, kept up to
+ * date by the SimIndexListener and the bulk writes of the SimService, and
+ * rebuilt periodically to pick up changes made outside the application
+ * (and operator renames).
+ *
+ * A change is applied once committed, to the indexes current at that
+ * time. The changes committed while a rebuild reads the table are also
+ * recorded, then replayed onto the new indexes before they are swapped in.
+ */
+@Component
+@RequiredArgsConstructor
+public class SimSearchIndex {
+
+        private final SimRepository simRepository;
+
+        private volatile Indexes indexes;
+
+        // Guards the swap of the indexes and the changes recorded during a rebuild
+        private final Object changes = new Object();
+
+        // Changes committed since the current rebuild started, null when none is running
+        private List<Consumer<Indexes>> pending;
+
+        private static final Logger logger = LoggerFactory.getLogger(SimSearchIndex.class);
+
+        private record Indexes(SubstringIndex byStatus, SubstringIndex text) {
+        }
+
+        /**
+         * Utils: Check if the index can answer searches
+         *
+         * @return boolean
+         */
+        public boolean isLoaded() {
+                return indexes != null;
+        }
+
+        /**
+         * Utils: Find the ids of the SIMs with the given status whose phone or
+         * CCID contains the query
+         *
+         * @param query
+         * @param status
+         * @param pageable
+         * @return the ids of the page, by id descending, and the total
+         */
+        public SubstringIndex.Hits search(String query, SimStatus status, Pageable pageable) {
+                return indexes.byStatus().search(query, status.name(), pageable.getOffset(), pageable.getPageSize());
+        }
+
+        /**
+         * Utils: Find the ids of the SIMs whose phone, CCID, PIN, PUK, operator
+         * name or status contains the query, ignoring case
+         *
+         * @param query
+         * @param pageable
+         * @return the ids of the page, exact and prefix matches first, and the
+         *         total
+         */
+        public SubstringIndex.Hits searchAll(String query, Pageable pageable) {
+                return indexes.text().searchRanked(query != null ? query.toLowerCase() : null, pageable.getOffset(),
+                                pageable.getPageSize());
+        }
+
+        // A sim was created or updated
+        public void put(Sim sim) {
+                Object[] row = {
+                                sim.getId(),
+                                sim.getPhone(),
+                                sim.getCcid(),
+                                sim.getStatus(),
+                                sim.getPin(),
+                                sim.getPuk(),
+                                sim.getOperator() != null ? sim.getOperator().getName() : null };
+                this.afterCommit(target -> this.put(target, row));
+        }
+
+        // A sim changed status
+        public void statusChanged(Long id, SimStatus status) {
+                this.afterCommit(target -> {
+                        target.byStatus().retag(id, status.name());
+                        target.text().retag(id, status.name().toLowerCase());
+                });
+        }
+
+        // A sim was deleted
+        public void remove(Long id) {
+                this.afterCommit(target -> {
+                        target.byStatus().remove(id);
+                        target.text().remove(id);
+                });
+        }
+
+        // Sims were inserted without their ids (manifest import)
+        public void indexCcids(Collection<String> ccids) {
+                if (!this.isTracking() || ccids.isEmpty()) {
+                        return;
+                }
+                List<Object[]> rows = simRepository.findIndexRowsByCcids(ccids);
+                this.afterCommit(target -> rows.forEach(row -> this.put(target, row)));
+        }
+
+        /**
+         * Load all the sims in new indexes and swap them in
+         */
+        @EventListener(ApplicationReadyEvent.class)
+        @Scheduled(fixedDelayString = "${search.index.rebuild-interval-ms:900000}", initialDelayString = "${search.index.rebuild-interval-ms:900000}")
+        public synchronized void rebuild() {
+                synchronized (changes) {
+                        pending = new ArrayList<>();
+                }
+                Indexes fresh = new Indexes(new SubstringIndex(), new SubstringIndex());
+                try {
+                        simRepository.findIndexRows().forEach(row -> this.put(fresh, row));
+                        synchronized (changes) {
+                                // Replay the changes the read may have missed, in commit order
+                                pending.forEach(change -> change.accept(fresh));
+                                indexes = fresh;
+                        }
+                } finally {
+                        synchronized (changes) {
+                                pending = null;
+                        }
+                }
+                logger.info("SIM search index loaded with {} sims", fresh.byStatus().size());
+        }
+
+        // Index a row (id, phone, ccid, status, pin, puk, operator name)
+        private void put(Indexes target, Object[] row) {
+                Long id = (Long) row[0];
+                String status = row[3] != null ? ((SimStatus) row[3]).name() : null;
+                target.byStatus().put(id, status, (String) row[1], (String) row[2]);
+                target.text().put(id, status != null ? status.toLowerCase() : null,
+                                this.lowerCase((String) row[1]),
+                                this.lowerCase((String) row[2]),
+                                this.lowerCase((String) row[4]),
+                                this.lowerCase((String) row[5]),
+                                this.lowerCase((String) row[6]));
+        }
+
+        private String lowerCase(String value) {
+                return value != null ? value.toLowerCase() : null;
+        }
+
+        // Apply the change once committed: the index current then may be newer than the one of now
+        private void afterCommit(Consumer<Indexes> change) {
+                AfterCommit.run(() -> this.apply(change));
+        }
+
+        // Apply a committed change to the current indexes, and record it for the running rebuild
+        private void apply(Consumer<Indexes> change) {
+                synchronized (changes) {
+                        if (indexes != null) {
+                                change.accept(indexes);
+                        }
+                        if (pending != null) {
+                                pending.add(change);
+                        }
+                        // Before the first load, the load reads the change from the database
+                }
+        }
+
+        private boolean isTracking() {
+                synchronized (changes) {
+                        return indexes != null || pending != null;
+                }
+        }
+}
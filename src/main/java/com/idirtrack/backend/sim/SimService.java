@@ -1,17 +1,26 @@
 package com.idirtrack.backend.sim;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.idirtrack.backend.basics.BasicException;
 import com.idirtrack.backend.basics.BasicResponse;
@@ -21,11 +30,16 @@ import com.idirtrack.backend.errors.NotFoundException;
 import com.idirtrack.backend.operator.Operator;
 import com.idirtrack.backend.operator.OperatorRepository;
 import com.idirtrack.backend.sim.https.SimRequest;
-import com.idirtrack.backend.stock.Stock;
-import com.idirtrack.backend.stock.StockRepository;
+import com.idirtrack.backend.stock.StockLedgerService;
 import com.idirtrack.backend.utils.ErrorResponse;
 import com.idirtrack.backend.utils.FieldErrorDTO;
+import com.idirtrack.backend.utils.KeysetCursor;
 import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.StatusTransitionReport;
+import com.idirtrack.backend.utils.StatusTransitionRequest;
+import com.idirtrack.backend.utils.StripedLocks;
+import com.idirtrack.backend.utils.SubstringIndex;
+import com.idirtrack.backend.utils.UniqueConstraints;
 
 import lombok.RequiredArgsConstructor;
 
@@ -34,9 +48,13 @@ import lombok.RequiredArgsConstructor;
 public class SimService {
 
         private final SimRepository simRepository;
-        private final SimStockRepository simStockRepository;
-        private final StockRepository stockRepository;
+        private final StockLedgerService stockLedgerService;
         private final OperatorRepository operatorRepository;
+        private final SimSearchIndex simSearchIndex;
+        private final SimStatisticsService simStatisticsService;
+
+        // Writers of the same phone number or CCID wait for each other
+        private static final StripedLocks SIM_LOCKS = new StripedLocks(256);
         
         /**
          * Service: Get total SIMs for each status
@@ -44,10 +62,12 @@ public class SimService {
          * @return MyResponse
          */
         public MyResponse getTotalSimsByStatus() {
-                long totalNonInstalled = simRepository.countByStatus(SimStatus.NON_INSTALLED);
-                long totalInstalled = simRepository.countByStatus(SimStatus.INSTALLED);
-                long totalInPending = simRepository.countByStatus(SimStatus.PENDING);
-                long totalLost = simRepository.countByStatus(SimStatus.LOST);
+                // All the counts come from the cached status x operator matrix
+                SimStatisticsService.Matrix matrix = simStatisticsService.matrix();
+                long totalNonInstalled = matrix.countByStatus(SimStatus.NON_INSTALLED);
+                long totalInstalled = matrix.countByStatus(SimStatus.INSTALLED);
+                long totalInPending = matrix.countByStatus(SimStatus.PENDING);
+                long totalLost = matrix.countByStatus(SimStatus.LOST);
 
                 Map<String, Long> data = new HashMap<>();
                 data.put("nonInstalled", totalNonInstalled);
@@ -68,7 +88,7 @@ public class SimService {
          */
 
         public MyResponse getTotalSims() {
-                long totalSims = simRepository.count();
+                long totalSims = simStatisticsService.matrix().total();
                 return MyResponse.builder()
                                 .data(totalSims)
                                 .status(HttpStatus.OK)
@@ -84,16 +104,22 @@ public class SimService {
          * @throws AlreadyExistException
          */
         public MyResponse createSim(SimRequest simRequest) throws AlreadyExistException, NotFoundException {
-                // Check if the phone number already exists
-                this.ifPhoneNumberAlreadyExist(simRequest.getPhone());
-                // Check if the CCID already exists
-                this.ifCCIDAlreadyExist(simRequest.getCcid());
-                // Check if the operator exists
-                Operator operator = this.findOperatorById(simRequest.getOperatorId());
-                // Build the Sim Entity
-                Sim sim = this.tansformRequestToEntity(simRequest, operator);
-                // Save the sim
-                sim = simRepository.save(sim);
+                Sim sim;
+                // Lock the phone number and the CCID, so a concurrent write of them sees this one
+                try (StripedLocks.Lock lock = SIM_LOCKS.lockUntilCompletion("phone:" + simRequest.getPhone(),
+                                "ccid:" + simRequest.getCcid())) {
+                        // Check if the phone number already exists
+                        this.ifPhoneNumberAlreadyExist(simRequest.getPhone());
+                        // Check if the CCID already exists
+                        this.ifCCIDAlreadyExist(simRequest.getCcid());
+                        // Check if the operator exists
+                        Operator operator = this.findOperatorById(simRequest.getOperatorId());
+                        // Build the Sim Entity
+                        sim = this.tansformRequestToEntity(simRequest, operator);
+                        // Save the sim, the unique constraints have the last word
+                        sim = this.saveUniqueSim(sim);
+                }
+                simStatisticsService.invalidate();
                 // Update the stock
                 this.updateSimStock(sim);
                 // Return the response
@@ -105,63 +131,17 @@ public class SimService {
 
         // Update the stock
         private void updateSimStock(Sim sim) {
-                // Convert LocalDateTime to Date
-                java.sql.Date dateEntree = java.sql.Date.valueOf(sim.getCreatedAt().toLocalDate());
-                List<Stock> stocks = stockRepository.findByDateEntree(dateEntree);
-                Stock stock = null;
-                SimStock simStock = null;
-
-                for (Stock s : stocks) {
-                        simStock = simStockRepository.findByStockAndOperator(s, sim.getOperator());
-                        if (simStock != null) {
-                                stock = s;
-                                break;
-                        }
-                }
-
-                if (stock == null) {
-                        stock = Stock.builder()
-                                        .dateEntree(dateEntree)
-                                        .quantity(1)
-                                        .build();
-                        stock = stockRepository.save(stock);
-
-                        simStock = SimStock.builder()
-                                        .operator(sim.getOperator())
-                                        .stock(stock)
-                                        .build();
-                        simStockRepository.save(simStock);
-                } else {
-                        stock.setQuantity(stock.getQuantity() + 1);
-                        stockRepository.save(stock);
-                }
+                stockLedgerService.recordSimMovement(this.stockDate(sim), sim.getOperator(), 1);
         }
 
         // Update the stock on delete
         private void updateSimStockOnDelete(Sim sim) {
-                java.sql.Date dateEntree = java.sql.Date.valueOf(sim.getCreatedAt().toLocalDate());
-
-                List<Stock> stocks = stockRepository.findByDateEntree(dateEntree);
-                Stock stock = null;
-                SimStock simStock = null;
-
-                for (Stock s : stocks) {
-                        simStock = simStockRepository.findByStockAndOperator(s, sim.getOperator());
-                        if (simStock != null) {
-                                stock = s;
-                                break;
-                        }
-                }
-
-                if (stock != null) {
-                        stock.setQuantity(stock.getQuantity() - 1);
-                        stockRepository.save(stock);
+                stockLedgerService.recordSimMovement(this.stockDate(sim), sim.getOperator(), -1);
+        }
 
-                        if (stock.getQuantity() <= 0) {
-                                simStockRepository.delete(simStock);
-                                stockRepository.delete(stock);
-                        }
-                }
+        // Stock date of a sim: the day it was created
+        private java.sql.Date stockDate(Sim sim) {
+                return java.sql.Date.valueOf(sim.getCreatedAt().toLocalDate());
         }
 
         /**
@@ -224,6 +204,59 @@ public class SimService {
 
         }
 
+        /**
+         * Service: Get all SIMs with keyset pagination
+         * 
+         * Reads the page after the cursor with "id < :afterId" instead of an
+         * offset, and only counts the SIMs when the caller asks for it.
+         * 
+         * @param after     - cursor of the previous page, empty for the first page
+         * @param size      - page size
+         * @param withCount - also return the total number of SIMs
+         * @return MyResponse
+         */
+        public MyResponse getAllSimsWithPagination(String after, int size, boolean withCount) {
+                // Read the cursor
+                Long afterId;
+                try {
+                        afterId = KeysetCursor.decode(after, "id");
+                } catch (IllegalArgumentException e) {
+                        return MyResponse.builder()
+                                        .message("Invalid cursor")
+                                        .status(HttpStatus.BAD_REQUEST)
+                                        .build();
+                }
+                // Get the next slice of sims, without count query
+                Slice<Sim> simSlice = afterId == null
+                                ? simRepository.findFirstSlice(PageRequest.of(0, size))
+                                : simRepository.findSliceAfter(afterId, PageRequest.of(0, size));
+                // Check if the slice is empty
+                if (simSlice.isEmpty()) {
+                        return MyResponse.builder()
+                                        .message("No SIMs found")
+                                        .status(HttpStatus.NOT_FOUND)
+                                        .build();
+                }
+                List<SimDTO> simDTOs = simSlice.getContent().stream().map(sim -> this.transformEntityToDTO(sim))
+                                .collect(Collectors.toList());
+                // Build the Metadata
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("size", simSlice.getSize());
+                metadata.put("nextCursor", simSlice.hasNext()
+                                ? KeysetCursor.encode("id", simSlice.getContent().get(simSlice.getNumberOfElements() - 1)
+                                                .getId())
+                                : null);
+                if (withCount) {
+                        metadata.put("totalElements", simRepository.count());
+                }
+                // Return the response
+                return MyResponse.builder()
+                                .data(simDTOs)
+                                .metadata(metadata)
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
         /**
          * Service: Search SIMs
          * 
@@ -235,8 +268,10 @@ public class SimService {
 
                 // Create a pageable object
                 Pageable pageable = PageRequest.of(page - 1, size, Sort.by("id").descending());
-                // Search by any field
-                Page<Sim> simPage = simRepository.search(query, pageable);
+                // Search by any field, from the in-memory index once it is loaded
+                Page<Sim> simPage = simSearchIndex.isLoaded()
+                                ? this.searchSimsFromIndex(query, pageable)
+                                : simRepository.search(query, pageable);
                 // Check if the page is empty
                 if (simPage.isEmpty()) {
                         return MyResponse.builder()
@@ -271,20 +306,26 @@ public class SimService {
 
                 // Find the sim
                 Sim sim = this.findSimById(id);
-                // Check if the phone number already exists except the current sim
-                this.ifPhoneNumberAlreadyExistExceptCurrentSim(request.getPhone(), id);
-                // Check if the CCID already exists except the current sim
-                this.ifCCIDAlreadyExistExceptCurrentSim(request.getCcid(), id);
-                // Find the operator
-                Operator operator = this.findOperatorById(request.getOperatorId());
-                // Update the sim data
-                sim.setPin(request.getPin());
-                sim.setPuk(request.getPuk());
-                sim.setCcid(request.getCcid());
-                sim.setOperator(operator);
-                sim.setPhone(request.getPhone());
-                // Save sim
-                sim = simRepository.save(sim);
+                // Lock the phone number and the CCID, so a concurrent write of them sees this one
+                try (StripedLocks.Lock lock = SIM_LOCKS.lockUntilCompletion("phone:" + request.getPhone(),
+                                "ccid:" + request.getCcid())) {
+                        // Check if the phone number already exists except the current sim
+                        this.ifPhoneNumberAlreadyExistExceptCurrentSim(request.getPhone(), id);
+                        // Check if the CCID already exists except the current sim
+                        this.ifCCIDAlreadyExistExceptCurrentSim(request.getCcid(), id);
+                        // Find the operator
+                        Operator operator = this.findOperatorById(request.getOperatorId());
+                        // Update the sim data
+                        sim.setPin(request.getPin());
+                        sim.setPuk(request.getPuk());
+                        sim.setCcid(request.getCcid());
+                        sim.setOperator(operator);
+                        sim.setPhone(request.getPhone());
+                        // Save sim, the unique constraints have the last word
+                        sim = this.saveUniqueSim(sim);
+                }
+                // The operator may have changed
+                simStatisticsService.invalidate();
                 // Build SimDTO
                 SimDTO simDTO = this.transformEntityToDTO(sim);
                 // Return response
@@ -310,6 +351,7 @@ public class SimService {
                 updateSimStockOnDelete(sim);
                 // Delete the sim
                 simRepository.delete(sim);
+                simStatisticsService.invalidate();
                 // Return the response
                 return MyResponse.builder()
                                 .message("Sim deleted successfully")
@@ -318,7 +360,7 @@ public class SimService {
         }
 
         public BasicResponse countNonInstalledSims() {
-                long count = simRepository.countByStatus(SimStatus.NON_INSTALLED);
+                long count = simStatisticsService.matrix().countByStatus(SimStatus.NON_INSTALLED);
                 return BasicResponse.builder()
                                 .content(count)
                                 .message("Non-installed SIMs count retrieved successfully")
@@ -378,9 +420,11 @@ public class SimService {
         public MyResponse searchNonInstalledSims(String query, int page, int size) {
                 // Create a pageable object
                 Pageable pageable = PageRequest.of(page - 1, size);
-                // Search non-installed sims
-                Page<Sim> simPage = simRepository.findAllByStatusAndPhoneContainingOrCcidContaining(
-                                SimStatus.NON_INSTALLED, query, pageable);
+                // Search non-installed sims, from the in-memory index once it is loaded
+                Page<Sim> simPage = simSearchIndex.isLoaded()
+                                ? this.searchNonInstalledSimsFromIndex(query, pageable)
+                                : simRepository.findAllByStatusAndPhoneContainingOrCcidContaining(
+                                                SimStatus.NON_INSTALLED, query, pageable);
                 // Check if the page is empty
                 if (simPage.isEmpty()) {
                         return MyResponse.builder()
@@ -408,19 +452,59 @@ public class SimService {
 
 
 
+        // Find the page of ranked ids in the search index, then load only those sims
+        private Page<Sim> searchSimsFromIndex(String query, Pageable pageable) {
+                SubstringIndex.Hits hits = simSearchIndex.searchAll(query, pageable);
+                Map<Long, Sim> simsById = simRepository.findAllById(hits.ids()).stream()
+                                .collect(Collectors.toMap(Sim::getId, sim -> sim));
+                // Keep the rank order, and skip sims deleted since they were indexed
+                List<Sim> sims = hits.ids().stream()
+                                .map(simsById::get)
+                                .filter(sim -> sim != null)
+                                .collect(Collectors.toList());
+                return new PageImpl<>(sims, pageable, hits.total());
+        }
+
+        // Find the page of ids in the search index, then load only those sims
+        private Page<Sim> searchNonInstalledSimsFromIndex(String query, Pageable pageable) {
+                SubstringIndex.Hits hits = simSearchIndex.search(query, SimStatus.NON_INSTALLED, pageable);
+                Map<Long, Sim> simsById = simRepository.findAllById(hits.ids()).stream()
+                                .collect(Collectors.toMap(Sim::getId, sim -> sim));
+                // Keep the index order, and skip sims changed since they were indexed
+                List<Sim> sims = hits.ids().stream()
+                                .map(simsById::get)
+                                .filter(sim -> sim != null && sim.getStatus() == SimStatus.NON_INSTALLED)
+                                .collect(Collectors.toList());
+                return new PageImpl<>(sims, pageable, hits.total());
+        }
+
+        // Change the status of a sim, only if no other writer changed it since it was read
+        @Transactional
         public boolean changeSimStatus(Long id, String status) {
                 try {
                         // Check if the status is valid
                         SimStatus simStatus = SimStatus.valueOf(status);
-                        // Find the sim
-                        Sim sim = simRepository.findById(id).orElse(null);
+                        // Find the sim status
+                        List<Object[]> rows = simRepository.findStatusesByIds(List.of(id));
                         // If the sim does not exist, return false
-                        if (sim == null) {
+                        if (rows.isEmpty()) {
                                 return false;
                         }
-                        // Else, change the status of the sim
-                        sim.setStatus(simStatus);
-                        simRepository.save(sim);
+                        // Check the lifecycle allows the move
+                        SimStatus current = (SimStatus) rows.get(0)[1];
+                        if (current == simStatus) {
+                                return true;
+                        }
+                        if (current == null || !current.canMoveTo(simStatus)) {
+                                return false;
+                        }
+                        // Else, change the status only where it is still the one read
+                        if (simRepository.updateStatusByIds(List.of(id), current, simStatus, LocalDateTime.now()) == 0) {
+                                return false;
+                        }
+                        // The bulk update raises no entity event, update the search index here
+                        simSearchIndex.statusChanged(id, simStatus);
+                        simStatisticsService.invalidate();
                         // Return true
                         return true;
                 } catch (IllegalArgumentException e) {
@@ -429,6 +513,102 @@ public class SimService {
 
         }
 
+        /**
+         * Service: Change the status of a list of SIMs
+         * 
+         * Reads the current statuses with one query, rejects the moves the
+         * lifecycle does not allow (see SimStatus#canMoveTo), and changes the
+         * other SIMs with one conditional UPDATE per current status. A SIM
+         * whose status was changed by another writer since it was read is not
+         * matched by the UPDATE and is reported as a conflict, without locking
+         * the rows.
+         * 
+         * @param ids    - ids of the SIMs
+         * @param status - target status
+         * @return StatusTransitionReport with the outcome of each id
+         */
+        @Transactional
+        public StatusTransitionReport changeSimsStatus(Collection<Long> ids, SimStatus status) {
+                // Find the current status of the sims
+                Map<Long, SimStatus> currentStatuses = new HashMap<>();
+                for (Object[] row : simRepository.findStatusesByIds(ids)) {
+                        currentStatuses.put((Long) row[0], (SimStatus) row[1]);
+                }
+                // Build the outcome of each id, and group the moves by current status
+                StatusTransitionReport report = StatusTransitionReport.builder()
+                                .status(status.name())
+                                .build();
+                Map<SimStatus, List<Long>> moves = new EnumMap<>(SimStatus.class);
+                for (Long id : ids) {
+                        SimStatus current = currentStatuses.get(id);
+                        if (!currentStatuses.containsKey(id)) {
+                                report.getResults().put(id, StatusTransitionReport.Outcome.NOT_FOUND);
+                        } else if (current == status) {
+                                report.getResults().put(id, StatusTransitionReport.Outcome.UNCHANGED);
+                        } else if (current == null || !current.canMoveTo(status)) {
+                                report.getResults().put(id, StatusTransitionReport.Outcome.REJECTED);
+                        } else {
+                                report.getResults().put(id, StatusTransitionReport.Outcome.UPDATED);
+                                moves.computeIfAbsent(current, key -> new ArrayList<>()).add(id);
+                        }
+                }
+                if (moves.isEmpty()) {
+                        return report;
+                }
+                // Update each group only where the status is still the one read
+                LocalDateTime now = LocalDateTime.now();
+                moves.forEach((expected, groupIds) -> {
+                        int updated = simRepository.updateStatusByIds(groupIds, expected, status, now);
+                        if (updated < groupIds.size()) {
+                                this.reportConflicts(groupIds, status, report);
+                        }
+                });
+                // The bulk update raises no entity event, update the search index here
+                report.idsWith(StatusTransitionReport.Outcome.UPDATED)
+                                .forEach(id -> simSearchIndex.statusChanged(id, status));
+                simStatisticsService.invalidate();
+                return report;
+        }
+
+        // Re-read the sims of a group: those deleted or not in the target status were changed concurrently
+        private void reportConflicts(List<Long> ids, SimStatus status, StatusTransitionReport report) {
+                Set<Long> moved = new HashSet<>();
+                for (Object[] row : simRepository.findStatusesByIds(ids)) {
+                        if (row[1] == status) {
+                                moved.add((Long) row[0]);
+                        }
+                }
+                ids.stream()
+                                .filter(id -> !moved.contains(id))
+                                .forEach(id -> report.getResults().put(id, StatusTransitionReport.Outcome.CONFLICT));
+        }
+
+        /**
+         * Service: Change the status of a list of SIMs (API)
+         * 
+         * @param request - ids and target status
+         * @return MyResponse with the StatusTransitionReport
+         */
+        public MyResponse changeSimsStatus(StatusTransitionRequest request) {
+                // Validate the status
+                SimStatus simStatus;
+                try {
+                        simStatus = SimStatus.valueOf(request.getStatus().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                        return MyResponse.builder()
+                                        .message("Invalid status: " + request.getStatus())
+                                        .status(HttpStatus.BAD_REQUEST)
+                                        .build();
+                }
+                StatusTransitionReport report = this.changeSimsStatus(request.getIds(), simStatus);
+                return MyResponse.builder()
+                                .data(report)
+                                .message(report.idsWith(StatusTransitionReport.Outcome.UPDATED).size()
+                                                + " SIMs changed to " + simStatus)
+                                .status(HttpStatus.OK)
+                                .build();
+        }
+
         /**
          * Service: Filter SIMs by status,operator
          * 
@@ -479,17 +659,8 @@ public class SimService {
          */
 
         public void ifPhoneNumberAlreadyExistExceptCurrentSim(String phone, Long id) throws AlreadyExistException {
-                List<FieldErrorDTO> fieldErrors = new ArrayList<>();
-
                 if (simRepository.existsByPhoneAndIdNot(phone, id)) {
-                        fieldErrors.add(FieldErrorDTO.builder()
-                                        .field("phone")
-                                        .message("Phone number already exists")
-                                        .build());
-                        throw new AlreadyExistException(ErrorResponse.builder()
-                                        .fieldErrors(fieldErrors)
-                                        .status(HttpStatus.CONFLICT)
-                                        .build());
+                        throw this.phoneAlreadyExists();
                 }
         }
 
@@ -503,16 +674,8 @@ public class SimService {
          */
 
         public void ifCCIDAlreadyExistExceptCurrentSim(String ccid, Long id) throws AlreadyExistException {
-                List<FieldErrorDTO> fieldErrors = new ArrayList<>();
                 if (simRepository.existsByCcidAndIdNot(ccid, id)) {
-                        fieldErrors.add(FieldErrorDTO.builder()
-                                        .field("ccid")
-                                        .message("CCID already exists")
-                                        .build());
-                        throw new AlreadyExistException(ErrorResponse.builder()
-                                        .fieldErrors(fieldErrors)
-                                        .status(HttpStatus.CONFLICT)
-                                        .build());
+                        throw this.ccidAlreadyExists();
                 }
         }
 
@@ -523,16 +686,8 @@ public class SimService {
          * @throws AlreadyExistException
          */
         public void ifPhoneNumberAlreadyExist(String phone) throws AlreadyExistException {
-                List<FieldErrorDTO> fieldErrors = new ArrayList<>();
                 if (simRepository.existsByPhone(phone)) {
-                        fieldErrors.add(FieldErrorDTO.builder()
-                                        .field("phone")
-                                        .message("Phone number already exists")
-                                        .build());
-                        throw new AlreadyExistException(ErrorResponse.builder()
-                                        .fieldErrors(fieldErrors)
-                                        .status(HttpStatus.CONFLICT)
-                                        .build());
+                        throw this.phoneAlreadyExists();
                 }
 
         }
@@ -544,19 +699,66 @@ public class SimService {
          * @throws AlreadyExistException
          */
         public void ifCCIDAlreadyExist(String ccid) throws AlreadyExistException {
-                List<FieldErrorDTO> fieldErrors = new ArrayList<>();
                 if (simRepository.existsByCcid(ccid)) {
-                        fieldErrors.add(FieldErrorDTO.builder()
-                                        .field("ccid")
-                                        .message("CCID already exists")
-                                        .build());
-                        throw new AlreadyExistException(ErrorResponse.builder()
-                                        .fieldErrors(fieldErrors)
-                                        .status(HttpStatus.CONFLICT)
-                                        .build());
+                        throw this.ccidAlreadyExists();
+                }
+        }
+
+        /**
+         * Utils: Save a sim, and report a violation of the phone or CCID unique
+         * constraint as the same field error as the checks
+         * 
+         * @param sim
+         * @return Sim
+         * @throws AlreadyExistException
+         */
+        private Sim saveUniqueSim(Sim sim) throws AlreadyExistException {
+                try {
+                        Sim saved = simRepository.save(sim);
+                        // Flush now, so a duplicate fails here and not at the commit
+                        simRepository.flush();
+                        return saved;
+                } catch (DataIntegrityViolationException e) {
+                        if (UniqueConstraints.isViolated(e, Sim.UK_PHONE)) {
+                                throw this.phoneAlreadyExists();
+                        }
+                        if (UniqueConstraints.isViolated(e, Sim.UK_CCID)) {
+                                throw this.ccidAlreadyExists();
+                        }
+                        // The constraint name is not known, find the duplicate
+                        Long id = sim.getId();
+                        if (id != null ? simRepository.existsByPhoneAndIdNot(sim.getPhone(), id)
+                                        : simRepository.existsByPhone(sim.getPhone())) {
+                                throw this.phoneAlreadyExists();
+                        }
+                        if (id != null ? simRepository.existsByCcidAndIdNot(sim.getCcid(), id)
+                                        : simRepository.existsByCcid(sim.getCcid())) {
+                                throw this.ccidAlreadyExists();
+                        }
+                        throw e;
                 }
         }
 
+        private AlreadyExistException phoneAlreadyExists() {
+                return this.alreadyExists("phone", "Phone number already exists");
+        }
+
+        private AlreadyExistException ccidAlreadyExists() {
+                return this.alreadyExists("ccid", "CCID already exists");
+        }
+
+        private AlreadyExistException alreadyExists(String field, String message) {
+                List<FieldErrorDTO> fieldErrors = new ArrayList<>();
+                fieldErrors.add(FieldErrorDTO.builder()
+                                .field(field)
+                                .message(message)
+                                .build());
+                return new AlreadyExistException(ErrorResponse.builder()
+                                .fieldErrors(fieldErrors)
+                                .status(HttpStatus.CONFLICT)
+                                .build());
+        }
+
         /**
          * Utils: Find an operator by id
          * 
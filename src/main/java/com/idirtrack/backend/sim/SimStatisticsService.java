@@ -0,0 +1,111 @@
+package com.idirtrack.backend.sim;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.idirtrack.backend.utils.AfterCommit;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * SIM counts per status and operator
+ *
+ * The whole status x operator matrix is read with one GROUP BY query and
+ * kept for a short time, so the SIM dashboard and the operators page do not
+ * run a COUNT per status or per operator. The SimService drops the cached
+ * matrix when a SIM is created, deleted or changes status.
+ */
+@Service
+@RequiredArgsConstructor
+public class SimStatisticsService {
+
+        private final SimRepository simRepository;
+
+        @Value("${sim.statistics.ttl-ms:30000}")
+        private long ttlMs;
+
+        private volatile Cached cached;
+
+        // Bumped by each invalidation, a load started before one is not cached
+        private final AtomicLong generation = new AtomicLong();
+
+        // Number of SIMs of each status, per operator id (null for no operator)
+        public record Matrix(Map<SimStatus, Map<Long, Long>> counts) {
+
+                // Number of SIMs with the given status
+                public long countByStatus(SimStatus status) {
+                        return counts.getOrDefault(status, Map.of()).values().stream()
+                                        .mapToLong(Long::longValue).sum();
+                }
+
+                // Number of SIMs of the given operator
+                public long countByOperator(Long operatorId) {
+                        return counts.values().stream()
+                                        .mapToLong(byOperator -> byOperator.getOrDefault(operatorId, 0L)).sum();
+                }
+
+                // Total number of SIMs
+                public long total() {
+                        return counts.values().stream()
+                                        .flatMap(byOperator -> byOperator.values().stream())
+                                        .mapToLong(Long::longValue).sum();
+                }
+        }
+
+        private record Cached(Matrix matrix, long loadedAt) {
+        }
+
+        /**
+         * Utils: Get the status x operator matrix, reloaded when older than
+         * the TTL
+         *
+         * @return Matrix
+         */
+        public Matrix matrix() {
+                Cached current = cached;
+                if (current != null && System.nanoTime() - current.loadedAt() < ttlMs * 1_000_000) {
+                        return current.matrix();
+                }
+                return this.reload();
+        }
+
+        // SIMs were created, deleted or changed status
+        public void invalidate() {
+                // Dropped once committed, so a reload cannot read the old counts back
+                AfterCommit.run(() -> {
+                        generation.incrementAndGet();
+                        cached = null;
+                });
+        }
+
+        private synchronized Matrix reload() {
+                // Another thread may have reloaded it meanwhile
+                Cached current = cached;
+                if (current != null && System.nanoTime() - current.loadedAt() < ttlMs * 1_000_000) {
+                        return current.matrix();
+                }
+                long loadedGeneration = generation.get();
+                Map<SimStatus, Map<Long, Long>> counts = new EnumMap<>(SimStatus.class);
+                for (SimStatus status : SimStatus.values()) {
+                        counts.put(status, new HashMap<>());
+                }
+                for (Object[] row : simRepository.countGroupByStatusAndOperator()) {
+                        // Row: status, operator id, count
+                        if (row[0] != null) {
+                                counts.get((SimStatus) row[0]).put((Long) row[1], (Long) row[2]);
+                        }
+                }
+                counts.replaceAll((status, byOperator) -> Collections.unmodifiableMap(byOperator));
+                Matrix matrix = new Matrix(Collections.unmodifiableMap(counts));
+                if (generation.get() == loadedGeneration) {
+                        cached = new Cached(matrix, System.nanoTime());
+                }
+                return matrix;
+        }
+}
@@ -1,8 +1,25 @@
 package com.idirtrack.backend.sim;
 
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
 public enum SimStatus {
     INSTALLED,
     NON_INSTALLED,
     LOST,
-    PENDING
+    PENDING;
+
+    // Lifecycle: NON_INSTALLED -> PENDING (in a boitier) -> INSTALLED (on a
+    // vehicle), and back to NON_INSTALLED or LOST when the boitier is removed
+    private static final Map<SimStatus, Set<SimStatus>> TRANSITIONS = Map.of(
+            NON_INSTALLED, EnumSet.of(PENDING, LOST),
+            PENDING, EnumSet.of(INSTALLED, NON_INSTALLED, LOST),
+            INSTALLED, EnumSet.of(PENDING, NON_INSTALLED, LOST),
+            LOST, EnumSet.of(NON_INSTALLED));
+
+    // Check if a SIM with this status can move to the target status
+    public boolean canMoveTo(SimStatus target) {
+        return TRANSITIONS.get(this).contains(target);
+    }
 }
@@ -0,0 +1,19 @@
+package com.idirtrack.backend.sim.https;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SimImportError {
+
+    // Line number in the uploaded manifest (1-based)
+    private long line;
+    private String ccid;
+    private String phone;
+    private String message;
+}
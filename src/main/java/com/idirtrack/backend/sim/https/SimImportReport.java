@@ -0,0 +1,33 @@
+package com.idirtrack.backend.sim.https;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SimImportReport {
+
+    private long totalLines;
+    private long imported;
+    private long rejected;
+
+    @Builder.Default
+    private List<SimImportError> errors = new ArrayList<>();
+
+    public void reject(long line, String ccid, String phone, String message) {
+        this.rejected++;
+        this.errors.add(SimImportError.builder()
+                .line(line)
+                .ccid(ccid)
+                .phone(phone)
+                .message(message)
+                .build());
+    }
+}
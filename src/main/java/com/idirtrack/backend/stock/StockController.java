@@ -21,7 +21,7 @@ public class StockController {
 
     @GetMapping("/stocks")
     public ResponseEntity<BasicResponse> getAllStocks() {
-        List<Stock> stocks = stockService.getAllStocks();
+        List<StockSnapshot> stocks = stockService.getAllStocks();
         return ResponseEntity.status(HttpStatus.OK).body(BasicResponse.builder()
                 .content(stocks)
                 .message("Stocks retrieved successfully")
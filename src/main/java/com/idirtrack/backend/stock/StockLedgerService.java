@@ -0,0 +1,186 @@
+package com.idirtrack.backend.stock;
+
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.idirtrack.backend.device.DeviceStock;
+import com.idirtrack.backend.device.DeviceStockRepository;
+import com.idirtrack.backend.deviceType.DeviceType;
+import com.idirtrack.backend.operator.Operator;
+import com.idirtrack.backend.sim.SimStock;
+import com.idirtrack.backend.sim.SimStockRepository;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Stock ledger and its per-day snapshot
+ *
+ * Device and SIM writes only insert StockMovement rows. The StockSnapshot
+ * rows are refreshed in the background: only the days having movements
+ * recorded since the previous refresh are summed again. Movements of the
+ * last "late-commit-window" before the previous refresh are looked at again,
+ * so a transaction committing a little after it recorded its movement is
+ * not missed.
+ */
+@Service
+@RequiredArgsConstructor
+public class StockLedgerService {
+
+    private final StockMovementRepository stockMovementRepository;
+    private final StockSnapshotRepository stockSnapshotRepository;
+    private final StockSnapshotStateRepository stockSnapshotStateRepository;
+    private final DeviceStockRepository deviceStockRepository;
+    private final SimStockRepository simStockRepository;
+
+    @Value("${stock.snapshot.late-commit-window-ms:600000}")
+    private long lateCommitWindowMs;
+
+    private static final Logger logger = LoggerFactory.getLogger(StockLedgerService.class);
+
+    /**
+     * Record devices of a type entering (positive quantity) or leaving
+     * (negative quantity) the stock of a date
+     *
+     * @param date
+     * @param deviceType
+     * @param quantity
+     */
+    public void recordDeviceMovement(Date date, DeviceType deviceType, int quantity) {
+        stockMovementRepository.save(StockMovement.builder()
+                .movementDate(date)
+                .deviceTypeId(deviceType.getId())
+                .delta(quantity)
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
+
+    /**
+     * Record SIMs of an operator entering (positive quantity) or leaving
+     * (negative quantity) the stock of a date
+     *
+     * @param date
+     * @param operator
+     * @param quantity
+     */
+    public void recordSimMovement(Date date, Operator operator, int quantity) {
+        stockMovementRepository.save(StockMovement.builder()
+                .movementDate(date)
+                .operatorId(operator.getId())
+                .delta(quantity)
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
+
+    /**
+     * Seed the ledger from the legacy stock rows on the first start, then
+     * rebuild the whole snapshot
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void initialize() {
+        StockSnapshotState state = this.lockState();
+        LocalDateTime startedAt = LocalDateTime.now();
+        if (stockMovementRepository.count() == 0) {
+            this.seedFromLegacyStock();
+        }
+        this.rebuildDays(stockMovementRepository.findAllDays());
+        state.setRefreshedAt(startedAt);
+        stockSnapshotStateRepository.save(state);
+    }
+
+    /**
+     * Sum again the days having new movements
+     */
+    @Scheduled(fixedDelayString = "${stock.snapshot.refresh-interval-ms:30000}", initialDelayString = "${stock.snapshot.refresh-interval-ms:30000}")
+    @Transactional
+    public void refreshSnapshot() {
+        StockSnapshotState state = this.lockState();
+        LocalDateTime startedAt = LocalDateTime.now();
+        List<Date> days = state.getRefreshedAt() == null
+                ? stockMovementRepository.findAllDays()
+                : stockMovementRepository
+                        .findDaysChangedSince(state.getRefreshedAt().minus(Duration.ofMillis(lateCommitWindowMs)));
+        this.rebuildDays(days);
+        state.setRefreshedAt(startedAt);
+        stockSnapshotStateRepository.save(state);
+    }
+
+    // Replace the snapshot rows of the given days with the sums of their movements
+    private void rebuildDays(List<Date> days) {
+        if (days.isEmpty()) {
+            return;
+        }
+        stockSnapshotRepository.deleteBySnapshotDates(days);
+
+        List<StockSnapshot> snapshots = new ArrayList<>();
+        for (Object[] row : stockMovementRepository.sumByDays(days)) {
+            // Row: date, device type id, device type name, operator id, operator name, quantity
+            long quantity = ((Number) row[5]).longValue();
+            if (quantity == 0) {
+                continue;
+            }
+            snapshots.add(StockSnapshot.builder()
+                    .snapshotDate((Date) row[0])
+                    .deviceTypeId((Long) row[1])
+                    .deviceTypeName((String) row[2])
+                    .operatorId((Long) row[3])
+                    .operatorName((String) row[4])
+                    .quantity(quantity)
+                    .build());
+        }
+        stockSnapshotRepository.saveAll(snapshots);
+        logger.debug("Stock snapshot refreshed for {} days", days.size());
+    }
+
+    // Lock the refresh state row, creating it on the first run
+    private StockSnapshotState lockState() {
+        return stockSnapshotStateRepository.findForUpdate(StockSnapshotState.ID)
+                .orElseGet(() -> stockSnapshotStateRepository.save(StockSnapshotState.builder()
+                        .id(StockSnapshotState.ID)
+                        .build()));
+    }
+
+    // Turn the quantities of the legacy stock rows into opening movements
+    private void seedFromLegacyStock() {
+        List<StockMovement> movements = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (DeviceStock deviceStock : deviceStockRepository.findAll()) {
+            Stock stock = deviceStock.getStock();
+            if (stock == null || stock.getQuantity() == null || deviceStock.getDeviceType() == null) {
+                continue;
+            }
+            movements.add(StockMovement.builder()
+                    .movementDate(stock.getDateEntree())
+                    .deviceTypeId(deviceStock.getDeviceType().getId())
+                    .delta(stock.getQuantity())
+                    .createdAt(now)
+                    .build());
+        }
+        for (SimStock simStock : simStockRepository.findAll()) {
+            Stock stock = simStock.getStock();
+            if (stock == null || stock.getQuantity() == null || simStock.getOperator() == null) {
+                continue;
+            }
+            movements.add(StockMovement.builder()
+                    .movementDate(stock.getDateEntree())
+                    .operatorId(simStock.getOperator().getId())
+                    .delta(stock.getQuantity())
+                    .createdAt(now)
+                    .build());
+        }
+        stockMovementRepository.saveAll(movements);
+        logger.info("Stock ledger seeded with {} movements from the legacy stock", movements.size());
+    }
+}
@@ -0,0 +1,57 @@
+package com.idirtrack.backend.stock;
+
+import java.sql.Date;
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of the stock ledger: a quantity of devices of a type, or of SIMs
+ * of an operator, entering (positive delta) or leaving (negative delta) the
+ * stock of a given date.
+ *
+ * Rows are only ever inserted, so concurrent writers never wait on each
+ * other. The per-day totals live in StockSnapshot.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "stock_movement", indexes = {
+        @Index(name = "idx_stock_movement_date", columnList = "movement_date"),
+        @Index(name = "idx_stock_movement_created_at", columnList = "created_at")
+})
+public class StockMovement {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "movement_date", nullable = false)
+    private Date movementDate;
+
+    // Set for device movements
+    @Column(name = "device_type_id")
+    private Long deviceTypeId;
+
+    // Set for SIM movements
+    @Column(name = "operator_id")
+    private Long operatorId;
+
+    @Column(nullable = false)
+    private Integer delta;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,31 @@
+package com.idirtrack.backend.stock;
+
+import java.sql.Date;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StockMovementRepository extends JpaRepository<StockMovement, Long> {
+
+    @Query("SELECT DISTINCT m.movementDate FROM StockMovement m")
+    List<Date> findAllDays();
+
+    // Days having movements recorded since the given time
+    @Query("SELECT DISTINCT m.movementDate FROM StockMovement m WHERE m.createdAt >= :since")
+    List<Date> findDaysChangedSince(@Param("since") LocalDateTime since);
+
+    // Rows: date, device type id, device type name, operator id, operator name, quantity
+    @Query("SELECT m.movementDate, m.deviceTypeId, t.name, m.operatorId, o.name, SUM(m.delta) "
+            + "FROM StockMovement m "
+            + "LEFT JOIN DeviceType t ON t.id = m.deviceTypeId "
+            + "LEFT JOIN Operator o ON o.id = m.operatorId "
+            + "WHERE m.movementDate IN :days "
+            + "GROUP BY m.movementDate, m.deviceTypeId, t.name, m.operatorId, o.name")
+    List<Object[]> sumByDays(@Param("days") Collection<Date> days);
+}
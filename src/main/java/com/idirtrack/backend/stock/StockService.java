@@ -14,9 +14,12 @@ public class StockService {
     @Autowired
     private StockRepository stockRepository;
 
-    // Get all stocks
-    public List<Stock> getAllStocks() {
-        return stockRepository.findAll();
+    @Autowired
+    private StockSnapshotRepository stockSnapshotRepository;
+
+    // Get the stock of every day, read from the snapshot of the stock ledger
+    public List<StockSnapshot> getAllStocks() {
+        return stockSnapshotRepository.findAllByOrderBySnapshotDateDescIdAsc();
     }
 
     // Save stock
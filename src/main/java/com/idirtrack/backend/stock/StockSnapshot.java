@@ -0,0 +1,51 @@
+package com.idirtrack.backend.stock;
+
+import java.sql.Date;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stock quantity of one day for one device type or one operator,
+ * materialized from the StockMovement ledger
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "stock_snapshot", indexes = {
+        @Index(name = "idx_stock_snapshot_date", columnList = "snapshot_date")
+})
+public class StockSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "snapshot_date", nullable = false)
+    private Date snapshotDate;
+
+    @Column(name = "device_type_id")
+    private Long deviceTypeId;
+
+    @Column(name = "device_type_name")
+    private String deviceTypeName;
+
+    @Column(name = "operator_id")
+    private Long operatorId;
+
+    @Column(name = "operator_name")
+    private String operatorName;
+
+    private Long quantity;
+}
@@ -0,0 +1,21 @@
+package com.idirtrack.backend.stock;
+
+import java.sql.Date;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StockSnapshotRepository extends JpaRepository<StockSnapshot, Long> {
+
+    List<StockSnapshot> findAllByOrderBySnapshotDateDescIdAsc();
+
+    @Modifying
+    @Query("DELETE FROM StockSnapshot s WHERE s.snapshotDate IN :days")
+    void deleteBySnapshotDates(@Param("days") Collection<Date> days);
+}
@@ -0,0 +1,35 @@
+package com.idirtrack.backend.stock;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Single row recording when the stock snapshot was last refreshed
+ *
+ * It is locked during a refresh so only one refresh runs at a time, even
+ * with several instances of the application.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "stock_snapshot_state")
+public class StockSnapshotState {
+
+    public static final Long ID = 1L;
+
+    @Id
+    private Long id;
+
+    @Column(name = "refreshed_at")
+    private LocalDateTime refreshedAt;
+}
@@ -0,0 +1,19 @@
+package com.idirtrack.backend.stock;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import jakarta.persistence.LockModeType;
+
+@Repository
+public interface StockSnapshotStateRepository extends JpaRepository<StockSnapshotState, Long> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM StockSnapshotState s WHERE s.id = :id")
+    Optional<StockSnapshotState> findForUpdate(@Param("id") Long id);
+}
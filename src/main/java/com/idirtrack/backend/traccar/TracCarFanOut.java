@@ -0,0 +1,71 @@
+package com.idirtrack.backend.traccar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Concurrent calls to Traccar
+ *
+ * Each call runs on its own virtual thread, so N calls cost about one
+ * Traccar round trip instead of N. The calls in flight to the Traccar
+ * server are limited by traccar.fan-out.max-concurrency, across all the
+ * callers of the application, so a large batch does not flood it.
+ */
+@Service
+public class TracCarFanOut {
+
+    // Permits of the calls in flight to the Traccar server
+    private final Semaphore permits;
+
+    public TracCarFanOut(@Value("${traccar.fan-out.max-concurrency:8}") int maxConcurrency) {
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    /**
+     * Run the call for each input concurrently and wait for all the results
+     *
+     * @param inputs
+     * @param call
+     * @return the results, in input order; null for a call that threw
+     */
+    public <T, R> List<R> runAll(List<T> inputs, Function<T, R> call) {
+        List<R> results = new ArrayList<>(inputs.size());
+        if (inputs.size() == 1) {
+            // Nothing to overlap
+            results.add(this.limited(call, inputs.get(0)));
+            return results;
+        }
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<R>> futures = inputs.stream()
+                    .map(input -> CompletableFuture.supplyAsync(() -> this.limited(call, input), executor))
+                    .toList();
+            for (CompletableFuture<R> future : futures) {
+                results.add(future.exceptionally(e -> null).join());
+            }
+            return results;
+        }
+    }
+
+    // Run the call once a permit is free
+    private <T, R> R limited(Function<T, R> call, T input) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            return call.apply(input);
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -9,13 +9,15 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import com.idirtrack.backend.jwt.JwtUtils;
+import com.idirtrack.backend.traccar.dto.TracCarDeviceInfo;
 import com.idirtrack.backend.traccar.request.TracCarDeviceRequest;
-import com.idirtrack.backend.utils.TraccarUtils;
 
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -25,16 +27,13 @@ public class TracCarService {
     private static final Logger logger = LoggerFactory.getLogger(TracCarService.class);
 
     private final RestTemplate restTemplate;
-    private final TraccarUtils traccarUtils;
 
     @Value("${traccar.api.url}")
     private String traccarUrl;
 
     // Create a device in Traccar
-    public Long createDevice(TracCarDeviceRequest request, String bearerToken) {
+    public Long createDevice(TracCarDeviceRequest request, HttpHeaders headers) {
         String url = traccarUrl + "/devices";
-        // Create headers from the bearer token
-        HttpHeaders headers = traccarUtils.createHeadersFromBearerToken(bearerToken);
         HttpEntity<TracCarDeviceRequest> entity = new HttpEntity<>(request, headers);
 
         try {
@@ -54,10 +53,8 @@ public class TracCarService {
     }
 
     // Update a device in Traccar
-    public Long updateDevice(TracCarDeviceRequest request, String bearerToken, Long id) {
+    public Long updateDevice(TracCarDeviceRequest request, HttpHeaders headers, Long id) {
         String url = traccarUrl + "/devices/" + id;
-        // Create headers from the bearer token
-        HttpHeaders headers = traccarUtils.createHeadersFromBearerToken(bearerToken);
         HttpEntity<TracCarDeviceRequest> entity = new HttpEntity<>(request, headers);
 
         try {
@@ -77,10 +74,8 @@ public class TracCarService {
     }
 
     // Delete a device in Traccar
-    public boolean deleteDevice(Long traccarId, String bearerToken) {
+    public boolean deleteDevice(Long traccarId, HttpHeaders headers) {
         String url = traccarUrl + "/devices/" + traccarId;
-        // Create headers from the bearer token
-        HttpHeaders headers = traccarUtils.createHeadersFromBearerToken(bearerToken);
         HttpEntity<Void> entity = new HttpEntity<>(headers);
 
         try {
@@ -97,4 +92,24 @@ public class TracCarService {
             return false;
         }
     }
+
+    // Get all the devices of Traccar, null on error
+    public List<TracCarDeviceInfo> getDevices(HttpHeaders headers) {
+        String url = traccarUrl + "/devices?all=true";
+        HttpEntity<Void> entity = new HttpEntity<>(headers);
+
+        try {
+            ResponseEntity<TracCarDeviceInfo[]> response = restTemplate.exchange(url, HttpMethod.GET, entity,
+                    TracCarDeviceInfo[].class);
+            if (response.getBody() != null) {
+                return Arrays.asList(response.getBody());
+            } else {
+                logger.debug("Error: Received null response from Traccar");
+                return null;
+            }
+        } catch (Exception e) {
+            logger.error("Error getting devices: {}", e.getMessage());
+            return null;
+        }
+    }
 }
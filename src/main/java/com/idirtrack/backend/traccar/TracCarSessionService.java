@@ -1,5 +1,7 @@
 package com.idirtrack.backend.traccar;
 
+import java.time.Instant;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -11,6 +13,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import lombok.RequiredArgsConstructor;
 
@@ -47,18 +50,7 @@ public class TracCarSessionService {
 
         if (response.getStatusCode().is2xxSuccessful()) {
             System.out.println("Session created successfully");
-
-            // Extract the Set-Cookie header
-            String setCookieHeader = response.getHeaders().getFirst(HttpHeaders.SET_COOKIE);
-            if (setCookieHeader != null) {
-                // Parse the cookies and extract the JSESSIONID
-                for (String cookie : setCookieHeader.split(";")) {
-                    if (cookie.trim().startsWith("JSESSIONID=")) {
-                        String sessionId = cookie.split("=")[1];
-                        return sessionId; // Return the session ID
-                    }
-                }
-            }
+            return this.extractSessionId(response);
         } else {
             System.out.println("Failed to create session");
         }
@@ -66,6 +58,54 @@ public class TracCarSessionService {
         return null;
     }
 
-    
+    // Create a token opening sessions of the user of the session until the expiration, null on error
+    public String createToken(String sessionId, Instant expiration) {
+        String tokenEndpoint = url + "/session/token";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Content-Type", "application/x-www-form-urlencoded");
+        headers.add(HttpHeaders.COOKIE, "JSESSIONID=" + sessionId);
 
+        MultiValueMap<String, String> formData = new LinkedMultiValueMap<>();
+        formData.add("expiration", expiration.toString());
+
+        try {
+            ResponseEntity<String> response = restTemplate.exchange(tokenEndpoint, HttpMethod.POST,
+                    new HttpEntity<>(formData, headers), String.class);
+            return response.getBody();
+        } catch (Exception e) {
+            logger.error("Error creating session token: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // Open a session with a token, null on error
+    public String createSessionFromToken(String token) {
+        String sessionEndpoint = UriComponentsBuilder.fromHttpUrl(url + "/session")
+                .queryParam("token", token)
+                .toUriString();
+
+        try {
+            ResponseEntity<String> response = restTemplate.exchange(sessionEndpoint, HttpMethod.GET,
+                    HttpEntity.EMPTY, String.class);
+            return this.extractSessionId(response);
+        } catch (Exception e) {
+            logger.error("Error creating session from token: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // Extract the JSESSIONID of the Set-Cookie header
+    private String extractSessionId(ResponseEntity<?> response) {
+        String setCookieHeader = response.getHeaders().getFirst(HttpHeaders.SET_COOKIE);
+        if (setCookieHeader != null) {
+            // Parse the cookies and extract the JSESSIONID
+            for (String cookie : setCookieHeader.split(";")) {
+                if (cookie.trim().startsWith("JSESSIONID=")) {
+                    return cookie.split("=")[1];
+                }
+            }
+        }
+        return null;
+    }
 }
@@ -7,6 +7,7 @@ import java.util.Map;
 import org.springframework.stereotype.Component;
 
 import com.idirtrack.backend.user.UserDTO;
+import com.idirtrack.backend.user.UserRole;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -45,6 +46,34 @@ public class TracCarUser {
     private String password;
     private Map<String, Object> attributes;
 
+    /**
+     * Build the user to create in Traccar, based on the user's role
+     */
+    public static TracCarUser buildForCreate(UserDTO user) {
+        if (user.getRole() == UserRole.ADMIN) {
+            return TracCarUser.buildAdminUser(user);
+        } else if (user.getRole() == UserRole.MANAGER) {
+            return TracCarUser.buildManagerUser(user);
+        } else if (user.getRole() == UserRole.CLIENT) {
+            return TracCarUser.buildClient(user);
+        }
+        return new TracCarUser();
+    }
+
+    /**
+     * Build the user to update in Traccar, based on the user's role
+     */
+    public static TracCarUser buildForUpdate(UserDTO user) {
+        if (user.getRole() == UserRole.ADMIN) {
+            return TracCarUser.buildAdminUser(user);
+        } else if (user.getRole() == UserRole.MANAGER) {
+            return TracCarUser.buildManagerForUpdate(user);
+        } else if (user.getRole() == UserRole.CLIENT) {
+            return TracCarUser.buildClientForUpdate(user);
+        }
+        return new TracCarUser();
+    }
+
     /**
      * This method is used to setup admin user
      */
@@ -188,13 +217,10 @@ public class TracCarUser {
 
 
     public static TracCarUser buildManagerForUpdate(UserDTO user) {
-        if (user.getTraccarId() == null) {
-            throw new IllegalArgumentException("Traccar ID cannot be null");
-        }
-    
         return TracCarUser.builder()
                 // Manager's information
-                .id(user.getTraccarId()) // Ensure this is not null
+                // Null while the creation is still in the outbox: set when the update is sent
+                .id(user.getTraccarId())
                 .name(user.getName())
                 .email(user.getEmail())
                 .phone(user.getPhone())
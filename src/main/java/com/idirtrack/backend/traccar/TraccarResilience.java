@@ -0,0 +1,173 @@
+package com.idirtrack.backend.traccar;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedRetryMetrics;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Resilience of the calls to the Traccar server
+ *
+ * Every request of the Traccar RestTemplate goes through a bulkhead, which
+ * limits the calls in flight, and a circuit breaker, which fails the calls
+ * fast once Traccar keeps failing and lets a few probe calls through after
+ * a pause. The idempotent requests (GET, PUT, DELETE) are also retried with
+ * a jittered exponential backoff; the POST requests are not, since Traccar
+ * may have applied them before the connection failed.
+ *
+ * A retry calls the rest of the interceptor chain again. The chain is
+ * walked by a single iterator, which the first attempt has used up, so a
+ * retry passes through no interceptor again, only the request factory:
+ * this interceptor is registered last, and the interceptors before it,
+ * like TraccarSessionInterceptor, see the result of the last attempt.
+ *
+ * The I/O errors and the 5xx responses count as failures. A refused call
+ * throws a TraccarUnavailableException, which the services see as a
+ * ResourceAccessException. The state is exposed as the resilience4j.*
+ * metrics, tagged with name=traccar.
+ */
+@Component
+public class TraccarResilience implements ClientHttpRequestInterceptor, MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(TraccarResilience.class);
+
+    private static final String NAME = "traccar";
+
+    private static final Set<HttpMethod> IDEMPOTENT = Set.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.PUT,
+            HttpMethod.DELETE, HttpMethod.OPTIONS);
+
+    // Responses worth another attempt: Traccar or its proxy is restarting
+    private static final Set<Integer> RETRYABLE_STATUS = Set.of(502, 503, 504);
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final BulkheadRegistry bulkheadRegistry;
+    private final RetryRegistry retryRegistry;
+
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final Retry retry;
+
+    public TraccarResilience(
+            @Value("${traccar.resilience.max-concurrent-calls:16}") int maxConcurrentCalls,
+            @Value("${traccar.resilience.max-wait-ms:500}") long maxWaitMs,
+            @Value("${traccar.resilience.failure-rate-threshold:50}") float failureRateThreshold,
+            @Value("${traccar.resilience.sliding-window-size:20}") int slidingWindowSize,
+            @Value("${traccar.resilience.minimum-calls:10}") int minimumCalls,
+            @Value("${traccar.resilience.open-state-ms:30000}") long openStateMs,
+            @Value("${traccar.resilience.half-open-calls:3}") int halfOpenCalls,
+            @Value("${traccar.resilience.retry.max-attempts:3}") int maxAttempts,
+            @Value("${traccar.resilience.retry.initial-backoff-ms:200}") long initialBackoffMs) {
+        this.bulkheadRegistry = BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxWaitDuration(Duration.ofMillis(maxWaitMs))
+                .build());
+        this.circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumCalls)
+                .failureRateThreshold(failureRateThreshold)
+                .waitDurationInOpenState(Duration.ofMillis(openStateMs))
+                .permittedNumberOfCallsInHalfOpenState(halfOpenCalls)
+                // A full bulkhead is our own limit, not a Traccar failure
+                .recordExceptions(IOException.class)
+                .recordResult(TraccarResilience::isServerError)
+                .build());
+        this.retryRegistry = RetryRegistry.of(RetryConfig.<ClientHttpResponse>custom()
+                .maxAttempts(maxAttempts)
+                .intervalFunction(IntervalFunction.ofExponentialRandomBackoff(initialBackoffMs, 2.0, 0.5))
+                .retryExceptions(IOException.class)
+                // A read timeout means Traccar is slow: another attempt would only add load
+                .ignoreExceptions(SocketTimeoutException.class, TraccarUnavailableException.class)
+                .retryOnResult(response -> RETRYABLE_STATUS.contains(statusOf(response)))
+                .consumeResultBeforeRetryAttempt((attempt, response) -> response.close())
+                .build());
+
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(NAME);
+        this.bulkhead = bulkheadRegistry.bulkhead(NAME);
+        this.retry = retryRegistry.retry(NAME);
+
+        circuitBreaker.getEventPublisher().onStateTransition(
+                event -> logger.warn("Traccar circuit breaker: {}", event.getStateTransition()));
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        Callable<ClientHttpResponse> call = () -> this.guarded(request, body, execution);
+        if (IDEMPOTENT.contains(request.getMethod())) {
+            call = Retry.decorateCallable(retry, call);
+        }
+        try {
+            return call.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    // One attempt, through the circuit breaker then the bulkhead
+    private ClientHttpResponse guarded(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws Exception {
+        try {
+            return CircuitBreaker.decorateCallable(circuitBreaker,
+                    Bulkhead.decorateCallable(bulkhead, () -> execution.execute(request, body))).call();
+        } catch (CallNotPermittedException e) {
+            throw new TraccarUnavailableException("Traccar circuit breaker is open", e);
+        } catch (BulkheadFullException e) {
+            throw new TraccarUnavailableException("Too many calls in flight to Traccar", e);
+        }
+    }
+
+    public CircuitBreaker.State getState() {
+        return circuitBreaker.getState();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(registry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(registry);
+        TaggedRetryMetrics.ofRetryRegistry(retryRegistry).bindTo(registry);
+    }
+
+    private static boolean isServerError(Object result) {
+        return result instanceof ClientHttpResponse response && statusOf(response) >= 500;
+    }
+
+    private static int statusOf(ClientHttpResponse response) {
+        try {
+            return response.getStatusCode().value();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.idirtrack.backend.traccar;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.support.HttpRequestWrapper;
+import org.springframework.stereotype.Component;
+
+/**
+ * Renews a Traccar session rejected with a 401, then replays the call once
+ *
+ * Only the calls made with a session known to TraccarSessionManager are
+ * replayed; the calls opening sessions are left alone.
+ *
+ * It must come before TraccarResilience in the chain. The chain is walked
+ * by a single iterator, so calling it again from an interceptor only
+ * reaches the interceptors after that one: the 401 seen here is the result
+ * of the retries of TraccarResilience, and the replay, made once the
+ * chain is used up, goes through TraccarResilience explicitly.
+ */
+@Component
+public class TraccarSessionInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final String SESSION_COOKIE = "JSESSIONID=";
+
+    // Lazy: the manager calls Traccar through the RestTemplate of this interceptor
+    private final ObjectProvider<TraccarSessionManager> traccarSessionManager;
+    private final TraccarResilience traccarResilience;
+
+    public TraccarSessionInterceptor(ObjectProvider<TraccarSessionManager> traccarSessionManager,
+            TraccarResilience traccarResilience) {
+        this.traccarSessionManager = traccarSessionManager;
+        this.traccarResilience = traccarResilience;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        ClientHttpResponse response = execution.execute(request, body);
+        if (response.getStatusCode().value() != 401 || request.getURI().getPath().contains("/session")) {
+            return response;
+        }
+        String staleSessionId = this.sessionIdOf(request.getHeaders());
+        if (staleSessionId == null) {
+            return response;
+        }
+        String sessionId = traccarSessionManager.getObject().renew(staleSessionId);
+        if (sessionId == null || sessionId.equals(staleSessionId)) {
+            return response;
+        }
+        response.close();
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(request.getHeaders());
+        headers.set(HttpHeaders.COOKIE, SESSION_COOKIE + sessionId);
+        return traccarResilience.intercept(new HttpRequestWrapper(request) {
+            @Override
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+        }, body, execution);
+    }
+
+    // The session id of the Cookie header
+    private String sessionIdOf(HttpHeaders headers) {
+        for (String header : headers.getOrEmpty(HttpHeaders.COOKIE)) {
+            for (String cookie : header.split(";")) {
+                if (cookie.trim().startsWith(SESSION_COOKIE)) {
+                    return cookie.trim().substring(SESSION_COOKIE.length());
+                }
+            }
+        }
+        return null;
+    }
+}
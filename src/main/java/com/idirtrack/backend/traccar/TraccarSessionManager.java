@@ -0,0 +1,279 @@
+package com.idirtrack.backend.traccar;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Live Traccar sessions, one per user
+ *
+ * A login reuses the live session of the user, so the logins from many
+ * tabs and devices share one Traccar session and skip the Traccar round
+ * trip. A new session also gets a Traccar token, which opens the next
+ * sessions of the user without their password: the sessions in use are
+ * refreshed before ttl-ms, and a session Traccar rejects with a 401 is
+ * renewed by TraccarSessionInterceptor, which replays the call.
+ *
+ * The JWT keeps the session opened at login; it is resolved to the live
+ * session of the user on each call. A session unknown here, issued before
+ * a restart, is adopted as is. The outbox entries keep the username that
+ * recorded them and are sent with the live session of that user, so they
+ * follow the renewals and the next login after a restart. The sessions
+ * idle for idle-ms are dropped.
+ * The sessions are kept in memory, each instance of the application has
+ * its own.
+ */
+@Service
+public class TraccarSessionManager implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(TraccarSessionManager.class);
+
+    private final TracCarSessionService tracCarSessionService;
+    private final TracCarFanOut tracCarFanOut;
+
+    private final long ttlMs;
+    private final long refreshBeforeMs;
+    private final long idleMs;
+    private final long tokenTtlMs;
+
+    // Session of each username
+    private final Map<String, UserSession> sessions = new ConcurrentHashMap<>();
+    // Username of each session id issued, the current and the replaced ones
+    private final Map<String, String> owners = new ConcurrentHashMap<>();
+
+    // The Traccar session of a user; changed under its lock
+    static final class UserSession {
+        private final String username;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final List<String> sessionIds = new CopyOnWriteArrayList<>();
+        private volatile String sessionId;
+        private volatile long createdAt;
+        private volatile long lastUsedAt;
+        private String token;
+        private long tokenExpiresAt;
+
+        UserSession(String username) {
+            this.username = username;
+            this.lastUsedAt = System.currentTimeMillis();
+        }
+    }
+
+    public TraccarSessionManager(TracCarSessionService tracCarSessionService, TracCarFanOut tracCarFanOut,
+            @Value("${traccar.session.ttl-ms:3600000}") long ttlMs,
+            @Value("${traccar.session.refresh-before-ms:300000}") long refreshBeforeMs,
+            @Value("${traccar.session.idle-ms:86400000}") long idleMs,
+            @Value("${traccar.session.token-ttl-ms:604800000}") long tokenTtlMs) {
+        this.tracCarSessionService = tracCarSessionService;
+        this.tracCarFanOut = tracCarFanOut;
+        this.ttlMs = ttlMs;
+        this.refreshBeforeMs = refreshBeforeMs;
+        this.idleMs = idleMs;
+        this.tokenTtlMs = tokenTtlMs;
+    }
+
+    /**
+     * The live session of the user, or a new one opened with their password
+     *
+     * @return the session id, null if Traccar did not open a session
+     */
+    public String acquire(String username, String email, String password) {
+        UserSession session = sessions.computeIfAbsent(username, UserSession::new);
+        session.lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (this.isLive(session, now)) {
+                session.lastUsedAt = now;
+                return session.sessionId;
+            }
+            String sessionId = tracCarSessionService.createSession(email, password);
+            if (sessionId == null) {
+                return null;
+            }
+            this.renewToken(session, sessionId, now);
+            this.replace(session, sessionId, now);
+            return sessionId;
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * The live session of a user, for a session id taken from their JWT
+     */
+    public String resolve(String username, String sessionId) {
+        long now = System.currentTimeMillis();
+        UserSession session = sessions.get(username);
+        if (session != null && this.isLive(session, now)) {
+            session.lastUsedAt = now;
+            return session.sessionId;
+        }
+        session = sessions.computeIfAbsent(username, UserSession::new);
+        session.lock.lock();
+        try {
+            if (session.sessionId == null) {
+                // Opened before a restart: validated by its first call
+                this.replace(session, sessionId, now);
+            } else if (!this.isLive(session, now)) {
+                // Expired while idle
+                this.refresh(session);
+            }
+            session.lastUsedAt = now;
+            return session.sessionId;
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * The live session of a user, for the calls made on their behalf after
+     * their request, like the outbox entries: refreshed if it expired while
+     * idle, never adopted from the caller
+     *
+     * @return the session id, null if the user has no live session here
+     */
+    public String current(String username) {
+        UserSession session = sessions.get(username);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (this.isLive(session, now)) {
+            return session.sessionId;
+        }
+        session.lock.lock();
+        try {
+            if (session.sessionId != null && !this.isLive(session, now)) {
+                this.refresh(session);
+            }
+            return this.isLive(session, System.currentTimeMillis()) ? session.sessionId : null;
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * A new session replacing one Traccar rejected
+     *
+     * @return the new session id, null if it cannot be renewed
+     */
+    public String renew(String staleSessionId) {
+        String username = owners.get(staleSessionId);
+        UserSession session = username != null ? sessions.get(username) : null;
+        if (session == null) {
+            return null;
+        }
+        session.lock.lock();
+        try {
+            if (session.sessionId != null && !staleSessionId.equals(session.sessionId)) {
+                // Already renewed by another call
+                return session.sessionId;
+            }
+            return this.refresh(session) ? session.sessionId : null;
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Refresh the sessions in use before they expire, drop the idle ones
+     */
+    @Scheduled(fixedDelayString = "${traccar.session.refresh-interval-ms:60000}")
+    public void refreshExpiring() {
+        long now = System.currentTimeMillis();
+        List<UserSession> expiring = new ArrayList<>();
+        for (UserSession session : sessions.values()) {
+            if (now - session.lastUsedAt >= idleMs) {
+                if (session.lock.tryLock()) {
+                    try {
+                        this.evict(session);
+                    } finally {
+                        session.lock.unlock();
+                    }
+                }
+            } else if (now - session.lastUsedAt < ttlMs && now - session.createdAt >= ttlMs - refreshBeforeMs) {
+                // Only the sessions in use: the others are refreshed on their next call
+                expiring.add(session);
+            }
+        }
+        if (expiring.isEmpty()) {
+            return;
+        }
+        tracCarFanOut.runAll(expiring, session -> {
+            if (!session.lock.tryLock()) {
+                return false;
+            }
+            try {
+                return this.refresh(session);
+            } finally {
+                session.lock.unlock();
+            }
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("traccar.sessions", sessions, Map::size)
+                .description("Live Traccar sessions cached")
+                .register(registry);
+    }
+
+    private boolean isLive(UserSession session, long now) {
+        return session.sessionId != null && now - session.createdAt < ttlMs;
+    }
+
+    // Open a new session with the token of the user; under the lock of the session
+    private boolean refresh(UserSession session) {
+        long now = System.currentTimeMillis();
+        if (session.token == null || now >= session.tokenExpiresAt) {
+            // The user has to log in again
+            this.evict(session);
+            return false;
+        }
+        String sessionId = tracCarSessionService.createSessionFromToken(session.token);
+        if (sessionId == null) {
+            logger.warn("Traccar session of {} not refreshed", session.username);
+            return false;
+        }
+        // Extend the token while the user is active
+        if (session.tokenExpiresAt - now < tokenTtlMs / 2) {
+            this.renewToken(session, sessionId, now);
+        }
+        this.replace(session, sessionId, now);
+        return true;
+    }
+
+    private void renewToken(UserSession session, String sessionId, long now) {
+        String token = tracCarSessionService.createToken(sessionId, Instant.ofEpochMilli(now + tokenTtlMs));
+        if (token != null) {
+            session.token = token;
+            session.tokenExpiresAt = now + tokenTtlMs;
+        }
+    }
+
+    private void replace(UserSession session, String sessionId, long now) {
+        session.sessionId = sessionId;
+        session.createdAt = now;
+        session.lastUsedAt = now;
+        session.sessionIds.add(sessionId);
+        owners.put(sessionId, session.username);
+    }
+
+    private void evict(UserSession session) {
+        sessions.remove(session.username, session);
+        session.sessionIds.forEach(owners::remove);
+    }
+}
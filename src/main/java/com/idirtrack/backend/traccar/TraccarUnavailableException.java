@@ -0,0 +1,17 @@
+package com.idirtrack.backend.traccar;
+
+import java.io.IOException;
+
+/**
+ * A Traccar call refused without reaching the server, because the circuit
+ * breaker is open or the bulkhead is full
+ *
+ * It is an IOException, so the RestTemplate reports it as a
+ * ResourceAccessException, like a connection that timed out.
+ */
+public class TraccarUnavailableException extends IOException {
+
+    public TraccarUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
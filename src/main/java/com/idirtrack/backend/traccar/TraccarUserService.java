@@ -1,5 +1,7 @@
 package com.idirtrack.backend.traccar;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -19,10 +21,8 @@ import com.idirtrack.backend.basics.BasicResponse;
 import com.idirtrack.backend.basics.MessageType;
 import com.idirtrack.backend.errors.MyException;
 import com.idirtrack.backend.jwt.JwtUtils;
-import com.idirtrack.backend.user.UserDTO;
-import com.idirtrack.backend.user.UserRole;
+import com.idirtrack.backend.traccar.dto.TracCarUserInfo;
 import com.idirtrack.backend.utils.ErrorResponse;
-import com.idirtrack.backend.utils.TraccarUtils;
 
 import lombok.RequiredArgsConstructor;
 
@@ -31,7 +31,6 @@ import lombok.RequiredArgsConstructor;
 public class TraccarUserService {
 
     private final RestTemplate restTemplate;
-    private final TraccarUtils traccarUtils;
     // Logger
     private static final Logger logger = LoggerFactory.getLogger(TraccarUserService.class);
 
@@ -39,21 +38,9 @@ public class TraccarUserService {
     private String traccarUrl;
 
     // Create a user in Traccar
-    public Long createUser(UserDTO user, String bearerToken) throws MyException {
+    public Long createUser(TracCarUser requestBody, HttpHeaders requestHeader) throws MyException {
         String url = traccarUrl + "/users";
 
-        // Create the request body based on the user's role
-        TracCarUser requestBody = new TracCarUser();
-        if (user.getRole() == UserRole.ADMIN) {
-            requestBody = TracCarUser.buildAdminUser(user);
-        } else if (user.getRole() == UserRole.MANAGER) {
-            requestBody = TracCarUser.buildManagerUser(user);
-        } else if (user.getRole() == UserRole.CLIENT) {
-            requestBody = TracCarUser.buildClient(user);
-        }
-
-        // Config the authorization header for traccar request
-        HttpHeaders requestHeader = traccarUtils.createHeadersFromBearerToken(bearerToken);
         HttpEntity<TracCarUser> requestEntity = new HttpEntity<>(requestBody, requestHeader);
 
         // Send the POST request
@@ -74,21 +61,10 @@ public class TraccarUserService {
     }
 
     // Update user in Traccar
-    public void updateUser(UserDTO user, String bearerToken) throws MyException {
-        String url = traccarUrl + "/users/" + user.getTraccarId();
-
-        // Create the request body based on the user's role
-        TracCarUser requestBody = new TracCarUser();
-        if (user.getRole() == UserRole.ADMIN) {
-            requestBody = TracCarUser.buildAdminUser(user);
-        } else if (user.getRole() == UserRole.MANAGER) {
-            requestBody = TracCarUser.buildManagerForUpdate(user);
-        } else if (user.getRole() == UserRole.CLIENT) {
-            requestBody = TracCarUser.buildClientForUpdate(user);
-        }
+    public void updateUser(Long traccarUserId, TracCarUser requestBody, HttpHeaders requestHeader)
+            throws MyException {
+        String url = traccarUrl + "/users/" + traccarUserId;
 
-        // Create the request header with the bearer token
-        HttpHeaders requestHeader = traccarUtils.createHeadersFromBearerToken(bearerToken);
         HttpEntity<TracCarUser> requestEntity = new HttpEntity<>(requestBody, requestHeader);
 
         // Send the PUT request
@@ -103,10 +79,8 @@ public class TraccarUserService {
     }
 
     // Delete client from Traccar
-    public void deleteUser(Long traccarUserId, String bearerToken) throws MyException {
+    public void deleteUser(Long traccarUserId, HttpHeaders headers) throws MyException {
         String url = traccarUrl + "/users/" + traccarUserId;
-        // Config the authorization header for traccar request
-        HttpHeaders headers = traccarUtils.createHeadersFromBearerToken(bearerToken);
         HttpEntity<Void> entity = new HttpEntity<>(headers);
 
         try {
@@ -125,5 +99,23 @@ public class TraccarUserService {
         }
     }
 
+    // Get all the users of Traccar
+    public List<TracCarUserInfo> getUsers(HttpHeaders headers) throws MyException {
+        String url = traccarUrl + "/users";
+        HttpEntity<Void> entity = new HttpEntity<>(headers);
 
+        try {
+            ResponseEntity<TracCarUserInfo[]> response = restTemplate.exchange(url, HttpMethod.GET, entity,
+                    TracCarUserInfo[].class);
+            if (response.getBody() == null) {
+                throw new IllegalStateException("empty response");
+            }
+            return Arrays.asList(response.getBody());
+        } catch (Exception e) {
+            throw new MyException(ErrorResponse.builder()
+                    .message("Failed to get users from Traccar: " + e.getMessage())
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .build());
+        }
+    }
 }
@@ -0,0 +1,23 @@
+package com.idirtrack.backend.traccar.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A device as listed by Traccar, with the fields we keep in sync
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TracCarDeviceInfo {
+    private Long id;
+    private String name;
+    private String uniqueId;
+    private String phone;
+    // ISO date-time, as returned by Traccar
+    private String expirationTime;
+}
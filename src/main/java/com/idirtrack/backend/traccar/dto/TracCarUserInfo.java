@@ -0,0 +1,22 @@
+package com.idirtrack.backend.traccar.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A user as listed by Traccar, with the fields we keep in sync
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TracCarUserInfo {
+    private Long id;
+    private String name;
+    private String email;
+    private String phone;
+    private boolean administrator;
+}
@@ -1,8 +1,13 @@
 package com.idirtrack.backend.user;
 
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 
@@ -21,4 +26,17 @@ public interface UserRepository extends JpaRepository<User, Long> {
     boolean existsByEmailAndIdNot(String email, Long id);
 
     boolean existsByPhoneAndIdNot(String phone, Long id);
+
+    // Store the Traccar id of the user created in Traccar
+    @Modifying
+    @Query("UPDATE User u SET u.traccarId = :traccarId WHERE u.id = :id")
+    int updateTraccarId(@Param("id") Long id, @Param("traccarId") Long traccarId);
+
+    // Traccar id of the user created in Traccar, empty if none
+    @Query("SELECT u.traccarId FROM User u WHERE u.id = :id")
+    Optional<Long> findTraccarIdById(@Param("id") Long id);
+
+    // Users after a cursor id: id, Traccar id, email, name, phone and role
+    @Query("SELECT u.id, u.traccarId, u.email, u.name, u.phone, u.role FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<Object[]> findSyncRowsAfter(@Param("afterId") Long afterId, Pageable pageable);
 }
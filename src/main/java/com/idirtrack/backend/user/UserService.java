@@ -5,6 +5,7 @@ import java.util.List;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.idirtrack.backend.basics.BasicException;
 import com.idirtrack.backend.basics.BasicResponse;
@@ -12,7 +13,9 @@ import com.idirtrack.backend.basics.MessageType;
 import com.idirtrack.backend.errors.AlreadyExistException;
 import com.idirtrack.backend.errors.MyException;
 import com.idirtrack.backend.errors.NotFoundException;
-import com.idirtrack.backend.traccar.TraccarUserService;
+import com.idirtrack.backend.outbox.OutboxOperation;
+import com.idirtrack.backend.outbox.OutboxService;
+import com.idirtrack.backend.traccar.TracCarUser;
 import com.idirtrack.backend.utils.ErrorResponse;
 import com.idirtrack.backend.utils.FieldErrorDTO;
 import com.idirtrack.backend.basics.BasicError;
@@ -25,28 +28,19 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
-    private final TraccarUserService traccarUserService;
+    private final OutboxService outboxService;
 
-    // Service to save a user in the system
+    // Service to save a user in the system, its creation in Traccar goes through the outbox
+    @Transactional
     public User saveUserInSystem(UserDTO userDTO, String bearerToken) throws MyException {
 
-        // Save the user in Traccar system
-        Long traccarId = traccarUserService.createUser(userDTO, bearerToken);
-
-        if (traccarId == null) {
-            throw new MyException(ErrorResponse.builder()
-                    .message("Failed to create user in Traccar: Traccar ID is null")
-                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .build());
-        }
-
-        // Set the traccar id to the userDTO
-        userDTO.setTraccarId(traccarId);
+        // Build the Traccar user while the password is in clear: Traccar checks it at login
+        TracCarUser traccarUser = TracCarUser.buildForCreate(userDTO);
 
         // Encode the password
         userDTO.setPassword(passwordEncoder.encode(userDTO.getPassword()));
 
-        // Save the user in the database
+        // Save the user in the database, its Traccar id is set once Traccar created it
         User user = User.builder()
                 .username(userDTO.getUsername())
                 .name(userDTO.getName())
@@ -54,12 +48,10 @@ public class UserService {
                 .phone(userDTO.getPhone())
                 .password(userDTO.getPassword())
                 .role(userDTO.getRole())
-                .traccarId(userDTO.getTraccarId())
                 .build();
 
         try {
             user = userRepository.save(user);
-            return user;
         } catch (Exception e) {
             throw new MyException(ErrorResponse.builder()
                     .message("Failed to save user in database")
@@ -67,9 +59,13 @@ public class UserService {
                     .build());
         }
 
+        // Create the user in Traccar once the transaction commits
+        outboxService.enqueue(OutboxOperation.CREATE_USER, user.getId(), null, traccarUser, bearerToken);
+        return user;
     }
 
-    // Service to update a user in the system
+    // Service to update a user in the system, its update in Traccar goes through the outbox
+    @Transactional
     public User updateUserInSystem(UserDTO userDTO, String bearerToken) throws MyException {
 
 
@@ -83,14 +79,8 @@ public class UserService {
             userDTO.setTraccarId(existingUser.getTraccarId());
         }
 
-        if (userDTO.getTraccarId() == null) {
-            throw new MyException(ErrorResponse.builder()
-                    .message("Traccar ID cannot be null for updating a user in Traccar")
-                    .status(HttpStatus.BAD_REQUEST)
-                    .build());
-        }
-            // Update the user in Traccar system
-            traccarUserService.updateUser(userDTO, bearerToken);
+        // Build the Traccar user while the password is in clear
+        TracCarUser traccarUser = TracCarUser.buildForUpdate(userDTO);
 
             // Encode the password
             if (userDTO.getPassword() != null) {
@@ -112,7 +102,6 @@ public class UserService {
 
         try {
             user = userRepository.save(user);
-            return user;
         } catch (Exception e) {
             throw new MyException(ErrorResponse.builder()
                     .message("Failed to update user in database")
@@ -120,17 +109,23 @@ public class UserService {
                     .build());
         }
 
+        // Update the user in Traccar once the transaction commits
+        outboxService.enqueue(OutboxOperation.UPDATE_USER, user.getId(), userDTO.getTraccarId(), traccarUser,
+                bearerToken);
+        return user;
+
     }
 
-    // Service to delete the user from the system
+    // Service to delete the user from the system, its deletion in Traccar goes through the outbox
+    @Transactional
     public void deleteUserFromSystem(Long id, String bearerToken) throws NotFoundException, MyException {
         // Find the user by id
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new NotFoundException(ErrorResponse.builder()
                         .message("User not found with id: " + id)
                         .build()));
-        // Delete the user from Traccar system
-        traccarUserService.deleteUser(user.getTraccarId(), bearerToken);
+        // Delete the user from Traccar once the transaction commits
+        outboxService.enqueue(OutboxOperation.DELETE_USER, user.getId(), user.getTraccarId(), null, bearerToken);
         // Delete the user from the database
         try {
             userRepository.delete(user);
@@ -0,0 +1,56 @@
+package com.idirtrack.backend.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque cursor for keyset (seek) pagination
+ *
+ * The token carries the sort key and the id of the last row of a page, so
+ * the next page is read with "WHERE id < :afterId" instead of an OFFSET.
+ * Our listings are sorted by id descending, so the id is both the sort key
+ * and the tie-breaker.
+ */
+public final class KeysetCursor {
+
+    private KeysetCursor() {
+    }
+
+    /**
+     * Build the token pointing after the given row
+     *
+     * @param sortKey name of the sort key (e.g. "id")
+     * @param lastId  id of the last row of the current page
+     * @return String
+     */
+    public static String encode(String sortKey, Long lastId) {
+        String raw = sortKey + ":" + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read the id from a token
+     *
+     * @param token   the token sent by the client, empty for the first page
+     * @param sortKey the sort key the token must have been built with
+     * @return the id to seek after, or null for the first page
+     * @throws IllegalArgumentException if the token is malformed or was built
+     *                                  for another sort key
+     */
+    public static Long decode(String token, String sortKey) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(':');
+            if (separator < 0 || !raw.substring(0, separator).equals(sortKey)) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return Long.valueOf(raw.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            // Covers bad base64 and NumberFormatException
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
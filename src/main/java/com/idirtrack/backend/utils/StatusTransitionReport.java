@@ -0,0 +1,58 @@
+package com.idirtrack.backend.utils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of a bulk status transition, per requested id
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatusTransitionReport {
+
+    public enum Outcome {
+        // The status was changed
+        UPDATED,
+        // The row already had the target status
+        UNCHANGED,
+        // No row with this id
+        NOT_FOUND,
+        // The lifecycle does not allow the move from the current status
+        REJECTED,
+        // The status was changed by another writer since it was read
+        CONFLICT
+    }
+
+    private String status;
+
+    @Builder.Default
+    private Map<Long, Outcome> results = new LinkedHashMap<>();
+
+    // Ids with the given outcome, in request order
+    public List<Long> idsWith(Outcome outcome) {
+        return results.entrySet().stream()
+                .filter(entry -> entry.getValue() == outcome)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    // True when every requested id exists
+    public boolean allFound() {
+        return !results.containsValue(Outcome.NOT_FOUND);
+    }
+
+    // True when every requested id now has the target status
+    public boolean allApplied() {
+        return results.values().stream()
+                .allMatch(outcome -> outcome == Outcome.UPDATED || outcome == Outcome.UNCHANGED);
+    }
+}
@@ -0,0 +1,23 @@
+package com.idirtrack.backend.utils;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatusTransitionRequest {
+
+    @NotEmpty(message = "The ids are required")
+    private List<Long> ids;
+
+    @NotBlank(message = "The status is required")
+    private String status;
+}
@@ -0,0 +1,83 @@
+package com.idirtrack.backend.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A fixed set of locks selected by the hash of a key (IMEI, CCID, phone)
+ *
+ * Writers of the same key wait for each other, writers of different keys
+ * almost never do. When several keys are locked together, the stripes are
+ * always taken in the same order so two writers cannot deadlock.
+ *
+ * The locks only serialize the writers of this instance: the unique
+ * constraint of the column stays the source of truth.
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] stripes;
+
+    // A held group of stripes, released by close()
+    public interface Lock extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public StripedLocks(int size) {
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Lock the stripes of the keys until close()
+     *
+     * @param keys null keys are ignored
+     * @return Lock
+     */
+    public Lock lock(String... keys) {
+        int[] indexes = Arrays.stream(keys)
+                .filter(key -> key != null)
+                .mapToInt(key -> Math.floorMod(key.hashCode(), stripes.length))
+                .distinct()
+                .sorted()
+                .toArray();
+        for (int index : indexes) {
+            stripes[index].lock();
+        }
+        return () -> {
+            for (int i = indexes.length - 1; i >= 0; i--) {
+                stripes[indexes[i]].unlock();
+            }
+        };
+    }
+
+    /**
+     * Lock the stripes of the keys until the current transaction completes,
+     * or until close() if there is no transaction
+     *
+     * Keeping the lock until the commit makes the new row visible to the
+     * next writer of the same key before it runs its own check.
+     *
+     * @param keys null keys are ignored
+     * @return Lock
+     */
+    public Lock lockUntilCompletion(String... keys) {
+        Lock lock = this.lock(keys);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return lock;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.close();
+            }
+        });
+        return () -> {
+        };
+    }
+}
@@ -0,0 +1,295 @@
+package com.idirtrack.backend.utils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory n-gram index for "contains" lookups on short identifiers
+ * (IMEI, CCID, phone number)
+ *
+ * Every 1, 2 and 3 character gram of the indexed values points to a
+ * BitSet of row ids. A term of up to 3 characters is answered with a
+ * single BitSet, a longer term with the AND of its trigrams followed by a
+ * contains check on the candidates. Each row also carries a tag (its
+ * status) so the lookup can be restricted to one status.
+ *
+ * Results are returned by id descending, like the database listings, or
+ * with searchRanked, exact and prefix matches first.
+ */
+public class SubstringIndex {
+
+    private static final int MAX_GRAM = 3;
+
+    private final Map<String, BitSet> grams = new HashMap<>();
+    private final Map<String, BitSet> tags = new HashMap<>();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final BitSet rows = new BitSet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Ids of a page of results and the total number of matches
+    public record Hits(List<Long> ids, long total) {
+    }
+
+    private record Entry(String tag, String[] values) {
+    }
+
+    /**
+     * Add or replace a row
+     *
+     * @param id     row id
+     * @param tag    row tag (e.g. the status name), may be null
+     * @param values the identifiers to index, nulls are ignored
+     */
+    public void put(long id, String tag, String... values) {
+        int key = Math.toIntExact(id);
+        lock.writeLock().lock();
+        try {
+            this.removeEntry(key);
+            entries.put(key, new Entry(tag, values));
+            rows.set(key);
+            if (tag != null) {
+                tags.computeIfAbsent(tag, t -> new BitSet()).set(key);
+            }
+            for (String value : values) {
+                if (value == null) {
+                    continue;
+                }
+                for (String gram : gramsOf(value)) {
+                    grams.computeIfAbsent(gram, g -> new BitSet()).set(key);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Change the tag of a row, if it is indexed
+     *
+     * @param id
+     * @param tag
+     */
+    public void retag(long id, String tag) {
+        int key = Math.toIntExact(id);
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return;
+            }
+            if (entry.tag() != null) {
+                tags.get(entry.tag()).clear(key);
+            }
+            if (tag != null) {
+                tags.computeIfAbsent(tag, t -> new BitSet()).set(key);
+            }
+            entries.put(key, new Entry(tag, entry.values()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a row
+     *
+     * @param id
+     */
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            this.removeEntry(Math.toIntExact(id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the rows with the given tag having a value containing the term
+     *
+     * @param term   the searched substring, null or blank matches every row
+     * @param tag    the required tag
+     * @param offset number of matches to skip
+     * @param limit  maximum number of ids to return
+     * @return Hits
+     */
+    public Hits search(String term, String tag, long offset, int limit) {
+        lock.readLock().lock();
+        try {
+            BitSet tagged = tags.get(tag);
+            if (tagged == null) {
+                return new Hits(List.of(), 0);
+            }
+            BitSet candidates = (BitSet) tagged.clone();
+            boolean verify = false;
+            if (term != null && !term.isBlank()) {
+                candidates.and(this.gramCandidates(term));
+                // Trigrams only give candidates for longer terms
+                verify = term.length() > MAX_GRAM;
+            }
+
+            List<Long> ids = new ArrayList<>(limit);
+            long total = 0;
+            for (int key = candidates.length() - 1; key >= 0; key = candidates.previousSetBit(key - 1)) {
+                if (verify && !this.contains(entries.get(key), term)) {
+                    continue;
+                }
+                if (total >= offset && ids.size() < limit) {
+                    ids.add((long) key);
+                }
+                total++;
+            }
+            return new Hits(ids, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the rows having a value or a tag containing the term, whatever
+     * their tag, best matches first: a value equal to the term, then a value
+     * starting with it, then the other matches, each group by id descending
+     *
+     * @param term   the searched substring, null or blank matches every row
+     * @param offset number of matches to skip
+     * @param limit  maximum number of ids to return
+     * @return Hits
+     */
+    public Hits searchRanked(String term, long offset, int limit) {
+        lock.readLock().lock();
+        try {
+            if (term == null || term.isBlank()) {
+                return this.page(List.of(this.idsOf(rows)), offset, limit);
+            }
+            BitSet candidates = this.gramCandidates(term);
+            // Rows matching through their tag
+            tags.forEach((tag, ids) -> {
+                if (tag.contains(term)) {
+                    candidates.or(ids);
+                }
+            });
+
+            List<List<Long>> ranks = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+            for (int key = candidates.length() - 1; key >= 0; key = candidates.previousSetBit(key - 1)) {
+                int rank = this.rank(entries.get(key), term);
+                if (rank >= 0) {
+                    ranks.get(rank).add((long) key);
+                }
+            }
+            return this.page(ranks, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Number of indexed rows
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeEntry(int key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return;
+        }
+        rows.clear(key);
+        if (entry.tag() != null) {
+            tags.get(entry.tag()).clear(key);
+        }
+        for (String value : entry.values()) {
+            if (value == null) {
+                continue;
+            }
+            for (String gram : gramsOf(value)) {
+                BitSet ids = grams.get(gram);
+                if (ids != null) {
+                    ids.clear(key);
+                }
+            }
+        }
+    }
+
+    // Rows having all the grams of the term, to verify for terms longer than MAX_GRAM
+    private BitSet gramCandidates(String term) {
+        if (term.length() <= MAX_GRAM) {
+            return (BitSet) grams.getOrDefault(term, new BitSet()).clone();
+        }
+        BitSet candidates = (BitSet) grams.getOrDefault(term.substring(0, MAX_GRAM), new BitSet()).clone();
+        for (int i = 1; i + MAX_GRAM <= term.length(); i++) {
+            candidates.and(grams.getOrDefault(term.substring(i, i + MAX_GRAM), new BitSet()));
+        }
+        return candidates;
+    }
+
+    // 0 if a value is the term, 1 if a value starts with it, 2 for another match, -1 for none
+    private int rank(Entry entry, String term) {
+        int rank = entry.tag() != null && entry.tag().contains(term) ? 2 : -1;
+        for (String value : entry.values()) {
+            if (value == null) {
+                continue;
+            }
+            if (value.equals(term)) {
+                return 0;
+            }
+            if (value.startsWith(term)) {
+                rank = 1;
+            } else if (rank < 0 && value.contains(term)) {
+                rank = 2;
+            }
+        }
+        return rank;
+    }
+
+    // Ids of the set bits, highest first
+    private List<Long> idsOf(BitSet ids) {
+        List<Long> result = new ArrayList<>(ids.cardinality());
+        for (int key = ids.length() - 1; key >= 0; key = ids.previousSetBit(key - 1)) {
+            result.add((long) key);
+        }
+        return result;
+    }
+
+    // A page of the concatenated groups of ids
+    private Hits page(List<List<Long>> groups, long offset, int limit) {
+        List<Long> ids = new ArrayList<>(limit);
+        long total = 0;
+        for (List<Long> group : groups) {
+            for (Long id : group) {
+                if (total >= offset && ids.size() < limit) {
+                    ids.add(id);
+                }
+                total++;
+            }
+        }
+        return new Hits(ids, total);
+    }
+
+    private boolean contains(Entry entry, String term) {
+        for (String value : entry.values()) {
+            if (value != null && value.contains(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // All the grams of 1 to MAX_GRAM characters of a value
+    private static List<String> gramsOf(String value) {
+        List<String> result = new ArrayList<>();
+        for (int n = 1; n <= MAX_GRAM; n++) {
+            for (int i = 0; i + n <= value.length(); i++) {
+                result.add(value.substring(i, i + n));
+            }
+        }
+        return result;
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 
 import com.idirtrack.backend.jwt.JwtUtils;
+import com.idirtrack.backend.traccar.TraccarSessionManager;
 
 import lombok.RequiredArgsConstructor;
 
@@ -13,21 +14,35 @@ import lombok.RequiredArgsConstructor;
 public class TraccarUtils {
 
     private final JwtUtils jwtUtils;
+    private final TraccarSessionManager traccarSessionManager;
 
     public HttpHeaders createHeadersFromBearerToken(String authHeader) {
+        return this.createHeadersFromSession(this.extractSession(authHeader));
+    }
+
+    // Get the live Traccar session of the user of the authorization header
+    public String extractSession(String authHeader) {
         String token = jwtUtils.extractToken(authHeader);
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        // Extract the session ID from the JWT token
         String sessionId = jwtUtils.extractSession(token);
         // Check if the session ID is not null
-        if (sessionId != null) {
-            // Add the session ID as a cookie in the headers
-            headers.add(HttpHeaders.COOKIE, "JSESSIONID=" + sessionId);
-        } else {
+        if (sessionId == null) {
             throw new IllegalArgumentException("Session ID not found in the JWT token.");
         }
+        // The session of the token may have been refreshed since the login
+        return traccarSessionManager.resolve(jwtUtils.extractUsername(token), sessionId);
+    }
 
+    // Get the username of the authorization header
+    public String extractUsername(String authHeader) {
+        return jwtUtils.extractUsername(jwtUtils.extractToken(authHeader));
+    }
+
+    // Headers of a Traccar request made with the given session
+    public HttpHeaders createHeadersFromSession(String sessionId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        // Add the session ID as a cookie in the headers
+        headers.add(HttpHeaders.COOKIE, "JSESSIONID=" + sessionId);
         return headers;
     }
 }
@@ -0,0 +1,37 @@
+package com.idirtrack.backend.utils;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+/**
+ * Find which unique constraint a failed insert or update violated
+ */
+public final class UniqueConstraints {
+
+    private UniqueConstraints() {
+    }
+
+    /**
+     * Check if the exception is a violation of the given constraint
+     *
+     * The constraint name is read from the Hibernate exception, or from the
+     * database message when Hibernate could not extract it.
+     *
+     * @param e
+     * @param constraintName
+     * @return boolean
+     */
+    public static boolean isViolated(DataIntegrityViolationException e, String constraintName) {
+        String name = constraintName.toLowerCase();
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null
+                    && violation.getConstraintName().toLowerCase().contains(name)) {
+                return true;
+            }
+            if (cause.getMessage() != null && cause.getMessage().toLowerCase().contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -23,18 +23,22 @@ import com.idirtrack.backend.client.ClientService;
 import com.idirtrack.backend.client.dtos.ClientDTO;
 import com.idirtrack.backend.device.DeviceDTO;
 import com.idirtrack.backend.device.DeviceService;
+import com.idirtrack.backend.device.DeviceStatus;
 import com.idirtrack.backend.errors.AlreadyExistException;
 import com.idirtrack.backend.errors.MyException;
 import com.idirtrack.backend.errors.NotFoundException;
+import com.idirtrack.backend.outbox.OutboxOperation;
+import com.idirtrack.backend.outbox.OutboxService;
 import com.idirtrack.backend.sim.SimDTO;
 import com.idirtrack.backend.sim.SimService;
+import com.idirtrack.backend.sim.SimStatus;
 import com.idirtrack.backend.subscription.SubscriptionDTO;
 import com.idirtrack.backend.subscription.SubscriptionRepository;
-import com.idirtrack.backend.traccar.TracCarService;
 import com.idirtrack.backend.traccar.request.TracCarDeviceRequest;
 import com.idirtrack.backend.utils.ErrorResponse;
 import com.idirtrack.backend.utils.FieldErrorDTO;
 import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.StatusTransitionReport;
 import com.idirtrack.backend.vehicle.https.UpdateVehicleRequest;
 import com.idirtrack.backend.vehicle.https.VehicleRequest;
 import com.idirtrack.backend.vehicle.https.VehicleResponse;
@@ -51,10 +55,10 @@ public class VehicleService {
         private final BoitierRepository boitierRepository;
         private final ClientService clientService;
         private final BoitierService boitierService;
-        private final TracCarService tracCarService;
         private final DeviceService deviceService;
         private final SimService simService;
         private final SubscriptionRepository subscriptionRepository;
+        private final OutboxService outboxService;
         private static final Logger logger = LoggerFactory.getLogger(VehicleService.class);
 
         // Delete a vehicle
@@ -63,32 +67,28 @@ public class VehicleService {
                         throws NotFoundException, MyException {
                 // Find the vehicle by ID
                 Vehicle vehicle = this.findVehicleById(vehicleId);
-                // Delete the vehicle's boitiers from Traccar
+                // Delete the vehicle's boitiers from Traccar once the transaction commits
                 for (Boitier boitier : vehicle.getBoitiers()) {
-                        boolean isBoitierDeleted = tracCarService.deleteDevice(boitier.getTraccarId(), authHeader);
-                        if (!isBoitierDeleted) {
-                                throw new MyException(ErrorResponse.builder()
-                                                .message("Error while deleting the device from the TracCar microservice")
-                                                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                                                .build());
-                        }
-
+                        outboxService.enqueue(OutboxOperation.DELETE_DEVICE, boitier.getId(), boitier.getTraccarId(),
+                                        null, authHeader);
                 }
                 // Delete the vehicle's boitiers from the database
                 for (Boitier boitier : vehicle.getBoitiers()) {
-                        // Delete the subscriptions
+                        // Delete the subscriptions, once the boitier no longer points to them
+                        boitier.setCurrentSubscription(null);
                         subscriptionRepository.deleteAll(boitier.getSubscriptions());
                         // Delete Boitier
                         boitierRepository.deleteById(boitier.getId());
-                        // Update the status of the device and sim
-                        if (isLost) {
-                                deviceService.changeDeviceStatus(boitier.getDevice().getId(), "LOST");
-                                simService.changeSimStatus(boitier.getSim().getId(), "LOST");
-                        } else {
-                                deviceService.changeDeviceStatus(boitier.getDevice().getId(), "NON_INSTALLED");
-                                simService.changeSimStatus(boitier.getSim().getId(), "NON_INSTALLED");
-                        }
                 }
+                // Update the status of the devices and sims, one statement each
+                List<Long> deviceIds = vehicle.getBoitiers().stream()
+                                .map(boitier -> boitier.getDevice().getId())
+                                .collect(Collectors.toList());
+                List<Long> simIds = vehicle.getBoitiers().stream()
+                                .map(boitier -> boitier.getSim().getId())
+                                .collect(Collectors.toList());
+                deviceService.changeDevicesStatus(deviceIds, isLost ? DeviceStatus.LOST : DeviceStatus.NON_INSTALLED);
+                simService.changeSimsStatus(simIds, isLost ? SimStatus.LOST : SimStatus.NON_INSTALLED);
                 // Delete the vehicle from the database
                 vehicleRepository.deleteById(vehicleId);
                 // Return the response
@@ -114,22 +114,10 @@ public class VehicleService {
                 vehicle.setClient(client);
                 // Save the vehicle
                 vehicle = vehicleRepository.save(vehicle);
-                // Update vehicle's boitiers in Traccar
+                // Update vehicle's boitiers in Traccar once the transaction commits
                 for (Boitier boitier : vehicle.getBoitiers()) {
-                        TracCarDeviceRequest deviceRequest = TracCarDeviceRequest.builder()
-                                        .name(vehicle.getMatricule())
-                                        .uniqueId(boitier.getDevice().getImei())
-                                        .phone(boitier.getSim().getPhone())
-                                        .expirationTime(boitier.getSubscriptions()
-                                                        .get(boitier.getSubscriptions().size() - 1).getEndDate())
-                                        .build();
-                        Long traccarId = tracCarService.updateDevice(deviceRequest, authHeader, boitier.getTraccarId());
-                        if (traccarId == null) {
-                                throw new MyException(ErrorResponse.builder()
-                                                .message("Error while updating the device in the TracCar microservice")
-                                                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                                                .build());
-                        }
+                        outboxService.enqueue(OutboxOperation.UPDATE_DEVICE, boitier.getId(), boitier.getTraccarId(),
+                                        this.buildTraccarDevice(vehicle.getMatricule(), boitier), authHeader);
                 }
                 // Return the response
                 return MyResponse.builder()
@@ -138,17 +126,49 @@ public class VehicleService {
                                 .build();
         }
 
+        /**
+         * Service: Create a vehicle with its boitiers
+         * 
+         * The vehicle is saved and the creation of its devices in Traccar is
+         * recorded in the outbox, in one transaction: the request does not
+         * wait for Traccar, and the boitiers get their Traccar ids once the
+         * OutboxDispatcher has created the devices.
+         * 
+         * @param request
+         * @param authHeader
+         * @return MyResponse
+         */
         @Transactional
         public MyResponse createNewVehicle(VehicleRequest request, String authHeader)
                         throws AlreadyExistException, MyException, NotFoundException {
-
                 // Verify if the vehicle does not already exist by matricule
                 this.checkIfVehicleExists(request.getMatricule());
-                // Find the client by clientId
                 Client client = clientService.findClientById(request.getClientId());
-                // Find and verify the boitiers by boitiersIds
+                List<Boitier> boitiers = this.findUnassignedBoitiers(request.getBoitiersIds());
+
+                // Create the boitiers in Traccar once the transaction commits, read before
+                // the status changes detach the boitiers
+                for (Boitier boitier : boitiers) {
+                        outboxService.enqueue(OutboxOperation.CREATE_DEVICE, boitier.getId(), null,
+                                        this.buildTraccarDevice(request.getMatricule(), boitier), authHeader);
+                }
+                return this.saveNewVehicle(request, client, boitiers);
+        }
+
+        // The Traccar device of a boitier installed on a vehicle
+        private TracCarDeviceRequest buildTraccarDevice(String matricule, Boitier boitier) {
+                return TracCarDeviceRequest.builder()
+                                .name(matricule)
+                                .uniqueId(boitier.getDevice().getImei())
+                                .phone(boitier.getSim().getPhone())
+                                .expirationTime(boitier.getCurrentSubscription().getEndDate())
+                                .build();
+        }
+
+        // Find the boitiers, in request order, checking none is attached to a vehicle
+        private List<Boitier> findUnassignedBoitiers(List<Long> boitierIds) {
                 List<Boitier> boitiers = new ArrayList<>();
-                for (Long boitierId : request.getBoitiersIds()) {
+                for (Long boitierId : boitierIds) {
                         Boitier boitier = boitierRepository.findById(boitierId)
                                         .orElseThrow(() -> new NotFoundException(
                                                         ErrorResponse.builder()
@@ -172,28 +192,11 @@ public class VehicleService {
                         // Add the boitier to the list of boitiers
                         boitiers.add(boitier);
                 }
+                return boitiers;
+        }
 
-                // Save the Boitiers in TracCar Microservice
-                for (Boitier boitier : boitiers) {
-                        TracCarDeviceRequest deviceRequest = TracCarDeviceRequest.builder()
-                                        .name(request.getMatricule())
-                                        .uniqueId(boitier.getDevice().getImei())
-                                        .phone(boitier.getSim().getPhone())
-                                        .expirationTime(boitier.getSubscriptions()
-                                                        .get(boitier.getSubscriptions().size() - 1).getEndDate())
-                                        .build();
-                        Long traccarId = tracCarService.createDevice(deviceRequest, authHeader);
-
-                        if (traccarId == null) { // Corrected condition check
-                                throw new MyException(ErrorResponse.builder()
-                                                .message("Error while saving the device in the TracCar microservice")
-                                                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                                                .build());
-                        }
-
-                        boitier.setTraccarId(traccarId);
-                }
-
+        // Save the vehicle, attach its boitiers and install their devices and SIMs
+        private MyResponse saveNewVehicle(VehicleRequest request, Client client, List<Boitier> boitiers) {
                 // Attach Boitiers to the vehicle and save the vehicle in the database
                 Vehicle vehicle = Vehicle.builder()
                                 .matricule(request.getMatricule())
@@ -210,26 +213,42 @@ public class VehicleService {
                         boitierRepository.save(boitier);
                 }
 
-                // Change the status of the boitiers in the stock
-                for (Boitier boitier : boitiers) {
-                        // Change the status of the device in the stock
-                        boolean isDeviceStatusChanged = deviceService
-                                        .changeDeviceStatus(boitier.getDevice().getId(), "INSTALLED");
-                        if (!isDeviceStatusChanged) {
-                                throw new MyException(ErrorResponse.builder()
-                                                .message("Error while changing the status of the device in the stock")
-                                                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                                                .build());
-                        }
+                // Change the status of the devices in the stock, in one statement
+                StatusTransitionReport deviceReport = deviceService.changeDevicesStatus(boitiers.stream()
+                                .map(boitier -> boitier.getDevice().getId())
+                                .collect(Collectors.toList()), DeviceStatus.INSTALLED);
+                if (!deviceReport.allFound()) {
+                        throw new MyException(ErrorResponse.builder()
+                                        .message("Error while changing the status of the device in the stock")
+                                        .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                        .build());
+                }
+                if (!deviceReport.allApplied()) {
+                        // Not pending, or changed concurrently: roll the vehicle back
+                        throw new MyException(ErrorResponse.builder()
+                                        .message("The device of a boitier cannot be installed: "
+                                                        + deviceReport.getResults())
+                                        .status(HttpStatus.CONFLICT)
+                                        .build());
+                }
 
-                        // Change the status of the SIM in the stock
-                        boolean isSimStatusChanged = simService.changeSimStatus(boitier.getSim().getId(), "INSTALLED");
-                        if (!isSimStatusChanged) {
-                                throw new MyException(ErrorResponse.builder()
-                                                .message("Error while changing the status of the SIM in the stock")
-                                                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                                                .build());
-                        }
+                // Change the status of the SIMs in the stock, in one statement
+                StatusTransitionReport simReport = simService.changeSimsStatus(boitiers.stream()
+                                .map(boitier -> boitier.getSim().getId())
+                                .collect(Collectors.toList()), SimStatus.INSTALLED);
+                if (!simReport.allFound()) {
+                        throw new MyException(ErrorResponse.builder()
+                                        .message("Error while changing the status of the SIM in the stock")
+                                        .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                        .build());
+                }
+                if (!simReport.allApplied()) {
+                        // Not pending, or changed concurrently: roll the vehicle back
+                        throw new MyException(ErrorResponse.builder()
+                                        .message("The SIM of a boitier cannot be installed: "
+                                                        + simReport.getResults())
+                                        .status(HttpStatus.CONFLICT)
+                                        .build());
                 }
 
                 // Return success response
@@ -346,15 +365,9 @@ public class VehicleService {
                                                         .operatorName(boitier.getSim().getOperator().getName())
                                                         .build();
                                         SubscriptionDTO subscriptionDTO = SubscriptionDTO.builder()
-                                                        .id(boitier.getSubscriptions()
-                                                                        .get(boitier.getSubscriptions().size() - 1)
-                                                                        .getId())
-                                                        .startDate(boitier.getSubscriptions()
-                                                                        .get(boitier.getSubscriptions().size() - 1)
-                                                                        .getStartDate())
-                                                        .endDate(boitier.getSubscriptions()
-                                                                        .get(boitier.getSubscriptions().size() - 1)
-                                                                        .getEndDate())
+                                                        .id(boitier.getCurrentSubscription().getId())
+                                                        .startDate(boitier.getCurrentSubscription().getStartDate())
+                                                        .endDate(boitier.getCurrentSubscription().getEndDate())
                                                         .build();
                                         // Return the Boitier DTO
                                         return BoitierDTO.builder()
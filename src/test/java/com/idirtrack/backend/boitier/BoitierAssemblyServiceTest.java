@@ -0,0 +1,166 @@
+package com.idirtrack.backend.boitier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import com.idirtrack.backend.boitier.https.BoitierBatchRequest;
+import com.idirtrack.backend.boitier.https.BoitierRequest;
+import com.idirtrack.backend.device.Device;
+import com.idirtrack.backend.device.DeviceRepository;
+import com.idirtrack.backend.device.DeviceService;
+import com.idirtrack.backend.device.DeviceStatus;
+import com.idirtrack.backend.errors.MyException;
+import com.idirtrack.backend.sim.Sim;
+import com.idirtrack.backend.sim.SimRepository;
+import com.idirtrack.backend.sim.SimService;
+import com.idirtrack.backend.sim.SimStatus;
+import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.StatusTransitionReport;
+
+public class BoitierAssemblyServiceTest {
+
+    @Mock
+    private BoitierRepository boitierRepository;
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @Mock
+    private SimRepository simRepository;
+
+    @Mock
+    private DeviceService deviceService;
+
+    @Mock
+    private SimService simService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private BoitierAssemblyService boitierAssemblyService;
+
+    private final Date start = Date.valueOf(LocalDate.now().plusDays(1));
+    private final Date end = Date.valueOf(LocalDate.now().plusYears(1));
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        boitierAssemblyService = new BoitierAssemblyService(boitierRepository, deviceRepository, simRepository,
+                deviceService, simService, jdbcTemplate);
+    }
+
+    private BoitierBatchRequest batch(long... deviceAndSimIds) {
+        List<BoitierRequest> boitiers = new ArrayList<>();
+        for (int i = 0; i < deviceAndSimIds.length; i += 2) {
+            boitiers.add(BoitierRequest.builder()
+                    .deviceId(deviceAndSimIds[i])
+                    .simId(deviceAndSimIds[i + 1])
+                    .startDate(start)
+                    .endDate(end)
+                    .build());
+        }
+        return BoitierBatchRequest.builder().boitiers(boitiers).build();
+    }
+
+    private StatusTransitionReport report(StatusTransitionReport.Outcome outcome, Long... ids) {
+        StatusTransitionReport report = StatusTransitionReport.builder().status("PENDING").build();
+        for (Long id : ids) {
+            report.getResults().put(id, outcome);
+        }
+        return report;
+    }
+
+    private void stock(DeviceStatus deviceStatus, SimStatus simStatus) {
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(
+                Device.builder().id(1L).status(deviceStatus).build(),
+                Device.builder().id(2L).status(DeviceStatus.NON_INSTALLED).build()));
+        when(simRepository.findAllById(anyCollection())).thenReturn(List.of(
+                Sim.builder().id(10L).status(simStatus).build(),
+                Sim.builder().id(20L).status(SimStatus.NON_INSTALLED).build()));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void assembleBoitiers_shouldLoadValidateAndInsertTheBatchTogether() {
+        // Arrange
+        stock(DeviceStatus.NON_INSTALLED, SimStatus.NON_INSTALLED);
+        when(deviceService.changeDevicesStatus(List.of(1L, 2L), DeviceStatus.PENDING))
+                .thenReturn(report(StatusTransitionReport.Outcome.UPDATED, 1L, 2L));
+        when(simService.changeSimsStatus(List.of(10L, 20L), SimStatus.PENDING))
+                .thenReturn(report(StatusTransitionReport.Outcome.UPDATED, 10L, 20L));
+        when(boitierRepository.findLatestIdsByDeviceIds(List.of(1L, 2L))).thenReturn(List.of(
+                new Object[] { 2L, 101L },
+                new Object[] { 1L, 100L }));
+
+        // Act
+        MyResponse response = boitierAssemblyService.assembleBoitiers(batch(1L, 10L, 2L, 20L));
+
+        // Assert
+        assertEquals(HttpStatus.CREATED, response.getStatus());
+        assertEquals(List.of(100L, 101L), response.getData());
+        verify(deviceRepository, times(1)).findAllById(anyCollection());
+        verify(simRepository, times(1)).findAllById(anyCollection());
+        // One batch for the boitiers, one for the subscriptions
+        verify(jdbcTemplate, times(2)).batchUpdate(any(String.class), anyCollection(), eq(2),
+                any(ParameterizedPreparedStatementSetter.class));
+        verify(boitierRepository, never()).save(any(Boitier.class));
+        verify(boitierRepository, times(1)).refreshCurrentSubscriptions(List.of(100L, 101L));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void assembleBoitiers_shouldRejectTheWholeBatchWhenAnItemIsInvalid() {
+        // Arrange
+        stock(DeviceStatus.PENDING, SimStatus.NON_INSTALLED);
+
+        // Act
+        MyException exception = assertThrows(MyException.class,
+                () -> boitierAssemblyService.assembleBoitiers(batch(1L, 10L, 2L, 10L, 3L, 20L)));
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getResponse().getStatus());
+        assertEquals(3, exception.getResponse().getFieldErrors().size());
+        assertEquals("boitiers[0].deviceId", exception.getResponse().getFieldErrors().get(0).getField());
+        assertEquals("boitiers[1].simId", exception.getResponse().getFieldErrors().get(1).getField());
+        assertEquals("boitiers[2].deviceId", exception.getResponse().getFieldErrors().get(2).getField());
+        verifyNoInteractions(deviceService, simService);
+        verify(jdbcTemplate, never()).batchUpdate(any(String.class), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void assembleBoitiers_shouldFailWhenADeviceWasTakenConcurrently() {
+        // Arrange
+        stock(DeviceStatus.NON_INSTALLED, SimStatus.NON_INSTALLED);
+        StatusTransitionReport devices = report(StatusTransitionReport.Outcome.UPDATED, 1L);
+        devices.getResults().put(2L, StatusTransitionReport.Outcome.CONFLICT);
+        when(deviceService.changeDevicesStatus(List.of(1L, 2L), DeviceStatus.PENDING)).thenReturn(devices);
+
+        // Act
+        MyException exception = assertThrows(MyException.class,
+                () -> boitierAssemblyService.assembleBoitiers(batch(1L, 10L, 2L, 20L)));
+
+        // Assert
+        assertEquals(HttpStatus.CONFLICT, exception.getResponse().getStatus());
+        verify(jdbcTemplate, never()).batchUpdate(any(String.class), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+    }
+}
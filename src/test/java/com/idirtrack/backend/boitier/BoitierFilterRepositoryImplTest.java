@@ -0,0 +1,189 @@
+package com.idirtrack.backend.boitier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.idirtrack.backend.device.Device;
+import com.idirtrack.backend.sim.Sim;
+import com.idirtrack.backend.subscription.Subscription;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+
+public class BoitierFilterRepositoryImplTest {
+
+    private EntityManager entityManager;
+
+    private CriteriaBuilder criteriaBuilder;
+
+    private CriteriaQuery<Object[]> query;
+
+    private TypedQuery<Object[]> typedQuery;
+
+    private BoitierFilterRepositoryImpl boitierFilterRepository;
+
+    @SuppressWarnings("unchecked")
+    @BeforeEach
+    void setUp() {
+        entityManager = mock(EntityManager.class);
+        criteriaBuilder = mock(CriteriaBuilder.class, RETURNS_MOCKS);
+        query = mock(CriteriaQuery.class);
+        typedQuery = mock(TypedQuery.class);
+        when(entityManager.getCriteriaBuilder()).thenReturn(criteriaBuilder);
+        when(criteriaBuilder.createQuery(Object[].class)).thenReturn(query);
+        when(entityManager.createQuery(query)).thenReturn(typedQuery);
+        when(typedQuery.setFirstResult(anyInt())).thenReturn(typedQuery);
+        when(typedQuery.setMaxResults(anyInt())).thenReturn(typedQuery);
+        when(typedQuery.getResultList()).thenReturn(List.of());
+
+        // Each attribute is a path named after the join it is read from
+        Root<Boitier> boitier = attributes(Root.class, "boitier");
+        Join<Object, Object> device = attributes(Join.class, "device");
+        Join<Object, Object> sim = attributes(Join.class, "sim");
+        Join<Object, Object> subscription = attributes(Join.class, "subscription");
+        when(query.from(Boitier.class)).thenReturn(boitier);
+        when(boitier.join("device")).thenReturn(device);
+        when(device.join("deviceType", JoinType.LEFT)).thenReturn(attributes(Join.class, "deviceType"));
+        when(boitier.join("sim")).thenReturn(sim);
+        when(sim.join("operator", JoinType.LEFT)).thenReturn(attributes(Join.class, "operator"));
+        when(boitier.join("currentSubscription", JoinType.LEFT)).thenReturn(subscription);
+
+        boitierFilterRepository = new BoitierFilterRepositoryImpl();
+        ReflectionTestUtils.setField(boitierFilterRepository, "entityManager", entityManager);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T attributes(Class<?> type, String name) {
+        return (T) mock(type, withSettings().name(name).defaultAnswer(invocation -> {
+            if (invocation.getMethod().getName().equals("get") && invocation.getArgument(0) instanceof String attribute) {
+                return attributes(Path.class, name + "." + attribute);
+            }
+            return RETURNS_DEFAULTS.answer(invocation);
+        }));
+    }
+
+    private static <T> Expression<T> path(String name) {
+        return argThat(expression -> expression != null && expression.toString().equals(name));
+    }
+
+    @Test
+    void findFiltered_shouldBuildOnlyThePredicatesOfTheSetCriteria() {
+        // Arrange
+        BoitierFilter filter = BoitierFilter.of(" 3581 ", "", 2L, null, null, false);
+
+        // Act
+        boitierFilterRepository.findFiltered(filter, PageRequest.of(0, 10));
+
+        // Assert: the IMEI is matched by prefix, the blank phone is left out
+        verify(criteriaBuilder).like(path("device.imei"), eq("3581%"));
+        verify(criteriaBuilder).equal(path("sim.operator.id"), eq(2L));
+        verify(criteriaBuilder).isNull(path("boitier.vehicle"));
+        verify(criteriaBuilder, never()).like(path("sim.phone"), anyString());
+        verify(criteriaBuilder, never()).equal(path("device.deviceType.id"), any(Object.class));
+        verify(criteriaBuilder, never()).isNotNull(any());
+        verify(criteriaBuilder, never()).lessThan(any(), any(Date.class));
+    }
+
+    @Test
+    void toPredicate_shouldReadTheSubscriptionStateFromTheCurrentSubscription() {
+        // Arrange
+        Date today = Date.valueOf(LocalDate.now());
+        Root<Boitier> boitier = attributes(Root.class, "boitier");
+        Join<Boitier, Device> device = attributes(Join.class, "device");
+        Join<Boitier, Sim> sim = attributes(Join.class, "sim");
+        Join<Boitier, Subscription> subscription = attributes(Join.class, "subscription");
+
+        // Act
+        BoitierFilter.of(null, null, null, null, "active", true)
+                .toPredicate(boitier, device, sim, subscription, criteriaBuilder);
+        BoitierFilter.of(null, null, null, null, "EXPIRED", null)
+                .toPredicate(boitier, device, sim, subscription, criteriaBuilder);
+        BoitierFilter.of(null, null, null, null, "none", null)
+                .toPredicate(boitier, device, sim, subscription, criteriaBuilder);
+
+        // Assert
+        verify(criteriaBuilder).greaterThanOrEqualTo(path("subscription.endDate"), eq(today));
+        verify(criteriaBuilder).lessThan(path("subscription.endDate"), eq(today));
+        verify(criteriaBuilder).isNull(path("boitier.currentSubscription"));
+        verify(criteriaBuilder).isNotNull(path("boitier.vehicle"));
+        assertThrows(IllegalArgumentException.class, () -> BoitierFilter.of(null, null, null, null, "old", null));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void findFiltered_shouldSortByEndDateThenIdAndReadThePage() {
+        // Arrange: the third page, not full
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[12]);
+        rows.add(new Object[12]);
+        when(typedQuery.getResultList()).thenReturn(rows);
+        Order endDate = mock(Order.class);
+        Order id = mock(Order.class);
+        when(criteriaBuilder.desc(path("subscription.endDate"))).thenReturn(endDate);
+        when(criteriaBuilder.desc(path("boitier.id"))).thenReturn(id);
+
+        // Act
+        Page<Object[]> page = boitierFilterRepository.findFiltered(new BoitierFilter(),
+                PageRequest.of(2, 10, Sort.by("endDate").descending()));
+
+        // Assert: the last page gives the total without a count query
+        ArgumentCaptor<List<Order>> orders = ArgumentCaptor.forClass(List.class);
+        verify(query).orderBy(orders.capture());
+        assertEquals(List.of(endDate, id), orders.getValue());
+        verify(typedQuery).setFirstResult(20);
+        verify(typedQuery).setMaxResults(10);
+        assertEquals(22, page.getTotalElements());
+        verify(criteriaBuilder, never()).createQuery(Long.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void findFiltered_shouldSortByIdAndCountWhenThePageIsFull() {
+        // Arrange
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[12]);
+        when(typedQuery.getResultList()).thenReturn(rows);
+        CriteriaQuery<Long> countQuery = mock(CriteriaQuery.class);
+        TypedQuery<Long> typedCountQuery = mock(TypedQuery.class);
+        when(criteriaBuilder.createQuery(Long.class)).thenReturn(countQuery);
+        when(countQuery.from(Boitier.class)).thenReturn(attributes(Root.class, "boitier"));
+        when(entityManager.createQuery(countQuery)).thenReturn(typedCountQuery);
+        when(typedCountQuery.getSingleResult()).thenReturn(7L);
+
+        // Act
+        Page<Object[]> page = boitierFilterRepository.findFiltered(new BoitierFilter(), PageRequest.of(0, 1));
+
+        // Assert
+        ArgumentCaptor<List<Order>> orders = ArgumentCaptor.forClass(List.class);
+        verify(query).orderBy(orders.capture());
+        assertEquals(1, orders.getValue().size());
+        verify(criteriaBuilder).desc(path("boitier.id"));
+        verify(criteriaBuilder, never()).asc(any());
+        assertEquals(7, page.getTotalElements());
+    }
+}
@@ -0,0 +1,315 @@
+package com.idirtrack.backend.boitier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+
+import com.idirtrack.backend.boitier.dto.BoitierDTO;
+import com.idirtrack.backend.boitier.https.BoitierRequest;
+import com.idirtrack.backend.device.Device;
+import com.idirtrack.backend.device.DeviceService;
+import com.idirtrack.backend.device.DeviceStatus;
+import com.idirtrack.backend.outbox.OutboxService;
+import com.idirtrack.backend.sim.Sim;
+import com.idirtrack.backend.sim.SimService;
+import com.idirtrack.backend.subscription.Subscription;
+import com.idirtrack.backend.subscription.SubscriptionRepository;
+import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.StatusTransitionReport;
+
+public class BoitierServiceTest {
+
+    @Mock
+    private BoitierRepository boitierRepository;
+
+    @Mock
+    private SubscriptionRepository subscriptionRepository;
+
+    @Mock
+    private DeviceService deviceService;
+
+    @Mock
+    private SimService simService;
+
+    @Mock
+    private OutboxService outboxService;
+
+    private BoitierService boitierService;
+
+    private static final Date START_DATE = Date.valueOf("2024-01-01");
+    private static final Date END_DATE = Date.valueOf("2025-01-01");
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        boitierService = new BoitierService(boitierRepository, subscriptionRepository, deviceService, simService,
+                outboxService);
+    }
+
+    // A listing row, in the order of BoitierRepository.LISTING_ROW
+    private Object[] row(Long id, Long subscriptionId) {
+        return new Object[] { id, 10L, "358100000000001", 3L, "FMB920", 20L, "0600000001", "8921200000000001",
+                "IAM", subscriptionId, subscriptionId != null ? START_DATE : null,
+                subscriptionId != null ? END_DATE : null };
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void filterBoitiers_shouldPageTheFilterSortedByEndDate() {
+        // Arrange
+        BoitierFilter filter = BoitierFilter.of("3581", null, null, null, "active", null);
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(row(1L, 5L));
+        when(boitierRepository.findFiltered(eq(filter), any()))
+                .thenReturn(new PageImpl<>(rows, PageRequest.of(1, 10), 11));
+
+        // Act
+        MyResponse response = boitierService.filterBoitiers(filter, "-endDate", 2, 10);
+
+        // Assert: the page is 1-based in the request and the metadata
+        verify(boitierRepository).findFiltered(filter, PageRequest.of(1, 10, Sort.by("endDate").descending()));
+        assertEquals(HttpStatus.OK, response.getStatus());
+        List<BoitierDTO> boitiers = (List<BoitierDTO>) response.getData();
+        assertEquals(1, boitiers.size());
+        assertEquals(END_DATE, boitiers.get(0).getSubscription().getEndDate());
+        Map<String, Object> metadata = (Map<String, Object>) response.getMetadata();
+        assertEquals(2, metadata.get("currentPage"));
+        assertEquals(2, metadata.get("totalPages"));
+        assertEquals(11L, metadata.get("totalElements"));
+    }
+
+    @Test
+    void filterBoitiers_shouldSortByIdWithoutSort() {
+        // Arrange
+        BoitierFilter filter = new BoitierFilter();
+        when(boitierRepository.findFiltered(eq(filter), any())).thenReturn(new PageImpl<>(List.of()));
+
+        // Act
+        MyResponse ascending = boitierService.filterBoitiers(filter, "endDate", 1, 5);
+        MyResponse unsorted = boitierService.filterBoitiers(filter, null, 1, 5);
+
+        // Assert: an empty page is still a page
+        verify(boitierRepository).findFiltered(filter, PageRequest.of(0, 5, Sort.by("endDate").ascending()));
+        verify(boitierRepository).findFiltered(filter, PageRequest.of(0, 5));
+        assertEquals(HttpStatus.OK, unsorted.getStatus());
+        assertEquals("No Boitiers found", ascending.getMessage());
+    }
+
+    @Test
+    void filterBoitiers_shouldRejectAnotherSort() {
+        // Act
+        MyResponse response = boitierService.filterBoitiers(new BoitierFilter(), "imei", 1, 10);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatus());
+        verifyNoInteractions(boitierRepository);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void getUnassignedBoitiers_shouldMapEachColumnOfTheRows() {
+        // Arrange
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(row(1L, 5L));
+        rows.add(row(2L, null));
+        when(boitierRepository.findUnassignedRows(null)).thenReturn(rows);
+
+        // Act
+        MyResponse response = boitierService.getUnassignedBoitiers();
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatus());
+        List<BoitierDTO> boitiers = (List<BoitierDTO>) response.getData();
+        BoitierDTO boitier = boitiers.get(0);
+        assertEquals(1L, boitier.getId());
+        assertEquals(10L, boitier.getDevice().getId());
+        assertEquals("358100000000001", boitier.getDevice().getIMEI());
+        assertEquals(3L, boitier.getDevice().getDeviceTypeId());
+        assertEquals("FMB920", boitier.getDevice().getDeviceType());
+        assertEquals(20L, boitier.getSim().getId());
+        assertEquals("0600000001", boitier.getSim().getPhone());
+        assertEquals("8921200000000001", boitier.getSim().getCcid());
+        assertEquals("IAM", boitier.getSim().getOperatorName());
+        assertEquals(5L, boitier.getSubscription().getId());
+        assertEquals(START_DATE, boitier.getSubscription().getStartDate());
+        assertEquals(END_DATE, boitier.getSubscription().getEndDate());
+        // A boitier without a subscription has none in its DTO
+        assertNull(boitiers.get(1).getSubscription());
+    }
+
+    @Test
+    void getUnassignedBoitiers_shouldReturnNotFoundWithoutBoitiers() {
+        // Arrange
+        when(boitierRepository.findUnassignedRows(null)).thenReturn(List.of());
+
+        // Act
+        MyResponse response = boitierService.getUnassignedBoitiers();
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatus());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void getUnassignedBoitiers_shouldSearchThePageByAnyPartOfTheNumbers() {
+        // Arrange
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(row(1L, 5L));
+        when(boitierRepository.findUnassignedRows(eq("%0600%"), any()))
+                .thenReturn(new PageImpl<>(rows, PageRequest.of(2, 5), 11));
+
+        // Act
+        MyResponse response = boitierService.getUnassignedBoitiers(" 0600 ", 3, 5);
+
+        // Assert
+        verify(boitierRepository).findUnassignedRows("%0600%", PageRequest.of(2, 5));
+        assertEquals(HttpStatus.OK, response.getStatus());
+        assertEquals("0600000001", ((List<BoitierDTO>) response.getData()).get(0).getSim().getPhone());
+        Map<String, Object> metadata = (Map<String, Object>) response.getMetadata();
+        assertEquals(3, metadata.get("currentPage"));
+        assertEquals(3, metadata.get("totalPages"));
+        assertEquals(5, metadata.get("size"));
+        assertEquals(11L, metadata.get("totalElements"));
+    }
+
+    @Test
+    void getUnassignedBoitiers_shouldNotSearchWithABlankSearch() {
+        // Arrange
+        when(boitierRepository.findUnassignedRows(isNull(), any())).thenReturn(new PageImpl<>(List.of()));
+
+        // Act
+        MyResponse response = boitierService.getUnassignedBoitiers("  ", 1, 5);
+
+        // Assert
+        verify(boitierRepository).findUnassignedRows(null, PageRequest.of(0, 5));
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatus());
+    }
+
+    private Boitier installed(Subscription... subscriptions) {
+        Boitier boitier = Boitier.builder()
+                .id(1L)
+                .device(Device.builder().id(10L).build())
+                .sim(Sim.builder().id(20L).build())
+                .subscriptions(new ArrayList<>(List.of(subscriptions)))
+                .build();
+        for (Subscription subscription : subscriptions) {
+            boitier.refreshCurrentSubscription(subscription);
+        }
+        return boitier;
+    }
+
+    @Test
+    void updateBoitier_shouldKeepTheRenewedSubscriptionCurrent() throws Exception {
+        // Arrange
+        Subscription previous = Subscription.builder().id(1L).startDate(START_DATE).endDate(END_DATE).build();
+        Subscription current = Subscription.builder().id(2L).startDate(START_DATE)
+                .endDate(Date.valueOf("2025-06-01")).build();
+        Boitier boitier = installed(previous, current);
+        when(boitierRepository.findById(1L)).thenReturn(Optional.of(boitier));
+        when(deviceService.findDeviceById(10L)).thenReturn(boitier.getDevice());
+        when(simService.findSimById(20L)).thenReturn(boitier.getSim());
+        Date renewedEnd = Date.valueOf(LocalDate.now().plusYears(1));
+
+        // Act
+        MyResponse response = boitierService.updateBoitier(1L, BoitierRequest.builder()
+                .deviceId(10L)
+                .simId(20L)
+                .startDate(Date.valueOf(LocalDate.now().plusDays(1)))
+                .endDate(renewedEnd)
+                .build());
+
+        // Assert: the current subscription is renewed, not the first one
+        assertEquals(HttpStatus.OK, response.getStatus());
+        assertSame(current, boitier.getCurrentSubscription());
+        assertEquals(renewedEnd, current.getEndDate());
+        assertEquals(END_DATE, previous.getEndDate());
+        verify(boitierRepository).save(boitier);
+    }
+
+    @Test
+    void updateBoitier_shouldSaveTheBoitierBeforeTheStatusChangesDetachIt() throws Exception {
+        // Arrange
+        Subscription subscription = Subscription.builder().id(5L).startDate(START_DATE).endDate(END_DATE).build();
+        Boitier boitier = installed(subscription);
+        Device newDevice = Device.builder().id(11L).build();
+        when(boitierRepository.findById(1L)).thenReturn(Optional.of(boitier));
+        when(deviceService.findDeviceById(11L)).thenReturn(newDevice);
+        when(simService.findSimById(20L)).thenReturn(boitier.getSim());
+        StatusTransitionReport moved = StatusTransitionReport.builder().status("PENDING").build();
+        moved.getResults().put(11L, StatusTransitionReport.Outcome.UPDATED);
+        when(deviceService.changeDevicesStatus(List.of(11L), DeviceStatus.PENDING)).thenReturn(moved);
+
+        // Act
+        MyResponse response = boitierService.updateBoitier(1L, BoitierRequest.builder()
+                .deviceId(11L)
+                .simId(20L)
+                .startDate(Date.valueOf(LocalDate.now().plusDays(1)))
+                .endDate(Date.valueOf(LocalDate.now().plusYears(1)))
+                .build());
+
+        // Assert: the bulk status update clears the persistence context
+        assertEquals(HttpStatus.OK, response.getStatus());
+        assertSame(newDevice, boitier.getDevice());
+        InOrder inOrder = inOrder(boitierRepository, deviceService);
+        inOrder.verify(boitierRepository).save(boitier);
+        inOrder.verify(deviceService).changeDevicesStatus(List.of(10L), DeviceStatus.NON_INSTALLED);
+        inOrder.verify(deviceService).changeDevicesStatus(List.of(11L), DeviceStatus.PENDING);
+        verify(simService, never()).changeSimsStatus(any(), any());
+    }
+
+    @Test
+    void deleteBoitierById_shouldClearTheCurrentSubscriptionBeforeDeletingTheSubscriptions() throws Exception {
+        // Arrange
+        Subscription subscription = Subscription.builder().id(5L).startDate(START_DATE).endDate(END_DATE).build();
+        Boitier boitier = installed(subscription);
+        when(boitierRepository.findById(1L)).thenReturn(Optional.of(boitier));
+        List<Subscription> pointedAtDeletion = new ArrayList<>();
+        doAnswer(invocation -> {
+            if (boitier.getCurrentSubscription() != null) {
+                pointedAtDeletion.add(boitier.getCurrentSubscription());
+            }
+            return null;
+        }).when(subscriptionRepository).deleteAll(any());
+
+        // Act
+        boitierService.deleteBoitierById(1L, false, "Bearer token");
+
+        // Assert: the foreign key no longer holds the subscriptions when they are deleted
+        InOrder inOrder = inOrder(subscriptionRepository, boitierRepository);
+        inOrder.verify(subscriptionRepository).deleteAll(List.of(subscription));
+        inOrder.verify(boitierRepository).deleteById(1L);
+        assertTrue(pointedAtDeletion.isEmpty());
+        verify(deviceService).changeDevicesStatus(List.of(10L), DeviceStatus.NON_INSTALLED);
+        verifyNoInteractions(outboxService);
+    }
+
+    @Test
+    void backfillCurrentSubscriptions_shouldPointTheBoitiersWithoutACurrentSubscription() {
+        // Arrange
+        when(boitierRepository.backfillCurrentSubscriptions()).thenReturn(3);
+
+        // Act
+        boitierService.backfillCurrentSubscriptions();
+
+        // Assert
+        verify(boitierRepository, times(1)).backfillCurrentSubscriptions();
+    }
+}
@@ -0,0 +1,79 @@
+package com.idirtrack.backend.boitier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.idirtrack.backend.subscription.Subscription;
+
+public class BoitierTest {
+
+    private Subscription subscription(Long id, String endDate) {
+        return Subscription.builder()
+                .id(id)
+                .startDate(Date.valueOf("2024-01-01"))
+                .endDate(Date.valueOf(endDate))
+                .build();
+    }
+
+    private Boitier boitier(Subscription... subscriptions) {
+        Boitier boitier = Boitier.builder().subscriptions(new ArrayList<>(List.of(subscriptions))).build();
+        for (Subscription subscription : subscriptions) {
+            boitier.refreshCurrentSubscription(subscription);
+        }
+        return boitier;
+    }
+
+    @Test
+    void refreshCurrentSubscription_shouldKeepTheSubscriptionEndingLast() {
+        // Arrange
+        Subscription first = subscription(1L, "2025-01-01");
+        Subscription later = subscription(2L, "2026-01-01");
+        Subscription earlier = subscription(3L, "2024-06-01");
+
+        // Act
+        Boitier boitier = boitier(first, later, earlier);
+
+        // Assert
+        assertSame(later, boitier.getCurrentSubscription());
+    }
+
+    @Test
+    void refreshCurrentSubscription_shouldTakeTheHighestIdOnATie() {
+        // Arrange
+        Subscription higher = subscription(2L, "2025-01-01");
+        Subscription lower = subscription(1L, "2025-01-01");
+        Subscription unsaved = subscription(null, "2025-01-01");
+
+        // Act
+        Boitier boitier = boitier(higher, lower);
+
+        // Assert: a subscription not saved yet is the newest
+        assertSame(higher, boitier.getCurrentSubscription());
+        boitier.refreshCurrentSubscription(unsaved);
+        assertSame(unsaved, boitier.getCurrentSubscription());
+    }
+
+    @Test
+    void refreshCurrentSubscription_shouldFollowARenewalOfTheCurrentSubscription() {
+        // Arrange
+        Subscription other = subscription(1L, "2025-06-01");
+        Subscription current = subscription(2L, "2025-12-01");
+        Boitier boitier = boitier(other, current);
+
+        // Act: renewed, then shortened before the other one
+        current.setEndDate(Date.valueOf("2027-01-01"));
+        boitier.refreshCurrentSubscription(current);
+        Subscription renewed = boitier.getCurrentSubscription();
+        current.setEndDate(Date.valueOf("2025-01-01"));
+        boitier.refreshCurrentSubscription(current);
+
+        // Assert
+        assertSame(current, renewed);
+        assertSame(other, boitier.getCurrentSubscription());
+    }
+}
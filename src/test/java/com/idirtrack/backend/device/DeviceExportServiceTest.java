@@ -0,0 +1,85 @@
+package com.idirtrack.backend.device;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idirtrack.backend.basics.BasicException;
+
+public class DeviceExportServiceTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    private DeviceExportService deviceExportService;
+
+    private final DeviceDTO device = DeviceDTO.builder()
+            .id(7L)
+            .IMEI("356938035643809")
+            .status(DeviceStatus.NON_INSTALLED)
+            .deviceTypeId(1L)
+            .deviceType("GPS Tracker")
+            .remarque("Box 3, \"spare\"")
+            .createAt(Date.valueOf("2024-07-01"))
+            .build();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        deviceExportService = new DeviceExportService(deviceRepository, new ObjectMapper());
+    }
+
+    @Test
+    void exportDevices_shouldWriteCsvRowsFromTheStream() throws Exception {
+        // Arrange
+        DeviceFilter filter = deviceExportService.parseFilter("non_installed", null, null, null);
+        when(deviceRepository.streamFiltered(DeviceFilter.builder().status(DeviceStatus.NON_INSTALLED).build()))
+                .thenReturn(Stream.of(device));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // Act
+        deviceExportService.exportDevices(filter, DeviceExportService.Format.CSV, output);
+
+        // Assert
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("id,imei,status,deviceTypeId,deviceType,remarque,createdAt,updatedAt", lines[0]);
+        assertEquals("7,356938035643809,NON_INSTALLED,1,GPS Tracker,\"Box 3, \"\"spare\"\"\",2024-07-01,", lines[1]);
+    }
+
+    @Test
+    void exportDevices_shouldWriteOneJsonObjectPerLine() throws Exception {
+        // Arrange
+        DeviceFilter filter = deviceExportService.parseFilter(null, null, null, null);
+        when(deviceRepository.streamFiltered(new DeviceFilter()))
+                .thenReturn(Stream.of(device, device));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // Act
+        deviceExportService.exportDevices(filter, DeviceExportService.Format.NDJSON, output);
+
+        // Assert
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("356938035643809", new ObjectMapper().readTree(lines[0]).get("imei").asText());
+    }
+
+    @Test
+    void parseFilter_shouldRejectAnUnknownStatus() {
+        BasicException exception = assertThrows(BasicException.class,
+                () -> deviceExportService.parseFilter("BROKEN", null, null, null));
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getResponse().getStatus());
+        assertThrows(BasicException.class, () -> deviceExportService.parseFormat("xml"));
+    }
+}
@@ -0,0 +1,186 @@
+package com.idirtrack.backend.device;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idirtrack.backend.basics.BasicException;
+import com.idirtrack.backend.basics.BasicResponse;
+import com.idirtrack.backend.device.https.DeviceImportReport;
+import com.idirtrack.backend.deviceType.DeviceType;
+import com.idirtrack.backend.deviceType.DeviceTypeRepository;
+
+import jakarta.validation.Validation;
+
+public class DeviceImportServiceTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @Mock
+    private DeviceTypeRepository deviceTypeRepository;
+
+    @Mock
+    private DeviceService deviceService;
+
+    @Mock
+    private DeviceStatusCounter deviceStatusCounter;
+
+    @Mock
+    private DeviceSearchIndex deviceSearchIndex;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus savepoint;
+
+    private DeviceImportService deviceImportService;
+
+    private final DeviceType gpsTracker = DeviceType.builder().id(1L).name("GPS Tracker").build();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        deviceImportService = new DeviceImportService(deviceRepository, deviceTypeRepository, deviceService,
+                deviceStatusCounter, deviceSearchIndex, jdbcTemplate, transactionManager, new ObjectMapper(),
+                Validation.buildDefaultValidatorFactory().getValidator());
+        when(transactionManager.getTransaction(any())).thenReturn(savepoint);
+    }
+
+    private ByteArrayInputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void importDevices_shouldInsertValidCsvRowsInOneBatch() throws BasicException {
+        // Arrange
+        String csv = "imei,deviceTypeId,remarque\n"
+                + "111111111111111,1,First lot\n"
+                + "222222222222222,1,\n"
+                + "333333333333333,1,Already here\n"
+                + "111111111111111,1,Duplicated line\n"
+                + "12345,1,Too short\n";
+
+        when(deviceTypeRepository.findAllById(anyCollection())).thenReturn(List.of(gpsTracker));
+        when(deviceRepository.findExistingImeis(anyCollection())).thenReturn(List.of("333333333333333"));
+
+        // Act
+        BasicResponse response = deviceImportService.importDevices(body(csv), "text/csv");
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatus());
+        DeviceImportReport report = (DeviceImportReport) response.getContent();
+        assertEquals(5, report.getTotalLines());
+        assertEquals(2, report.getImported());
+        assertEquals(3, report.getRejected());
+        assertEquals("IMEI already exists", report.getErrors().get(0).getMessage());
+        assertEquals("IMEI is duplicated in the import", report.getErrors().get(1).getMessage());
+        assertEquals("The IMEI must be 15 digits", report.getErrors().get(2).getMessage());
+
+        // One uniqueness query and one JDBC batch for the whole lot
+        verify(deviceRepository, times(1)).findExistingImeis(anyCollection());
+        ArgumentCaptor<Collection<Object>> rows = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), rows.capture(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(2, rows.getValue().size());
+
+        // The stock is updated once for the device type
+        verify(deviceService, times(1)).updateDeviceStock(any(Date.class), eq(gpsTracker), eq(2));
+        verify(deviceRepository, never()).save(any(Device.class));
+        verify(deviceStatusCounter, times(1)).added(DeviceStatus.NON_INSTALLED, 2);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void importDevices_shouldRejectNdjsonRowsWithUnknownDeviceType() throws BasicException {
+        // Arrange
+        String ndjson = "{\"imei\":\"111111111111111\",\"deviceTypeId\":1}\n"
+                + "{\"imei\":\"222222222222222\",\"deviceTypeId\":9}\n"
+                + "not json\n";
+
+        when(deviceTypeRepository.findAllById(anyCollection())).thenReturn(List.of(gpsTracker));
+        when(deviceRepository.findExistingImeis(anyCollection())).thenReturn(List.of());
+
+        // Act
+        BasicResponse response = deviceImportService.importDevices(body(ndjson), "application/x-ndjson");
+
+        // Assert
+        DeviceImportReport report = (DeviceImportReport) response.getContent();
+        assertEquals(1, report.getImported());
+        assertEquals(2, report.getRejected());
+        assertEquals("Device type not found", report.getErrors().get(0).getMessage());
+        assertEquals("Invalid JSON line", report.getErrors().get(1).getMessage());
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        verify(deviceService, times(1)).updateDeviceStock(any(Date.class), eq(gpsTracker), eq(1));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void importDevices_shouldInsertOneByOne_whenAConcurrentWriterTookAnImei() throws BasicException {
+        // Arrange: the IMEI 222... is taken between the check and the batch
+        String csv = "111111111111111,1,\n"
+                + "222222222222222,1,\n"
+                + "333333333333333,1,\n";
+
+        when(deviceTypeRepository.findAllById(anyCollection())).thenReturn(List.of(gpsTracker));
+        when(deviceRepository.findExistingImeis(anyCollection()))
+                .thenReturn(List.of())
+                .thenReturn(List.of("222222222222222"));
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenThrow(new DuplicateKeyException("imei"));
+        // The IMEI 333... is taken after the second check
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+                .thenReturn(1)
+                .thenThrow(new DuplicateKeyException("imei"));
+
+        // Act
+        BasicResponse response = deviceImportService.importDevices(body(csv), "text/csv");
+
+        // Assert
+        DeviceImportReport report = (DeviceImportReport) response.getContent();
+        assertEquals(1, report.getImported());
+        assertEquals(2, report.getRejected());
+        assertEquals("IMEI already exists", report.getErrors().get(0).getMessage());
+        assertEquals("222222222222222", report.getErrors().get(0).getImei());
+        assertEquals("333333333333333", report.getErrors().get(1).getImei());
+        // The statements the driver had already sent for the batch are rolled back with it
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(definition.capture());
+        assertEquals(TransactionDefinition.PROPAGATION_NESTED, definition.getValue().getPropagationBehavior());
+        verify(transactionManager).rollback(savepoint);
+        verify(jdbcTemplate, times(2)).update(anyString(), any(PreparedStatementSetter.class));
+        verify(deviceService, times(1)).updateDeviceStock(any(Date.class), eq(gpsTracker), eq(1));
+        verify(deviceStatusCounter, times(1)).added(DeviceStatus.NON_INSTALLED, 1);
+    }
+}
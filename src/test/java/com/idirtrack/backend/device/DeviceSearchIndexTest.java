@@ -0,0 +1,76 @@
+package com.idirtrack.backend.device;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class DeviceSearchIndexTest {
+
+    private DeviceRepository deviceRepository;
+
+    private DeviceSearchIndex deviceSearchIndex;
+
+    @BeforeEach
+    void setUp() {
+        deviceRepository = mock(DeviceRepository.class);
+        deviceSearchIndex = new DeviceSearchIndex(deviceRepository);
+    }
+
+    private List<Object[]> rows(Object[]... rows) {
+        return new ArrayList<>(List.of(rows));
+    }
+
+    private List<Long> search(String query, DeviceStatus status) {
+        return deviceSearchIndex.search(query, status, PageRequest.of(0, 10)).ids();
+    }
+
+    @Test
+    void rebuild_shouldReplayTheChangesCommittedWhileItReads() {
+        // Arrange: the device moves to PENDING and a new one is added while the table is read
+        when(deviceRepository.findIndexRows()).thenReturn(rows(new Object[] { 1L, "111", DeviceStatus.NON_INSTALLED }));
+        deviceSearchIndex.rebuild();
+        when(deviceRepository.findIndexRows()).thenAnswer(invocation -> {
+            List<Object[]> snapshot = rows(new Object[] { 1L, "111", DeviceStatus.NON_INSTALLED });
+            deviceSearchIndex.statusChanged(1L, DeviceStatus.PENDING);
+            deviceSearchIndex.put(Device.builder().id(2L).imei("222").status(DeviceStatus.NON_INSTALLED).build());
+            return snapshot;
+        });
+
+        // Act
+        deviceSearchIndex.rebuild();
+
+        // Assert
+        assertEquals(List.of(2L), search("", DeviceStatus.NON_INSTALLED));
+        assertEquals(List.of(1L), search("111", DeviceStatus.PENDING));
+    }
+
+    @Test
+    void put_shouldApplyTheChangeToTheIndexCurrentAtCommit() {
+        // Arrange
+        when(deviceRepository.findIndexRows()).thenReturn(rows(new Object[] { 1L, "111", DeviceStatus.NON_INSTALLED }));
+        deviceSearchIndex.rebuild();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            deviceSearchIndex.statusChanged(1L, DeviceStatus.PENDING);
+            // A rebuild swaps the index before the commit
+            deviceSearchIndex.rebuild();
+
+            // Act
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Assert
+        assertEquals(List.of(1L), search("111", DeviceStatus.PENDING));
+        assertTrue(search("111", DeviceStatus.NON_INSTALLED).isEmpty());
+    }
+}
@@ -11,16 +11,19 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.HttpStatus;
 
 import com.idirtrack.backend.basics.BasicException;
 import com.idirtrack.backend.basics.BasicResponse;
 import com.idirtrack.backend.device.Device;
 import com.idirtrack.backend.device.DeviceDTO;
+import com.idirtrack.backend.device.DeviceFilter;
 import com.idirtrack.backend.device.DeviceRepository;
 import com.idirtrack.backend.device.DeviceService;
 import com.idirtrack.backend.device.DeviceStatus;
@@ -28,15 +31,17 @@ import com.idirtrack.backend.device.https.DeviceRequest;
 import com.idirtrack.backend.device.https.DeviceUpdateRequest;
 import com.idirtrack.backend.deviceType.DeviceType;
 import com.idirtrack.backend.deviceType.DeviceTypeRepository;
-import com.idirtrack.backend.stock.Stock;
-import com.idirtrack.backend.stock.StockRepository;
+import com.idirtrack.backend.stock.StockLedgerService;
+import com.idirtrack.backend.utils.KeysetCursor;
 import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.StatusTransitionReport;
 
 import java.sql.Date;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -54,10 +59,13 @@ public class DeviceServiceTest {
     private DeviceTypeRepository deviceTypeRepository;
 
     @Mock
-    private StockRepository stockRepository;
+    private StockLedgerService stockLedgerService;
 
     @Mock
-    private DeviceStockRepository deviceStockRepository;
+    private DeviceStatusCounter deviceStatusCounter;
+
+    @Mock
+    private DeviceSearchIndex deviceSearchIndex;
 
     @BeforeEach
     void setUp() {
@@ -74,7 +82,7 @@ public class DeviceServiceTest {
     void testCountDevices() {
         // Arrange
         long expectedCount = 50L;
-        when(deviceRepository.count()).thenReturn(expectedCount);
+        when(deviceStatusCounter.total()).thenReturn(expectedCount);
 
         BasicResponse expectedResponse = BasicResponse.builder()
                 .content(expectedCount)
@@ -98,7 +106,7 @@ public class DeviceServiceTest {
     void testCountDevices_ZeroCount() {
         // Arrange
         long expectedCount = 0L;
-        when(deviceRepository.count()).thenReturn(expectedCount);
+        when(deviceStatusCounter.total()).thenReturn(expectedCount);
 
         BasicResponse expectedResponse = BasicResponse.builder()
                 .content(expectedCount)
@@ -120,10 +128,12 @@ public class DeviceServiceTest {
     @Test
     void testCountDevicesGroupByStatus() {
         // Arrange
-        when(deviceRepository.countByStatus(DeviceStatus.NON_INSTALLED)).thenReturn(10L);
-        when(deviceRepository.countByStatus(DeviceStatus.INSTALLED)).thenReturn(20L);
-        when(deviceRepository.countByStatus(DeviceStatus.LOST)).thenReturn(5L);
-        when(deviceRepository.countByStatus(DeviceStatus.PENDING)).thenReturn(15L);
+        Map<DeviceStatus, Long> counts = new EnumMap<>(DeviceStatus.class);
+        counts.put(DeviceStatus.NON_INSTALLED, 10L);
+        counts.put(DeviceStatus.INSTALLED, 20L);
+        counts.put(DeviceStatus.LOST, 5L);
+        counts.put(DeviceStatus.PENDING, 15L);
+        when(deviceStatusCounter.snapshot()).thenReturn(counts);
 
         Map<String, Long> expectedCountMap = new HashMap<>();
         expectedCountMap.put("nonInstalled", 10L);
@@ -176,12 +186,6 @@ public class DeviceServiceTest {
 
         when(deviceRepository.save(any(Device.class))).thenReturn(savedDevice);
 
-        // Mock stock repository behavior to avoid the NullPointerException
-        when(stockRepository.findByDateEntree(any(Date.class))).thenReturn(new ArrayList<>());
-
-        // Mock deviceStockRepository behavior
-        when(deviceStockRepository.save(any())).thenReturn(null); // Mocking to avoid null exception during save
-
         // Act
         BasicResponse response = deviceService.createDevice(deviceRequest);
 
@@ -192,6 +196,31 @@ public class DeviceServiceTest {
         assertNotNull(response.getContent());
         verify(deviceRepository, times(1)).save(any(Device.class));
         verify(deviceTypeRepository, times(1)).findById(deviceRequest.getDeviceTypeId());
+        verify(stockLedgerService, times(1)).recordDeviceMovement(savedDevice.getCreatedAt(), deviceType, 1);
+    }
+
+    @Test
+    void createDevice_shouldReportImeiError_whenTheUniqueConstraintRejectsIt() {
+        // Arrange: the check passes, but a concurrent create wins the insert
+        DeviceRequest deviceRequest = DeviceRequest.builder()
+                .imei("123456789012345")
+                .deviceTypeId(1L)
+                .build();
+        when(deviceTypeRepository.findById(1L))
+                .thenReturn(Optional.of(DeviceType.builder().id(1L).name("GPS Tracker").build()));
+        when(deviceRepository.existsByImei(deviceRequest.getImei())).thenReturn(false);
+        when(deviceRepository.save(any(Device.class)))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry for key 'device.uk_device_imei'"));
+
+        // Act
+        BasicException exception = assertThrows(BasicException.class,
+                () -> deviceService.createDevice(deviceRequest));
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getResponse().getStatus());
+        assertEquals("imei", exception.getResponse().getErrors().get(0).getKey());
+        assertEquals("IMEI already exists", exception.getResponse().getErrors().get(0).getMessage());
+        verifyNoInteractions(deviceStatusCounter, stockLedgerService);
     }
 
     @Test
@@ -441,24 +470,8 @@ public class DeviceServiceTest {
                 .createdAt(new Date(System.currentTimeMillis()))
                 .build();
 
-        Stock stock = Stock.builder()
-                .id(1L)
-                .dateEntree(device.getCreatedAt())
-                .quantity(1) // Set initial quantity to 1, so after decrement it becomes 0
-                .build();
-
-        DeviceStock deviceStock = DeviceStock.builder()
-                .deviceType(device.getDeviceType())
-                .stock(stock)
-                .build();
-
-        List<Stock> stocks = new ArrayList<>();
-        stocks.add(stock);
-
         // Mock repository calls
         when(deviceRepository.findById(deviceId)).thenReturn(Optional.of(device));
-        when(stockRepository.findByDateEntree(device.getCreatedAt())).thenReturn(stocks);
-        when(deviceStockRepository.findByStockAndDeviceType(stock, device.getDeviceType())).thenReturn(deviceStock);
 
         // Act
         BasicResponse response = deviceService.deleteDevice(deviceId);
@@ -471,12 +484,9 @@ public class DeviceServiceTest {
         // Verify interactions with the repository and the stock update method
         verify(deviceRepository, times(1)).findById(deviceId);
         verify(deviceRepository, times(1)).delete(device);
-        verify(stockRepository, times(1)).findByDateEntree(device.getCreatedAt());
-        verify(deviceStockRepository, times(1)).findByStockAndDeviceType(stock, device.getDeviceType());
-        
-        // Stock quantity should be decremented and now be 0, so the stock and deviceStock should be deleted
-        verify(stockRepository, times(1)).delete(stock);
-        verify(deviceStockRepository, times(1)).delete(deviceStock);
+
+        // The removal is appended to the stock ledger, the stock rows are not read
+        verify(stockLedgerService, times(1)).recordDeviceMovement(device.getCreatedAt(), device.getDeviceType(), -1);
 
         // Ensure no additional interactions with the repository
         verifyNoMoreInteractions(deviceRepository);
@@ -496,20 +506,22 @@ public class DeviceServiceTest {
         int size = 5;
         Pageable pageRequest = PageRequest.of(page - 1, size);
 
-        Device device1 = Device.builder()
+        DeviceDTO device1 = DeviceDTO.builder()
                 .id(1L)
-                .imei("123456789012345")
-                .deviceType(DeviceType.builder().id(1L).name("GPS Tracker").build())
+                .IMEI("123456789012345")
+                .deviceTypeId(1L)
+                .deviceType("GPS Tracker")
                 .build();
 
-        Device device2 = Device.builder()
+        DeviceDTO device2 = DeviceDTO.builder()
                 .id(2L)
-                .imei("987654321098765")
-                .deviceType(DeviceType.builder().id(2L).name("Vehicle Tracker").build())
+                .IMEI("987654321098765")
+                .deviceTypeId(2L)
+                .deviceType("Vehicle Tracker")
                 .build();
 
-        List<Device> deviceList = Arrays.asList(device1, device2);
-        Page<Device> devicePage = new PageImpl<>(deviceList, pageRequest, deviceList.size());
+        List<DeviceDTO> deviceList = Arrays.asList(device1, device2);
+        Page<DeviceDTO> devicePage = new PageImpl<>(deviceList, pageRequest, deviceList.size());
 
         when(deviceRepository.findAllByStatus(DeviceStatus.NON_INSTALLED, pageRequest)).thenReturn(devicePage);
 
@@ -544,7 +556,7 @@ public class DeviceServiceTest {
         int size = 5;
         Pageable pageRequest = PageRequest.of(page - 1, size);
 
-        Page<Device> devicePage = new PageImpl<>(List.of(), pageRequest, 0);
+        Page<DeviceDTO> devicePage = new PageImpl<>(List.of(), pageRequest, 0);
         when(deviceRepository.findAllByStatus(DeviceStatus.NON_INSTALLED, pageRequest)).thenReturn(devicePage);
 
         // Act
@@ -567,10 +579,12 @@ public class DeviceServiceTest {
     @Test
     void testCountDevicesGroupByStatus_ZeroCounts() {
         // Arrange
-        when(deviceRepository.countByStatus(DeviceStatus.NON_INSTALLED)).thenReturn(0L);
-        when(deviceRepository.countByStatus(DeviceStatus.INSTALLED)).thenReturn(0L);
-        when(deviceRepository.countByStatus(DeviceStatus.LOST)).thenReturn(0L);
-        when(deviceRepository.countByStatus(DeviceStatus.PENDING)).thenReturn(0L);
+        Map<DeviceStatus, Long> counts = new EnumMap<>(DeviceStatus.class);
+        counts.put(DeviceStatus.NON_INSTALLED, 0L);
+        counts.put(DeviceStatus.INSTALLED, 0L);
+        counts.put(DeviceStatus.LOST, 0L);
+        counts.put(DeviceStatus.PENDING, 0L);
+        when(deviceStatusCounter.snapshot()).thenReturn(counts);
 
         Map<String, Long> expectedCountMap = new HashMap<>();
         expectedCountMap.put("nonInstalled", 0L);
@@ -608,19 +622,23 @@ public class DeviceServiceTest {
 
         DeviceType deviceType = new DeviceType();
         deviceType.setId(deviceTypeId);
-        when(deviceTypeRepository.findById(deviceTypeId)).thenReturn(Optional.of(deviceType));
 
-        Device device = new Device();
+        DeviceDTO device = new DeviceDTO();
         device.setId(1L);
-        device.setImei("123456789012345");
+        device.setIMEI("123456789012345");
         device.setStatus(DeviceStatus.valueOf(status));
-        device.setDeviceType(deviceType);
-        device.setCreatedAt(Date.valueOf("2023-06-15"));
-
-        List<Device> devices = Collections.singletonList(device);
-        Page<Device> devicePage = new PageImpl<>(devices, PageRequest.of(0, size), 1);
-        when(deviceRepository.filterDevices(eq(DeviceStatus.valueOf(status)), eq(deviceType), any(Date.class),
-                any(Date.class), any(Pageable.class))).thenReturn(devicePage);
+        device.setDeviceTypeId(deviceType.getId());
+        device.setDeviceType(deviceType.getName());
+        device.setCreateAt(Date.valueOf("2023-06-15"));
+
+        List<DeviceDTO> devices = Collections.singletonList(device);
+        Page<DeviceDTO> devicePage = new PageImpl<>(devices, PageRequest.of(0, size), 1);
+        when(deviceRepository.findFiltered(eq(DeviceFilter.builder()
+                .status(DeviceStatus.INSTALLED)
+                .deviceTypeId(deviceTypeId)
+                .createdFrom(Date.valueOf(createdFrom))
+                .createdTo(Date.valueOf(createdTo))
+                .build()), any(Pageable.class))).thenReturn(devicePage);
 
         // When
         BasicResponse response = deviceService.filterDevices(status, deviceTypeId, createdFrom, createdTo, page, size);
@@ -654,10 +672,8 @@ public class DeviceServiceTest {
 
         DeviceType deviceType = new DeviceType();
         deviceType.setId(deviceTypeId);
-        when(deviceTypeRepository.findById(deviceTypeId)).thenReturn(Optional.of(deviceType));
 
-        when(deviceRepository.filterDevices(eq(DeviceStatus.valueOf(status)), eq(deviceType), any(Date.class),
-                any(Date.class), any(Pageable.class))).thenReturn(Page.empty());
+        when(deviceRepository.findFiltered(any(DeviceFilter.class), any(Pageable.class))).thenReturn(Page.empty());
 
         // When
         BasicException exception = assertThrows(BasicException.class,
@@ -689,16 +705,17 @@ public class DeviceServiceTest {
         deviceType.setName("Test Device Type");
 
         // Device Test Object
-        Device device = new Device();
+        DeviceDTO device = new DeviceDTO();
         device.setId(1L);
-        device.setImei("123456789012345");
+        device.setIMEI("123456789012345");
         device.setStatus(DeviceStatus.valueOf(status));
-        device.setDeviceType(deviceType);
-        device.setCreatedAt(Date.valueOf("2023-06-15"));
+        device.setDeviceTypeId(deviceType.getId());
+        device.setDeviceType(deviceType.getName());
+        device.setCreateAt(Date.valueOf("2023-06-15"));
 
-        List<Device> devices = Collections.singletonList(device);
-        Page<Device> devicePage = new PageImpl<>(devices, PageRequest.of(0, size), 1);
-        when(deviceRepository.filterDevices(eq(DeviceStatus.valueOf(status)), eq(null), eq(null), eq(null),
+        List<DeviceDTO> devices = Collections.singletonList(device);
+        Page<DeviceDTO> devicePage = new PageImpl<>(devices, PageRequest.of(0, size), 1);
+        when(deviceRepository.findFiltered(eq(DeviceFilter.builder().status(DeviceStatus.INSTALLED).build()),
                 any(Pageable.class))).thenReturn(devicePage);
 
         // When
@@ -733,19 +750,19 @@ public class DeviceServiceTest {
         // Device Type Test Object
         DeviceType deviceType = new DeviceType();
         deviceType.setId(deviceTypeId);
-        when(deviceTypeRepository.findById(deviceTypeId)).thenReturn(Optional.of(deviceType));
 
         // Device Test Object
-        Device device = new Device();
+        DeviceDTO device = new DeviceDTO();
         device.setId(1L);
-        device.setImei("123456789012345");
-        device.setDeviceType(deviceType);
-        device.setCreatedAt(Date.valueOf("2023-06-15"));
-
-        List<Device> devices = Collections.singletonList(device);
-        Page<Device> devicePage = new PageImpl<>(devices, PageRequest.of(0, size), 1);
-        when(deviceRepository.filterDevices(eq(null), eq(deviceType), eq(null), eq(null), any(Pageable.class)))
-                .thenReturn(devicePage);
+        device.setIMEI("123456789012345");
+        device.setDeviceTypeId(deviceType.getId());
+        device.setDeviceType(deviceType.getName());
+        device.setCreateAt(Date.valueOf("2023-06-15"));
+
+        List<DeviceDTO> devices = Collections.singletonList(device);
+        Page<DeviceDTO> devicePage = new PageImpl<>(devices, PageRequest.of(0, size), 1);
+        when(deviceRepository.findFiltered(eq(DeviceFilter.builder().deviceTypeId(deviceTypeId).build()),
+                any(Pageable.class))).thenReturn(devicePage);
 
         // When
         BasicResponse response = deviceService.filterDevices(status, deviceTypeId, createdFrom, createdTo, page, size);
@@ -783,17 +800,20 @@ public class DeviceServiceTest {
         deviceType.setName("Test Device Type");
 
         // Device Test Object
-        Device device = new Device();
+        DeviceDTO device = new DeviceDTO();
         device.setId(1L);
-        device.setImei("123456789012345");
-        device.setCreatedAt(Date.valueOf("2023-06-15"));
+        device.setIMEI("123456789012345");
+        device.setCreateAt(Date.valueOf("2023-06-15"));
         device.setStatus(DeviceStatus.NON_INSTALLED);
-        device.setDeviceType(deviceType);
+        device.setDeviceTypeId(deviceType.getId());
+        device.setDeviceType(deviceType.getName());
 
-        List<Device> devices = Collections.singletonList(device);
-        Page<Device> devicePage = new PageImpl<>(devices, PageRequest.of(0, size), 1);
-        when(deviceRepository.filterDevices(eq(null), eq(null), eq(Date.valueOf(createdFrom)),
-                eq(Date.valueOf(createdTo)), any(Pageable.class))).thenReturn(devicePage);
+        List<DeviceDTO> devices = Collections.singletonList(device);
+        Page<DeviceDTO> devicePage = new PageImpl<>(devices, PageRequest.of(0, size), 1);
+        when(deviceRepository.findFiltered(eq(DeviceFilter.builder()
+                .createdFrom(Date.valueOf(createdFrom))
+                .createdTo(Date.valueOf(createdTo))
+                .build()), any(Pageable.class))).thenReturn(devicePage);
 
         // When
         BasicResponse response = deviceService.filterDevices(status, deviceTypeId, createdFrom, createdTo, page, size);
@@ -809,6 +829,33 @@ public class DeviceServiceTest {
         assertEquals("123456789012345", deviceDTOs.get(0).getIMEI());
     }
 
+    /**
+     * Test senario for the filter by device type name, resolved to its id
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    void testFilterDevices_ByDeviceTypeName() {
+        // Arrange
+        DeviceType deviceType = DeviceType.builder().id(3L).name("FMB920").build();
+        when(deviceTypeRepository.findByName("FMB920")).thenReturn(deviceType);
+        DeviceDTO device = DeviceDTO.builder().id(1L).IMEI("123456789012345").deviceType("FMB920").build();
+        when(deviceRepository.findFiltered(eq(DeviceFilter.builder()
+                .deviceTypeId(3L)
+                .status(DeviceStatus.INSTALLED)
+                .build()), any(Pageable.class)))
+                .thenReturn(new PageImpl<>(List.of(device), PageRequest.of(0, 10), 1));
+
+        // Act
+        BasicResponse response = deviceService.filterDevices(null, "FMB920", "INSTALLED", null, null, 1, 10);
+        BasicResponse unknown = deviceService.filterDevices(null, "TK103", null, null, null, 1, 10);
+
+        // Assert: an unknown type matches no device, without querying them
+        assertEquals(HttpStatus.OK, response.getStatus());
+        assertEquals(List.of(device), ((Map<String, Object>) response.getContent()).get("devices"));
+        assertEquals(HttpStatus.NOT_FOUND, unknown.getStatus());
+        verify(deviceRepository, times(1)).findFiltered(any(DeviceFilter.class), any(Pageable.class));
+    }
+
     /**
      * Test senario for searching devices successfully
      * 
@@ -817,16 +864,17 @@ public class DeviceServiceTest {
     @Test
     void testSearchDevicesSuccess() throws BasicException {
         // Arrange
-        Device device = new Device();
+        DeviceDTO device = new DeviceDTO();
         device.setId(1L);
-        device.setImei("123456789");
-        device.setDeviceType(DeviceType.builder().id(1L).name("Smartphone").build());
-        device.setCreatedAt(Date.valueOf(LocalDateTime.now().toLocalDate()));
+        device.setIMEI("123456789");
+        device.setDeviceTypeId(1L);
+        device.setDeviceType("Smartphone");
+        device.setCreateAt(Date.valueOf(LocalDateTime.now().toLocalDate()));
         device.setRemarque("Test device");
         device.setStatus(DeviceStatus.NON_INSTALLED);
 
-        List<Device> devices = Collections.singletonList(device);
-        Page<Device> devicePage = new PageImpl<>(devices);
+        List<DeviceDTO> devices = Collections.singletonList(device);
+        Page<DeviceDTO> devicePage = new PageImpl<>(devices);
 
         when(deviceRepository.search(anyString(), any(Pageable.class))).thenReturn(devicePage);
 
@@ -860,4 +908,177 @@ public class DeviceServiceTest {
         assertEquals("No devices found", thrown.getResponse().getMessage());
         assertEquals(HttpStatus.NOT_FOUND, thrown.getResponse().getStatus());
     }
-}
\ No newline at end of file
+
+    /**
+     * Test senario for listing devices in cursor mode
+     * 
+     * @throws BasicException
+     */
+    @Test
+    void testGetAllDevicesWithCursor() throws BasicException {
+        // Arrange
+        DeviceType deviceType = DeviceType.builder().id(1L).name("GPS").build();
+        List<DeviceDTO> devices = Arrays.asList(
+                DeviceDTO.builder().id(40L).IMEI("123456789012345").deviceType(deviceType.getName()).build(),
+                DeviceDTO.builder().id(39L).IMEI("123456789012346").deviceType(deviceType.getName()).build());
+        when(deviceRepository.findSliceAfter(eq(41L), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(devices, PageRequest.of(0, 2), true));
+
+        // Act
+        BasicResponse response = deviceService.getAllDevices(KeysetCursor.encode("id", 41L), 2, false);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatus());
+        assertEquals(2, ((List<?>) response.getContent()).size());
+        assertEquals(KeysetCursor.encode("id", 39L), response.getMetadata().getNextCursor());
+        verify(deviceRepository, never()).count();
+        verify(deviceRepository, never()).findAllListRows(any(Pageable.class));
+        verify(deviceRepository, never()).findFirstSlice(any(Pageable.class));
+    }
+
+    /**
+     * Test senario for an invalid cursor
+     */
+    @Test
+    void testGetAllDevicesWithInvalidCursor() {
+        // Act & Assert
+        BasicException thrown = assertThrows(BasicException.class, () -> {
+            deviceService.getAllDevices("not-a-cursor", 5, false);
+        });
+
+        assertEquals(HttpStatus.BAD_REQUEST, thrown.getResponse().getStatus());
+        verifyNoInteractions(deviceRepository);
+    }
+
+    /**
+     * Test senario for filtering devices in cursor mode
+     * 
+     * @throws BasicException
+     */
+    @Test
+    void testFilterDevicesWithCursor() throws BasicException {
+        // Arrange
+        DeviceFilter afterFilter = DeviceFilter.builder().status(DeviceStatus.PENDING).afterId(41L).build();
+        List<DeviceDTO> devices = Arrays.asList(
+                DeviceDTO.builder().id(40L).IMEI("123456789012345").status(DeviceStatus.PENDING).build());
+        when(deviceRepository.findFilteredSlice(afterFilter, 1))
+                .thenReturn(new SliceImpl<>(devices, PageRequest.of(0, 1), true));
+        when(deviceRepository.countFiltered(DeviceFilter.builder().status(DeviceStatus.PENDING).build()))
+                .thenReturn(12L);
+
+        // Act
+        BasicResponse response = deviceService.filterDevices("pending", null, null, null,
+                KeysetCursor.encode("id", 41L), 1, true);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatus());
+        assertEquals(devices, response.getContent());
+        assertEquals(12L, response.getMetadata().getTotalElements());
+        assertEquals(KeysetCursor.encode("id", 40L), response.getMetadata().getNextCursor());
+    }
+
+    /**
+     * Test senario for the bulk status transition
+     */
+    @Test
+    void testChangeDevicesStatus() {
+        // Arrange
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[] { 1L, DeviceStatus.PENDING });
+        rows.add(new Object[] { 2L, DeviceStatus.INSTALLED });
+        when(deviceRepository.findStatusesByIds(List.of(1L, 2L, 3L))).thenReturn(rows);
+        when(deviceRepository.updateStatusByIds(List.of(1L), DeviceStatus.PENDING, DeviceStatus.INSTALLED))
+                .thenReturn(1);
+
+        // Act
+        StatusTransitionReport report = deviceService.changeDevicesStatus(List.of(1L, 2L, 3L),
+                DeviceStatus.INSTALLED);
+
+        // Assert
+        assertEquals(StatusTransitionReport.Outcome.UPDATED, report.getResults().get(1L));
+        assertEquals(StatusTransitionReport.Outcome.UNCHANGED, report.getResults().get(2L));
+        assertEquals(StatusTransitionReport.Outcome.NOT_FOUND, report.getResults().get(3L));
+        assertFalse(report.allFound());
+        verify(deviceRepository, times(1)).updateStatusByIds(List.of(1L), DeviceStatus.PENDING,
+                DeviceStatus.INSTALLED);
+        verify(deviceRepository, never()).save(any(Device.class));
+        verify(deviceStatusCounter).moved(DeviceStatus.PENDING, DeviceStatus.INSTALLED, 1);
+    }
+
+    /**
+     * Test senario for the bulk status transition with an illegal move and a
+     * concurrent change
+     */
+    @Test
+    void testChangeDevicesStatus_RejectedAndConflict() {
+        // Arrange
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[] { 1L, DeviceStatus.PENDING });
+        rows.add(new Object[] { 2L, DeviceStatus.PENDING });
+        rows.add(new Object[] { 3L, DeviceStatus.NON_INSTALLED });
+        when(deviceRepository.findStatusesByIds(List.of(1L, 2L, 3L))).thenReturn(rows);
+        // Device 2 was moved by another writer before the update
+        when(deviceRepository.updateStatusByIds(List.of(1L, 2L), DeviceStatus.PENDING, DeviceStatus.INSTALLED))
+                .thenReturn(1);
+        List<Object[]> reread = new ArrayList<>();
+        reread.add(new Object[] { 1L, DeviceStatus.INSTALLED });
+        reread.add(new Object[] { 2L, DeviceStatus.NON_INSTALLED });
+        when(deviceRepository.findStatusesByIds(List.of(1L, 2L))).thenReturn(reread);
+
+        // Act
+        StatusTransitionReport report = deviceService.changeDevicesStatus(List.of(1L, 2L, 3L),
+                DeviceStatus.INSTALLED);
+
+        // Assert
+        assertEquals(StatusTransitionReport.Outcome.UPDATED, report.getResults().get(1L));
+        assertEquals(StatusTransitionReport.Outcome.CONFLICT, report.getResults().get(2L));
+        assertEquals(StatusTransitionReport.Outcome.REJECTED, report.getResults().get(3L));
+        assertFalse(report.allApplied());
+        verify(deviceStatusCounter, times(1)).moved(DeviceStatus.PENDING, DeviceStatus.INSTALLED, 1);
+        verify(deviceSearchIndex, times(1)).statusChanged(1L, DeviceStatus.INSTALLED);
+        verify(deviceSearchIndex, never()).statusChanged(2L, DeviceStatus.INSTALLED);
+    }
+
+    /**
+     * Test senario for the single status change, guarded by the status read
+     */
+    @Test
+    void testChangeDeviceStatus() {
+        // Arrange: device 2 is moved by another writer after its status is read
+        List<Object[]> first = new ArrayList<>();
+        first.add(new Object[] { 1L, DeviceStatus.PENDING });
+        List<Object[]> second = new ArrayList<>();
+        second.add(new Object[] { 2L, DeviceStatus.PENDING });
+        when(deviceRepository.findStatusesByIds(List.of(1L))).thenReturn(first);
+        when(deviceRepository.findStatusesByIds(List.of(2L))).thenReturn(second);
+        when(deviceRepository.updateStatusByIds(List.of(1L), DeviceStatus.PENDING, DeviceStatus.INSTALLED))
+                .thenReturn(1);
+        when(deviceRepository.updateStatusByIds(List.of(2L), DeviceStatus.PENDING, DeviceStatus.INSTALLED))
+                .thenReturn(0);
+
+        // Act
+        boolean updated = deviceService.changeDeviceStatus(1L, "INSTALLED");
+        boolean conflict = deviceService.changeDeviceStatus(2L, "INSTALLED");
+
+        // Assert
+        assertTrue(updated);
+        assertFalse(conflict);
+        verify(deviceRepository, never()).findById(any());
+        verify(deviceRepository, never()).save(any(Device.class));
+        verify(deviceStatusCounter, times(1)).moved(DeviceStatus.PENDING, DeviceStatus.INSTALLED);
+        verify(deviceSearchIndex, times(1)).statusChanged(1L, DeviceStatus.INSTALLED);
+        verify(deviceSearchIndex, never()).statusChanged(2L, DeviceStatus.INSTALLED);
+    }
+
+    /**
+     * Test senario for the device lifecycle
+     */
+    @Test
+    void testDeviceStatusTransitions() {
+        assertTrue(DeviceStatus.NON_INSTALLED.canMoveTo(DeviceStatus.PENDING));
+        assertTrue(DeviceStatus.PENDING.canMoveTo(DeviceStatus.INSTALLED));
+        assertTrue(DeviceStatus.INSTALLED.canMoveTo(DeviceStatus.LOST));
+        assertFalse(DeviceStatus.NON_INSTALLED.canMoveTo(DeviceStatus.INSTALLED));
+        assertFalse(DeviceStatus.LOST.canMoveTo(DeviceStatus.PENDING));
+    }
+}
@@ -0,0 +1,121 @@
+package com.idirtrack.backend.device;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class DeviceStatusCounterTest {
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @InjectMocks
+    private DeviceStatusCounter deviceStatusCounter;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[] { DeviceStatus.NON_INSTALLED, 10L });
+        rows.add(new Object[] { DeviceStatus.INSTALLED, 20L });
+        when(deviceRepository.countGroupByStatus()).thenReturn(rows);
+    }
+
+    @Test
+    void snapshot_shouldLoadAllCountsWithOneQuery() {
+        // Act
+        Map<DeviceStatus, Long> counts = deviceStatusCounter.snapshot();
+        long total = deviceStatusCounter.total();
+
+        // Assert
+        assertEquals(10L, counts.get(DeviceStatus.NON_INSTALLED));
+        assertEquals(20L, counts.get(DeviceStatus.INSTALLED));
+        assertEquals(0L, counts.get(DeviceStatus.LOST));
+        assertEquals(0L, counts.get(DeviceStatus.PENDING));
+        assertEquals(30L, total);
+        verify(deviceRepository, times(1)).countGroupByStatus();
+        verify(deviceRepository, never()).countByStatus(any());
+    }
+
+    @Test
+    void changes_shouldUpdateCountsWithoutQuerying() {
+        // Arrange
+        deviceStatusCounter.snapshot();
+
+        // Act
+        deviceStatusCounter.added(DeviceStatus.NON_INSTALLED, 3);
+        deviceStatusCounter.moved(DeviceStatus.NON_INSTALLED, DeviceStatus.PENDING);
+        deviceStatusCounter.moved(DeviceStatus.INSTALLED, DeviceStatus.LOST, 4);
+        deviceStatusCounter.removed(DeviceStatus.INSTALLED);
+
+        // Assert
+        assertEquals(12L, deviceStatusCounter.count(DeviceStatus.NON_INSTALLED));
+        assertEquals(1L, deviceStatusCounter.count(DeviceStatus.PENDING));
+        assertEquals(15L, deviceStatusCounter.count(DeviceStatus.INSTALLED));
+        assertEquals(4L, deviceStatusCounter.count(DeviceStatus.LOST));
+        verify(deviceRepository, times(1)).countGroupByStatus();
+    }
+
+    @Test
+    void reconcile_shouldCorrectDrift() {
+        // Arrange
+        deviceStatusCounter.snapshot();
+        deviceStatusCounter.added(DeviceStatus.LOST, 5);
+
+        // Act
+        deviceStatusCounter.reconcile();
+
+        // Assert
+        assertEquals(0L, deviceStatusCounter.count(DeviceStatus.LOST));
+        verify(deviceRepository, times(2)).countGroupByStatus();
+    }
+
+    @Test
+    void reconcile_shouldKeepTheChangesCommittedDuringTheQuery() throws Exception {
+        // Arrange: the query reads its rows, then waits for changes committed meanwhile
+        deviceStatusCounter.snapshot();
+        CountDownLatch querying = new CountDownLatch(1);
+        CountDownLatch committed = new CountDownLatch(1);
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[] { DeviceStatus.NON_INSTALLED, 10L });
+        rows.add(new Object[] { DeviceStatus.INSTALLED, 20L });
+        when(deviceRepository.countGroupByStatus()).thenAnswer(invocation -> {
+            querying.countDown();
+            assertTrue(committed.await(5, TimeUnit.SECONDS));
+            return rows;
+        });
+        Thread reconciliation = new Thread(deviceStatusCounter::reconcile);
+
+        // Act
+        reconciliation.start();
+        assertTrue(querying.await(5, TimeUnit.SECONDS));
+        deviceStatusCounter.moved(DeviceStatus.NON_INSTALLED, DeviceStatus.INSTALLED, 2);
+        deviceStatusCounter.added(DeviceStatus.LOST, 1);
+        committed.countDown();
+        reconciliation.join(5000);
+
+        // Assert: the counts set by the reconciliation include the changes
+        assertFalse(reconciliation.isAlive());
+        assertEquals(8L, deviceStatusCounter.count(DeviceStatus.NON_INSTALLED));
+        assertEquals(22L, deviceStatusCounter.count(DeviceStatus.INSTALLED));
+        assertEquals(1L, deviceStatusCounter.count(DeviceStatus.LOST));
+
+        // Act: the next reconciliation no longer replays them
+        when(deviceRepository.countGroupByStatus()).thenReturn(rows);
+        deviceStatusCounter.reconcile();
+
+        // Assert
+        assertEquals(0L, deviceStatusCounter.count(DeviceStatus.LOST));
+    }
+}
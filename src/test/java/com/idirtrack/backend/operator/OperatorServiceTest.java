@@ -9,6 +9,7 @@ import static org.mockito.Mockito.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -24,6 +25,8 @@ import org.springframework.http.HttpStatus;
 
 import com.idirtrack.backend.errors.AlreadyExistException;
 import com.idirtrack.backend.errors.NotFoundException;
+import com.idirtrack.backend.sim.SimStatisticsService;
+import com.idirtrack.backend.sim.SimStatus;
 import com.idirtrack.backend.utils.MyResponse;
 
 class OperatorServiceTest {
@@ -34,6 +37,9 @@ class OperatorServiceTest {
     @Mock
     private OperatorRepository operatorRepository;
 
+    @Mock
+    private SimStatisticsService simStatisticsService;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
@@ -52,13 +58,18 @@ class OperatorServiceTest {
         Page<Operator> operatorPage = new PageImpl<>(operators, PageRequest.of(0, 10, Sort.by("id").descending()), 1);
 
         when(operatorRepository.findAll(any(PageRequest.class))).thenReturn(operatorPage);
-        when(operatorRepository.countSimsByOperatorId(anyLong())).thenReturn(100L);
+        when(simStatisticsService.matrix()).thenReturn(new SimStatisticsService.Matrix(
+                Map.of(SimStatus.NON_INSTALLED, Map.of(1L, 60L), SimStatus.INSTALLED, Map.of(1L, 40L, 2L, 5L))));
 
         MyResponse response = operatorService.getOperatorsWithPagination(1, 10);
 
         assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
         assertThat(response.getData()).isNotNull();
         assertThat(response.getMetadata()).isNotNull();
+        @SuppressWarnings("unchecked")
+        List<OperatorDTO> operatorDTOs = (List<OperatorDTO>) response.getData();
+        assertThat(operatorDTOs.get(0).getTotalSims()).isEqualTo(100);
+        verify(operatorRepository, never()).countSimsByOperatorId(anyLong());
     }
 
     /**
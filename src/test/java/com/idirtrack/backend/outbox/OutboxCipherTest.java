@@ -0,0 +1,44 @@
+package com.idirtrack.backend.outbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+public class OutboxCipherTest {
+
+    private final OutboxCipher outboxCipher = new OutboxCipher(Base64.getEncoder().encodeToString(new byte[32]));
+
+    @Test
+    void encrypt_shouldNotStoreThePasswordInClear() {
+        // Act
+        String encrypted = outboxCipher.encrypt("{\"password\":\"secret\"}");
+
+        // Assert
+        assertFalse(encrypted.contains("secret"));
+        assertNotEquals(encrypted, outboxCipher.encrypt("{\"password\":\"secret\"}"));
+        assertEquals("{\"password\":\"secret\"}", outboxCipher.decrypt(encrypted));
+        assertNull(outboxCipher.encrypt(null));
+    }
+
+    @Test
+    void decrypt_shouldRefuseAValueEncryptedWithAnotherKey() {
+        // Arrange
+        byte[] otherKey = new byte[32];
+        otherKey[0] = 1;
+        String encrypted = new OutboxCipher(Base64.getEncoder().encodeToString(otherKey)).encrypt("session");
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> outboxCipher.decrypt(encrypted));
+    }
+
+    @Test
+    void constructor_shouldRefuseAMissingOrShortKey() {
+        // Act & Assert: a random key would lose the entries on the next restart
+        assertThrows(IllegalStateException.class, () -> new OutboxCipher(""));
+        assertThrows(IllegalStateException.class, () -> new OutboxCipher("not base64!"));
+        assertThrows(IllegalStateException.class,
+                () -> new OutboxCipher(Base64.getEncoder().encodeToString(new byte[16])));
+    }
+}
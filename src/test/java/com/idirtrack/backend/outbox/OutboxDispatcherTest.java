@@ -0,0 +1,260 @@
+package com.idirtrack.backend.outbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idirtrack.backend.boitier.BoitierRepository;
+import com.idirtrack.backend.traccar.TracCarFanOut;
+import com.idirtrack.backend.traccar.TracCarService;
+import com.idirtrack.backend.traccar.TracCarUser;
+import com.idirtrack.backend.traccar.TraccarSessionManager;
+import com.idirtrack.backend.traccar.TraccarUserService;
+import com.idirtrack.backend.traccar.request.TracCarDeviceRequest;
+import com.idirtrack.backend.user.UserRepository;
+import com.idirtrack.backend.utils.TraccarUtils;
+
+public class OutboxDispatcherTest {
+
+    @Mock
+    private OutboxRepository outboxRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private BoitierRepository boitierRepository;
+
+    @Mock
+    private TraccarUserService traccarUserService;
+
+    @Mock
+    private TracCarService tracCarService;
+
+    @Mock
+    private TraccarUtils traccarUtils;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private TraccarSessionManager traccarSessionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private final OutboxCipher outboxCipher = new OutboxCipher(Base64.getEncoder().encodeToString(new byte[32]));
+
+    private OutboxDispatcher outboxDispatcher;
+
+    @SuppressWarnings("unchecked")
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        outboxDispatcher = new OutboxDispatcher(outboxRepository, userRepository, boitierRepository,
+                traccarUserService, tracCarService, new TracCarFanOut(4), traccarUtils, objectMapper,
+                transactionTemplate, outboxCipher, traccarSessionManager);
+        ReflectionTestUtils.setField(outboxDispatcher, "batchSize", 50);
+        ReflectionTestUtils.setField(outboxDispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(outboxDispatcher, "initialBackoffMs", 2000L);
+        ReflectionTestUtils.setField(outboxDispatcher, "maxBackoffMs", 300000L);
+        when(traccarUtils.createHeadersFromSession("session")).thenReturn(new HttpHeaders());
+        // Run the transactional block directly
+        doAnswer(invocation -> {
+            ((Consumer<TransactionStatus>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    private OutboxEntry entry(Long id, OutboxOperation operation, Long entityId, Long traccarId, Object payload)
+            throws Exception {
+        return OutboxEntry.builder()
+                .id(id)
+                .operation(operation)
+                .entityType(operation.getEntityType())
+                .entityId(entityId)
+                .traccarId(traccarId)
+                .payload(payload != null ? outboxCipher.encrypt(objectMapper.writeValueAsString(payload)) : null)
+                .sessionId(outboxCipher.encrypt("session"))
+                .status(OutboxStatus.PENDING)
+                .nextAttemptAt(LocalDateTime.now())
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    private void heads(OutboxEntry... entries) {
+        when(outboxRepository.findDueHeads(eq(OutboxStatus.PENDING), eq(OutboxStatus.SENT),
+                any(LocalDateTime.class), any())).thenReturn(List.of(entries));
+    }
+
+    @Test
+    void dispatch_shouldStoreTheTraccarIdOfACreationAndForgetItsPayload() throws Exception {
+        // Arrange
+        OutboxEntry creation = entry(1L, OutboxOperation.CREATE_USER, 7L, null,
+                TracCarUser.builder().email("client@idirtrack.ma").password("secret").build());
+        heads(creation);
+        when(traccarUserService.createUser(any(TracCarUser.class), any(HttpHeaders.class))).thenReturn(42L);
+
+        // Act
+        outboxDispatcher.dispatch();
+
+        // Assert
+        assertEquals(OutboxStatus.SENT, creation.getStatus());
+        assertEquals(42L, creation.getTraccarId());
+        assertNull(creation.getPayload());
+        assertNull(creation.getSessionId());
+        verify(userRepository).updateTraccarId(7L, 42L);
+        verify(outboxRepository).save(creation);
+    }
+
+    @Test
+    void dispatch_shouldTargetTheDeviceCreatedByAnEarlierEntry() throws Exception {
+        // Arrange: the boitier was updated before its creation was sent
+        OutboxEntry update = entry(2L, OutboxOperation.UPDATE_DEVICE, 5L, null,
+                TracCarDeviceRequest.builder().name("123-A-45").build());
+        heads(update);
+        when(outboxRepository.findCreatedTraccarIds(eq("BOITIER"), eq(5L), eq(OutboxOperation.CREATIONS),
+                eq(OutboxStatus.SENT), any())).thenReturn(List.of(99L));
+        when(tracCarService.updateDevice(any(TracCarDeviceRequest.class), any(HttpHeaders.class), eq(99L)))
+                .thenReturn(99L);
+
+        // Act
+        outboxDispatcher.dispatch();
+
+        // Assert
+        assertEquals(OutboxStatus.SENT, update.getStatus());
+        ArgumentCaptor<TracCarDeviceRequest> device = ArgumentCaptor.forClass(TracCarDeviceRequest.class);
+        verify(tracCarService).updateDevice(device.capture(), any(HttpHeaders.class), eq(99L));
+        assertEquals("123-A-45", device.getValue().getName());
+    }
+
+    @Test
+    void dispatch_shouldRetryWithBackoffThenDeadLetter() throws Exception {
+        // Arrange
+        OutboxEntry deletion = entry(3L, OutboxOperation.DELETE_DEVICE, 5L, 99L, null);
+        heads(deletion);
+        when(tracCarService.deleteDevice(eq(99L), any(HttpHeaders.class))).thenReturn(false);
+
+        // Act & Assert: first failure, retried later
+        LocalDateTime before = LocalDateTime.now();
+        outboxDispatcher.dispatch();
+        assertEquals(OutboxStatus.PENDING, deletion.getStatus());
+        assertEquals(1, deletion.getAttempts());
+        assertTrue(deletion.getNextAttemptAt().isAfter(before.plusSeconds(1)));
+        assertNotNull(deletion.getLastError());
+
+        // Act & Assert: dead after max-attempts
+        outboxDispatcher.dispatch();
+        outboxDispatcher.dispatch();
+        assertEquals(OutboxStatus.DEAD, deletion.getStatus());
+        assertEquals(3, deletion.getAttempts());
+        assertNull(deletion.getSessionId());
+        verify(tracCarService, times(3)).deleteDevice(eq(99L), any(HttpHeaders.class));
+    }
+
+    @Test
+    void dispatch_shouldTargetTheDeviceStoredOnTheBoitierOnceItsCreationWasPurged() throws Exception {
+        // Arrange: the sent creation is older than retention-days
+        OutboxEntry update = entry(5L, OutboxOperation.UPDATE_DEVICE, 5L, null,
+                TracCarDeviceRequest.builder().name("123-A-45").build());
+        heads(update);
+        when(outboxRepository.findCreatedTraccarIds(anyString(), any(), any(), any(), any())).thenReturn(List.of());
+        when(boitierRepository.findTraccarIdById(5L)).thenReturn(Optional.of(99L));
+        when(tracCarService.updateDevice(any(TracCarDeviceRequest.class), any(HttpHeaders.class), eq(99L)))
+                .thenReturn(99L);
+
+        // Act
+        outboxDispatcher.dispatch();
+
+        // Assert
+        assertEquals(OutboxStatus.SENT, update.getStatus());
+        verify(tracCarService).updateDevice(any(TracCarDeviceRequest.class), any(HttpHeaders.class), eq(99L));
+        verify(userRepository, never()).findTraccarIdById(any());
+    }
+
+    @Test
+    void dispatch_shouldSendWithTheLiveSessionOfTheUserWhoRecordedTheEntry() throws Exception {
+        // Arrange: the recorded session was renewed, or lost by a restart before the user logged in again
+        OutboxEntry deletion = entry(6L, OutboxOperation.DELETE_DEVICE, 5L, 99L, null);
+        deletion.setUsername("manager");
+        OutboxEntry unknown = entry(7L, OutboxOperation.DELETE_DEVICE, 6L, 98L, null);
+        unknown.setUsername("client");
+        heads(deletion, unknown);
+        when(traccarSessionManager.current("manager")).thenReturn("live");
+        HttpHeaders live = new HttpHeaders();
+        when(traccarUtils.createHeadersFromSession("live")).thenReturn(live);
+        when(tracCarService.deleteDevice(anyLong(), any(HttpHeaders.class))).thenReturn(true);
+
+        // Act
+        outboxDispatcher.dispatch();
+
+        // Assert: a user without a live session here falls back to the recorded one
+        verify(tracCarService).deleteDevice(99L, live);
+        verify(traccarUtils).createHeadersFromSession("session");
+        assertEquals(OutboxStatus.SENT, deletion.getStatus());
+        assertEquals(OutboxStatus.SENT, unknown.getStatus());
+    }
+
+    @Test
+    void dispatch_shouldDeadLetterAPayloadEncryptedWithAnotherKeyWithoutACall() throws Exception {
+        // Arrange: recorded under the key of a previous deployment
+        byte[] otherKey = new byte[32];
+        otherKey[0] = 1;
+        OutboxEntry creation = entry(8L, OutboxOperation.CREATE_DEVICE, 5L, null, null);
+        creation.setPayload(new OutboxCipher(Base64.getEncoder().encodeToString(otherKey))
+                .encrypt(objectMapper.writeValueAsString(TracCarDeviceRequest.builder().name("123-A-45").build())));
+        OutboxEntry unparsable = entry(9L, OutboxOperation.UPDATE_USER, 7L, 70L, null);
+        unparsable.setPayload(outboxCipher.encrypt("{not json"));
+        heads(creation, unparsable);
+
+        // Act
+        outboxDispatcher.dispatch();
+
+        // Assert: dead on the first attempt, not retried
+        assertEquals(OutboxStatus.DEAD, creation.getStatus());
+        assertEquals(1, creation.getAttempts());
+        assertEquals(OutboxStatus.DEAD, unparsable.getStatus());
+        verifyNoInteractions(tracCarService, traccarUserService);
+    }
+
+    @Test
+    void dispatch_shouldDeadLetterAnUpdateOfAnEntityNeverCreated() throws Exception {
+        // Arrange
+        OutboxEntry deletion = entry(4L, OutboxOperation.DELETE_USER, 8L, null, null);
+        heads(deletion);
+        when(outboxRepository.findCreatedTraccarIds(anyString(), any(), any(), any(), any())).thenReturn(List.of());
+
+        // Act
+        outboxDispatcher.dispatch();
+
+        // Assert
+        assertEquals(OutboxStatus.DEAD, deletion.getStatus());
+        verifyNoInteractions(traccarUserService);
+    }
+
+    @Test
+    void backoffMs_shouldDoubleUpToTheMaximum() {
+        assertEquals(2000L, outboxDispatcher.backoffMs(1));
+        assertEquals(8000L, outboxDispatcher.backoffMs(3));
+        assertEquals(300000L, outboxDispatcher.backoffMs(12));
+    }
+}
@@ -0,0 +1,233 @@
+package com.idirtrack.backend.reconciliation;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.idirtrack.backend.boitier.BoitierRepository;
+import com.idirtrack.backend.outbox.OutboxOperation;
+import com.idirtrack.backend.outbox.OutboxRepository;
+import com.idirtrack.backend.outbox.OutboxService;
+import com.idirtrack.backend.outbox.OutboxStatus;
+import com.idirtrack.backend.traccar.TracCarFanOut;
+import com.idirtrack.backend.traccar.TracCarService;
+import com.idirtrack.backend.traccar.TracCarUser;
+import com.idirtrack.backend.traccar.TraccarSessionManager;
+import com.idirtrack.backend.traccar.TraccarUserService;
+import com.idirtrack.backend.traccar.dto.TracCarDeviceInfo;
+import com.idirtrack.backend.traccar.dto.TracCarUserInfo;
+import com.idirtrack.backend.traccar.request.TracCarDeviceRequest;
+import com.idirtrack.backend.user.UserRepository;
+import com.idirtrack.backend.user.UserRole;
+import com.idirtrack.backend.utils.TraccarUtils;
+
+public class TraccarReconcilerTest {
+
+    @Mock
+    private BoitierRepository boitierRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private OutboxRepository outboxRepository;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private TracCarService tracCarService;
+
+    @Mock
+    private TraccarUserService traccarUserService;
+
+    @Mock
+    private TraccarSessionManager traccarSessionManager;
+
+    @Mock
+    private TraccarUtils traccarUtils;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private TraccarReconciler traccarReconciler;
+
+    private final HttpHeaders headers = new HttpHeaders();
+
+    private static final Date END_DATE = Date.valueOf("2030-01-01");
+
+    @SuppressWarnings("unchecked")
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        traccarReconciler = new TraccarReconciler(boitierRepository, userRepository, outboxRepository,
+                outboxService, tracCarService, traccarUserService, traccarSessionManager, new TracCarFanOut(4),
+                traccarUtils, transactionTemplate);
+        ReflectionTestUtils.setField(traccarReconciler, "pageSize", 2);
+        ReflectionTestUtils.setField(traccarReconciler, "batchSize", 2);
+        ReflectionTestUtils.setField(traccarReconciler, "deleteOrphans", true);
+        ReflectionTestUtils.setField(traccarReconciler, "email", "sync@idirtrack.ma");
+        when(outboxRepository.findUnsentEntityIds(anyString(), eq(OutboxStatus.SENT))).thenReturn(List.of());
+        when(outboxRepository.findUnsentTraccarIds(anyString(), eq(OutboxStatus.SENT))).thenReturn(List.of());
+        when(traccarUtils.createHeadersFromSession("session")).thenReturn(headers);
+        when(traccarUserService.getUsers(headers)).thenReturn(List.of());
+        when(userRepository.findSyncRowsAfter(anyLong(), any())).thenReturn(List.of());
+        // Run the transactional block directly
+        doAnswer(invocation -> {
+            ((Consumer<TransactionStatus>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    private Object[] boitier(Long id, Long traccarId, String imei, String matricule) {
+        return new Object[] { id, traccarId, imei, "0600000000", matricule, END_DATE };
+    }
+
+    private TracCarDeviceInfo device(Long id, String uniqueId, String name) {
+        return TracCarDeviceInfo.builder()
+                .id(id)
+                .uniqueId(uniqueId)
+                .name(name)
+                .phone("0600000000")
+                .expirationTime("2030-01-01T00:00:00.000+00:00")
+                .build();
+    }
+
+    private List<ReconciliationActionType> types(ReconciliationReport report) {
+        return report.getActions().stream().map(ReconciliationAction::getType).toList();
+    }
+
+    @Test
+    void reconcile_shouldReportTheDifferencesOfTheDevicesInADryRun() {
+        // Arrange: pages of 2 boitiers
+        List<Object[]> firstPage = new ArrayList<>();
+        firstPage.add(boitier(1L, 10L, "111", "1-A-1"));
+        firstPage.add(boitier(2L, null, "222", "2-A-2"));
+        List<Object[]> secondPage = new ArrayList<>();
+        secondPage.add(boitier(3L, 30L, "333", "3-A-3"));
+        when(boitierRepository.findInstalledRowsAfter(eq(0L), any())).thenReturn(firstPage);
+        when(boitierRepository.findInstalledRowsAfter(eq(2L), any())).thenReturn(secondPage);
+        when(tracCarService.getDevices(headers)).thenReturn(List.of(
+                // in sync
+                device(10L, "111", "1-A-1"),
+                // created, but its id was never stored, and renamed since
+                device(20L, "222", "old"),
+                // of no boitier
+                device(40L, "444", "4-A-4")));
+
+        // Act
+        ReconciliationReport report = traccarReconciler.reconcile("session", true);
+
+        // Assert
+        assertEquals(List.of(ReconciliationActionType.LINK_DEVICE, ReconciliationActionType.UPDATE_DEVICE,
+                ReconciliationActionType.CREATE_DEVICE, ReconciliationActionType.DELETE_DEVICE), types(report));
+        assertEquals(3, report.getInstalledBoitiers());
+        assertEquals("Differs on name", report.getActions().get(1).getDetail());
+        assertTrue(report.getActions().stream().allMatch(action -> action.getApplied() == null));
+        verify(tracCarService, never()).createDevice(any(), any());
+        verify(boitierRepository, never()).updateTraccarId(anyLong(), anyLong());
+    }
+
+    @Test
+    void reconcile_shouldRecordTheFixesInTheOutboxAndDeleteTheOrphans() {
+        // Arrange
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(boitier(1L, 10L, "111", "1-A-1"));
+        when(boitierRepository.findInstalledRowsAfter(eq(0L), any())).thenReturn(rows);
+        when(tracCarService.getDevices(headers)).thenReturn(List.of(device(40L, "444", "4-A-4")));
+        when(tracCarService.deleteDevice(40L, headers)).thenReturn(false);
+
+        // Act
+        ReconciliationReport report = traccarReconciler.reconcile("session", false);
+
+        // Assert: the creation is sent by the outbox, which stores the Traccar id
+        assertEquals(1, report.getApplied());
+        assertEquals(1, report.getFailed());
+        verify(outboxService).enqueueForSession(eq(OutboxOperation.CREATE_DEVICE), eq(1L), isNull(),
+                any(TracCarDeviceRequest.class), eq("session"), eq("sync@idirtrack.ma"));
+        verify(tracCarService, never()).createDevice(any(), any());
+        assertEquals("Traccar did not delete the device", report.getActions().get(1).getError());
+    }
+
+    @Test
+    void reconcile_shouldLeaveAFixToTheOutboxWhenTheEntityChangedSinceTheDiff() {
+        // Arrange: the boitier is edited while Traccar is listed
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(boitier(1L, 10L, "111", "1-A-1"));
+        when(boitierRepository.findInstalledRowsAfter(eq(0L), any())).thenReturn(rows);
+        when(tracCarService.getDevices(headers)).thenReturn(List.of(device(10L, "111", "old")));
+        when(outboxRepository.existsByEntityTypeAndEntityIdAndStatusNot("BOITIER", 1L, OutboxStatus.SENT))
+                .thenReturn(true);
+
+        // Act
+        ReconciliationReport report = traccarReconciler.reconcile("session", false);
+
+        // Assert
+        assertEquals(List.of(ReconciliationActionType.UPDATE_DEVICE), types(report));
+        assertFalse(report.getActions().get(0).getApplied());
+        verifyNoInteractions(outboxService);
+    }
+
+    @Test
+    void reconcile_shouldLeaveOutTheEntitiesWithPendingOutboxEntries() {
+        // Arrange: the boitier is being deleted, the user being created
+        List<Object[]> boitiers = new ArrayList<>();
+        boitiers.add(boitier(1L, 10L, "111", "renamed"));
+        when(boitierRepository.findInstalledRowsAfter(eq(0L), any())).thenReturn(boitiers);
+        List<Object[]> users = new ArrayList<>();
+        users.add(new Object[] { 7L, null, "client@idirtrack.ma", "Client", "0611111111", UserRole.CLIENT });
+        when(userRepository.findSyncRowsAfter(eq(0L), any())).thenReturn(users);
+        when(outboxRepository.findUnsentEntityIds("BOITIER", OutboxStatus.SENT)).thenReturn(List.of(1L));
+        when(outboxRepository.findUnsentEntityIds("USER", OutboxStatus.SENT)).thenReturn(List.of(7L));
+        when(tracCarService.getDevices(headers)).thenReturn(List.of(device(10L, "111", "1-A-1")));
+        when(traccarUserService.getUsers(headers)).thenReturn(List.of(
+                TracCarUserInfo.builder().id(70L).email("Client@idirtrack.ma").name("Client").build(),
+                TracCarUserInfo.builder().id(1L).email("admin@idirtrack.ma").administrator(true).build()));
+
+        // Act
+        ReconciliationReport report = traccarReconciler.reconcile("session", false);
+
+        // Assert
+        assertEquals(2, report.getSkipped());
+        assertTrue(report.getActions().isEmpty());
+        verify(tracCarService, never()).deleteDevice(anyLong(), any());
+    }
+
+    @Test
+    void reconcile_shouldUpdateAUserWhoseEmailChanged() {
+        // Arrange
+        List<Object[]> users = new ArrayList<>();
+        users.add(new Object[] { 7L, 70L, "new@idirtrack.ma", "Client", "0611111111", UserRole.CLIENT });
+        when(userRepository.findSyncRowsAfter(eq(0L), any())).thenReturn(users);
+        when(boitierRepository.findInstalledRowsAfter(anyLong(), any())).thenReturn(List.of());
+        when(tracCarService.getDevices(headers)).thenReturn(List.of());
+        when(traccarUserService.getUsers(headers)).thenReturn(List.of(TracCarUserInfo.builder()
+                .id(70L).email("old@idirtrack.ma").name("Client").phone("0611111111").build()));
+
+        // Act
+        ReconciliationReport report = traccarReconciler.reconcile("session", false);
+
+        // Assert
+        assertEquals(List.of(ReconciliationActionType.UPDATE_USER), types(report));
+        verify(outboxService).enqueueForSession(eq(OutboxOperation.UPDATE_USER), eq(7L), eq(70L),
+                any(TracCarUser.class), eq("session"), eq("sync@idirtrack.ma"));
+        verify(traccarUserService, never()).deleteUser(anyLong(), any());
+    }
+}
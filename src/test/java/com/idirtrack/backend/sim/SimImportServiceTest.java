@@ -0,0 +1,157 @@
+package com.idirtrack.backend.sim;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idirtrack.backend.errors.NotFoundException;
+import com.idirtrack.backend.operator.Operator;
+import com.idirtrack.backend.sim.https.SimImportReport;
+import com.idirtrack.backend.stock.StockLedgerService;
+import com.idirtrack.backend.utils.ErrorResponse;
+import com.idirtrack.backend.utils.MyResponse;
+
+import jakarta.validation.Validation;
+
+public class SimImportServiceTest {
+
+    @Mock
+    private SimRepository simRepository;
+
+    @Mock
+    private SimService simService;
+
+    @Mock
+    private SimSearchIndex simSearchIndex;
+
+    @Mock
+    private SimStatisticsService simStatisticsService;
+
+    @Mock
+    private StockLedgerService stockLedgerService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private SimImportService simImportService;
+
+    private final Operator operator = Operator.builder().id(3L).name("Maroc Telecom").build();
+
+    @BeforeEach
+    void setUp() throws NotFoundException {
+        MockitoAnnotations.openMocks(this);
+        simImportService = new SimImportService(simRepository, simService, simSearchIndex, simStatisticsService,
+                stockLedgerService, jdbcTemplate, new ObjectMapper(),
+                Validation.buildDefaultValidatorFactory().getValidator());
+        when(simService.findOperatorById(3L)).thenReturn(operator);
+    }
+
+    private ByteArrayInputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void importSims_shouldInsertValidManifestRowsInOneBatch() throws NotFoundException {
+        // Arrange
+        String csv = "ccid,phone,pin,puk\n"
+                + "100000000000000001,0611111111,1234,12345678\n"
+                + "100000000000000002,0622222222,1234,12345678\n"
+                + "100000000000000003,0633333333,1234,12345678\n"
+                + "100000000000000004,0622222222,1234,12345678\n"
+                + "100000000000000005,0655555555,12,12345678\n";
+
+        when(simRepository.findExistingCcids(anyCollection())).thenReturn(List.of("100000000000000003"));
+        when(simRepository.findExistingPhones(anyCollection())).thenReturn(List.of());
+
+        // Act
+        MyResponse response = simImportService.importSims(3L, body(csv), "text/csv");
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatus());
+        SimImportReport report = (SimImportReport) response.getData();
+        assertEquals(5, report.getTotalLines());
+        assertEquals(2, report.getImported());
+        assertEquals(3, report.getRejected());
+        assertEquals("CCID already exists", report.getErrors().get(0).getMessage());
+        assertEquals("Phone number is duplicated in the manifest", report.getErrors().get(1).getMessage());
+        assertEquals("The PIN must be exactly 4 digits", report.getErrors().get(2).getMessage());
+
+        // The operator is resolved once, one query per key and one JDBC batch for the whole lot
+        verify(simService, times(1)).findOperatorById(3L);
+        verify(simRepository, times(1)).findExistingCcids(anyCollection());
+        verify(simRepository, times(1)).findExistingPhones(anyCollection());
+        ArgumentCaptor<Collection<Object>> rows = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), rows.capture(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(2, rows.getValue().size());
+
+        // The stock is updated once for the manifest
+        verify(stockLedgerService, times(1)).recordSimMovement(any(Date.class), eq(operator), eq(2));
+        verify(simRepository, never()).save(any(Sim.class));
+        verify(simSearchIndex, times(1)).indexCcids(List.of("100000000000000001", "100000000000000002"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void importSims_shouldInsertOneByOne_whenAConcurrentWriterTookASim() throws NotFoundException {
+        // Arrange
+        String ndjson = "{\"ccid\":\"100000000000000001\",\"phone\":\"0611111111\",\"pin\":\"1234\",\"puk\":\"12345678\"}\n"
+                + "{\"ccid\":\"100000000000000002\",\"phone\":\"0622222222\",\"pin\":\"1234\",\"puk\":\"12345678\"}\n"
+                + "not json\n";
+
+        when(simRepository.findExistingCcids(anyCollection())).thenReturn(List.of());
+        when(simRepository.findExistingPhones(anyCollection())).thenReturn(List.of());
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenThrow(new DuplicateKeyException("dup"));
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+                .thenReturn(1)
+                .thenThrow(new DuplicateKeyException("Duplicate entry for key '" + Sim.UK_PHONE + "'"));
+
+        // Act
+        MyResponse response = simImportService.importSims(3L, body(ndjson), "application/x-ndjson");
+
+        // Assert
+        SimImportReport report = (SimImportReport) response.getData();
+        assertEquals(1, report.getImported());
+        assertEquals(2, report.getRejected());
+        assertEquals("Phone number already exists", report.getErrors().get(0).getMessage());
+        assertEquals("0622222222", report.getErrors().get(0).getPhone());
+        assertEquals("Invalid JSON line", report.getErrors().get(1).getMessage());
+        verify(stockLedgerService, times(1)).recordSimMovement(any(Date.class), eq(operator), eq(1));
+    }
+
+    @Test
+    void importSims_shouldFailWhenTheOperatorDoesNotExist() throws NotFoundException {
+        // Arrange
+        when(simService.findOperatorById(9L)).thenThrow(new NotFoundException(ErrorResponse.builder()
+                .status(HttpStatus.NOT_FOUND)
+                .build()));
+
+        // Act & Assert
+        assertThrows(NotFoundException.class, () -> simImportService.importSims(9L, body(""), "text/csv"));
+        verifyNoInteractions(jdbcTemplate, stockLedgerService);
+    }
+}
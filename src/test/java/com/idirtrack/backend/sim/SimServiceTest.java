@@ -5,15 +5,19 @@ import static org.assertj.core.api.Assertions.assertThatCode;
 import static org.assertj.core.api.Assertions.catchThrowableOfType;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -21,10 +25,12 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.ActiveProfiles;
@@ -35,8 +41,12 @@ import com.idirtrack.backend.operator.Operator;
 import com.idirtrack.backend.operator.OperatorRepository;
 import com.idirtrack.backend.operator.OperatorService;
 import com.idirtrack.backend.sim.https.SimRequest;
-import com.idirtrack.backend.stock.StockRepository;
+import com.idirtrack.backend.stock.StockLedgerService;
+import com.idirtrack.backend.utils.KeysetCursor;
 import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.StatusTransitionReport;
+import com.idirtrack.backend.utils.StatusTransitionRequest;
+import com.idirtrack.backend.utils.SubstringIndex;
 
 public class SimServiceTest {
 
@@ -44,10 +54,7 @@ public class SimServiceTest {
     private SimRepository simRepository;
 
     @Mock
-    private StockRepository stockRepository;
-
-    @Mock
-    private SimStockRepository simStockRepository;
+    private StockLedgerService stockLedgerService;
 
     @Mock
     private OperatorService operatorService;
@@ -55,6 +62,12 @@ public class SimServiceTest {
     @Mock
     private OperatorRepository operatorRepository;
 
+    @Mock
+    private SimSearchIndex simSearchIndex;
+
+    @Mock
+    private SimStatisticsService simStatisticsService;
+
     @InjectMocks
     private SimService simService;
 
@@ -81,6 +94,34 @@ public class SimServiceTest {
         assertThat(response.getMessage()).isEqualTo("Sim deleted successfully");
         verify(simRepository).findById(id);
         verify(simRepository).delete(sim);
+        verify(stockLedgerService).recordSimMovement(java.sql.Date.valueOf(sim.getCreatedAt().toLocalDate()),
+                sim.getOperator(), -1);
+        verify(simStatisticsService).invalidate();
+    }
+
+    // Test the method to create a sim when the unique constraint rejects the phone
+    @Test
+    public void testCreateSim_PhoneTakenConcurrently() {
+        // Given
+        SimRequest request = SimRequest.builder()
+                .phone("0611223344")
+                .ccid("8921200000000000004")
+                .pin("1234")
+                .puk("12345678")
+                .operatorId(1L)
+                .build();
+        when(operatorRepository.findById(1L)).thenReturn(Optional.of(Operator.builder().id(1L).build()));
+        when(simRepository.save(any(Sim.class)))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry for key 'sim.uk_sim_phone'"));
+
+        // When
+        AlreadyExistException thrown = catchThrowableOfType(() -> simService.createSim(request),
+                AlreadyExistException.class);
+
+        // Then
+        assertThat(thrown.getResponse().getStatus()).isEqualTo(HttpStatus.CONFLICT);
+        assertThat(thrown.getResponse().getFieldErrors().get(0).getField()).isEqualTo("phone");
+        verifyNoInteractions(stockLedgerService);
     }
 
     // Test the method to delete a sim with not found
@@ -379,19 +420,41 @@ public class SimServiceTest {
         Long id = 1L;
         String status = "INSTALLED";
         SimStatus simStatus = SimStatus.INSTALLED;
-        Sim sim = Sim.builder().id(id).status(SimStatus.PENDING).build();
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[] { id, SimStatus.PENDING });
 
         // Mock repository behavior
-        when(simRepository.findById(id)).thenReturn(Optional.of(sim));
-        when(simRepository.save(sim)).thenReturn(sim);
+        when(simRepository.findStatusesByIds(List.of(id))).thenReturn(rows);
+        when(simRepository.updateStatusByIds(eq(List.of(id)), eq(SimStatus.PENDING), eq(simStatus), any()))
+                .thenReturn(1);
 
         // When
         boolean result = simService.changeSimStatus(id, status);
 
         // Then
         assertThat(result).isTrue();
-        assertThat(sim.getStatus()).isEqualTo(simStatus);
+        verify(simRepository, never()).save(any(Sim.class));
+        verify(simSearchIndex).statusChanged(id, simStatus);
+        verify(simStatisticsService).invalidate();
+
+    }
+
+    // Test change sim status when another writer changed it since it was read
+    @Test
+    public void testChangeSimStatus_ConcurrentChange() {
+        // Given
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[] { 1L, SimStatus.PENDING });
+        when(simRepository.findStatusesByIds(List.of(1L))).thenReturn(rows);
+        when(simRepository.updateStatusByIds(eq(List.of(1L)), eq(SimStatus.PENDING), eq(SimStatus.INSTALLED), any()))
+                .thenReturn(0);
+
+        // When
+        boolean result = simService.changeSimStatus(1L, "INSTALLED");
 
+        // Then
+        assertThat(result).isFalse();
+        verifyNoInteractions(simSearchIndex, simStatisticsService);
     }
 
     // Test change sim status with valid status but sim does not exist
@@ -402,15 +465,15 @@ public class SimServiceTest {
         String status = "INSTALLED";
 
         // Mock repository behavior
-        when(simRepository.findById(id)).thenReturn(Optional.empty());
+        when(simRepository.findStatusesByIds(List.of(id))).thenReturn(List.of());
 
         // When
         boolean result = simService.changeSimStatus(id, status);
 
         // Then
         assertThat(result).isFalse();
-        verify(simRepository).findById(id);
-        verify(simRepository, times(0)).save(any(Sim.class)); // Verify that save is not called
+        verify(simRepository).findStatusesByIds(List.of(id));
+        verify(simRepository, never()).updateStatusByIds(any(), any(), any(), any());
     }
 
     // Test change sim status with invalid status
@@ -636,7 +699,8 @@ public class SimServiceTest {
     public void testGetTotalSims() {
         // Given
         long expectedTotalSims = 123L; // The count you want to test
-        when(simRepository.count()).thenReturn(expectedTotalSims);
+        when(simStatisticsService.matrix()).thenReturn(new SimStatisticsService.Matrix(
+                Map.of(SimStatus.NON_INSTALLED, Map.of(1L, 100L), SimStatus.INSTALLED, Map.of(2L, 23L))));
 
         // When
         MyResponse response = simService.getTotalSims();
@@ -655,10 +719,11 @@ public class SimServiceTest {
         long pendingCount = 5L;
         long lostCount = 2L;
 
-        when(simRepository.countByStatus(SimStatus.NON_INSTALLED)).thenReturn(nonInstalledCount);
-        when(simRepository.countByStatus(SimStatus.INSTALLED)).thenReturn(installedCount);
-        when(simRepository.countByStatus(SimStatus.PENDING)).thenReturn(pendingCount);
-        when(simRepository.countByStatus(SimStatus.LOST)).thenReturn(lostCount);
+        when(simStatisticsService.matrix()).thenReturn(new SimStatisticsService.Matrix(Map.of(
+                SimStatus.NON_INSTALLED, Map.of(1L, 6L, 2L, 4L),
+                SimStatus.INSTALLED, Map.of(1L, installedCount),
+                SimStatus.PENDING, Map.of(2L, pendingCount),
+                SimStatus.LOST, Map.of(1L, lostCount))));
 
         // When
         MyResponse response = simService.getTotalSimsByStatus();
@@ -672,6 +737,142 @@ public class SimServiceTest {
 
         assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
         assertThat(response.getData()).isEqualTo(expectedData);
+        verify(simRepository, never()).countByStatus(any(SimStatus.class));
+    }
+
+    // Test the keyset mode of the SIM list: next cursor and no count query
+    @Test
+    public void testGetAllSimsWithCursor() {
+        // Given
+        Operator operator = Operator.builder().id(1L).name("Inwi").build();
+        Sim first = Sim.builder().id(12L).phone("0600000012").operator(operator).status(SimStatus.NON_INSTALLED)
+                .build();
+        Sim last = Sim.builder().id(11L).phone("0600000011").operator(operator).status(SimStatus.NON_INSTALLED)
+                .build();
+        when(simRepository.findFirstSlice(PageRequest.of(0, 2)))
+                .thenReturn(new SliceImpl<>(List.of(first, last), PageRequest.of(0, 2), true));
+
+        // When
+        MyResponse response = simService.getAllSimsWithPagination("", 2, false);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getMetadata().get("nextCursor")).isEqualTo(KeysetCursor.encode("id", 11L));
+        assertThat(response.getMetadata()).doesNotContainKey("totalElements");
+        verify(simRepository, never()).count();
+        verify(simRepository, never()).findSliceAfter(any(), any());
+    }
+
+    // Test to search non installed sims from the search index
+    @Test
+    public void testSearchNonInstalledSims_FromIndex() {
+        // Given
+        Operator operator = Operator.builder().id(1L).name("Inwi").build();
+        Sim sim = Sim.builder().id(7L).phone("0611223344").ccid("8921200000000000007").operator(operator)
+                .status(SimStatus.NON_INSTALLED).build();
+        Pageable pageable = PageRequest.of(0, 5);
+        when(simSearchIndex.isLoaded()).thenReturn(true);
+        when(simSearchIndex.search("2233", SimStatus.NON_INSTALLED, pageable))
+                .thenReturn(new SubstringIndex.Hits(List.of(7L), 1));
+        when(simRepository.findAllById(List.of(7L))).thenReturn(List.of(sim));
+
+        // When
+        MyResponse response = simService.searchNonInstalledSims("2233", 1, 5);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
+        assertThat((List<?>) response.getData()).hasSize(1);
+        assertThat(response.getMetadata().get("totalPages")).isEqualTo(1);
+        verify(simRepository, never()).findAllByStatusAndPhoneContainingOrCcidContaining(any(), any(), any());
+    }
+
+    // Test to search sims by any field from the search index, in rank order
+    @Test
+    public void testSearchSIMs_FromIndex() {
+        // Given
+        Operator operator = Operator.builder().id(1L).name("Inwi").build();
+        Sim exact = Sim.builder().id(3L).phone("0611223344").operator(operator).status(SimStatus.INSTALLED).build();
+        Sim partial = Sim.builder().id(9L).phone("0700611223344").operator(operator).status(SimStatus.LOST)
+                .build();
+        when(simSearchIndex.isLoaded()).thenReturn(true);
+        when(simSearchIndex.searchAll(eq("0611223344"), any(Pageable.class)))
+                .thenReturn(new SubstringIndex.Hits(List.of(3L, 9L), 2));
+        when(simRepository.findAllById(List.of(3L, 9L))).thenReturn(List.of(partial, exact));
+
+        // When
+        MyResponse response = simService.searchSIMs("0611223344", 1, 5);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
+        assertThat((List<?>) response.getData()).extracting("id").containsExactly(3L, 9L);
+        verify(simRepository, never()).search(any(), any());
+    }
+
+    // Test the bulk status transition of sims
+    @Test
+    public void testChangeSimsStatus() {
+        // Given
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[] { 1L, SimStatus.INSTALLED });
+        rows.add(new Object[] { 2L, SimStatus.INSTALLED });
+        when(simRepository.findStatusesByIds(List.of(1L, 2L))).thenReturn(rows);
+        when(simRepository.updateStatusByIds(any(), any(), any(), any())).thenReturn(2);
+
+        // When
+        StatusTransitionReport report = simService.changeSimsStatus(List.of(1L, 2L), SimStatus.LOST);
+
+        // Then
+        assertThat(report.allFound()).isTrue();
+        assertThat(report.idsWith(StatusTransitionReport.Outcome.UPDATED)).containsExactly(1L, 2L);
+        verify(simRepository, times(1)).updateStatusByIds(eq(List.of(1L, 2L)), eq(SimStatus.INSTALLED),
+                eq(SimStatus.LOST), any());
+        verify(simRepository, never()).save(any(Sim.class));
+    }
+
+    // Test the bulk status transition of sims with an illegal move
+    @Test
+    public void testChangeSimsStatus_IllegalMove() {
+        // Given
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[] { 1L, SimStatus.LOST });
+        when(simRepository.findStatusesByIds(List.of(1L))).thenReturn(rows);
+
+        // When
+        StatusTransitionReport report = simService.changeSimsStatus(List.of(1L), SimStatus.INSTALLED);
+
+        // Then
+        assertThat(report.getResults().get(1L)).isEqualTo(StatusTransitionReport.Outcome.REJECTED);
+        verify(simRepository, never()).updateStatusByIds(any(), any(), any(), any());
+        verifyNoInteractions(simStatisticsService);
     }
 
+    // Test change sim status with a move the lifecycle does not allow
+    @Test
+    public void testChangeSimStatus_IllegalMove() {
+        // Given
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[] { 1L, SimStatus.NON_INSTALLED });
+        when(simRepository.findStatusesByIds(List.of(1L))).thenReturn(rows);
+
+        // When
+        boolean result = simService.changeSimStatus(1L, "INSTALLED");
+
+        // Then
+        assertThat(result).isFalse();
+        verify(simRepository, never()).updateStatusByIds(any(), any(), any(), any());
+    }
+
+    // Test the bulk status transition API with an invalid status
+    @Test
+    public void testChangeSimsStatus_InvalidStatus() {
+        // When
+        MyResponse response = simService.changeSimsStatus(StatusTransitionRequest.builder()
+                .ids(List.of(1L))
+                .status("BROKEN")
+                .build());
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST);
+        verifyNoInteractions(simRepository);
+    }
 }
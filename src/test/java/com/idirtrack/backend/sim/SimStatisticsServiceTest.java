@@ -0,0 +1,62 @@
+package com.idirtrack.backend.sim;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class SimStatisticsServiceTest {
+
+    @Mock
+    private SimRepository simRepository;
+
+    private SimStatisticsService simStatisticsService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        simStatisticsService = new SimStatisticsService(simRepository);
+        ReflectionTestUtils.setField(simStatisticsService, "ttlMs", 60000L);
+        when(simRepository.countGroupByStatusAndOperator()).thenReturn(List.of(
+                new Object[] { SimStatus.NON_INSTALLED, 1L, 7L },
+                new Object[] { SimStatus.NON_INSTALLED, 2L, 3L },
+                new Object[] { SimStatus.INSTALLED, 1L, 5L },
+                new Object[] { SimStatus.LOST, null, 1L }));
+    }
+
+    @Test
+    void matrix_shouldAnswerEveryCountFromOneQuery() {
+        // Act
+        SimStatisticsService.Matrix matrix = simStatisticsService.matrix();
+
+        // Assert
+        assertEquals(10, matrix.countByStatus(SimStatus.NON_INSTALLED));
+        assertEquals(0, matrix.countByStatus(SimStatus.PENDING));
+        assertEquals(12, matrix.countByOperator(1L));
+        assertEquals(1, matrix.countByOperator(null));
+        assertEquals(16, matrix.total());
+
+        // The second read comes from the cache
+        simStatisticsService.matrix();
+        verify(simRepository, times(1)).countGroupByStatusAndOperator();
+    }
+
+    @Test
+    void invalidate_shouldReloadOnTheNextRead() {
+        // Arrange
+        simStatisticsService.matrix();
+
+        // Act
+        simStatisticsService.invalidate();
+        simStatisticsService.matrix();
+
+        // Assert
+        verify(simRepository, times(2)).countGroupByStatusAndOperator();
+    }
+}
@@ -0,0 +1,120 @@
+package com.idirtrack.backend.stock;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Date;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.idirtrack.backend.device.DeviceStock;
+import com.idirtrack.backend.device.DeviceStockRepository;
+import com.idirtrack.backend.deviceType.DeviceType;
+import com.idirtrack.backend.sim.SimStockRepository;
+
+public class StockLedgerServiceTest {
+
+    @Mock
+    private StockMovementRepository stockMovementRepository;
+
+    @Mock
+    private StockSnapshotRepository stockSnapshotRepository;
+
+    @Mock
+    private StockSnapshotStateRepository stockSnapshotStateRepository;
+
+    @Mock
+    private DeviceStockRepository deviceStockRepository;
+
+    @Mock
+    private SimStockRepository simStockRepository;
+
+    @InjectMocks
+    private StockLedgerService stockLedgerService;
+
+    private final Date day = Date.valueOf("2024-07-01");
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void recordDeviceMovement_shouldOnlyInsertALedgerRow() {
+        // Act
+        stockLedgerService.recordDeviceMovement(day, DeviceType.builder().id(3L).build(), -1);
+
+        // Assert
+        ArgumentCaptor<StockMovement> captor = ArgumentCaptor.forClass(StockMovement.class);
+        verify(stockMovementRepository).save(captor.capture());
+        assertEquals(day, captor.getValue().getMovementDate());
+        assertEquals(3L, captor.getValue().getDeviceTypeId());
+        assertNull(captor.getValue().getOperatorId());
+        assertEquals(-1, captor.getValue().getDelta());
+        verifyNoInteractions(stockSnapshotRepository);
+    }
+
+    @Test
+    void refreshSnapshot_shouldSumOnlyTheDaysChangedSinceTheLastRefresh() {
+        // Arrange
+        LocalDateTime refreshedAt = LocalDateTime.now().minusMinutes(1);
+        StockSnapshotState state = StockSnapshotState.builder().id(StockSnapshotState.ID).refreshedAt(refreshedAt)
+                .build();
+        when(stockSnapshotStateRepository.findForUpdate(StockSnapshotState.ID)).thenReturn(Optional.of(state));
+        when(stockMovementRepository.findDaysChangedSince(refreshedAt)).thenReturn(List.of(day));
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[] { day, 3L, "GPS Tracker", null, null, 5L });
+        rows.add(new Object[] { day, null, null, 2L, "IAM", 0L });
+        when(stockMovementRepository.sumByDays(List.of(day))).thenReturn(rows);
+
+        // Act
+        stockLedgerService.refreshSnapshot();
+
+        // Assert
+        verify(stockMovementRepository, never()).findAllDays();
+        verify(stockSnapshotRepository).deleteBySnapshotDates(List.of(day));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<StockSnapshot>> captor = ArgumentCaptor.forClass(List.class);
+        verify(stockSnapshotRepository).saveAll(captor.capture());
+        // Days summing to zero are left out
+        assertEquals(1, captor.getValue().size());
+        assertEquals("GPS Tracker", captor.getValue().get(0).getDeviceTypeName());
+        assertEquals(5L, captor.getValue().get(0).getQuantity());
+        assertTrue(state.getRefreshedAt().isAfter(refreshedAt));
+    }
+
+    @Test
+    void initialize_shouldSeedTheLedgerFromTheLegacyStock() {
+        // Arrange
+        when(stockSnapshotStateRepository.findForUpdate(StockSnapshotState.ID)).thenReturn(Optional.empty());
+        when(stockSnapshotStateRepository.save(any(StockSnapshotState.class))).thenAnswer(i -> i.getArgument(0));
+        when(stockMovementRepository.count()).thenReturn(0L);
+        when(deviceStockRepository.findAll()).thenReturn(List.of(DeviceStock.builder()
+                .deviceType(DeviceType.builder().id(3L).build())
+                .stock(Stock.builder().dateEntree(day).quantity(4).build())
+                .build()));
+        when(simStockRepository.findAll()).thenReturn(List.of());
+        when(stockMovementRepository.findAllDays()).thenReturn(List.of());
+
+        // Act
+        stockLedgerService.initialize();
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<StockMovement>> captor = ArgumentCaptor.forClass(List.class);
+        verify(stockMovementRepository).saveAll(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals(4, captor.getValue().get(0).getDelta());
+        assertEquals(3L, captor.getValue().get(0).getDeviceTypeId());
+    }
+}
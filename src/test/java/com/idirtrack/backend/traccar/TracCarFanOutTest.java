@@ -0,0 +1,83 @@
+package com.idirtrack.backend.traccar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TracCarFanOutTest {
+
+    private TracCarFanOut tracCarFanOut;
+
+    @BeforeEach
+    void setUp() {
+        tracCarFanOut = new TracCarFanOut(4);
+    }
+
+    private List<Integer> inputs(int count) {
+        return IntStream.range(0, count).boxed().toList();
+    }
+
+    @Test
+    void runAll_shouldCallTraccarConcurrently() {
+        // Act: each call takes 300 ms
+        long start = System.nanoTime();
+        List<Long> results = tracCarFanOut.runAll(inputs(10), i -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return (long) i;
+        });
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // Assert: input order kept, three waves of at most 4 calls instead of ten round trips
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), results);
+        assertTrue(elapsedMs >= 900, "took " + elapsedMs + " ms");
+        assertTrue(elapsedMs < 2000, "took " + elapsedMs + " ms");
+    }
+
+    @Test
+    void runAll_shouldNeverRunMoreCallsThanTheLimit() {
+        // Arrange
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        // Act
+        List<Integer> results = tracCarFanOut.runAll(inputs(20), i -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return i;
+        });
+
+        // Assert
+        assertEquals(inputs(20), results);
+        assertTrue(maxInFlight.get() <= 4, "max in flight " + maxInFlight.get());
+    }
+
+    @Test
+    void runAll_shouldReturnNullForTheCallsThatThrow() {
+        // Act
+        List<String> results = tracCarFanOut.runAll(List.of(1, 2, 3), i -> {
+            if (i == 2) {
+                throw new IllegalStateException("Traccar is down");
+            }
+            return "ok" + i;
+        });
+
+        // Assert
+        assertEquals(new ArrayList<>(Arrays.asList("ok1", null, "ok3")), results);
+    }
+}
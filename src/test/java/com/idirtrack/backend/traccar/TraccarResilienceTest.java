@@ -0,0 +1,132 @@
+package com.idirtrack.backend.traccar;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+public class TraccarResilienceTest {
+
+    private TraccarResilience traccarResilience;
+
+    private ClientHttpRequestExecution execution;
+
+    private final byte[] body = new byte[0];
+
+    @BeforeEach
+    void setUp() {
+        // Opens after 4 calls with 50% failures, no backoff between the retries
+        traccarResilience = new TraccarResilience(2, 0, 50, 4, 4, 60000, 1, 3, 1);
+        execution = mock(ClientHttpRequestExecution.class);
+    }
+
+    private MockClientHttpRequest request(HttpMethod method) {
+        return new MockClientHttpRequest(method, URI.create("http://traccar/api/devices"));
+    }
+
+    @Test
+    void intercept_shouldRetryIdempotentRequests() throws IOException {
+        // Arrange
+        when(execution.execute(any(), any()))
+                .thenThrow(new ConnectException("refused"))
+                .thenReturn(new MockClientHttpResponse(new byte[0], HttpStatus.NO_CONTENT));
+
+        // Act
+        ClientHttpResponse response = traccarResilience.intercept(request(HttpMethod.DELETE), body, execution);
+
+        // Assert
+        assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+        verify(execution, times(2)).execute(any(), any());
+    }
+
+    @Test
+    void intercept_shouldNotRetryPostRequests() throws IOException {
+        // Arrange
+        when(execution.execute(any(), any())).thenThrow(new ConnectException("refused"));
+
+        // Act & Assert
+        assertThrows(ConnectException.class,
+                () -> traccarResilience.intercept(request(HttpMethod.POST), body, execution));
+        verify(execution, times(1)).execute(any(), any());
+    }
+
+    @Test
+    void intercept_shouldFailFastOnceTheCircuitIsOpen() throws IOException {
+        // Arrange
+        when(execution.execute(any(), any()))
+                .thenReturn(new MockClientHttpResponse(new byte[0], HttpStatus.INTERNAL_SERVER_ERROR));
+        for (int i = 0; i < 4; i++) {
+            traccarResilience.intercept(request(HttpMethod.POST), body, execution);
+        }
+
+        // Act & Assert
+        assertEquals(CircuitBreaker.State.OPEN, traccarResilience.getState());
+        assertThrows(TraccarUnavailableException.class,
+                () -> traccarResilience.intercept(request(HttpMethod.GET), body, execution));
+        verify(execution, times(4)).execute(any(), any());
+    }
+
+    @Test
+    void restTemplate_shouldRetryOnlyTheRequestFactoryAfterTheChain() {
+        // Arrange: a real chain, with an interceptor before the resilience one
+        AtomicInteger intercepted = new AtomicInteger();
+        RestTemplate restTemplate = new RestTemplate();
+        restTemplate.setInterceptors(List.of((request, requestBody, chain) -> {
+            intercepted.incrementAndGet();
+            return chain.execute(request, requestBody);
+        }, traccarResilience));
+        MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+        server.expect(requestTo("http://traccar/api/devices"))
+                .andRespond(withStatus(HttpStatus.BAD_GATEWAY));
+        server.expect(requestTo("http://traccar/api/devices"))
+                .andRespond(withSuccess("[]", MediaType.APPLICATION_JSON));
+
+        // Act
+        ResponseEntity<String> response = restTemplate.getForEntity("http://traccar/api/devices", String.class);
+
+        // Assert: sent twice, the interceptor before it saw only the last attempt
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, intercepted.get());
+        server.verify();
+    }
+
+    @Test
+    void restTemplate_shouldNotRetryAPost() {
+        // Arrange
+        RestTemplate restTemplate = new RestTemplate();
+        restTemplate.setInterceptors(List.of(traccarResilience));
+        MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+        server.expect(ExpectedCount.once(), requestTo("http://traccar/api/devices"))
+                .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+
+        // Act & Assert
+        assertThrows(HttpServerErrorException.class,
+                () -> restTemplate.postForEntity("http://traccar/api/devices", "{}", String.class));
+        server.verify();
+    }
+}
@@ -0,0 +1,181 @@
+package com.idirtrack.backend.traccar;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+public class TraccarSessionManagerTest {
+
+    private TracCarSessionService tracCarSessionService;
+
+    private TraccarSessionManager traccarSessionManager;
+
+    @BeforeEach
+    void setUp() {
+        tracCarSessionService = mock(TracCarSessionService.class);
+        when(tracCarSessionService.createSession("client@idirtrack.ma", "secret")).thenReturn("s1");
+        when(tracCarSessionService.createToken(anyString(), any(Instant.class))).thenReturn("token");
+        // Sessions live 1 hour, refreshed in their last 5 minutes
+        traccarSessionManager = new TraccarSessionManager(tracCarSessionService, new TracCarFanOut(4), 3600000,
+                300000, 86400000, 604800000);
+    }
+
+    @Test
+    void acquire_shouldReuseTheLiveSessionOfTheUser() {
+        // Act
+        String first = traccarSessionManager.acquire("client", "client@idirtrack.ma", "secret");
+        String second = traccarSessionManager.acquire("client", "client@idirtrack.ma", "secret");
+
+        // Assert
+        assertEquals("s1", first);
+        assertEquals("s1", second);
+        verify(tracCarSessionService, times(1)).createSession(anyString(), anyString());
+        verify(tracCarSessionService, times(1)).createToken(anyString(), any(Instant.class));
+    }
+
+    @Test
+    void renew_shouldOpenASessionWithTheTokenAndResolveTheOldOne() {
+        // Arrange
+        traccarSessionManager.acquire("client", "client@idirtrack.ma", "secret");
+        when(tracCarSessionService.createSessionFromToken("token")).thenReturn("s2");
+
+        // Act
+        String renewed = traccarSessionManager.renew("s1");
+
+        // Assert: a JWT holding the first session now gets the new one
+        assertEquals("s2", renewed);
+        assertEquals("s2", traccarSessionManager.renew("s1"));
+        assertEquals("s2", traccarSessionManager.resolve("client", "s1"));
+        verify(tracCarSessionService, times(1)).createSessionFromToken("token");
+    }
+
+    @Test
+    void resolve_shouldAdoptASessionIssuedBeforeARestart() {
+        // Act
+        String session = traccarSessionManager.resolve("client", "s0");
+
+        // Assert: it cannot be renewed without a token
+        assertEquals("s0", session);
+        assertNull(traccarSessionManager.renew("s0"));
+        verify(tracCarSessionService, never()).createSessionFromToken(anyString());
+    }
+
+    @Test
+    void current_shouldGiveTheLiveSessionWithoutAdoptingOne() {
+        // Arrange
+        traccarSessionManager.acquire("client", "client@idirtrack.ma", "secret");
+
+        // Act & Assert: a user unknown here, like after a restart, has none
+        assertEquals("s1", traccarSessionManager.current("client"));
+        assertNull(traccarSessionManager.current("manager"));
+    }
+
+    @Test
+    void refreshExpiring_shouldRefreshTheSessionsInUseBeforeTheyExpire() {
+        // Arrange: sessions live 4 minutes, so they are refreshed right away
+        traccarSessionManager = new TraccarSessionManager(tracCarSessionService, new TracCarFanOut(4), 240000,
+                300000, 86400000, 604800000);
+        traccarSessionManager.acquire("client", "client@idirtrack.ma", "secret");
+        when(tracCarSessionService.createSessionFromToken("token")).thenReturn("s2");
+
+        // Act
+        traccarSessionManager.refreshExpiring();
+
+        // Assert
+        assertEquals("s2", traccarSessionManager.resolve("client", "s1"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void intercept_shouldReplayACallRejectedWithARenewedSession() throws IOException {
+        // Arrange
+        traccarSessionManager.acquire("client", "client@idirtrack.ma", "secret");
+        when(tracCarSessionService.createSessionFromToken("token")).thenReturn("s2");
+        ObjectProvider<TraccarSessionManager> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(traccarSessionManager);
+        TraccarSessionInterceptor interceptor = new TraccarSessionInterceptor(provider, resilience());
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET,
+                URI.create("http://traccar/api/devices"));
+        request.getHeaders().add(HttpHeaders.COOKIE, "JSESSIONID=s1");
+        ClientHttpRequestExecution execution = mock(ClientHttpRequestExecution.class);
+        when(execution.execute(any(), any()))
+                .thenReturn(new MockClientHttpResponse(new byte[0], HttpStatus.UNAUTHORIZED))
+                .thenReturn(new MockClientHttpResponse(new byte[0], HttpStatus.OK));
+
+        // Act
+        ClientHttpResponse response = interceptor.intercept(request, new byte[0], execution);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        ArgumentCaptor<HttpRequest> sent = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(execution, times(2)).execute(sent.capture(), any());
+        assertEquals("JSESSIONID=s2", sent.getAllValues().get(1).getHeaders().getFirst(HttpHeaders.COOKIE));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void restTemplate_shouldRenewTheSessionRejectedAfterTheRetries() {
+        // Arrange: the chain of TraccarHttpConfig, on a mock Traccar server
+        traccarSessionManager.acquire("client", "client@idirtrack.ma", "secret");
+        when(tracCarSessionService.createSessionFromToken("token")).thenReturn("s2");
+        ObjectProvider<TraccarSessionManager> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(traccarSessionManager);
+        TraccarResilience resilience = resilience();
+        RestTemplate restTemplate = new RestTemplate();
+        restTemplate.setInterceptors(List.of(new TraccarSessionInterceptor(provider, resilience), resilience));
+        MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+        // Traccar restarts, then rejects the session it lost, then takes the renewed one
+        server.expect(requestTo("http://traccar/api/devices"))
+                .andExpect(header(HttpHeaders.COOKIE, "JSESSIONID=s1"))
+                .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+        server.expect(requestTo("http://traccar/api/devices"))
+                .andExpect(header(HttpHeaders.COOKIE, "JSESSIONID=s1"))
+                .andRespond(withStatus(HttpStatus.UNAUTHORIZED));
+        server.expect(requestTo("http://traccar/api/devices"))
+                .andExpect(header(HttpHeaders.COOKIE, "JSESSIONID=s2"))
+                .andRespond(withSuccess("[]", MediaType.APPLICATION_JSON));
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.COOKIE, "JSESSIONID=s1");
+
+        // Act
+        ResponseEntity<String> response = restTemplate.exchange("http://traccar/api/devices", HttpMethod.GET,
+                new HttpEntity<>(headers), String.class);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        server.verify();
+    }
+
+    // No backoff between the retries
+    private TraccarResilience resilience() {
+        return new TraccarResilience(2, 0, 50, 4, 4, 60000, 1, 3, 1);
+    }
+}
@@ -0,0 +1,58 @@
+package com.idirtrack.backend.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class StripedLocksTest {
+
+    private final StripedLocks locks = new StripedLocks(16);
+
+    @Test
+    void lock_shouldMakeWritersOfTheSameKeyWait() throws Exception {
+        CompletableFuture<Void> other;
+        try (StripedLocks.Lock lock = locks.lock("356938035643809")) {
+            other = CompletableFuture.runAsync(() -> locks.lock("356938035643809").close());
+            assertThrows(TimeoutException.class, () -> other.get(200, TimeUnit.MILLISECONDS));
+        }
+        other.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void lock_shouldAcceptSeveralAndNullKeys() throws Exception {
+        try (StripedLocks.Lock lock = locks.lock("phone:0611223344", "ccid:8921200000000000004", null)) {
+            // Re-entrant for the same thread
+            locks.lock("phone:0611223344").close();
+        }
+        CompletableFuture.runAsync(() -> locks.lock("phone:0611223344", "ccid:8921200000000000004").close())
+                .get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void lockUntilCompletion_shouldKeepTheLockUntilTheTransactionCompletes() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            locks.lockUntilCompletion("356938035643809").close();
+
+            // Still held after close()
+            CompletableFuture<Void> other = CompletableFuture
+                    .runAsync(() -> locks.lock("356938035643809").close());
+            assertThrows(TimeoutException.class, () -> other.get(200, TimeUnit.MILLISECONDS));
+
+            // Released once the transaction completes
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager
+                    .getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+            other.get(5, TimeUnit.SECONDS);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.idirtrack.backend.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SubstringIndexTest {
+
+    private SubstringIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new SubstringIndex();
+        index.put(1L, "NON_INSTALLED", "356938035643809");
+        index.put(2L, "NON_INSTALLED", "356938035643810");
+        index.put(3L, "INSTALLED", "356938035643811");
+        index.put(4L, "NON_INSTALLED", "0611223344", "8921200000000000004");
+    }
+
+    @Test
+    void search_shouldMatchSubstringsOfAnyLength() {
+        assertEquals(List.of(2L, 1L), index.search("3564", "NON_INSTALLED", 0, 10).ids());
+        assertEquals(List.of(2L), index.search("810", "NON_INSTALLED", 0, 10).ids());
+        assertEquals(List.of(4L), index.search("8921200", "NON_INSTALLED", 0, 10).ids());
+        assertEquals(3, index.search("", "NON_INSTALLED", 0, 10).total());
+    }
+
+    @Test
+    void search_shouldVerifyCandidatesOfLongTerms() {
+        // All the trigrams of "4380356" exist in 1L, but not the whole term
+        assertEquals(0, index.search("4380356", "NON_INSTALLED", 0, 10).total());
+    }
+
+    @Test
+    void search_shouldPageByIdDescending() {
+        SubstringIndex.Hits hits = index.search("3", "NON_INSTALLED", 1, 1);
+        assertEquals(List.of(2L), hits.ids());
+        assertEquals(3, hits.total());
+    }
+
+    @Test
+    void searchRanked_shouldPutExactAndPrefixMatchesFirst() {
+        // Arrange
+        SubstringIndex text = new SubstringIndex();
+        text.put(1L, "installed", "0611223344", "maroc telecom");
+        text.put(2L, "non_installed", "0612", "inwi");
+        text.put(3L, "lost", "0700612000", "inwi");
+        text.put(4L, "non_installed", "0612000000", "orange");
+
+        // Assert
+        assertEquals(List.of(4L, 2L, 1L, 3L), text.searchRanked("061", 0, 10).ids());
+        assertEquals(List.of(2L, 4L, 3L), text.searchRanked("0612", 0, 10).ids());
+        assertEquals(List.of(4L, 3L), text.searchRanked("0612", 1, 2).ids());
+        // Tags are searched too
+        assertEquals(List.of(4L, 2L, 1L), text.searchRanked("install", 0, 10).ids());
+        assertEquals(4, text.searchRanked(null, 0, 10).total());
+    }
+
+    @Test
+    void updates_shouldBeVisibleInSearch() {
+        // Act
+        index.retag(1L, "INSTALLED");
+        index.remove(2L);
+        index.put(4L, "NON_INSTALLED", "0699999999", "8921200000000000004");
+
+        // Assert
+        assertEquals(0, index.search("35693", "NON_INSTALLED", 0, 10).total());
+        assertEquals(List.of(3L, 1L), index.search("35693", "INSTALLED", 0, 10).ids());
+        assertEquals(0, index.search("1122", "NON_INSTALLED", 0, 10).total());
+        assertEquals(List.of(4L), index.search("9999", "NON_INSTALLED", 0, 10).ids());
+    }
+}
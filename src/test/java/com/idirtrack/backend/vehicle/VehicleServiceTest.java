@@ -2,6 +2,7 @@ package com.idirtrack.backend.vehicle;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -12,17 +13,40 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 
+import com.idirtrack.backend.boitier.Boitier;
+import com.idirtrack.backend.boitier.BoitierRepository;
 import com.idirtrack.backend.client.Client;
+import com.idirtrack.backend.client.ClientService;
+import com.idirtrack.backend.device.Device;
+import com.idirtrack.backend.device.DeviceService;
+import com.idirtrack.backend.device.DeviceStatus;
+import com.idirtrack.backend.errors.AlreadyExistException;
+import com.idirtrack.backend.outbox.OutboxOperation;
+import com.idirtrack.backend.outbox.OutboxService;
+import com.idirtrack.backend.sim.Sim;
+import com.idirtrack.backend.sim.SimService;
+import com.idirtrack.backend.sim.SimStatus;
+import com.idirtrack.backend.subscription.Subscription;
+import com.idirtrack.backend.traccar.request.TracCarDeviceRequest;
 import com.idirtrack.backend.user.User;
 import com.idirtrack.backend.utils.MyResponse;
+import com.idirtrack.backend.utils.StatusTransitionReport;
+import com.idirtrack.backend.vehicle.https.VehicleRequest;
 
+import java.sql.Date;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 public class VehicleServiceTest {
@@ -30,6 +54,21 @@ public class VehicleServiceTest {
     @Mock
     private VehicleRepository vehicleRepository;
 
+    @Mock
+    private BoitierRepository boitierRepository;
+
+    @Mock
+    private ClientService clientService;
+
+    @Mock
+    private DeviceService deviceService;
+
+    @Mock
+    private SimService simService;
+
+    @Mock
+    private OutboxService outboxService;
+
     @InjectMocks
     private VehicleService vehicleService;
 
@@ -94,4 +133,63 @@ public class VehicleServiceTest {
         assertEquals(1, response.getMetadata().get("totalPages"));
         assertEquals(size, response.getMetadata().get("size"));
     }
+
+    // Test the Traccar devices are recorded in the outbox instead of being created during the request
+    @Test
+    public void testCreateNewVehicle_RecordsTheTraccarDevicesInTheOutbox() {
+        // Arrange
+        Boitier boitier = Boitier.builder()
+                .id(5L)
+                .device(Device.builder().id(1L).imei("356938035643809").build())
+                .sim(Sim.builder().id(2L).phone("0611223344").build())
+                .currentSubscription(Subscription.builder().endDate(Date.valueOf("2030-01-01")).build())
+                .build();
+        VehicleRequest request = VehicleRequest.builder()
+                .matricule("123-A-45")
+                .type("Truck")
+                .clientId(3L)
+                .boitiersIds(List.of(5L))
+                .build();
+        when(clientService.findClientById(3L)).thenReturn(new Client());
+        when(boitierRepository.findById(5L)).thenReturn(Optional.of(boitier));
+        when(vehicleRepository.save(any(Vehicle.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(deviceService.changeDevicesStatus(List.of(1L), DeviceStatus.INSTALLED))
+                .thenReturn(report(1L));
+        when(simService.changeSimsStatus(List.of(2L), SimStatus.INSTALLED))
+                .thenReturn(report(2L));
+
+        // Act
+        MyResponse response = vehicleService.createNewVehicle(request, "token");
+
+        // Assert
+        assertEquals(HttpStatus.CREATED, response.getStatus());
+        ArgumentCaptor<Object> device = ArgumentCaptor.forClass(Object.class);
+        verify(outboxService).enqueue(eq(OutboxOperation.CREATE_DEVICE), eq(5L), isNull(), device.capture(),
+                eq("token"));
+        assertEquals("356938035643809", ((TracCarDeviceRequest) device.getValue()).getUniqueId());
+        assertEquals("123-A-45", ((TracCarDeviceRequest) device.getValue()).getName());
+    }
+
+    // Test nothing is recorded in the outbox when the matricule is taken
+    @Test
+    public void testCreateNewVehicle_RecordsNothingWhenTheMatriculeExists() {
+        // Arrange
+        VehicleRequest request = VehicleRequest.builder()
+                .matricule("123-A-45")
+                .clientId(3L)
+                .boitiersIds(List.of(5L))
+                .build();
+        when(vehicleRepository.existsByMatricule("123-A-45")).thenReturn(true);
+
+        // Act & Assert
+        assertThrows(AlreadyExistException.class, () -> vehicleService.createNewVehicle(request, "token"));
+        verify(vehicleRepository, never()).save(any(Vehicle.class));
+        verifyNoInteractions(outboxService);
+    }
+
+    private StatusTransitionReport report(Long id) {
+        StatusTransitionReport report = StatusTransitionReport.builder().status("INSTALLED").build();
+        report.getResults().put(id, StatusTransitionReport.Outcome.UPDATED);
+        return report;
+    }
 }